@@ -0,0 +1,83 @@
+package com.seckill.cache;
+
+import com.seckill.entity.Coupon;
+
+import java.time.ZoneId;
+
+/**
+ * 秒杀活动配置（本地缓存的不可变快照）
+ *
+ * @param voucherId   优惠券ID
+ * @param startMillis 开始时间（毫秒时间戳）
+ * @param endMillis   结束时间（毫秒时间戳）
+ * @param userLimit   每人限购数量，为空时使用请求中的限购数量
+ * @param admitRate   排队放行速率（人/秒），0表示不排队
+ * @param lottery     是否为抽签活动（报名后统一开奖，不接受秒杀请求）
+ * @param adHoc       是否为未在数据库中配置、通过/init临时创建的活动
+ * @author seckill-test
+ */
+public record ActivityConfig(Long voucherId, long startMillis, long endMillis, Integer userLimit, int admitRate,
+    boolean lottery, boolean adHoc) {
+
+  /**
+   * 活动状态
+   */
+  public enum State {
+    NOT_STARTED, ACTIVE, ENDED
+  }
+
+  /**
+   * 从优惠券配置构建
+   */
+  public static ActivityConfig fromCoupon(Coupon coupon) {
+    ZoneId zone = ZoneId.systemDefault();
+    return new ActivityConfig(
+        coupon.getId(),
+        coupon.getStartTime().atZone(zone).toInstant().toEpochMilli(),
+        coupon.getEndTime().atZone(zone).toInstant().toEpochMilli(),
+        coupon.getUserLimit(),
+        coupon.getAdmitRate() != null ? coupon.getAdmitRate() : 0,
+        coupon.getActivityType() != null && coupon.getActivityType() == Coupon.TYPE_LOTTERY,
+        false);
+  }
+
+  /**
+   * 临时活动：不限时间，限购数量由请求决定
+   */
+  public static ActivityConfig adHoc(Long voucherId) {
+    return new ActivityConfig(voucherId, Long.MIN_VALUE, Long.MAX_VALUE, null, 0, false, true);
+  }
+
+  /**
+   * 计算活动在指定时刻的状态
+   */
+  public State stateAt(long nowMillis) {
+    if (nowMillis < startMillis) {
+      return State.NOT_STARTED;
+    }
+    if (nowMillis > endMillis) {
+      return State.ENDED;
+    }
+    return State.ACTIVE;
+  }
+
+  /**
+   * 是否开启排队，开启后只有已放行的排队凭证才能参与秒杀
+   */
+  public boolean waitingRoom() {
+    return admitRate > 0;
+  }
+
+  /**
+   * 解析实际生效的限购数量，服务端配置优先
+   *
+   * @param requestedLimit 请求中的限购数量
+   * @return 限购数量
+   */
+  public int resolveLimit(Integer requestedLimit) {
+    if (userLimit != null) {
+      return userLimit;
+    }
+    return requestedLimit != null ? requestedLimit : 1;
+  }
+}
@@ -0,0 +1,186 @@
+package com.seckill.cache;
+
+import com.seckill.entity.Coupon;
+import com.seckill.mapper.CouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀活动配置的本地注册表
+ *
+ * 从数据库加载进行中和即将开始的活动，按固定周期在快照过期前刷新，
+ * 配置变更时通过{@link CacheInvalidationService}通知各节点重新加载。
+ * 秒杀请求在本地完成活动存在性、时间窗口和限购数量的判断，无效流量不再访问Redis。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Component
+public class ActivityRegistry {
+
+  /**
+   * 拒绝原因
+   */
+  public enum RejectReason {
+    UNKNOWN, NOT_STARTED, ENDED
+  }
+
+  @Resource
+  private CouponMapper couponMapper;
+
+  @Resource
+  private CacheInvalidationService cacheInvalidationService;
+
+  /**
+   * 预加载多长时间内即将开始的活动（小时）
+   */
+  @Value("${seckill.activity.upcoming-window-hours:24}")
+  private long upcomingWindowHours;
+
+  /**
+   * 快照有效期（毫秒），刷新周期应小于该值，保证快照在过期前被替换
+   */
+  @Value("${seckill.activity.snapshot-ttl-ms:60000}")
+  private long snapshotTtlMs;
+
+  /**
+   * voucherId -> 活动配置
+   */
+  private final ConcurrentHashMap<Long, ActivityConfig> activities = new ConcurrentHashMap<>();
+
+  /**
+   * 最近一次全量加载成功的时间，0表示尚未加载成功
+   */
+  private volatile long lastRefreshMillis;
+
+  private final Map<RejectReason, LongAdder> rejectCounts = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  public void init() {
+    for (RejectReason reason : RejectReason.values()) {
+      rejectCounts.put(reason, new LongAdder());
+    }
+    cacheInvalidationService.addListener(this::onInvalidation);
+  }
+
+  /**
+   * 全量刷新活动配置（启动后立即执行一次，之后按周期刷新）
+   */
+  @Scheduled(initialDelay = 0, fixedDelayString = "${seckill.activity.refresh-interval-ms:30000}")
+  public void refresh() {
+    try {
+      List<Coupon> coupons = new ArrayList<>(couponMapper.selectValidCoupons());
+      coupons.addAll(couponMapper.selectUpcomingCoupons(LocalDateTime.now().plusHours(upcomingWindowHours)));
+
+      Map<Long, ActivityConfig> loaded = new HashMap<>();
+      for (Coupon coupon : coupons) {
+        loaded.put(coupon.getId(), ActivityConfig.fromCoupon(coupon));
+      }
+
+      activities.putAll(loaded);
+      // 移除已下线的活动，临时活动只能由重新初始化替换
+      activities.values().removeIf(config -> !config.adHoc() && !loaded.containsKey(config.voucherId()));
+      lastRefreshMillis = System.currentTimeMillis();
+
+      log.debug("活动配置刷新完成 - 活动数: {}", activities.size());
+    } catch (Exception e) {
+      log.error("活动配置刷新失败，继续使用现有快照 - 活动数: {}", activities.size(), e);
+    }
+  }
+
+  /**
+   * 注册表是否可用于拦截请求
+   * 从未加载成功时（如数据库不可用）不做拦截，避免误拒全部流量
+   */
+  public boolean isReady() {
+    return lastRefreshMillis > 0;
+  }
+
+  /**
+   * 获取活动配置
+   *
+   * @param voucherId 优惠券ID
+   * @return 活动配置，不存在时返回null
+   */
+  public ActivityConfig get(Long voucherId) {
+    return activities.get(voucherId);
+  }
+
+  /**
+   * 获取全部活动配置（包括即将开始和已结束但尚未移除的活动）
+   */
+  public List<ActivityConfig> list() {
+    return new ArrayList<>(activities.values());
+  }
+
+  /**
+   * 记录一次被本地拦截的请求
+   */
+  public void recordRejection(RejectReason reason) {
+    rejectCounts.get(reason).increment();
+  }
+
+  /**
+   * 活动配置已变更（初始化或修改）：本地立即重新加载，并通知其他节点
+   *
+   * @param voucherId 优惠券ID
+   */
+  public void reload(Long voucherId) {
+    reloadLocal(voucherId);
+    cacheInvalidationService.publish(CacheInvalidationEvent.activity(voucherId));
+  }
+
+  /**
+   * 获取注册表统计
+   */
+  public Map<String, Object> getStats() {
+    long adHocCount = activities.values().stream().filter(ActivityConfig::adHoc).count();
+
+    Map<String, Object> rejected = new HashMap<>();
+    rejectCounts.forEach((reason, count) -> rejected.put(reason.name(), count.sum()));
+
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("ready", isReady());
+    stats.put("activities", activities.size());
+    stats.put("adHocActivities", adHocCount);
+    stats.put("lastRefreshMillis", lastRefreshMillis);
+    stats.put("stale", isReady() && System.currentTimeMillis() - lastRefreshMillis > snapshotTtlMs);
+    stats.put("rejected", rejected);
+    return stats;
+  }
+
+  private void onInvalidation(CacheInvalidationEvent event) {
+    if (CacheInvalidationEvent.TYPE_ACTIVITY.equals(event.type())) {
+      reloadLocal(event.voucherId());
+    }
+  }
+
+  /**
+   * 重新加载单个活动，数据库中没有配置的优惠券作为临时活动登记
+   */
+  private void reloadLocal(Long voucherId) {
+    try {
+      Coupon coupon = couponMapper.selectById(voucherId);
+      if (coupon != null) {
+        activities.put(voucherId, ActivityConfig.fromCoupon(coupon));
+        return;
+      }
+    } catch (Exception e) {
+      log.error("加载活动配置失败，按临时活动处理 - 优惠券: {}", voucherId, e);
+    }
+    activities.put(voucherId, ActivityConfig.adHoc(voucherId));
+    log.info("登记临时秒杀活动 - 优惠券: {}", voucherId);
+  }
+}
@@ -0,0 +1,113 @@
+package com.seckill.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于原始long的并发布隆过滤器
+ *
+ * 位数组使用AtomicLongArray，写入通过CAS按位或，读取无锁；
+ * 哈希采用两次MurmurHash3混合后的双重哈希(h1 + i * h2)生成k个位置。
+ *
+ * @author seckill-test
+ */
+public class BloomFilter {
+
+  private final AtomicLongArray bits;
+  private final long bitSize;
+  private final int hashCount;
+  private final LongAdder insertions = new LongAdder();
+
+  /**
+   * @param expectedInsertions 预计元素个数
+   * @param fpp                期望误判率
+   */
+  public BloomFilter(long expectedInsertions, double fpp) {
+    if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+      throw new IllegalArgumentException("布隆过滤器参数非法: n=" + expectedInsertions + ", fpp=" + fpp);
+    }
+    long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+    int words = (int) Math.max(1, (m + 63) >>> 6);
+    this.bits = new AtomicLongArray(words);
+    this.bitSize = (long) words << 6;
+    this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+  }
+
+  /**
+   * 写入元素
+   */
+  public void put(long value) {
+    long h1 = mix(value);
+    long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1L;
+    for (int i = 0; i < hashCount; i++) {
+      long index = Math.floorMod(h1 + i * h2, bitSize);
+      setBit(index);
+    }
+    insertions.increment();
+  }
+
+  /**
+   * 元素是否可能存在
+   *
+   * @return false表示一定不存在，true表示可能存在
+   */
+  public boolean mightContain(long value) {
+    long h1 = mix(value);
+    long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1L;
+    for (int i = 0; i < hashCount; i++) {
+      long index = Math.floorMod(h1 + i * h2, bitSize);
+      if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 按当前置位比例估算误判率: (置位数 / 总位数)^k
+   */
+  public double estimatedFpp() {
+    long setBits = 0;
+    for (int i = 0; i < bits.length(); i++) {
+      setBits += Long.bitCount(bits.get(i));
+    }
+    return Math.pow((double) setBits / bitSize, hashCount);
+  }
+
+  /**
+   * 已写入次数（重复写入会重复计数）
+   */
+  public long insertions() {
+    return insertions.sum();
+  }
+
+  public long bitSize() {
+    return bitSize;
+  }
+
+  public int hashCount() {
+    return hashCount;
+  }
+
+  private void setBit(long index) {
+    int word = (int) (index >>> 6);
+    long mask = 1L << index;
+    long current;
+    do {
+      current = bits.get(word);
+      if ((current & mask) != 0) {
+        return;
+      }
+    } while (!bits.compareAndSet(word, current, current | mask));
+  }
+
+  private static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
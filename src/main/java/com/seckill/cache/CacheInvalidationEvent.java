@@ -0,0 +1,75 @@
+package com.seckill.cache;
+
+/**
+ * 本地缓存失效事件，通过Redis pub/sub在集群节点间广播
+ *
+ * 消息格式: type|voucherId|userId，userId为空时表示整个优惠券
+ *
+ * @param type      事件类型
+ * @param voucherId 优惠券ID
+ * @param userId    用户ID（可为空）
+ * @author seckill-test
+ */
+public record CacheInvalidationEvent(String type, Long voucherId, Long userId) {
+
+  /**
+   * 用户购买记录被清除（如库存回滚）
+   */
+  public static final String TYPE_USER = "USER";
+
+  /**
+   * 优惠券活动被重新初始化，清除该优惠券下的所有本地状态
+   */
+  public static final String TYPE_VOUCHER = "VOUCHER";
+
+  /**
+   * 优惠券活动配置（时间窗口、限购等）变更，各节点重新加载活动配置
+   */
+  public static final String TYPE_ACTIVITY = "ACTIVITY";
+
+  /**
+   * 优惠券所在的Redis分片变更（迁移完成），各节点重新读取分片目录
+   */
+  public static final String TYPE_SHARD = "SHARD";
+
+  private static final String SEPARATOR = "|";
+
+  public static CacheInvalidationEvent user(Long voucherId, Long userId) {
+    return new CacheInvalidationEvent(TYPE_USER, voucherId, userId);
+  }
+
+  public static CacheInvalidationEvent voucher(Long voucherId) {
+    return new CacheInvalidationEvent(TYPE_VOUCHER, voucherId, null);
+  }
+
+  public static CacheInvalidationEvent activity(Long voucherId) {
+    return new CacheInvalidationEvent(TYPE_ACTIVITY, voucherId, null);
+  }
+
+  public static CacheInvalidationEvent shard(Long voucherId) {
+    return new CacheInvalidationEvent(TYPE_SHARD, voucherId, null);
+  }
+
+  /**
+   * 编码为消息文本
+   */
+  public String encode() {
+    return type + SEPARATOR + voucherId + SEPARATOR + (userId != null ? userId : "");
+  }
+
+  /**
+   * 从消息文本解码
+   *
+   * @param message 消息文本
+   * @return 失效事件
+   * @throws IllegalArgumentException 消息格式错误
+   */
+  public static CacheInvalidationEvent decode(String message) {
+    String[] parts = message.split("\\|", -1);
+    if (parts.length != 3) {
+      throw new IllegalArgumentException("缓存失效消息格式错误: " + message);
+    }
+    Long userId = parts[2].isEmpty() ? null : Long.valueOf(parts[2]);
+    return new CacheInvalidationEvent(parts[0], Long.valueOf(parts[1]), userId);
+  }
+}
@@ -0,0 +1,108 @@
+package com.seckill.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 本地缓存失效广播服务
+ *
+ * 各节点的本地缓存在此注册监听，任一节点发布的失效事件经Redis pub/sub送达所有节点（包括自身）。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class CacheInvalidationService implements MessageListener {
+
+  /**
+   * 失效广播频道
+   */
+  public static final String CHANNEL = "seckill:cache:invalidate";
+
+  @Resource
+  private RedisTemplate<String, Object> redisTemplate;
+
+  @Resource
+  private RedisMessageListenerContainer redisMessageListenerContainer;
+
+  private final List<Consumer<CacheInvalidationEvent>> listeners = new CopyOnWriteArrayList<>();
+
+  @PostConstruct
+  public void registerChannel() {
+    redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+  }
+
+  /**
+   * 确保订阅处于活动状态，Redis不可用或断线后定期重试
+   */
+  @Scheduled(initialDelay = 0, fixedDelay = 5000)
+  public void ensureSubscribed() {
+    if (redisMessageListenerContainer.isListening()) {
+      return;
+    }
+    try {
+      redisMessageListenerContainer.stop();
+      redisMessageListenerContainer.start();
+      log.info("缓存失效频道订阅成功 - 频道: {}", CHANNEL);
+    } catch (Exception e) {
+      log.warn("缓存失效频道订阅失败，稍后重试 - 原因: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * 注册本地缓存失效监听
+   *
+   * @param listener 失效处理回调
+   */
+  public void addListener(Consumer<CacheInvalidationEvent> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * 广播失效事件
+   * 广播失败不影响主流程，依赖本地缓存自身的容量和刷新机制兜底
+   *
+   * @param event 失效事件
+   */
+  public void publish(CacheInvalidationEvent event) {
+    try {
+      redisTemplate.convertAndSend(CHANNEL, event.encode());
+    } catch (Exception e) {
+      log.error("广播缓存失效事件失败 - 事件: {}", event, e);
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    String body = new String(message.getBody(), StandardCharsets.UTF_8);
+    CacheInvalidationEvent event;
+    try {
+      event = CacheInvalidationEvent.decode(body);
+    } catch (IllegalArgumentException e) {
+      log.warn("忽略无法解析的缓存失效消息: {}", body);
+      return;
+    }
+
+    log.debug("收到缓存失效事件: {}", event);
+    for (Consumer<CacheInvalidationEvent> listener : listeners) {
+      try {
+        listener.accept(event);
+      } catch (Exception e) {
+        log.error("处理缓存失效事件异常 - 事件: {}", event, e);
+      }
+    }
+  }
+}
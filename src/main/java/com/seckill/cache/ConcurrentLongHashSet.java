@@ -0,0 +1,219 @@
+package com.seckill.cache;
+
+/**
+ * 基于原始long的并发哈希集合
+ *
+ * 分段加锁 + 线性探测开放寻址，每个元素只占用一个long槽位，
+ * 避免Long装箱和链表节点开销，百万级元素时内存占用约为HashSet的十分之一。
+ *
+ * @author seckill-test
+ */
+public class ConcurrentLongHashSet {
+
+  private static final int SEGMENT_COUNT = 16;
+
+  private static final long EMPTY = 0L;
+
+  private final Segment[] segments;
+
+  public ConcurrentLongHashSet() {
+    this(64);
+  }
+
+  /**
+   * @param expectedSize 预估元素个数
+   */
+  public ConcurrentLongHashSet(int expectedSize) {
+    int perSegment = Math.max(4, expectedSize / SEGMENT_COUNT);
+    segments = new Segment[SEGMENT_COUNT];
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segments[i] = new Segment(perSegment);
+    }
+  }
+
+  /**
+   * 添加元素
+   *
+   * @return true-新增，false-已存在
+   */
+  public boolean add(long value) {
+    long hash = mix(value);
+    return segmentFor(hash).add(value, hash);
+  }
+
+  /**
+   * 是否包含元素
+   */
+  public boolean contains(long value) {
+    long hash = mix(value);
+    return segmentFor(hash).contains(value, hash);
+  }
+
+  /**
+   * 删除元素
+   *
+   * @return true-删除成功，false-不存在
+   */
+  public boolean remove(long value) {
+    long hash = mix(value);
+    return segmentFor(hash).remove(value, hash);
+  }
+
+  /**
+   * 元素个数
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * 清空集合
+   */
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  private Segment segmentFor(long hash) {
+    return segments[(int) (hash >>> 60) & (SEGMENT_COUNT - 1)];
+  }
+
+  /**
+   * MurmurHash3 finalizer，打散连续的用户ID
+   */
+  private static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * 分段：独立加锁的开放寻址表，0值使用单独标记存储
+   */
+  private static final class Segment {
+
+    private long[] table;
+    private int size;
+    private boolean containsZero;
+
+    Segment(int expectedSize) {
+      int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+      table = new long[capacity];
+    }
+
+    synchronized boolean add(long value, long hash) {
+      if (value == EMPTY) {
+        boolean added = !containsZero;
+        containsZero = true;
+        return added;
+      }
+      int mask = table.length - 1;
+      int index = (int) hash & mask;
+      while (table[index] != EMPTY) {
+        if (table[index] == value) {
+          return false;
+        }
+        index = (index + 1) & mask;
+      }
+      table[index] = value;
+      size++;
+      if (size * 4 >= table.length * 3) {
+        resize();
+      }
+      return true;
+    }
+
+    synchronized boolean contains(long value, long hash) {
+      if (value == EMPTY) {
+        return containsZero;
+      }
+      return indexOf(value, hash) >= 0;
+    }
+
+    synchronized boolean remove(long value, long hash) {
+      if (value == EMPTY) {
+        boolean removed = containsZero;
+        containsZero = false;
+        return removed;
+      }
+      int index = indexOf(value, hash);
+      if (index < 0) {
+        return false;
+      }
+      table[index] = EMPTY;
+      size--;
+      shiftBack(index);
+      return true;
+    }
+
+    synchronized int size() {
+      return size + (containsZero ? 1 : 0);
+    }
+
+    synchronized void clear() {
+      table = new long[Math.min(table.length, 16)];
+      size = 0;
+      containsZero = false;
+    }
+
+    private int indexOf(long value, long hash) {
+      int mask = table.length - 1;
+      int index = (int) hash & mask;
+      while (table[index] != EMPTY) {
+        if (table[index] == value) {
+          return index;
+        }
+        index = (index + 1) & mask;
+      }
+      return -1;
+    }
+
+    /**
+     * 线性探测的后移删除：把后续探测链上的元素前移填补空位，无需墓碑标记
+     */
+    private void shiftBack(int hole) {
+      int mask = table.length - 1;
+      int index = hole;
+      while (true) {
+        index = (index + 1) & mask;
+        long candidate = table[index];
+        if (candidate == EMPTY) {
+          return;
+        }
+        int home = (int) mix(candidate) & mask;
+        boolean reachable = hole <= index
+            ? (hole < home && home <= index)
+            : (hole < home || home <= index);
+        if (!reachable) {
+          table[hole] = candidate;
+          table[index] = EMPTY;
+          hole = index;
+        }
+      }
+    }
+
+    private void resize() {
+      long[] old = table;
+      table = new long[old.length << 1];
+      int mask = table.length - 1;
+      for (long value : old) {
+        if (value != EMPTY) {
+          int index = (int) mix(value) & mask;
+          while (table[index] != EMPTY) {
+            index = (index + 1) & mask;
+          }
+          table[index] = value;
+        }
+      }
+    }
+  }
+}
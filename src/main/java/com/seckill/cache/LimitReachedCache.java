@@ -0,0 +1,125 @@
+package com.seckill.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已达限购用户的本地缓存
+ *
+ * 记录(voucherId, userId)已达到限购的组合，重复请求直接在本节点拒绝，无需执行Lua脚本。
+ * 用户购买记录被回滚或活动重新初始化时，通过{@link CacheInvalidationService}在全集群失效。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Component
+public class LimitReachedCache {
+
+  @Resource
+  private CacheInvalidationService cacheInvalidationService;
+
+  /**
+   * 最大缓存条目数，超过后不再写入（只影响命中率，不影响正确性）
+   */
+  @Value("${seckill.local-cache.limit-reached-max-entries:2000000}")
+  private long maxEntries;
+
+  /**
+   * voucherId -> 已达限购的userId集合
+   */
+  private final ConcurrentHashMap<Long, ConcurrentLongHashSet> reachedUsers = new ConcurrentHashMap<>();
+
+  private final LongAdder entryCount = new LongAdder();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder rejectedWrites = new LongAdder();
+
+  @PostConstruct
+  public void registerInvalidation() {
+    cacheInvalidationService.addListener(this::onInvalidation);
+  }
+
+  /**
+   * 用户是否已达限购
+   */
+  public boolean contains(Long voucherId, Long userId) {
+    ConcurrentLongHashSet users = reachedUsers.get(voucherId);
+    if (users != null && users.contains(userId)) {
+      hitCount.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * 标记用户已达限购
+   */
+  public void markReached(Long voucherId, Long userId) {
+    if (entryCount.sum() >= maxEntries) {
+      rejectedWrites.increment();
+      return;
+    }
+    if (reachedUsers.computeIfAbsent(voucherId, id -> new ConcurrentLongHashSet(1024)).add(userId)) {
+      entryCount.increment();
+    }
+  }
+
+  /**
+   * 在本节点失效单个用户，并广播到集群
+   */
+  public void invalidateUser(Long voucherId, Long userId) {
+    removeUser(voucherId, userId);
+    cacheInvalidationService.publish(CacheInvalidationEvent.user(voucherId, userId));
+  }
+
+  /**
+   * 在本节点失效整个优惠券，并广播到集群
+   */
+  public void invalidateVoucher(Long voucherId) {
+    removeVoucher(voucherId);
+    cacheInvalidationService.publish(CacheInvalidationEvent.voucher(voucherId));
+  }
+
+  /**
+   * 获取缓存统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("vouchers", reachedUsers.size());
+    stats.put("entries", entryCount.sum());
+    stats.put("maxEntries", maxEntries);
+    stats.put("hitCount", hitCount.sum());
+    stats.put("rejectedWrites", rejectedWrites.sum());
+    return stats;
+  }
+
+  private void onInvalidation(CacheInvalidationEvent event) {
+    if (CacheInvalidationEvent.TYPE_USER.equals(event.type())) {
+      removeUser(event.voucherId(), event.userId());
+    } else if (CacheInvalidationEvent.TYPE_VOUCHER.equals(event.type())) {
+      removeVoucher(event.voucherId());
+    }
+  }
+
+  private void removeUser(Long voucherId, Long userId) {
+    ConcurrentLongHashSet users = reachedUsers.get(voucherId);
+    if (users != null && users.remove(userId)) {
+      entryCount.decrement();
+    }
+  }
+
+  private void removeVoucher(Long voucherId) {
+    ConcurrentLongHashSet users = reachedUsers.remove(voucherId);
+    if (users != null) {
+      entryCount.add(-users.size());
+      log.info("清除优惠券{}的本地限购缓存", voucherId);
+    }
+  }
+}
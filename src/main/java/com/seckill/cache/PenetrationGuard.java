@@ -0,0 +1,317 @@
+package com.seckill.cache;
+
+import com.seckill.entity.Coupon;
+import com.seckill.mapper.CouponMapper;
+import com.seckill.service.OrderIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存穿透防护
+ *
+ * 在访问Redis和数据库之前，用布隆过滤器拦截不存在的优惠券ID和订单ID：
+ * - 优惠券过滤器：由CouponMapper.selectAll定期全量重建，/init登记的临时活动增量写入；
+ * - 订单过滤器：按订单时间分区滚动，由订单ID生成器写入，并经Redis pub/sub批量同步到其他节点。
+ *
+ * pub/sub不保证送达，订单过滤器只对"权威起点"之后生成的订单做拦截：
+ * 订阅建立时记录起点，订阅断开或发现广播序号缺口时重置起点，起点之前的订单一律放行。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Component
+public class PenetrationGuard implements MessageListener {
+
+  /**
+   * 新订单ID同步频道
+   */
+  public static final String ORDER_CHANNEL = "seckill:order:issued";
+
+  @Resource
+  private CouponMapper couponMapper;
+
+  @Resource
+  private CacheInvalidationService cacheInvalidationService;
+
+  @Resource
+  private RedisTemplate<String, Object> redisTemplate;
+
+  @Resource
+  private RedisMessageListenerContainer redisMessageListenerContainer;
+
+  @Value("${seckill.bloom.voucher-fpp:0.001}")
+  private double voucherFpp;
+
+  @Value("${seckill.bloom.order-partition-ms:120000}")
+  private long orderPartitionMillis;
+
+  @Value("${seckill.bloom.order-partitions:4}")
+  private int orderPartitions;
+
+  @Value("${seckill.bloom.order-expected-per-partition:1000000}")
+  private long orderExpectedPerPartition;
+
+  @Value("${seckill.bloom.order-fpp:0.01}")
+  private double orderFpp;
+
+  /**
+   * 订单ID跨节点同步的容忍时间（毫秒）：刚生成的订单在此时间内即使未命中过滤器也放行
+   */
+  @Value("${seckill.bloom.order-grace-ms:2000}")
+  private long orderGraceMillis;
+
+  /**
+   * 优惠券过滤器，为空表示尚未构建成功，此时不做拦截
+   */
+  private volatile BloomFilter voucherFilter;
+
+  /**
+   * 数据库之外登记的优惠券ID（临时活动），重建时一并写入
+   */
+  private final Set<Long> extraVoucherIds = ConcurrentHashMap.newKeySet();
+
+  private RollingBloomFilter orderFilter;
+
+  /**
+   * 本节点标识，用于忽略自己广播的订单ID
+   */
+  private final String nodeId = UUID.randomUUID().toString();
+
+  /**
+   * 待广播的新订单ID
+   */
+  private final ConcurrentLinkedQueue<Long> pendingOrderIds = new ConcurrentLinkedQueue<>();
+
+  /**
+   * 发送批次序号，接收方据此发现丢失的广播
+   */
+  private final AtomicLong publishSequence = new AtomicLong();
+
+  /**
+   * 各发送节点最近收到的批次序号
+   */
+  private final Map<String, Long> receivedSequences = new ConcurrentHashMap<>();
+
+  /**
+   * 订单过滤器的权威起点：此后生成的订单ID都已写入过滤器，Long.MAX_VALUE表示订阅未就绪
+   */
+  private volatile long authoritativeSince = Long.MAX_VALUE;
+
+  private final LongAdder voucherRejected = new LongAdder();
+  private final LongAdder orderRejected = new LongAdder();
+
+  @PostConstruct
+  public void init() {
+    orderFilter = new RollingBloomFilter(orderPartitionMillis, orderPartitions, orderExpectedPerPartition, orderFpp);
+    cacheInvalidationService.addListener(this::onInvalidation);
+    redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(ORDER_CHANNEL));
+  }
+
+  /**
+   * 跟踪订单频道的订阅状态：订阅就绪后开始拦截，断开期间可能漏收广播，重新就绪后从当前时间重新计算起点
+   */
+  @Scheduled(initialDelay = 0, fixedDelayString = "${seckill.bloom.order-subscription-check-ms:1000}")
+  public void checkOrderSubscription() {
+    if (!redisMessageListenerContainer.isListening()) {
+      if (authoritativeSince != Long.MAX_VALUE) {
+        log.warn("订单ID同步频道订阅断开，订单过滤器暂停拦截");
+      }
+      authoritativeSince = Long.MAX_VALUE;
+    } else if (authoritativeSince == Long.MAX_VALUE) {
+      authoritativeSince = System.currentTimeMillis();
+      log.info("订单ID同步频道订阅就绪，订单过滤器开始拦截");
+    }
+  }
+
+  /**
+   * 从数据库全量重建优惠券过滤器
+   */
+  @Scheduled(initialDelay = 0, fixedDelayString = "${seckill.bloom.voucher-rebuild-interval-ms:300000}")
+  public void rebuildVoucherFilter() {
+    try {
+      List<Coupon> coupons = couponMapper.selectAll();
+      BloomFilter filter = new BloomFilter(Math.max(1024, (coupons.size() + extraVoucherIds.size()) * 2L), voucherFpp);
+      for (Coupon coupon : coupons) {
+        filter.put(coupon.getId());
+      }
+      for (Long voucherId : extraVoucherIds) {
+        filter.put(voucherId);
+      }
+      voucherFilter = filter;
+      log.debug("优惠券布隆过滤器重建完成 - 优惠券数: {}", coupons.size());
+    } catch (Exception e) {
+      log.error("优惠券布隆过滤器重建失败，继续使用现有过滤器", e);
+    }
+  }
+
+  /**
+   * 登记优惠券ID（如/init创建的临时活动）
+   */
+  public void registerVoucher(Long voucherId) {
+    extraVoucherIds.add(voucherId);
+    BloomFilter filter = voucherFilter;
+    if (filter != null) {
+      filter.put(voucherId);
+    }
+  }
+
+  /**
+   * 优惠券是否可能存在
+   */
+  public boolean mightContainVoucher(Long voucherId) {
+    BloomFilter filter = voucherFilter;
+    if (filter == null || filter.mightContain(voucherId)) {
+      return true;
+    }
+    voucherRejected.increment();
+    return false;
+  }
+
+  /**
+   * 登记本节点生成的订单ID
+   *
+   * @param orderId         订单ID
+   * @param timestampMillis 订单生成时间
+   */
+  public void recordIssuedOrder(Long orderId, long timestampMillis) {
+    orderFilter.put(orderId, timestampMillis);
+    pendingOrderIds.offer(orderId);
+  }
+
+  /**
+   * 订单是否可能存在
+   *
+   * @param orderId         订单ID
+   * @param timestampMillis 订单ID中携带的生成时间
+   */
+  public boolean mightContainOrder(Long orderId, long timestampMillis) {
+    long now = System.currentTimeMillis();
+    long age = now - timestampMillis;
+    // 时间戳不在窗口内（伪造、或已超过状态缓存有效期）直接拒绝
+    if (age < -orderGraceMillis || age > orderFilter.windowMillis()) {
+      orderRejected.increment();
+      return false;
+    }
+    // 权威起点之前生成的订单可能漏收，过滤器无法判定不存在，放行
+    long since = authoritativeSince;
+    if (since == Long.MAX_VALUE || timestampMillis < since + orderGraceMillis) {
+      return true;
+    }
+    if (orderFilter.mightContain(orderId, timestampMillis) || age < orderGraceMillis) {
+      return true;
+    }
+    orderRejected.increment();
+    return false;
+  }
+
+  /**
+   * 批量广播本节点新生成的订单ID
+   */
+  @Scheduled(fixedDelayString = "${seckill.bloom.order-sync-interval-ms:50}")
+  public void flushIssuedOrders() {
+    if (pendingOrderIds.isEmpty()) {
+      return;
+    }
+    // 每次发送占用一个序号，发送失败的批次重新入队，接收方通过序号缺口得知有延迟或丢失的广播
+    StringJoiner joiner = new StringJoiner(",", nodeId + ":" + publishSequence.incrementAndGet() + ":", "");
+    List<Long> batch = new ArrayList<>();
+    Long orderId;
+    while (batch.size() < 5000 && (orderId = pendingOrderIds.poll()) != null) {
+      joiner.add(orderId.toString());
+      batch.add(orderId);
+    }
+    try {
+      redisTemplate.convertAndSend(ORDER_CHANNEL, joiner.toString());
+    } catch (Exception e) {
+      pendingOrderIds.addAll(batch);
+      log.warn("广播订单ID失败，稍后重试 - 数量: {}, 原因: {}", batch.size(), e.getMessage());
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    String body = new String(message.getBody(), StandardCharsets.UTF_8);
+    String[] parts = body.split(":", 3);
+    if (parts.length < 3 || parts[0].equals(nodeId)) {
+      return;
+    }
+    long sequence;
+    try {
+      sequence = Long.parseLong(parts[1]);
+    } catch (NumberFormatException e) {
+      log.warn("忽略无法解析的订单ID广播: {}", parts[1]);
+      return;
+    }
+    Long previous = receivedSequences.put(parts[0], sequence);
+    if (previous != null && sequence != previous + 1) {
+      // 漏收或延迟收到该节点的广播，此前生成的订单不再由过滤器判定
+      if (authoritativeSince != Long.MAX_VALUE) {
+        authoritativeSince = System.currentTimeMillis();
+      }
+      log.warn("订单ID广播序号不连续，重置订单过滤器起点 - 节点: {}, 期望: {}, 实际: {}", parts[0], previous + 1, sequence);
+    }
+    for (String id : parts[2].split(",")) {
+      try {
+        long orderId = Long.parseLong(id);
+        orderFilter.put(orderId, OrderIdGenerator.timestampOf(orderId));
+      } catch (NumberFormatException e) {
+        log.warn("忽略非法订单ID: {}", id);
+      }
+    }
+  }
+
+  /**
+   * 获取过滤器统计
+   */
+  public Map<String, Object> getStats() {
+    BloomFilter filter = voucherFilter;
+
+    Map<String, Object> voucher = new HashMap<>();
+    voucher.put("ready", filter != null);
+    voucher.put("insertions", filter != null ? filter.insertions() : 0);
+    voucher.put("bitSize", filter != null ? filter.bitSize() : 0);
+    voucher.put("estimatedFpp", filter != null ? filter.estimatedFpp() : 0);
+    voucher.put("rejected", voucherRejected.sum());
+
+    Map<String, Object> order = new HashMap<>();
+    order.put("windowMillis", orderFilter.windowMillis());
+    order.put("authoritativeSince", authoritativeSince == Long.MAX_VALUE ? null : authoritativeSince);
+    order.put("insertions", orderFilter.insertions());
+    order.put("estimatedFpp", orderFilter.estimatedFpp());
+    order.put("pendingSync", pendingOrderIds.size());
+    order.put("rejected", orderRejected.sum());
+
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("voucher", voucher);
+    stats.put("order", order);
+    return stats;
+  }
+
+  private void onInvalidation(CacheInvalidationEvent event) {
+    if (CacheInvalidationEvent.TYPE_ACTIVITY.equals(event.type())) {
+      registerVoucher(event.voucherId());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.seckill.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 按时间分区滚动的布隆过滤器
+ *
+ * 元素按其时间戳写入对应时间片的过滤器，环形数组保留最近N个时间片，
+ * 新时间片到来时直接替换最旧的分区，过期数据整体丢弃而无需删除操作。
+ *
+ * @author seckill-test
+ */
+public class RollingBloomFilter {
+
+  private final long partitionMillis;
+  private final int partitionCount;
+  private final long expectedPerPartition;
+  private final double fpp;
+  private final AtomicReferenceArray<Partition> partitions;
+
+  /**
+   * @param partitionMillis      单个分区覆盖的时间长度（毫秒）
+   * @param partitionCount       保留的分区个数
+   * @param expectedPerPartition 单个分区预计元素个数
+   * @param fpp                  单个分区的期望误判率
+   */
+  public RollingBloomFilter(long partitionMillis, int partitionCount, long expectedPerPartition, double fpp) {
+    if (partitionMillis <= 0 || partitionCount <= 0) {
+      throw new IllegalArgumentException("滚动布隆过滤器参数非法: partitionMillis=" + partitionMillis
+          + ", partitionCount=" + partitionCount);
+    }
+    this.partitionMillis = partitionMillis;
+    this.partitionCount = partitionCount;
+    this.expectedPerPartition = expectedPerPartition;
+    this.fpp = fpp;
+    this.partitions = new AtomicReferenceArray<>(partitionCount);
+  }
+
+  /**
+   * 写入元素
+   *
+   * @param value           元素
+   * @param timestampMillis 元素所属时间
+   */
+  public void put(long value, long timestampMillis) {
+    long period = Math.floorDiv(timestampMillis, partitionMillis);
+    int slot = (int) Math.floorMod(period, (long) partitionCount);
+
+    while (true) {
+      Partition current = partitions.get(slot);
+      if (current != null && current.period == period) {
+        current.filter.put(value);
+        return;
+      }
+      if (current != null && current.period > period) {
+        // 所属时间片已被淘汰
+        return;
+      }
+      Partition fresh = new Partition(period, new BloomFilter(expectedPerPartition, fpp));
+      partitions.compareAndSet(slot, current, fresh);
+    }
+  }
+
+  /**
+   * 元素是否可能存在
+   *
+   * @param value           元素
+   * @param timestampMillis 元素所属时间
+   * @return false表示一定不存在（或所属时间片已淘汰）
+   */
+  public boolean mightContain(long value, long timestampMillis) {
+    long period = Math.floorDiv(timestampMillis, partitionMillis);
+    Partition current = partitions.get((int) Math.floorMod(period, (long) partitionCount));
+    return current != null && current.period == period && current.filter.mightContain(value);
+  }
+
+  /**
+   * 过滤器覆盖的时间窗口长度（毫秒）
+   */
+  public long windowMillis() {
+    return partitionMillis * partitionCount;
+  }
+
+  /**
+   * 各分区中最大的估算误判率
+   */
+  public double estimatedFpp() {
+    double max = 0;
+    for (int i = 0; i < partitionCount; i++) {
+      Partition partition = partitions.get(i);
+      if (partition != null) {
+        max = Math.max(max, partition.filter.estimatedFpp());
+      }
+    }
+    return max;
+  }
+
+  /**
+   * 所有分区的写入次数之和
+   */
+  public long insertions() {
+    long total = 0;
+    for (int i = 0; i < partitionCount; i++) {
+      Partition partition = partitions.get(i);
+      if (partition != null) {
+        total += partition.filter.insertions();
+      }
+    }
+    return total;
+  }
+
+  private record Partition(long period, BloomFilter filter) {
+  }
+}
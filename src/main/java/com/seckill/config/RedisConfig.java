@@ -1,27 +1,108 @@
 package com.seckill.config;
 
+import io.lettuce.core.RedisURI;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Redis配置类
  * 
+ * 连接按负载拆分：秒杀脚本（库存扣减、回滚）使用spring.data.redis的连接；订单状态读写和管理/日志类操作
+ * （回滚日志、扫描、采样、归档、键清理）各用独立的连接工厂和命令超时，状态轮询高峰或大范围LRANGE/SCAN
+ * 不会与购买请求排在同一条连接上。Lettuce在一条连接上按顺序处理命令，连接即隔离的单位。
+ * 
  * @author seckill-test
  */
 @Configuration
 public class RedisConfig {
 
   /**
-   * 配置RedisTemplate
+   * 订单状态连接的地址，为空时与spring.data.redis相同；指向其他实例时订单状态分区存放在该实例上
+   */
+  @Value("${seckill.redis-lanes.status.url:}")
+  private String statusUrl;
+
+  /**
+   * 订单状态连接的命令超时（毫秒）
+   */
+  @Value("${seckill.redis-lanes.status.timeout-ms:1000}")
+  private long statusTimeoutMillis;
+
+  /**
+   * 管理/日志连接的命令超时（毫秒），大范围读取和扫描耗时较长
+   */
+  @Value("${seckill.redis-lanes.admin.timeout-ms:10000}")
+  private long adminTimeoutMillis;
+
+  /**
+   * 本配置类自建的连接工厂，不注册为Bean，避免Spring Boot不再自动配置spring.data.redis的连接工厂
+   */
+  private final List<LettuceConnectionFactory> laneFactories = new CopyOnWriteArrayList<>();
+
+  /**
+   * 配置RedisTemplate（秒杀脚本连接）
    */
   @Bean
   public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    return createTemplate(connectionFactory);
+  }
+
+  /**
+   * 订单状态连接（订单状态写入、查询和长轮询）
+   */
+  @Bean("statusRedisTemplate")
+  public RedisTemplate<String, Object> statusRedisTemplate(RedisProperties redisProperties) {
+    LettuceConnectionFactory factory = statusUrl.isBlank()
+        ? createConnectionFactory(redisProperties, statusTimeoutMillis)
+        : createConnectionFactory(statusUrl, statusTimeoutMillis);
+    laneFactories.add(factory);
+    return createTemplate(factory);
+  }
+
+  /**
+   * 管理/日志连接（回滚日志、HSCAN/SCAN遍历、内存采样、归档、键清理和分片迁移），与spring.data.redis为同一实例
+   */
+  @Bean("adminRedisTemplate")
+  public RedisTemplate<String, Object> adminRedisTemplate(RedisProperties redisProperties) {
+    LettuceConnectionFactory factory = createConnectionFactory(redisProperties, adminTimeoutMillis);
+    laneFactories.add(factory);
+    return createTemplate(factory);
+  }
+
+  @PreDestroy
+  public void destroyLanes() {
+    for (LettuceConnectionFactory factory : laneFactories) {
+      factory.destroy();
+    }
+  }
+
+  /**
+   * 创建键和值都按字符串序列化的RedisTemplate
+   * 
+   * @param connectionFactory 连接工厂
+   * @return RedisTemplate
+   */
+  public static RedisTemplate<String, Object> createTemplate(RedisConnectionFactory connectionFactory) {
     RedisTemplate<String, Object> template = new RedisTemplate<>();
     template.setConnectionFactory(connectionFactory);
 
@@ -37,13 +118,97 @@ public class RedisConfig {
     return template;
   }
 
+  /**
+   * 按地址创建独立的连接工厂
+   * 
+   * @param uri           redis://[:password@]host:port[/database]，Redis Cluster为 cluster://[:password@]host:port+host:port
+   * @param timeoutMillis 命令超时（毫秒）
+   * @return 已初始化的连接工厂，由调用方负责销毁
+   */
+  public static LettuceConnectionFactory createConnectionFactory(String uri, long timeoutMillis) {
+    LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
+        .commandTimeout(Duration.ofMillis(timeoutMillis))
+        .build();
+    LettuceConnectionFactory factory;
+    if (uri.startsWith("cluster://")) {
+      String hosts = uri.substring("cluster://".length());
+      String password = null;
+      int at = hosts.lastIndexOf('@');
+      if (at >= 0) {
+        password = hosts.substring(0, at).replaceFirst("^:", "");
+        hosts = hosts.substring(at + 1);
+      }
+      RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(Arrays.asList(hosts.split("\\+")));
+      if (password != null && !password.isEmpty()) {
+        clusterConfig.setPassword(password);
+      }
+      factory = new LettuceConnectionFactory(clusterConfig, clientConfig);
+    } else {
+      RedisURI redisUri = RedisURI.create(uri);
+      RedisStandaloneConfiguration standaloneConfig =
+          new RedisStandaloneConfiguration(redisUri.getHost(), redisUri.getPort());
+      standaloneConfig.setDatabase(redisUri.getDatabase());
+      if (redisUri.getPassword() != null && redisUri.getPassword().length > 0) {
+        standaloneConfig.setPassword(redisUri.getPassword());
+      }
+      factory = new LettuceConnectionFactory(standaloneConfig, clientConfig);
+    }
+    factory.afterPropertiesSet();
+    return factory;
+  }
+
+  /**
+   * 按spring.data.redis创建与主连接同一实例、但相互独立的连接工厂
+   */
+  private static LettuceConnectionFactory createConnectionFactory(RedisProperties properties, long timeoutMillis) {
+    if (properties.getUrl() != null && !properties.getUrl().isBlank()) {
+      return createConnectionFactory(properties.getUrl(), timeoutMillis);
+    }
+    LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
+        .commandTimeout(Duration.ofMillis(timeoutMillis))
+        .build();
+    LettuceConnectionFactory factory;
+    if (properties.getCluster() != null && properties.getCluster().getNodes() != null
+        && !properties.getCluster().getNodes().isEmpty()) {
+      RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(properties.getCluster().getNodes());
+      clusterConfig.setUsername(properties.getUsername());
+      if (properties.getPassword() != null && !properties.getPassword().isEmpty()) {
+        clusterConfig.setPassword(properties.getPassword());
+      }
+      factory = new LettuceConnectionFactory(clusterConfig, clientConfig);
+    } else {
+      RedisStandaloneConfiguration standaloneConfig =
+          new RedisStandaloneConfiguration(properties.getHost(), properties.getPort());
+      standaloneConfig.setDatabase(properties.getDatabase());
+      standaloneConfig.setUsername(properties.getUsername());
+      if (properties.getPassword() != null && !properties.getPassword().isEmpty()) {
+        standaloneConfig.setPassword(properties.getPassword());
+      }
+      factory = new LettuceConnectionFactory(standaloneConfig, clientConfig);
+    }
+    factory.afterPropertiesSet();
+    return factory;
+  }
+
   /**
    * 秒杀Lua脚本
    */
   @Bean("seckillScript")
-  public DefaultRedisScript<Long> seckillScript() {
-    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+  @SuppressWarnings("rawtypes")
+  public DefaultRedisScript<List> seckillScript() {
+    DefaultRedisScript<List> script = new DefaultRedisScript<>();
     script.setLocation(new ClassPathResource("lua/seckill.lua"));
+    script.setResultType(List.class);
+    return script;
+  }
+
+  /**
+   * 活动初始化Lua脚本
+   */
+  @Bean("initStockScript")
+  public DefaultRedisScript<Long> initStockScript() {
+    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/init_stock.lua"));
     script.setResultType(Long.class);
     return script;
   }
@@ -59,5 +224,144 @@ public class RedisConfig {
     return script;
   }
 
+  /**
+   * 活动补货Lua脚本
+   */
+  @Bean("restockScript")
+  public DefaultRedisScript<Long> restockScript() {
+    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/restock.lua"));
+    script.setResultType(Long.class);
+    return script;
+  }
 
+  /**
+   * 库存恢复收尾Lua脚本
+   */
+  @Bean("finishRecoveryScript")
+  public DefaultRedisScript<Long> finishRecoveryScript() {
+    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/finish_recovery.lua"));
+    script.setResultType(Long.class);
+    return script;
+  }
+
+  /**
+   * 订单状态写入Lua脚本
+   */
+  @Bean("setOrderStatusScript")
+  public DefaultRedisScript<Long> setOrderStatusScript() {
+    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/set_order_status.lua"));
+    script.setResultType(Long.class);
+    return script;
+  }
+
+  /**
+   * 订单状态读取Lua脚本
+   */
+  @Bean("getOrderStatusScript")
+  public DefaultRedisScript<Long> getOrderStatusScript() {
+    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/get_order_status.lua"));
+    script.setResultType(Long.class);
+    return script;
+  }
+
+  /**
+   * 活动归档后删除数据的Lua脚本
+   */
+  @Bean("compactActivityScript")
+  public DefaultRedisScript<Long> compactActivityScript() {
+    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/compact_activity.lua"));
+    script.setResultType(Long.class);
+    return script;
+  }
+
+  /**
+   * 键清理扫描Lua脚本
+   */
+  @Bean("scanIdleKeysScript")
+  @SuppressWarnings("rawtypes")
+  public DefaultRedisScript<List> scanIdleKeysScript() {
+    DefaultRedisScript<List> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/scan_idle_keys.lua"));
+    script.setResultType(List.class);
+    return script;
+  }
+
+  /**
+   * 键内存采样Lua脚本
+   */
+  @Bean("inspectKeysScript")
+  @SuppressWarnings("rawtypes")
+  public DefaultRedisScript<List> inspectKeysScript() {
+    DefaultRedisScript<List> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/inspect_keys.lua"));
+    script.setResultType(List.class);
+    return script;
+  }
+
+  /**
+   * 按哈希标签单步扫描键的Lua脚本
+   */
+  @Bean("scanKeysScript")
+  @SuppressWarnings("rawtypes")
+  public DefaultRedisScript<List> scanKeysScript() {
+    DefaultRedisScript<List> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/scan_keys.lua"));
+    script.setResultType(List.class);
+    return script;
+  }
+
+  /**
+   * 排队放行Lua脚本
+   */
+  @Bean("admitQueueScript")
+  @SuppressWarnings("rawtypes")
+  public DefaultRedisScript<List> admitQueueScript() {
+    DefaultRedisScript<List> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/admit_queue.lua"));
+    script.setResultType(List.class);
+    return script;
+  }
+
+  /**
+   * 购买凭证发放Lua脚本
+   */
+  @Bean("issueTokenScript")
+  public DefaultRedisScript<Long> issueTokenScript() {
+    DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+    script.setLocation(new ClassPathResource("lua/issue_token.lua"));
+    script.setResultType(Long.class);
+    return script;
+  }
+
+  /**
+   * Redis消息监听容器（本地缓存失效广播、订单ID同步、订单状态推送）
+   * 不随应用自动启动，由CacheInvalidationService负责订阅和断线重试，Redis不可用时不阻塞应用启动
+   */
+  @Bean
+  public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer() {
+      @Override
+      public boolean isAutoStartup() {
+        return false;
+      }
+    };
+    container.setConnectionFactory(connectionFactory);
+
+    // 消息分发使用固定线程池（默认实现每条消息新建线程）
+    // 不注册为Bean，避免替换Spring Boot默认的applicationTaskExecutor
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(4);
+    executor.setMaxPoolSize(4);
+    executor.setQueueCapacity(100000);
+    executor.setThreadNamePrefix("redis-listener-");
+    executor.setDaemon(true);
+    executor.initialize();
+    container.setTaskExecutor(executor);
+    return container;
+  }
 }
@@ -0,0 +1,332 @@
+package com.seckill.controller;
+
+import com.seckill.cache.ActivityRegistry;
+import com.seckill.cache.LimitReachedCache;
+import com.seckill.cache.PenetrationGuard;
+import com.seckill.limiter.AdaptiveConcurrencyLimiter;
+import com.seckill.service.ActivityCompactionService;
+import com.seckill.service.KeyJanitorService;
+import com.seckill.service.LotteryService;
+import com.seckill.service.OrderStatusNotifier;
+import com.seckill.service.PurchaseTokenService;
+import com.seckill.service.RedisCommandBatcher;
+import com.seckill.service.RedisNearCache;
+import com.seckill.service.RedisReplicaReader;
+import com.seckill.service.RedisShardRouter;
+import com.seckill.service.RedisUsageService;
+import com.seckill.service.SeckillService;
+import com.seckill.service.ShardMigrationService;
+import com.seckill.service.StockRecoveryService;
+import com.seckill.service.StockSnapshotPublisher;
+import com.seckill.service.WaitingRoomService;
+import com.seckill.task.ActivityWarmupTask;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 监控指标控制器
+ * 
+ * @author seckill-test
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/seckill/monitor")
+public class MonitorController {
+
+  @Resource
+  private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+  @Resource
+  private SeckillService seckillService;
+
+  @Resource
+  private LimitReachedCache limitReachedCache;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private PenetrationGuard penetrationGuard;
+
+  @Resource
+  private OrderStatusNotifier orderStatusNotifier;
+
+  @Resource
+  private StockSnapshotPublisher stockSnapshotPublisher;
+
+  @Resource
+  private WaitingRoomService waitingRoomService;
+
+  @Resource
+  private PurchaseTokenService purchaseTokenService;
+
+  @Resource
+  private LotteryService lotteryService;
+
+  @Resource
+  private ActivityWarmupTask activityWarmupTask;
+
+  @Resource
+  private StockRecoveryService stockRecoveryService;
+
+  @Resource
+  private ActivityCompactionService activityCompactionService;
+
+  @Resource
+  private KeyJanitorService keyJanitorService;
+
+  @Resource
+  private RedisUsageService redisUsageService;
+
+  @Resource
+  private RedisShardRouter redisShardRouter;
+
+  @Resource
+  private RedisCommandBatcher redisCommandBatcher;
+
+  @Resource
+  private ShardMigrationService shardMigrationService;
+
+  @Resource
+  private RedisNearCache redisNearCache;
+
+  @Resource
+  private RedisReplicaReader redisReplicaReader;
+
+  /**
+   * 自适应限流器指标
+   * 
+   * @return 并发上限、RTT估计和拒绝计数
+   */
+  @GetMapping("/limiter")
+  public Map<String, Object> limiterMetrics() {
+    Map<String, Object> result = concurrencyLimiter.snapshot();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 重复请求合并指标
+   * 
+   * @return 在途请求数和被合并的请求数
+   */
+  @GetMapping("/single-flight")
+  public Map<String, Object> singleFlightMetrics() {
+    Map<String, Object> result = seckillService.getSingleFlightStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 本地限购缓存指标
+   * 
+   * @return 缓存条目数和命中数
+   */
+  @GetMapping("/limit-cache")
+  public Map<String, Object> limitCacheMetrics() {
+    Map<String, Object> result = limitReachedCache.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 本地活动配置注册表指标
+   * 
+   * @return 活动数量、刷新时间和本地拦截计数
+   */
+  @GetMapping("/activity")
+  public Map<String, Object> activityMetrics() {
+    Map<String, Object> result = activityRegistry.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 布隆过滤器指标
+   * 
+   * @return 写入数、估算误判率和拦截计数
+   */
+  @GetMapping("/bloom")
+  public Map<String, Object> bloomMetrics() {
+    Map<String, Object> result = penetrationGuard.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 订单结果推送指标
+   * 
+   * @return 本节点挂起的等待者数量和已推送数量
+   */
+  @GetMapping("/order-push")
+  public Map<String, Object> orderPushMetrics() {
+    Map<String, Object> result = orderStatusNotifier.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 库存快照指标
+   * 
+   * @return 快照大小、ETag和构建次数
+   */
+  @GetMapping("/snapshot")
+  public Map<String, Object> snapshotMetrics() {
+    Map<String, Object> result = stockSnapshotPublisher.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 虚拟排队指标
+   * 
+   * @return 各活动已发放、已放行和等待中的排队号
+   */
+  @GetMapping("/waiting-room")
+  public Map<String, Object> waitingRoomMetrics() {
+    Map<String, Object> result = waitingRoomService.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 购买凭证指标
+   * 
+   * @return 发放、售罄、无效和重放次数
+   */
+  @GetMapping("/purchase-token")
+  public Map<String, Object> purchaseTokenMetrics() {
+    Map<String, Object> result = purchaseTokenService.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 抽签活动指标
+   * 
+   * @return 报名、开奖和中签计数
+   */
+  @GetMapping("/lottery")
+  public Map<String, Object> lotteryMetrics() {
+    Map<String, Object> result = lotteryService.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 活动预热指标
+   * 
+   * @return 预热次数、库存加载次数和试运行耗时
+   */
+  @GetMapping("/warmup")
+  public Map<String, Object> warmupMetrics() {
+    Map<String, Object> result = activityWarmupTask.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 秒杀状态恢复指标
+   * 
+   * @return 恢复次数、恢复订单数和最近一次耗时
+   */
+  @GetMapping("/recovery")
+  public Map<String, Object> recoveryMetrics() {
+    Map<String, Object> result = stockRecoveryService.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 活动归档指标
+   * 
+   * @return 归档次数、归档购买记录数、删除键数和核对不一致次数
+   */
+  @GetMapping("/compaction")
+  public Map<String, Object> compactionMetrics() {
+    Map<String, Object> result = activityCompactionService.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 键清理指标
+   * 
+   * @return 清理键数、释放字节数、退避和暂停次数以及各匹配模式的游标
+   */
+  @GetMapping("/janitor")
+  public Map<String, Object> janitorMetrics() {
+    Map<String, Object> result = keyJanitorService.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * Redis内存与热点键指标
+   * 
+   * @param refresh 是否立即重新采样，默认返回最近一次定时采样的结果
+   * @return 各优惠券的内存占用、数据结构编码、脚本调用计数，订单状态分区占用，热点键和大键
+   */
+  @GetMapping("/redis-usage")
+  public Map<String, Object> redisUsageMetrics(@RequestParam(defaultValue = "false") boolean refresh) {
+    Map<String, Object> result = refresh ? new HashMap<>(redisUsageService.sample()) : redisUsageService.getReport();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * Redis命令合批指标
+   * 
+   * @return 命令数、刷写次数（按窗口、按批量上限、调用方批量提交）、平均每次刷写的命令数和超时次数
+   */
+  @GetMapping("/redis-batch")
+  public Map<String, Object> redisBatchMetrics() {
+    Map<String, Object> result = redisCommandBatcher.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * Redis近端缓存指标
+   * 
+   * @return 各分片跟踪连接状态、命中率和失效消息数
+   */
+  @GetMapping("/near-cache")
+  public Map<String, Object> nearCacheMetrics() {
+    Map<String, Object> result = redisNearCache.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * Redis副本读取指标
+   * 
+   * @return 各分片副本的可用状态和读取数、当前对冲延迟、回退主库次数、对冲次数、对冲胜出次数和对冲率
+   */
+  @GetMapping("/replicas")
+  public Map<String, Object> replicaMetrics() {
+    Map<String, Object> result = redisReplicaReader.getStats();
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * Redis分片指标
+   * 
+   * @return 分片列表、哈希环、目录中固定的优惠券数、待迁移的优惠券和迁移统计
+   */
+  @GetMapping("/shards")
+  public Map<String, Object> shardMetrics() {
+    Map<String, Object> result = redisShardRouter.getStats();
+    result.put("migration", shardMigrationService.getStats());
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+}
@@ -2,15 +2,33 @@ package com.seckill.controller;
 
 import com.seckill.dto.SeckillRequest;
 import com.seckill.dto.SeckillResponse;
+import com.seckill.service.ActivityCompactionService;
+import com.seckill.service.LotteryService;
+import com.seckill.service.OrderStatusNotifier;
 import com.seckill.service.SeckillService;
+import com.seckill.service.ShardMigrationService;
+import com.seckill.service.StockRecoveryService;
+import com.seckill.service.StockSnapshotPublisher;
+import com.seckill.service.WaitingRoomService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.annotation.Resource;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 秒杀控制器
@@ -26,6 +44,38 @@ public class SeckillController {
   @Resource
   private SeckillService seckillService;
 
+  @Resource
+  private OrderStatusNotifier orderStatusNotifier;
+
+  @Resource
+  private StockSnapshotPublisher stockSnapshotPublisher;
+
+  @Resource
+  private WaitingRoomService waitingRoomService;
+
+  @Resource
+  private LotteryService lotteryService;
+
+  @Resource
+  private StockRecoveryService stockRecoveryService;
+
+  @Resource
+  private ActivityCompactionService activityCompactionService;
+
+  @Resource
+  private ShardMigrationService shardMigrationService;
+
+  /**
+   * 库存快照允许客户端和代理缓存的时间（秒）
+   */
+  @Value("${seckill.snapshot.max-age-seconds:1}")
+  private long snapshotMaxAgeSeconds;
+
+  /**
+   * 等待订单结果的最长时间（毫秒）
+   */
+  private static final long MAX_WAIT_MILLIS = 60_000;
+
   /**
    * 秒杀接口
    * 
@@ -37,16 +87,127 @@ public class SeckillController {
     log.info("收到秒杀请求 - 用户: {}, 优惠券: {}, 限购: {}",
         request.getUserId(), request.getVoucherId(), request.getLimit());
 
-    long startTime = System.currentTimeMillis();
+    // 自适应并发上限只约束访问Redis和MQ的部分，在SeckillService中获取和释放
+    long startTime = System.nanoTime();
     SeckillResponse response = seckillService.doSeckill(request);
-    long endTime = System.currentTimeMillis();
+    long costMillis = (System.nanoTime() - startTime) / 1_000_000;
 
     log.info("秒杀请求处理完成 - 用户: {}, 优惠券: {}, 结果: {}, 耗时: {}ms",
-        request.getUserId(), request.getVoucherId(), response.getCode(), (endTime - startTime));
+        request.getUserId(), request.getVoucherId(), response.getCode(), costMillis);
 
     return response;
   }
 
+  /**
+   * 领取购买凭证（开启购买凭证校验时，秒杀请求必须携带）
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 购买凭证，名额用完时soldOut为true
+   */
+  @GetMapping("/token/{voucherId}")
+  public Map<String, Object> issuePurchaseToken(@PathVariable Long voucherId, @RequestParam Long userId) {
+    String token = seckillService.issuePurchaseToken(voucherId, userId);
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("voucherId", voucherId);
+    result.put("soldOut", token == null);
+    if (token != null) {
+      result.put("token", token);
+    } else {
+      result.put("message", "已售罄");
+    }
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 领取排队号（活动开启排队时，秒杀前必须先排队）
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 排队凭证、排队号、前方人数和预计等待时间
+   */
+  @PostMapping("/queue/{voucherId}")
+  public Map<String, Object> enqueue(@PathVariable Long voucherId, @RequestParam Long userId) {
+    log.info("领取排队号 - 用户: {}, 优惠券: {}", userId, voucherId);
+
+    WaitingRoomService.Ticket ticket = waitingRoomService.enqueue(voucherId, userId);
+
+    return buildTicketResult(ticket);
+  }
+
+  /**
+   * 查询排队进度
+   * 
+   * @param voucherId 优惠券ID
+   * @param token     排队凭证
+   * @return 前方人数、预计等待时间和是否已放行
+   */
+  @GetMapping("/queue/{voucherId}")
+  public Map<String, Object> getQueuePosition(@PathVariable Long voucherId, @RequestParam String token) {
+    WaitingRoomService.Ticket ticket = waitingRoomService.check(token);
+    if (ticket == null || !ticket.voucherId().equals(voucherId)) {
+      throw new IllegalArgumentException("排队凭证无效或已过期");
+    }
+
+    return buildTicketResult(ticket);
+  }
+
+  /**
+   * 抽签报名
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 报名结果
+   */
+  @PostMapping("/lottery/{voucherId}/register")
+  public Map<String, Object> registerLottery(@PathVariable Long voucherId, @RequestParam Long userId) {
+    boolean firstTime = lotteryService.register(voucherId, userId);
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("success", true);
+    result.put("message", firstTime ? "报名成功" : "已报名，请勿重复报名");
+    result.put("voucherId", voucherId);
+    result.put("userId", userId);
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 查询抽签结果
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 是否已开奖、是否中签及订单ID
+   */
+  @GetMapping("/lottery/{voucherId}/result")
+  public Map<String, Object> getLotteryResult(@PathVariable Long voucherId, @RequestParam Long userId) {
+    Map<String, Object> result = lotteryService.getResult(voucherId, userId);
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 手动开奖（活动结束后由定时任务自动开奖，此接口用于补开）
+   * 
+   * @param voucherId 优惠券ID
+   * @return 开奖结果
+   */
+  @PostMapping("/lottery/{voucherId}/draw")
+  public Map<String, Object> drawLottery(@PathVariable Long voucherId) {
+    log.info("手动开奖 - 优惠券: {}", voucherId);
+
+    Map<String, Object> result = lotteryService.draw(voucherId);
+    if (result == null) {
+      result = new HashMap<>();
+      result.put("voucherId", voucherId);
+      result.put("message", "该活动已开奖或正在开奖");
+    }
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
   /**
    * 查询订单状态
    * 
@@ -59,15 +220,84 @@ public class SeckillController {
 
     Integer status = seckillService.getOrderStatus(orderId);
 
+    return buildStatusResult(orderId, status);
+  }
+
+  /**
+   * 批量查询订单状态
+   * 
+   * @param orderIds 订单ID列表
+   * @return statuses与orderIds按位置对应，null表示订单不存在
+   */
+  @PostMapping("/status/batch")
+  public Map<String, Object> getOrderStatuses(@RequestBody List<Long> orderIds) {
+    log.info("批量查询订单状态 - 数量: {}", orderIds.size());
+
+    List<Integer> statuses = seckillService.getOrderStatuses(orderIds);
+
     Map<String, Object> result = new HashMap<>();
-    result.put("orderId", orderId);
-    result.put("status", status);
-    result.put("statusText", getStatusText(status));
+    result.put("statuses", statuses);
     result.put("timestamp", System.currentTimeMillis());
-
     return result;
   }
 
+  /**
+   * 长轮询等待订单结果
+   * 订单处理中时挂起请求（不占用线程），直到状态变更或超时；超时返回处理中状态
+   * 
+   * @param orderId 订单ID
+   * @param timeout 最长等待时间，如5s、500ms
+   * @return 订单状态信息
+   */
+  @GetMapping("/status/{orderId}/wait")
+  public DeferredResult<Map<String, Object>> waitOrderStatus(@PathVariable Long orderId,
+      @RequestParam(defaultValue = "5s") String timeout) {
+    long timeoutMillis = parseTimeout(timeout);
+    DeferredResult<Map<String, Object>> deferred = new DeferredResult<>(timeoutMillis);
+
+    // 先登记再查询，避免遗漏两者之间发生的状态变更
+    Runnable cancel = orderStatusNotifier.subscribe(orderId,
+        status -> deferred.setResult(buildStatusResult(orderId, status)));
+    deferred.onCompletion(cancel);
+
+    // 读取主库：副本的复制延迟会漏掉登记与查询之间的状态变更
+    Integer current = seckillService.getOrderStatus(orderId, false);
+    deferred.onTimeout(() -> deferred.setResult(buildStatusResult(orderId, current)));
+    if (!isProcessing(current)) {
+      deferred.setResult(buildStatusResult(orderId, current));
+    }
+    return deferred;
+  }
+
+  /**
+   * 以Server-Sent Events推送订单结果
+   * 先推送当前状态，订单处理中时在状态变更后推送最终状态并关闭连接
+   * 
+   * @param orderId 订单ID
+   * @param timeout 最长等待时间，如30s
+   * @return SSE连接
+   */
+  @GetMapping(value = "/status/{orderId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamOrderStatus(@PathVariable Long orderId,
+      @RequestParam(defaultValue = "30s") String timeout) {
+    SseEmitter emitter = new SseEmitter(parseTimeout(timeout));
+
+    Runnable cancel = orderStatusNotifier.subscribe(orderId, status -> {
+      sendStatusEvent(emitter, orderId, status);
+      emitter.complete();
+    });
+    emitter.onCompletion(cancel);
+    emitter.onTimeout(emitter::complete);
+    emitter.onError(error -> cancel.run());
+
+    Integer current = seckillService.getOrderStatus(orderId, false);
+    sendStatusEvent(emitter, orderId, current);
+    if (!isProcessing(current)) {
+      emitter.complete();
+    }
+    return emitter;
+  }
+
   /**
    * 初始化秒杀活动
    * 
@@ -103,6 +333,105 @@ public class SeckillController {
     }
   }
 
+  /**
+   * 为进行中的活动补货（不清空购买记录和限购）
+   * 
+   * @param voucherId 优惠券ID
+   * @param amount    补货数量
+   * @return 补货结果
+   */
+  @PostMapping("/restock/{voucherId}")
+  public Map<String, Object> restock(@PathVariable Long voucherId, @RequestParam Integer amount) {
+    log.info("活动补货 - 优惠券: {}, 数量: {}", voucherId, amount);
+
+    long stock = seckillService.restock(voucherId, amount);
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("success", true);
+    result.put("voucherId", voucherId);
+    result.put("amount", amount);
+    result.put("stock", stock);
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 从数据库恢复丢失的秒杀状态（库存键存在时不做修改）
+   * 
+   * @param voucherId 优惠券ID
+   * @return 恢复结果
+   */
+  @PostMapping("/recover/{voucherId}")
+  public Map<String, Object> recover(@PathVariable Long voucherId) {
+    log.info("恢复秒杀状态 - 优惠券: {}", voucherId);
+
+    Map<String, Object> result = stockRecoveryService.recover(voucherId);
+    if (result == null) {
+      result = new HashMap<>();
+      result.put("success", false);
+      result.put("message", "其他节点正在恢复或库存已存在");
+    } else {
+      result.put("success", true);
+    }
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 归档已结束活动的Redis数据并释放内存（与数据库核对一致后才删除）
+   * 
+   * @param voucherId 优惠券ID
+   * @return 归档结果
+   */
+  @PostMapping("/compact/{voucherId}")
+  public Map<String, Object> compact(@PathVariable Long voucherId) {
+    log.info("归档活动数据 - 优惠券: {}", voucherId);
+
+    Map<String, Object> result = activityCompactionService.compact(voucherId);
+    if (result == null) {
+      result = new HashMap<>();
+      result.put("success", false);
+      result.put("message", "活动已归档或其他节点正在归档");
+    }
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 把优惠券的Redis数据迁移到哈希环上的目标分片（活动进行中或即将开场时拒绝）
+   * 
+   * @param voucherId 优惠券ID
+   * @return 迁移结果
+   */
+  @PostMapping("/shards/migrate/{voucherId}")
+  public Map<String, Object> migrateShard(@PathVariable Long voucherId) {
+    log.info("迁移优惠券分片 - 优惠券: {}", voucherId);
+
+    Map<String, Object> result = shardMigrationService.migrate(voucherId);
+    if (result == null) {
+      result = new HashMap<>();
+      result.put("success", false);
+      result.put("message", "其他节点正在迁移");
+    }
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 迁移所有待迁移的优惠券（跳过活动进行中或即将开场的）
+   * 
+   * @param max 最多迁移的优惠券数
+   * @return 迁移结果
+   */
+  @PostMapping("/shards/migrate")
+  public Map<String, Object> migratePendingShards(@RequestParam(defaultValue = "10") int max) {
+    log.info("迁移待迁移的优惠券分片 - 最多: {}", max);
+
+    Map<String, Object> result = shardMigrationService.migratePending(max);
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
   /**
    * 获取当前库存信息
    * 
@@ -123,6 +452,46 @@ public class SeckillController {
     return result;
   }
 
+  /**
+   * 批量获取当前库存
+   * 
+   * @param ids 优惠券ID列表，如ids=1,2,3
+   * @return stocks与ids按位置对应
+   */
+  @GetMapping("/stock")
+  public Map<String, Object> getCurrentStocks(@RequestParam List<Long> ids) {
+    log.info("批量查询当前库存 - 数量: {}", ids.size());
+
+    List<Integer> stocks = seckillService.getCurrentStocks(ids);
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("stocks", stocks);
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 获取所有未结束活动的库存快照
+   * 直接返回内存中预先序列化的快照，携带ETag和Cache-Control，If-None-Match命中时返回304
+   * 
+   * @return 快照JSON: {"vouchers":[{"id","stock","soldOut","start","end"}]}
+   */
+  @GetMapping("/stock/snapshot")
+  public ResponseEntity<byte[]> getStockSnapshot() {
+    StockSnapshotPublisher.Snapshot snapshot = stockSnapshotPublisher.getSnapshot();
+    if (snapshot == null) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+          .cacheControl(CacheControl.noStore())
+          .build();
+    }
+
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .cacheControl(CacheControl.maxAge(snapshotMaxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+        .eTag(snapshot.etag())
+        .body(snapshot.bytes());
+  }
+
   /**
    * 获取用户购买数量
    * 
@@ -160,6 +529,73 @@ public class SeckillController {
     return result;
   }
 
+  /**
+   * 构建订单状态响应
+   * 
+   * @param orderId 订单ID
+   * @param status  状态码
+   * @return 订单状态信息
+   */
+  private Map<String, Object> buildStatusResult(Long orderId, Integer status) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("orderId", orderId);
+    result.put("status", status);
+    result.put("statusText", getStatusText(status));
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 构建排队响应
+   * 
+   * @param ticket 排队凭证
+   * @return 排队信息
+   */
+  private Map<String, Object> buildTicketResult(WaitingRoomService.Ticket ticket) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("voucherId", ticket.voucherId());
+    result.put("token", ticket.token());
+    result.put("number", ticket.number());
+    result.put("position", ticket.position());
+    result.put("estimatedWaitMillis", ticket.estimatedWaitMillis());
+    result.put("admitted", ticket.admitted());
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  /**
+   * 推送一条订单状态事件
+   */
+  private void sendStatusEvent(SseEmitter emitter, Long orderId, Integer status) {
+    try {
+      emitter.send(SseEmitter.event().name("status").data(buildStatusResult(orderId, status)));
+    } catch (IOException | IllegalStateException e) {
+      log.debug("推送订单状态事件失败，客户端可能已断开 - 订单: {}", orderId);
+      emitter.completeWithError(e);
+    }
+  }
+
+  /**
+   * 订单是否仍在处理中
+   */
+  private boolean isProcessing(Integer status) {
+    return status != null && status == 0;
+  }
+
+  /**
+   * 解析等待时间，不超过最大值
+   * 
+   * @param timeout 时间字符串，如5s、500ms
+   * @return 毫秒数
+   */
+  private long parseTimeout(String timeout) {
+    long millis = DurationStyle.detectAndParse(timeout).toMillis();
+    if (millis <= 0) {
+      throw new IllegalArgumentException("等待时间必须为正数: " + timeout);
+    }
+    return Math.min(millis, MAX_WAIT_MILLIS);
+  }
+
   /**
    * 获取状态文本描述
    * 
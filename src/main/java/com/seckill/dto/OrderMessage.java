@@ -35,6 +35,11 @@ public class OrderMessage {
    */
   private Long orderId;
 
+  /**
+   * 下单时的活动轮次，活动重新初始化后旧轮次的订单和回滚被忽略
+   */
+  private Long epoch;
+
   /**
    * 创建时间
    */
@@ -31,4 +31,14 @@ public class SeckillRequest {
    */
   @Positive(message = "限购数量必须为正数")
   private Integer limit = 1;
+
+  /**
+   * 排队凭证，活动开启排队时必填
+   */
+  private String queueToken;
+
+  /**
+   * 购买凭证，开启购买凭证校验时必填
+   */
+  private String purchaseToken;
 }
@@ -15,7 +15,7 @@ import lombok.NoArgsConstructor;
 public class SeckillResponse {
 
   /**
-   * 响应码: 0-成功, 1-库存不足, 2-超过限购, 3-系统异常
+   * 响应码: 0-成功, 1-库存不足, 2-超过限购, 3-系统异常, 4-系统繁忙, 5-活动不存在, 6-活动未开始, 7-活动已结束, 8-排队中, 9-购买凭证无效, 10-抽签活动
    */
   private Integer code;
 
@@ -61,4 +61,53 @@ public class SeckillResponse {
   public static SeckillResponse systemError(String message) {
     return new SeckillResponse(3, "系统异常: " + message, null, System.currentTimeMillis());
   }
+
+  /**
+   * 系统繁忙响应（超过自适应并发上限，请求被直接拒绝）
+   */
+  public static SeckillResponse overloaded() {
+    return new SeckillResponse(4, "系统繁忙，请稍后重试", null, System.currentTimeMillis());
+  }
+
+  /**
+   * 活动不存在响应
+   */
+  public static SeckillResponse activityNotFound() {
+    return new SeckillResponse(5, "秒杀活动不存在", null, System.currentTimeMillis());
+  }
+
+  /**
+   * 活动未开始响应
+   */
+  public static SeckillResponse activityNotStarted() {
+    return new SeckillResponse(6, "秒杀活动尚未开始", null, System.currentTimeMillis());
+  }
+
+  /**
+   * 活动已结束响应
+   */
+  public static SeckillResponse activityEnded() {
+    return new SeckillResponse(7, "秒杀活动已结束", null, System.currentTimeMillis());
+  }
+
+  /**
+   * 排队中响应（活动开启排队，凭证缺失、无效或尚未放行）
+   */
+  public static SeckillResponse notAdmitted() {
+    return new SeckillResponse(8, "排队中，请等待放行后再试", null, System.currentTimeMillis());
+  }
+
+  /**
+   * 购买凭证无效响应（缺失、签名错误、已过期或已使用）
+   */
+  public static SeckillResponse tokenInvalid() {
+    return new SeckillResponse(9, "购买凭证无效或已使用", null, System.currentTimeMillis());
+  }
+
+  /**
+   * 抽签活动响应（抽签活动只接受报名，不接受秒杀请求）
+   */
+  public static SeckillResponse lotteryOnly() {
+    return new SeckillResponse(10, "该活动为抽签活动，请报名参与抽签", null, System.currentTimeMillis());
+  }
 }
@@ -11,6 +11,12 @@ import java.time.LocalDateTime;
 @Data
 public class Coupon {
 
+  /**
+   * 活动类型常量
+   */
+  public static final int TYPE_SECKILL = 0; // 抢购
+  public static final int TYPE_LOTTERY = 1; // 抽签
+
   /**
    * 优惠券ID
    */
@@ -31,6 +37,21 @@ public class Coupon {
    */
   private Integer totalStock;
 
+  /**
+   * 每人限购数量
+   */
+  private Integer userLimit;
+
+  /**
+   * 排队放行速率（人/秒），0表示不排队
+   */
+  private Integer admitRate;
+
+  /**
+   * 活动类型: 0-抢购, 1-抽签
+   */
+  private Integer activityType;
+
   /**
    * 开始时间
    */
@@ -0,0 +1,245 @@
+package com.seckill.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于延迟的自适应并发限流器（Vegas风格）
+ *
+ * 以无排队时的最小RTT为基准估算下游（Redis、RabbitMQ）中的排队长度：
+ * queue = limit * (1 - minRtt / rtt)。排队少则放大并发上限，排队多则收缩，
+ * 超出当前上限的请求立即拒绝，使下游变慢时尾延迟依然有界。
+ * 只有真正访问了下游的请求提交延迟样本，本地短路返回的请求通过releaseWithoutSample释放许可。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+  /**
+   * 是否启用
+   */
+  private final boolean enabled;
+
+  /**
+   * 并发上限的下界和上界
+   */
+  private final int minLimit;
+  private final int maxLimit;
+
+  /**
+   * 出错（视为丢包）时的乘性回退系数
+   */
+  private final double backoffRatio;
+
+  /**
+   * 平滑RTT的EWMA系数
+   */
+  private final double smoothing;
+
+  /**
+   * 最小RTT的重新探测周期（纳秒），避免基准长期停留在历史低点
+   */
+  private final long probeIntervalNanos;
+
+  /**
+   * 当前并发上限
+   */
+  private volatile double limit;
+
+  /**
+   * 当前在途请求数
+   */
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  /**
+   * 最小RTT与平滑RTT（纳秒），仅在持有updateLock时写入
+   */
+  private volatile long minRttNanos = Long.MAX_VALUE;
+  private volatile double smoothedRttNanos;
+  private long lastProbeTime = System.nanoTime();
+
+  /**
+   * 样本更新锁：竞争时直接跳过该样本，不阻塞请求线程
+   */
+  private final ReentrantLock updateLock = new ReentrantLock();
+
+  /**
+   * 统计计数
+   */
+  private final LongAdder acceptedCount = new LongAdder();
+  private final LongAdder shedCount = new LongAdder();
+  private final LongAdder droppedCount = new LongAdder();
+
+  public AdaptiveConcurrencyLimiter(
+      @Value("${seckill.limiter.enabled:true}") boolean enabled,
+      @Value("${seckill.limiter.initial-limit:50}") int initialLimit,
+      @Value("${seckill.limiter.min-limit:10}") int minLimit,
+      @Value("${seckill.limiter.max-limit:1000}") int maxLimit,
+      @Value("${seckill.limiter.backoff-ratio:0.9}") double backoffRatio,
+      @Value("${seckill.limiter.smoothing:0.2}") double smoothing,
+      @Value("${seckill.limiter.probe-interval-ms:30000}") long probeIntervalMs) {
+    if (minLimit <= 0 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("并发上限配置非法: min=" + minLimit + ", max=" + maxLimit);
+    }
+    this.enabled = enabled;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.smoothing = smoothing;
+    this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMs);
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  /**
+   * 尝试获取一个并发许可
+   *
+   * @return true-获取成功，调用方必须在完成后调用release或releaseWithoutSample；false-已超过上限，请求应被拒绝
+   */
+  public boolean tryAcquire() {
+    if (!enabled) {
+      inFlight.incrementAndGet();
+      acceptedCount.increment();
+      return true;
+    }
+
+    while (true) {
+      int current = inFlight.get();
+      if (current >= (int) limit) {
+        shedCount.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        acceptedCount.increment();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * 释放许可并提交延迟样本
+   *
+   * @param rttNanos 本次请求耗时（纳秒）
+   * @param dropped  是否失败（下游异常按丢包处理，触发乘性回退）
+   */
+  public void release(long rttNanos, boolean dropped) {
+    int inFlightAtSample = inFlight.getAndDecrement();
+    if (!enabled) {
+      return;
+    }
+    if (dropped) {
+      droppedCount.increment();
+    }
+    onSample(rttNanos, inFlightAtSample, dropped);
+  }
+
+  /**
+   * 释放许可但不提交延迟样本
+   * 用于在访问下游之前就已结束的请求（如本地校验拒绝），其耗时不能反映下游的排队情况
+   */
+  public void releaseWithoutSample() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * 根据样本调整并发上限
+   */
+  private void onSample(long rttNanos, int inFlightAtSample, boolean dropped) {
+    if (rttNanos <= 0 || !updateLock.tryLock()) {
+      return;
+    }
+    try {
+      double currentLimit = limit;
+
+      if (dropped) {
+        limit = Math.max(minLimit, currentLimit * backoffRatio);
+        return;
+      }
+
+      // 周期性重置最小RTT，重新探测下游的无负载延迟
+      long now = System.nanoTime();
+      if (now - lastProbeTime > probeIntervalNanos) {
+        lastProbeTime = now;
+        minRttNanos = rttNanos;
+      } else if (rttNanos < minRttNanos) {
+        minRttNanos = rttNanos;
+      }
+
+      smoothedRttNanos = smoothedRttNanos == 0
+          ? rttNanos
+          : smoothedRttNanos * (1 - smoothing) + rttNanos * smoothing;
+
+      // 在途请求远低于上限时属于流量不足，样本不能说明上限可以继续放大
+      if (inFlightAtSample * 2 < currentLimit) {
+        return;
+      }
+
+      double queueSize = Math.ceil(currentLimit * (1 - (double) minRttNanos / smoothedRttNanos));
+      double logLimit = Math.max(1, Math.log10(currentLimit));
+      double alpha = 3 * logLimit;
+      double beta = 6 * logLimit;
+
+      double newLimit = currentLimit;
+      if (queueSize <= alpha) {
+        newLimit = currentLimit + logLimit;
+      } else if (queueSize >= beta) {
+        newLimit = currentLimit - logLimit;
+      }
+      limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    } finally {
+      updateLock.unlock();
+    }
+  }
+
+  /**
+   * 获取当前并发上限
+   */
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * 获取当前在途请求数
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * 获取被拒绝的请求数
+   */
+  public long getShedCount() {
+    return shedCount.sum();
+  }
+
+  /**
+   * 获取限流器监控快照
+   *
+   * @return 并发上限、RTT估计和拒绝计数
+   */
+  public Map<String, Object> snapshot() {
+    long minRtt = minRttNanos;
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("enabled", enabled);
+    result.put("limit", getLimit());
+    result.put("minLimit", minLimit);
+    result.put("maxLimit", maxLimit);
+    result.put("inFlight", inFlight.get());
+    result.put("minRttMicros", minRtt == Long.MAX_VALUE ? null : TimeUnit.NANOSECONDS.toMicros(minRtt));
+    result.put("smoothedRttMicros", (long) (smoothedRttNanos / 1000));
+    result.put("acceptedCount", acceptedCount.sum());
+    result.put("shedCount", shedCount.sum());
+    result.put("droppedCount", droppedCount.sum());
+    return result;
+  }
+}
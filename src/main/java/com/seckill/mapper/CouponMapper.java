@@ -4,6 +4,7 @@ import com.seckill.entity.Coupon;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -71,10 +72,44 @@ public interface CouponMapper {
    */
   int increaseStock(@Param("id") Long id, @Param("count") Integer count);
 
+  /**
+   * 补货：同时增加库存和总库存（原子操作）
+   * 
+   * @param id    优惠券ID
+   * @param count 增加数量
+   * @return 影响行数
+   */
+  int increaseTotalStock(@Param("id") Long id, @Param("count") Integer count);
+
   /**
    * 查询有效的优惠券
    * 
    * @return 有效优惠券列表
    */
   List<Coupon> selectValidCoupons();
+
+  /**
+   * 查询即将开始的优惠券
+   * 
+   * @param before 开始时间上限
+   * @return 开始时间在(当前时间, before]内的优惠券列表
+   */
+  List<Coupon> selectUpcomingCoupons(@Param("before") LocalDateTime before);
+
+  /**
+   * 查询指定时间之后结束的抽签活动（用于开奖）
+   * 
+   * @param after 结束时间下限
+   * @return 已结束的抽签活动列表
+   */
+  List<Coupon> selectEndedLotteryCoupons(@Param("after") LocalDateTime after);
+
+  /**
+   * 查询结束时间在指定区间内的活动（用于活动结束后的数据归档）
+   * 
+   * @param after  结束时间下限
+   * @param before 结束时间上限
+   * @return 结束时间在[after, before)内的优惠券列表
+   */
+  List<Coupon> selectEndedCoupons(@Param("after") LocalDateTime after, @Param("before") LocalDateTime before);
 }
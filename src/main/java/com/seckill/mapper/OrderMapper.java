@@ -3,7 +3,9 @@ package com.seckill.mapper;
 import com.seckill.entity.Order;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -30,6 +32,14 @@ public interface OrderMapper {
    */
   int insert(Order order);
 
+  /**
+   * 批量插入订单（单条多行INSERT）
+   * 
+   * @param orders 订单列表
+   * @return 影响行数
+   */
+  int batchInsert(@Param("orders") List<Order> orders);
+
   /**
    * 根据ID更新订单
    * 
@@ -110,4 +120,21 @@ public interface OrderMapper {
    * @return 影响行数
    */
   int batchUpdateStatus(@Param("orderIds") List<Long> orderIds, @Param("status") Integer status);
+
+  /**
+   * 流式查询优惠券下占用库存的订单（处理中和成功）的用户ID
+   * 
+   * @param voucherId 优惠券ID
+   * @return 游标，需在事务内遍历
+   */
+  Cursor<Long> streamActiveUserIdsByVoucherId(@Param("voucherId") Long voucherId);
+
+  /**
+   * 统计优惠券下指定时间之后创建的、占用库存的订单（处理中和成功）数量
+   * 
+   * @param voucherId 优惠券ID
+   * @param since     创建时间下限
+   * @return 订单数量
+   */
+  long countActiveByVoucherIdSince(@Param("voucherId") Long voucherId, @Param("since") LocalDateTime since);
 }
@@ -35,6 +35,11 @@ public class OrderConsumer {
   @Resource
   private OrderProducer orderProducer;
 
+  /**
+   * 活动轮次暂不可用时的延后处理时间（秒）
+   */
+  private static final int PENDING_RETRY_DELAY_SECONDS = 5;
+
   // 幂等性控制：记录已处理的消息ID
   private static final Set<String> processedMessages = ConcurrentHashMap.newKeySet();
 
@@ -66,6 +71,30 @@ public class OrderConsumer {
         return;
       }
 
+      SeckillService.OrderEpochState epochState = seckillService.checkOrderEpoch(voucherId, orderMessage.getEpoch());
+      // 活动已重新初始化，上一轮的订单不再创建
+      if (epochState == SeckillService.OrderEpochState.STALE) {
+        seckillService.discardStaleOrder(orderId);
+        processedMessages.add(messageId);
+        channel.basicAck(deliveryTag, false);
+        return;
+      }
+      // 从数据库恢复前的订单未计入恢复的库存，重新占用库存后再创建（已创建的订单由createOrder幂等处理）
+      if (epochState == SeckillService.OrderEpochState.CARRIED
+          && orderService.getOrderById(orderId) == null
+          && !seckillService.claimCarriedOrder(orderMessage)) {
+        processedMessages.add(messageId);
+        channel.basicAck(deliveryTag, false);
+        return;
+      }
+      // 活动轮次暂不可用（库存键丢失等待恢复），延后处理，不占用重试次数
+      if (epochState == SeckillService.OrderEpochState.PENDING) {
+        orderProducer.sendDelayRetryMessage(orderMessage, PENDING_RETRY_DELAY_SECONDS);
+        channel.basicAck(deliveryTag, false);
+        log.warn("活动轮次暂不可用，延后处理订单 - 消息ID: {}, 订单: {}", messageId, orderId);
+        return;
+      }
+
       // 处理订单创建
       boolean success = orderService.createOrder(userId, voucherId, orderId);
 
@@ -117,7 +146,8 @@ public class OrderConsumer {
         seckillService.rollbackStock(
             orderMessage.getVoucherId(),
             orderMessage.getUserId(),
-            orderMessage.getOrderId());
+            orderMessage.getOrderId(),
+            orderMessage.getEpoch());
 
         notifyAdministrator(orderMessage);
         processedMessages.add(orderMessage.getMessageId());
@@ -163,7 +193,8 @@ public class OrderConsumer {
         seckillService.rollbackStock(
             orderMessage.getVoucherId(),
             orderMessage.getUserId(),
-            orderMessage.getOrderId());
+            orderMessage.getOrderId(),
+            orderMessage.getEpoch());
 
         processedMessages.add(orderMessage.getMessageId());
         channel.basicAck(deliveryTag, false);
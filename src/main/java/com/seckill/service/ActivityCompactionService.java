@@ -0,0 +1,393 @@
+package com.seckill.service;
+
+import com.seckill.entity.Coupon;
+import com.seckill.mapper.CouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 活动结束后的数据归档服务
+ *
+ * 活动结束一段时间（在途订单消息处理完毕）后，由一个节点用HSCAN/SCAN流式读取购买记录、购买时间、
+ * 调试信息和回滚日志，写入本地gzip压缩的归档文件；重新读取归档文件校验完整性，
+ * 并与数据库中占用库存的订单数核对，一致后才分批UNLINK释放内存，不必等到24小时后键自然过期。
+ * 核对不一致时保留归档文件和Redis数据，由人工处理。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class ActivityCompactionService {
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private OrderService orderService;
+
+  @Resource
+  private CouponMapper couponMapper;
+
+  /**
+   * 是否开启归档
+   */
+  @Value("${seckill.compaction.enabled:true}")
+  private boolean enabled;
+
+  /**
+   * 活动结束后多久开始归档（秒），需大于在途订单消息的处理时间
+   */
+  @Value("${seckill.compaction.delay-seconds:300}")
+  private long delaySeconds;
+
+  /**
+   * 检查多长时间内结束的活动（小时），与购买记录的过期时间一致
+   */
+  @Value("${seckill.compaction.lookback-hours:25}")
+  private long lookbackHours;
+
+  /**
+   * 归档文件目录
+   */
+  @Value("${seckill.compaction.archive-dir:archive}")
+  private String archiveDir;
+
+  /**
+   * 每次SCAN/HSCAN的COUNT
+   */
+  @Value("${seckill.compaction.scan-count:1000}")
+  private int scanCount;
+
+  /**
+   * 每批UNLINK的键数
+   */
+  @Value("${seckill.compaction.unlink-batch-size:500}")
+  private int unlinkBatchSize;
+
+  /**
+   * 两批UNLINK之间的停顿（毫秒），避免集中释放内存影响秒杀请求
+   */
+  @Value("${seckill.compaction.unlink-pause-ms:20}")
+  private long unlinkPauseMillis;
+
+  /**
+   * 归档标记过期时间（秒），也是单次归档允许的最长时间
+   */
+  @Value("${seckill.compaction.lock-seconds:600}")
+  private long lockSeconds;
+
+  /**
+   * voucherId -> 本节点已确认归档完成（或由其他节点归档）场次的结束时间
+   */
+  private final ConcurrentHashMap<Long, Long> compactedActivities = new ConcurrentHashMap<>();
+
+  private final LongAdder compactionCount = new LongAdder();
+  private final LongAdder archivedPurchaseCount = new LongAdder();
+  private final LongAdder unlinkedKeyCount = new LongAdder();
+  private final LongAdder mismatchCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+  private volatile long lastCompactionMillis = -1;
+  private volatile long lastArchiveBytes = -1;
+
+  /**
+   * 归档已结束的活动
+   */
+  @Scheduled(initialDelayString = "${seckill.compaction.check-interval-ms:60000}",
+      fixedDelayString = "${seckill.compaction.check-interval-ms:60000}")
+  public void compactEndedActivities() {
+    if (!enabled) {
+      return;
+    }
+
+    LocalDateTime now = LocalDateTime.now();
+    List<Coupon> coupons;
+    try {
+      coupons = couponMapper.selectEndedCoupons(now.minusHours(lookbackHours), now.minusSeconds(delaySeconds));
+    } catch (Exception e) {
+      log.warn("查询已结束的活动失败: {}", e.getMessage());
+      return;
+    }
+
+    for (Coupon coupon : coupons) {
+      long endMillis = toMillis(coupon.getEndTime());
+      if (Long.valueOf(endMillis).equals(compactedActivities.get(coupon.getId()))) {
+        continue;
+      }
+      try {
+        compact(coupon.getId());
+        compactedActivities.put(coupon.getId(), endMillis);
+      } catch (IllegalArgumentException e) {
+        log.info("暂不归档 - 优惠券: {}, 原因: {}", coupon.getId(), e.getMessage());
+      } catch (Exception e) {
+        log.error("活动归档失败，下次重试 - 优惠券: {}", coupon.getId(), e);
+      }
+    }
+
+    // 超出检查范围的活动不再需要记录
+    long earliest = toMillis(now.minusHours(lookbackHours));
+    compactedActivities.values().removeIf(endMillis -> endMillis < earliest);
+  }
+
+  /**
+   * 归档活动数据并释放Redis内存
+   *
+   * @param voucherId 优惠券ID
+   * @return 归档结果，已由其他节点归档（或正在归档）时返回null
+   */
+  public Map<String, Object> compact(Long voucherId) {
+    Coupon coupon = couponMapper.selectById(voucherId);
+    if (coupon == null) {
+      throw new IllegalArgumentException("优惠券不存在: " + voucherId);
+    }
+    if (coupon.getEndTime().plusSeconds(delaySeconds).isAfter(LocalDateTime.now())) {
+      throw new IllegalArgumentException("活动结束未满" + delaySeconds + "秒: " + voucherId);
+    }
+    if (coupon.getActivityType() != null && coupon.getActivityType() == Coupon.TYPE_LOTTERY
+        && !"done".equals(redisService.getLotteryDrawState(voucherId))) {
+      throw new IllegalArgumentException("抽签活动尚未开奖: " + voucherId);
+    }
+
+    Long epoch = redisService.getActivityEpoch(voucherId);
+    if (!redisService.tryStartCompaction(voucherId, epoch, lockSeconds)) {
+      log.info("活动已归档或正在归档 - 优惠券: {}, 轮次: {}", voucherId, epoch);
+      return null;
+    }
+
+    long startTime = System.currentTimeMillis();
+    Path target = Paths.get(archiveDir, "seckill-" + voucherId + "-" + (epoch != null ? epoch : 0) + ".tsv.gz");
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(target.getParent() != null ? target.getParent() : Paths.get("."));
+
+      // 1. 流式写入归档文件
+      ArchiveSummary written;
+      List<String> ledgerKeys;
+      List<String> rollbackLogs = redisService.getRollbackLogs(voucherId);
+      try (ArchiveWriter writer = new ArchiveWriter(temp)) {
+        writer.write("#", String.valueOf(voucherId), epoch != null ? epoch.toString() : "");
+        ledgerKeys = redisService.scanPurchases(voucherId, epoch, scanCount,
+            (userId, count) -> writer.write("o", userId.toString(), count.toString()));
+        redisService.scanHash(RedisService.timeKey(voucherId), scanCount, (userId, time) -> writer.write("t", userId, time));
+        redisService.scanHash(RedisService.debugKey(voucherId), scanCount, (field, value) -> writer.write("d", field, value));
+        for (String entry : rollbackLogs) {
+          writer.write("r", "", entry);
+        }
+        written = writer.summary();
+      }
+
+      // 2. 重新读取归档文件（同时校验gzip的CRC），并与数据库核对
+      ArchiveSummary verified = readSummary(temp);
+      long dbOrders = orderService.countActiveOrdersSince(voucherId, coupon.getStartTime());
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      long archiveBytes = Files.size(target);
+
+      Map<String, Object> result = new HashMap<>();
+      result.put("voucherId", voucherId);
+      result.put("epoch", epoch);
+      result.put("archive", target.toAbsolutePath().toString());
+      result.put("archiveBytes", archiveBytes);
+      result.put("purchases", written.purchases());
+      result.put("dbOrders", dbOrders);
+
+      if (!written.equals(verified) || written.purchases() != dbOrders) {
+        mismatchCount.increment();
+        redisService.finishCompaction(voucherId, epoch, "mismatch", TimeUnit.DAYS.toSeconds(7));
+        log.error("归档与数据库不一致，保留Redis数据 - 优惠券: {}, 写入: {}, 读回: {}, 数据库订单: {}, 归档: {}",
+            voucherId, written, verified, dbOrders, target);
+        result.put("success", false);
+        return result;
+      }
+
+      // 3. 分批UNLINK带轮次的分桶和位图键，最后删除订单哈希（轮次变化时保留）
+      long unlinked = 0;
+      for (int from = 0; from < ledgerKeys.size(); from += unlinkBatchSize) {
+        unlinked += redisService.unlinkKeys(ledgerKeys.subList(from, Math.min(from + unlinkBatchSize, ledgerKeys.size())));
+        pause();
+      }
+      long ledgerUnlinked = redisService.unlinkActivityLedger(voucherId, epoch);
+      if (ledgerUnlinked < 0) {
+        log.warn("归档期间活动已重新初始化，保留订单哈希 - 优惠券: {}", voucherId);
+      } else {
+        unlinked += ledgerUnlinked;
+      }
+      redisService.removeRollbackLogs(voucherId, rollbackLogs);
+      redisService.finishCompaction(voucherId, epoch, "done", TimeUnit.HOURS.toSeconds(lookbackHours));
+
+      long costMillis = System.currentTimeMillis() - startTime;
+      compactionCount.increment();
+      archivedPurchaseCount.add(written.purchases());
+      unlinkedKeyCount.add(unlinked);
+      lastCompactionMillis = costMillis;
+      lastArchiveBytes = archiveBytes;
+      log.info("活动数据已归档 - 优惠券: {}, 轮次: {}, 购买记录: {}, 删除键: {}, 归档: {} ({}字节), 耗时: {}ms",
+          voucherId, epoch, written.purchases(), unlinked, target, archiveBytes, costMillis);
+
+      result.put("unlinkedKeys", unlinked);
+      result.put("costMillis", costMillis);
+      result.put("success", true);
+      return result;
+    } catch (IOException | RuntimeException e) {
+      failureCount.increment();
+      redisService.abortCompaction(voucherId, epoch);
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException ignored) {
+        // 临时文件下次归档时覆盖
+      }
+      if (e instanceof IOException) {
+        throw new UncheckedIOException((IOException) e);
+      }
+      throw (RuntimeException) e;
+    }
+  }
+
+  /**
+   * 获取归档统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("enabled", enabled);
+    stats.put("compactionCount", compactionCount.sum());
+    stats.put("archivedPurchaseCount", archivedPurchaseCount.sum());
+    stats.put("unlinkedKeyCount", unlinkedKeyCount.sum());
+    stats.put("mismatchCount", mismatchCount.sum());
+    stats.put("failureCount", failureCount.sum());
+    stats.put("lastCompactionMillis", lastCompactionMillis);
+    stats.put("lastArchiveBytes", lastArchiveBytes);
+    return stats;
+  }
+
+  private void pause() {
+    if (unlinkPauseMillis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(unlinkPauseMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("归档被中断");
+    }
+  }
+
+  /**
+   * 读取归档文件，统计各类记录（哈希在渐进式rehash时HSCAN可能重复返回字段，此时核对不一致，数据保留）
+   */
+  static ArchiveSummary readSummary(Path path) throws IOException {
+    long lines = 0;
+    long purchases = 0;
+    long units = 0;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+         BufferedReader reader = new BufferedReader(new InputStreamReader(
+             new GZIPInputStream(Channels.newInputStream(channel), 1 << 16), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        if (line.startsWith("o\t")) {
+          purchases++;
+          units += Long.parseLong(line.substring(line.lastIndexOf('\t') + 1));
+        }
+      }
+    }
+    return new ArchiveSummary(lines, purchases, units);
+  }
+
+  private static long toMillis(LocalDateTime time) {
+    return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  /**
+   * 归档文件统计：总行数、购买用户数、购买件数
+   */
+  record ArchiveSummary(long lines, long purchases, long units) {
+  }
+
+  /**
+   * 归档文件写入器：每行为"类型\t字段\t值"，经gzip压缩后通过FileChannel写入，关闭前强制落盘
+   * 类型: #-文件头, o-购买记录, t-购买时间, d-调试信息, r-回滚日志
+   */
+  static final class ArchiveWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final GZIPOutputStream gzip;
+    private final BufferedWriter writer;
+    private long lines;
+    private long purchases;
+    private long units;
+
+    ArchiveWriter(Path path) throws IOException {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      this.gzip = new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16);
+      this.writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    void write(String type, String field, String value) {
+      try {
+        writer.write(type);
+        writer.write('\t');
+        writer.write(escape(field));
+        writer.write('\t');
+        writer.write(escape(value));
+        writer.write('\n');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      lines++;
+      if ("o".equals(type)) {
+        purchases++;
+        units += Long.parseLong(value);
+      }
+    }
+
+    ArchiveSummary summary() {
+      return new ArchiveSummary(lines, purchases, units);
+    }
+
+    @Override
+    public void close() throws IOException {
+      // 写入gzip尾部并强制落盘后才允许删除Redis数据
+      try (BufferedWriter closing = writer) {
+        closing.flush();
+        gzip.finish();
+        gzip.flush();
+        channel.force(true);
+      }
+    }
+
+    private static String escape(String value) {
+      if (value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\\') < 0) {
+        return value;
+      }
+      return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+  }
+}
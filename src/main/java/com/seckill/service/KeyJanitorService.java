@@ -0,0 +1,229 @@
+package com.seckill.service;
+
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 增量键清理服务
+ *
+ * 按配置的匹配模式用SCAN逐步遍历键空间，每步只扫描COUNT个槽位，找出没有过期时间且长时间未访问的键，
+ * 在一次管道中UNLINK（内存由Redis后台线程释放）。每个分片分别扫描，游标和累计清理量保存在主连接上，重启后从上次的位置继续。
+ * Redis Cluster分片不清理：不带键的脚本会被路由到任意节点，游标无法延续。
+ * 有活动进行中或即将开场时不清理；单步耗时超过阈值说明Redis繁忙，按指数退避暂停清理。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class KeyJanitorService {
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private RedisShardRouter redisShardRouter;
+
+  /**
+   * 是否开启键清理
+   */
+  @Value("${seckill.janitor.enabled:true}")
+  private boolean enabled;
+
+  /**
+   * 清理的键匹配模式，多个用逗号分隔
+   */
+  @Value("${seckill.janitor.patterns:seckill:debug:*}")
+  private String patterns;
+
+  /**
+   * 最短空闲时间（秒），进行中活动的调试键每次请求都会被访问，不会被清理
+   */
+  @Value("${seckill.janitor.min-idle-seconds:3600}")
+  private long minIdleSeconds;
+
+  /**
+   * 每步SCAN的COUNT
+   */
+  @Value("${seckill.janitor.scan-count:200}")
+  private int scanCount;
+
+  /**
+   * 每次清理最多执行的SCAN步数
+   */
+  @Value("${seckill.janitor.max-steps:50}")
+  private int maxSteps;
+
+  /**
+   * 单步（扫描 + UNLINK）允许的最长耗时（毫秒），超过后退避
+   */
+  @Value("${seckill.janitor.max-step-latency-ms:5}")
+  private long maxStepLatencyMillis;
+
+  /**
+   * 最长退避时间（毫秒）
+   */
+  @Value("${seckill.janitor.max-backoff-ms:60000}")
+  private long maxBackoffMillis;
+
+  /**
+   * 活动开场前多久停止清理（毫秒）
+   */
+  @Value("${seckill.janitor.pause-before-start-ms:60000}")
+  private long pauseBeforeStartMillis;
+
+  /**
+   * 清理锁过期时间（秒），应大于单次清理的最长时间
+   */
+  @Value("${seckill.janitor.lock-seconds:30}")
+  private long lockSeconds;
+
+  private volatile long backoffMillis;
+  private volatile long resumeAtMillis;
+
+  private final LongAdder stepCount = new LongAdder();
+  private final LongAdder reclaimedKeys = new LongAdder();
+  private final LongAdder reclaimedBytes = new LongAdder();
+  private final LongAdder throttledCount = new LongAdder();
+  private final LongAdder pausedForSaleCount = new LongAdder();
+  private volatile long lastStepMicros = -1;
+
+  /**
+   * 执行一次增量清理
+   *
+   * @return 本次清理的键数，未执行时返回-1
+   */
+  public long sweep() {
+    long now = System.currentTimeMillis();
+    if (!enabled || now < resumeAtMillis) {
+      return -1;
+    }
+    if (saleInProgress(now)) {
+      pausedForSaleCount.increment();
+      return -1;
+    }
+    if (!redisService.tryLockJanitor(lockSeconds)) {
+      return -1;
+    }
+
+    long removed = 0;
+    try {
+      Map<String, String> state = redisService.getJanitorState();
+      int steps = 0;
+      shards:
+      for (RedisShardRouter.Shard shard : redisShardRouter.shards()) {
+        if (shard.cluster()) {
+          continue;
+        }
+        for (String pattern : patternList()) {
+          // 主连接沿用原来的进度字段，其他分片的字段带分片名
+          String progress = RedisShardRouter.PRIMARY.equals(shard.name()) ? pattern : pattern + "@" + shard.name();
+          String cursor = state.getOrDefault("cursor:" + progress, "0");
+          do {
+            long startTime = System.nanoTime();
+            RedisService.IdleKeyPage page = redisService.scanIdleKeys(shard.name(), cursor, pattern, scanCount,
+                minIdleSeconds);
+            List<Boolean> unlinked = redisService.unlinkPipelined(shard.name(), page.keys());
+            long micros = (System.nanoTime() - startTime) / 1000;
+
+            long keys = 0;
+            long bytes = 0;
+            for (int i = 0; i < unlinked.size(); i++) {
+              if (unlinked.get(i)) {
+                keys++;
+                bytes += page.sizes().get(i);
+              }
+            }
+            cursor = page.cursor();
+            redisService.saveJanitorProgress(progress, cursor, keys, bytes, "0".equals(cursor));
+
+            steps++;
+            removed += keys;
+            stepCount.increment();
+            reclaimedKeys.add(keys);
+            reclaimedBytes.add(bytes);
+            lastStepMicros = micros;
+
+            if (micros > maxStepLatencyMillis * 1000) {
+              backoffMillis = Math.min(maxBackoffMillis, Math.max(1000, backoffMillis * 2));
+              resumeAtMillis = System.currentTimeMillis() + backoffMillis;
+              throttledCount.increment();
+              log.info("键清理单步耗时{}μs超过阈值，暂停{}ms - 模式: {}", micros, backoffMillis, progress);
+              return removed;
+            }
+          } while (!"0".equals(cursor) && steps < maxSteps);
+          if (steps >= maxSteps) {
+            break shards;
+          }
+        }
+      }
+      backoffMillis = 0;
+    } finally {
+      redisService.unlockJanitor();
+      if (removed > 0) {
+        log.info("键清理完成 - 清理键数: {}", removed);
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * 获取清理统计（本节点统计和保存在Redis中的全局进度）
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("enabled", enabled);
+    stats.put("patterns", patternList());
+    stats.put("stepCount", stepCount.sum());
+    stats.put("reclaimedKeys", reclaimedKeys.sum());
+    stats.put("reclaimedBytes", reclaimedBytes.sum());
+    stats.put("throttledCount", throttledCount.sum());
+    stats.put("pausedForSaleCount", pausedForSaleCount.sum());
+    stats.put("backoffMillis", backoffMillis);
+    stats.put("lastStepMicros", lastStepMicros);
+    try {
+      stats.put("progress", redisService.getJanitorState());
+    } catch (Exception e) {
+      stats.put("progress", null);
+    }
+    return stats;
+  }
+
+  /**
+   * 是否有活动进行中或即将开场（临时活动不限时间，不计入）
+   */
+  private boolean saleInProgress(long now) {
+    for (ActivityConfig activity : activityRegistry.list()) {
+      if (activity.adHoc()) {
+        continue;
+      }
+      if (activity.stateAt(now) == ActivityConfig.State.ACTIVE
+          || (activity.startMillis() > now && activity.startMillis() - now <= pauseBeforeStartMillis)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private List<String> patternList() {
+    List<String> list = new ArrayList<>();
+    for (String pattern : patterns.split(",")) {
+      if (!pattern.isBlank()) {
+        list.add(pattern.trim());
+      }
+    }
+    return list;
+  }
+}
@@ -0,0 +1,300 @@
+package com.seckill.service;
+
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import com.seckill.entity.Coupon;
+import com.seckill.entity.Order;
+import com.seckill.mapper.CouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 抽签活动服务
+ *
+ * 活动期间只做报名：用户ID写入Redis集合，O(1)且不争抢库存；
+ * 活动结束后由批处理任务开奖：按(优惠券ID, 用户ID)的哈希排名确定性地选出中签用户，
+ * 中签订单通过多行INSERT批量写入数据库，再用管道批量写入购买记录和订单状态。
+ * 瞬时流量因此变成廉价的集合写入，订单创建以批处理吞吐完成。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class LotteryService {
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private CouponMapper couponMapper;
+
+  @Resource
+  private OrderService orderService;
+
+  @Resource
+  private OrderIdGenerator orderIdGenerator;
+
+  /**
+   * 开奖任务检查多长时间内结束的抽签活动（小时）
+   */
+  @Value("${seckill.lottery.lookback-hours:24}")
+  private long lookbackHours;
+
+  /**
+   * 单条INSERT写入的订单数
+   */
+  @Value("${seckill.lottery.insert-batch-size:1000}")
+  private int insertBatchSize;
+
+  /**
+   * 中签订单状态缓存时间（秒）
+   */
+  @Value("${seckill.lottery.status-ttl-seconds:300}")
+  private long statusTtlSeconds;
+
+  /**
+   * 本节点已确认开奖完成（或由其他节点开奖）的活动
+   */
+  private final Set<Long> drawnVouchers = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder registrationCount = new LongAdder();
+  private final LongAdder drawCount = new LongAdder();
+  private final LongAdder winnerCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+
+  /**
+   * 抽签报名
+   *
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 是否为首次报名
+   */
+  public boolean register(Long voucherId, Long userId) {
+    ActivityConfig activity = activityRegistry.get(voucherId);
+    if (activity == null || !activity.lottery()) {
+      throw new IllegalArgumentException("该活动不是抽签活动: " + voucherId);
+    }
+    if (activity.stateAt(System.currentTimeMillis()) != ActivityConfig.State.ACTIVE) {
+      throw new IllegalArgumentException("不在报名时间内: " + voucherId);
+    }
+
+    boolean added = redisService.addLotteryUser(voucherId, userId);
+    registrationCount.increment();
+    return added;
+  }
+
+  /**
+   * 查询抽签结果
+   *
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 开奖状态、是否中签和订单ID
+   */
+  public Map<String, Object> getResult(Long voucherId, Long userId) {
+    String state = redisService.getLotteryDrawState(voucherId);
+    boolean drawn = "done".equals(state);
+    Long orderId = drawn ? redisService.getLotteryWinnerOrder(voucherId, userId) : null;
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("voucherId", voucherId);
+    result.put("userId", userId);
+    result.put("drawn", drawn);
+    result.put("won", orderId != null);
+    result.put("orderId", orderId);
+    return result;
+  }
+
+  /**
+   * 为已结束的抽签活动开奖
+   */
+  @Scheduled(initialDelayString = "${seckill.lottery.draw-interval-ms:10000}",
+      fixedDelayString = "${seckill.lottery.draw-interval-ms:10000}")
+  public void drawEndedActivities() {
+    List<Coupon> coupons;
+    try {
+      coupons = couponMapper.selectEndedLotteryCoupons(LocalDateTime.now().minusHours(lookbackHours));
+    } catch (Exception e) {
+      log.warn("查询待开奖活动失败: {}", e.getMessage());
+      return;
+    }
+    for (Coupon coupon : coupons) {
+      if (drawnVouchers.contains(coupon.getId())) {
+        continue;
+      }
+      try {
+        draw(coupon.getId());
+      } catch (IllegalStateException e) {
+        log.warn("跳过抽签开奖 - 优惠券: {}, 原因: {}", coupon.getId(), e.getMessage());
+      } catch (Exception e) {
+        log.error("抽签开奖失败，下次重试 - 优惠券: {}", coupon.getId(), e);
+      }
+    }
+  }
+
+  /**
+   * 开奖
+   *
+   * @param voucherId 优惠券ID
+   * @return 开奖结果，已由其他节点开奖（或正在开奖）时返回null
+   * @throws IllegalStateException 活动的Redis状态已不存在
+   */
+  public Map<String, Object> draw(Long voucherId) {
+    Coupon coupon = couponMapper.selectById(voucherId);
+    if (coupon == null || coupon.getActivityType() == null || coupon.getActivityType() != Coupon.TYPE_LOTTERY) {
+      throw new IllegalArgumentException("该活动不是抽签活动: " + voucherId);
+    }
+    if (coupon.getEndTime().isAfter(LocalDateTime.now())) {
+      throw new IllegalArgumentException("抽签活动尚未结束: " + voucherId);
+    }
+    // 活动键已过期或随Redis数据丢失时报名名单不可信，不能开奖，否则开奖标记会把空结果永久记为已开奖
+    if (!redisService.findMissingStocks(List.of(voucherId)).isEmpty()) {
+      throw new IllegalStateException("抽签活动的Redis状态不存在，无法开奖: " + voucherId);
+    }
+    if (!redisService.tryStartLotteryDraw(voucherId)) {
+      drawnVouchers.add(voucherId);
+      log.info("抽签活动已开奖或正在开奖 - 优惠券: {}", voucherId);
+      return null;
+    }
+
+    long startTime = System.currentTimeMillis();
+    // 中签名额以数据库为准，Redis库存只用于展示且可能来自近端缓存
+    int stock = coupon.getStock() != null ? coupon.getStock() : 0;
+    long registrants = redisService.countLotteryUsers(voucherId);
+    List<Long> winners = pickWinners(voucherId, stock);
+
+    // 中签人数较多时按时间分段生成，ID时间戳不会远超当前时间
+    List<Long> orderIds = orderIdGenerator.nextIds(winners.size());
+    LocalDateTime now = LocalDateTime.now();
+    List<Order> orders = new ArrayList<>(winners.size());
+    Map<Long, Long> winnerOrders = new LinkedHashMap<>();
+    for (int i = 0; i < winners.size(); i++) {
+      Order order = new Order();
+      order.setId(orderIds.get(i));
+      order.setUserId(winners.get(i));
+      order.setVoucherId(voucherId);
+      order.setStatus(Order.STATUS_SUCCESS);
+      order.setCreateTime(now);
+      order.setUpdateTime(now);
+      orders.add(order);
+      winnerOrders.put(winners.get(i), orderIds.get(i));
+    }
+
+    try {
+      orderService.batchCreateOrders(orders, insertBatchSize);
+    } catch (RuntimeException e) {
+      // 事务已回滚，释放开奖标记以便重试；中签名单是确定的，重试结果相同
+      redisService.abortLotteryDraw(voucherId);
+      failureCount.increment();
+      throw e;
+    }
+
+    try {
+      redisService.saveLotteryWinners(voucherId, winnerOrders, statusTtlSeconds);
+      redisService.finishLotteryDraw(voucherId);
+    } catch (RuntimeException e) {
+      // 订单已落库，不能释放开奖标记重新开奖，否则会重复下单
+      failureCount.increment();
+      log.error("中签订单已落库但写入Redis失败，需人工补写 - 优惠券: {}, 中签人数: {}", voucherId, winners.size(), e);
+      throw e;
+    }
+
+    drawnVouchers.add(voucherId);
+    drawCount.increment();
+    winnerCount.add(winners.size());
+    long costMillis = System.currentTimeMillis() - startTime;
+    log.info("抽签开奖完成 - 优惠券: {}, 报名: {}, 库存: {}, 中签: {}, 耗时: {}ms",
+        voucherId, registrants, stock, winners.size(), costMillis);
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("voucherId", voucherId);
+    result.put("registrants", registrants);
+    result.put("stock", stock);
+    result.put("winners", winners.size());
+    result.put("costMillis", costMillis);
+    return result;
+  }
+
+  /**
+   * 获取抽签统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("registrationCount", registrationCount.sum());
+    stats.put("drawCount", drawCount.sum());
+    stats.put("winnerCount", winnerCount.sum());
+    stats.put("failureCount", failureCount.sum());
+    stats.put("drawnVouchers", drawnVouchers.size());
+    return stats;
+  }
+
+  /**
+   * 确定性地选出中签用户：按哈希排名取最小的stock个，与SSCAN返回顺序无关
+   *
+   * @param voucherId 优惠券ID（作为哈希种子）
+   * @param stock     中签名额
+   * @return 中签用户ID，按排名排列
+   */
+  private List<Long> pickWinners(Long voucherId, int stock) {
+    if (stock <= 0) {
+      return new ArrayList<>();
+    }
+    long seed = mix(voucherId);
+    Comparator<long[]> byRank = Comparator.<long[]>comparingLong(entry -> entry[0])
+        .thenComparingLong(entry -> entry[1]);
+    // 大顶堆，堆顶为当前名单中排名最差的用户
+    PriorityQueue<long[]> heap = new PriorityQueue<>(Math.min(stock, 1 << 16), byRank.reversed());
+    Set<Long> selected = new HashSet<>();
+
+    redisService.scanLotteryUsers(voucherId, userId -> {
+      if (selected.contains(userId)) {
+        return;
+      }
+      long[] entry = {mix(seed ^ userId), userId};
+      if (heap.size() < stock) {
+        heap.add(entry);
+        selected.add(userId);
+      } else if (byRank.compare(entry, heap.peek()) < 0) {
+        selected.remove(heap.poll()[1]);
+        heap.add(entry);
+        selected.add(userId);
+      }
+    });
+
+    List<long[]> ranked = new ArrayList<>(heap);
+    ranked.sort(byRank);
+    List<Long> winners = new ArrayList<>(ranked.size());
+    for (long[] entry : ranked) {
+      winners.add(entry[1]);
+    }
+    return winners;
+  }
+
+  private static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,210 @@
+package com.seckill.service;
+
+import com.seckill.cache.PenetrationGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 订单ID生成器
+ *
+ * ID格式: 毫秒时间戳 * 1000 + 工作节点号 * 每节点序号数 + 序号，生成的ID同时写入订单布隆过滤器
+ *
+ * 每毫秒的1000个序号按工作节点号划分为互不重叠的区段，节点号通过Redis租约分配，
+ * 由定时任务在锁外续期，生成ID时只读取本地租约，不访问Redis。
+ * 单条和批量生成共用同一个本地游标，游标最多领先当前时间max-ahead-ms，
+ * 窗口内的序号用完后等待时钟前进，批量生成因此按时间分段进行，ID时间戳不会远超当前时间。
+ * 生成的ID时间戳不超过租约有效期，租约过期被其他节点接手后不会与本节点已生成的ID重叠。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Component
+public class OrderIdGenerator {
+
+  private static final long SEQUENCE_FACTOR = 1000L;
+
+  /**
+   * 节点间时钟偏差的容忍时间（毫秒），从租约有效期中扣除
+   */
+  private static final long CLOCK_SKEW_MILLIS = 1000L;
+
+  @Resource
+  private PenetrationGuard penetrationGuard;
+
+  @Resource
+  private RedisService redisService;
+
+  /**
+   * 工作节点号数量，须能整除1000
+   */
+  @Value("${seckill.order-id.workers:10}")
+  private int workers;
+
+  /**
+   * 工作节点号租约时间（秒）
+   */
+  @Value("${seckill.order-id.lease-seconds:30}")
+  private long leaseSeconds;
+
+  /**
+   * 游标最多领先当前时间的毫秒数，须小于订单布隆过滤器的宽限时间
+   */
+  @Value("${seckill.order-id.max-ahead-ms:100}")
+  private long maxAheadMillis;
+
+  /**
+   * 本节点标识，作为租约的值
+   */
+  private final String nodeId = UUID.randomUUID().toString();
+
+  /**
+   * 每个工作节点每毫秒可用的序号数
+   */
+  private int sequencesPerWorker;
+
+  /**
+   * 当前持有的租约，null表示未持有；只由续期任务替换
+   */
+  private volatile Lease lease;
+
+  /**
+   * 下一个可用序号的位置（毫秒 * sequencesPerWorker + 序号），由本对象的锁保护
+   */
+  private long cursor;
+
+  @PostConstruct
+  public void init() {
+    if (workers <= 0 || SEQUENCE_FACTOR % workers != 0) {
+      throw new IllegalStateException("seckill.order-id.workers须能整除" + SEQUENCE_FACTOR + ": " + workers);
+    }
+    sequencesPerWorker = (int) (SEQUENCE_FACTOR / workers);
+  }
+
+  /**
+   * 定期续期工作节点号租约，租约丢失时重新抢占
+   * 只由调度线程执行，Redis访问不占用生成ID的锁
+   */
+  @Scheduled(initialDelay = 0, fixedDelayString = "${seckill.order-id.renew-interval-ms:10000}")
+  public void renewLease() {
+    Lease current = lease;
+    try {
+      lease = refreshLease(current);
+    } catch (Exception e) {
+      log.warn("订单ID工作节点号续期失败 - 节点号: {}, 原因: {}",
+          current != null ? current.workerId() : -1, e.getMessage());
+    }
+  }
+
+  /**
+   * 生成订单ID
+   *
+   * @return 订单ID
+   */
+  public Long nextId() {
+    return nextIds(1).get(0);
+  }
+
+  /**
+   * 批量生成订单ID（如抽签开奖）
+   * 每个工作节点每毫秒最多sequencesPerWorker个，超出窗口的部分等待时钟前进后继续生成
+   *
+   * @param count 数量
+   * @return 订单ID列表，按生成顺序排列
+   */
+  public List<Long> nextIds(int count) {
+    List<Long> orderIds = new ArrayList<>(count);
+    while (orderIds.size() < count) {
+      Lease current = lease;
+      long now = System.currentTimeMillis();
+      if (current == null || now >= current.validUntil()) {
+        throw new IllegalStateException("未持有有效的订单ID工作节点号租约");
+      }
+      long first;
+      long next;
+      synchronized (this) {
+        first = Math.max(now * sequencesPerWorker, cursor);
+        long limit = Math.min(now + maxAheadMillis, current.validUntil()) * sequencesPerWorker;
+        next = Math.min(first + (count - orderIds.size()), limit);
+        if (next > first) {
+          cursor = next;
+        }
+      }
+      if (next <= first) {
+        // 窗口内的序号已用完，等待下一毫秒
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        continue;
+      }
+      for (long position = first; position < next; position++) {
+        long timestamp = position / sequencesPerWorker;
+        long orderId = timestamp * SEQUENCE_FACTOR + (long) current.workerId() * sequencesPerWorker
+            + position % sequencesPerWorker;
+        penetrationGuard.recordIssuedOrder(orderId, timestamp);
+        orderIds.add(orderId);
+      }
+    }
+    return orderIds;
+  }
+
+  /**
+   * 从订单ID中解析生成时间
+   *
+   * @param orderId 订单ID
+   * @return 毫秒时间戳
+   */
+  public static long timestampOf(long orderId) {
+    return orderId / SEQUENCE_FACTOR;
+  }
+
+  /**
+   * 获取当前持有的工作节点号，未持有时返回-1
+   */
+  public int getWorkerId() {
+    Lease current = lease;
+    return current != null ? current.workerId() : -1;
+  }
+
+  /**
+   * 续期当前工作节点号，未持有或已被接手时依次抢占空闲节点号
+   *
+   * @param current 当前租约
+   * @return 新的租约
+   */
+  private Lease refreshLease(Lease current) {
+    long start = System.currentTimeMillis();
+    long validUntil = start + leaseSeconds * 1000 - CLOCK_SKEW_MILLIS;
+    if (current != null && redisService.renewOrderWorker(current.workerId(), nodeId, leaseSeconds)) {
+      return new Lease(current.workerId(), validUntil);
+    }
+    if (current != null) {
+      log.warn("订单ID工作节点号租约已丢失，重新抢占 - 原节点号: {}", current.workerId());
+      // 丢失的节点号可能已被其他节点接手，先停止使用
+      lease = null;
+    }
+    for (int candidate = 0; candidate < workers; candidate++) {
+      if (redisService.tryAcquireOrderWorker(candidate, nodeId, leaseSeconds)) {
+        log.info("获得订单ID工作节点号: {}", candidate);
+        return new Lease(candidate, validUntil);
+      }
+    }
+    throw new IllegalStateException("没有空闲的订单ID工作节点号，请调大seckill.order-id.workers");
+  }
+
+  /**
+   * 工作节点号租约
+   *
+   * @param workerId   工作节点号
+   * @param validUntil 有效期（毫秒时间戳），生成的ID时间戳必须早于该时间
+   */
+  private record Lease(int workerId, long validUntil) {
+  }
+}
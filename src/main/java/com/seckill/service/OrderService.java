@@ -3,11 +3,16 @@ package com.seckill.service;
 import com.seckill.entity.Order;
 import com.seckill.mapper.OrderMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.LongConsumer;
 
 /**
  * 订单处理服务
@@ -35,10 +40,10 @@ public class OrderService {
   @Transactional(rollbackFor = Exception.class)
   public boolean createOrder(Long userId, Long voucherId, Long orderId) {
     try {
-      // 检查是否已经存在相同的订单（幂等性保证）
-      Order existingOrder = orderMapper.findByUserIdAndVoucherId(userId, voucherId);
+      // 按订单ID检查是否已经创建（幂等性保证）；限购多件时同一用户在同一优惠券下可以有多笔订单
+      Order existingOrder = orderMapper.selectById(orderId);
       if (existingOrder != null) {
-        log.warn("订单已存在，跳过创建 - 用户: {}, 优惠券: {}", userId, voucherId);
+        log.warn("订单已存在，跳过创建 - 用户: {}, 优惠券: {}, 订单: {}", userId, voucherId, orderId);
         // 如果订单已存在且状态为处理中，更新为成功（状态机模式）
         if (existingOrder.getStatus() == Order.STATUS_PROCESSING) {
           boolean updated = updateOrderStatusWithPreviousCheck(
@@ -90,6 +95,56 @@ public class OrderService {
     }
   }
 
+  /**
+   * 批量创建订单（如抽签开奖），按批次多行插入，全部成功或全部回滚
+   * 
+   * @param orders    订单列表
+   * @param batchSize 单条INSERT的行数
+   * @return 插入行数
+   */
+  @Transactional(rollbackFor = Exception.class)
+  public int batchCreateOrders(List<Order> orders, int batchSize) {
+    int inserted = 0;
+    for (int from = 0; from < orders.size(); from += batchSize) {
+      inserted += orderMapper.batchInsert(orders.subList(from, Math.min(from + batchSize, orders.size())));
+    }
+    log.info("批量创建订单完成 - 数量: {}", inserted);
+    return inserted;
+  }
+
+  /**
+   * 流式遍历优惠券下占用库存的订单（处理中和成功）的用户ID
+   * 
+   * @param voucherId 优惠券ID
+   * @param consumer  用户ID处理器
+   * @return 订单数
+   */
+  @Transactional(readOnly = true)
+  public long streamActiveOrderUsers(Long voucherId, LongConsumer consumer) {
+    long count = 0;
+    try (Cursor<Long> cursor = orderMapper.streamActiveUserIdsByVoucherId(voucherId)) {
+      for (Long userId : cursor) {
+        consumer.accept(userId);
+        count++;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return count;
+  }
+
+  /**
+   * 统计优惠券下指定时间之后创建的、占用库存的订单（处理中和成功）数量
+   * 
+   * @param voucherId 优惠券ID
+   * @param since     创建时间下限
+   * @return 订单数
+   */
+  public long countActiveOrdersSince(Long voucherId, LocalDateTime since) {
+    return orderMapper.countActiveByVoucherIdSince(voucherId, since);
+  }
+
+
   /**
    * 根据订单ID查询订单
    * 
@@ -0,0 +1,145 @@
+package com.seckill.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 订单状态变更推送服务
+ *
+ * 等待订单结果的请求（长轮询、SSE）在此登记回调，不占用线程；
+ * 订单状态变更经Redis pub/sub广播到所有节点，由持有等待者的节点完成推送。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class OrderStatusNotifier implements MessageListener {
+
+  /**
+   * 订单状态变更频道
+   */
+  public static final String CHANNEL = "seckill:order:status";
+
+  @Resource
+  private RedisTemplate<String, Object> redisTemplate;
+
+  @Resource
+  private RedisMessageListenerContainer redisMessageListenerContainer;
+
+  /**
+   * orderId -> 等待该订单结果的回调
+   */
+  private final ConcurrentHashMap<Long, List<Consumer<Integer>>> waiters = new ConcurrentHashMap<>();
+
+  private final LongAdder waiterCount = new LongAdder();
+  private final LongAdder deliveredCount = new LongAdder();
+
+  @PostConstruct
+  public void init() {
+    redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+  }
+
+  /**
+   * 登记订单结果回调
+   *
+   * @param orderId  订单ID
+   * @param callback 状态变更回调，最多触发一次
+   * @return 取消登记的句柄（请求完成或超时时调用）
+   */
+  public Runnable subscribe(Long orderId, Consumer<Integer> callback) {
+    waiters.compute(orderId, (id, list) -> {
+      List<Consumer<Integer>> result = list != null ? list : new ArrayList<>(1);
+      result.add(callback);
+      return result;
+    });
+    waiterCount.increment();
+    return () -> unsubscribe(orderId, callback);
+  }
+
+  /**
+   * 广播订单状态变更
+   *
+   * @param orderId 订单ID
+   * @param status  新状态
+   */
+  public void publish(Long orderId, Integer status) {
+    try {
+      redisTemplate.convertAndSend(CHANNEL, orderId + ":" + status);
+    } catch (Exception e) {
+      // 广播失败时等待者会在超时后拿到当前状态，不影响订单处理
+      log.warn("广播订单状态失败 - 订单: {}, 状态: {}, 原因: {}", orderId, status, e.getMessage());
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    String body = new String(message.getBody(), StandardCharsets.UTF_8);
+    int separator = body.indexOf(':');
+    if (separator < 0) {
+      return;
+    }
+    try {
+      Long orderId = Long.valueOf(body.substring(0, separator));
+      Integer status = Integer.valueOf(body.substring(separator + 1));
+      deliver(orderId, status);
+    } catch (NumberFormatException e) {
+      log.warn("忽略无法解析的订单状态消息: {}", body);
+    }
+  }
+
+  /**
+   * 获取推送统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("waitingOrders", waiters.size());
+    stats.put("waiters", waiterCount.sum());
+    stats.put("deliveredCount", deliveredCount.sum());
+    return stats;
+  }
+
+  /**
+   * 向本节点的等待者推送状态
+   */
+  private void deliver(Long orderId, Integer status) {
+    List<Consumer<Integer>> callbacks = waiters.remove(orderId);
+    if (callbacks == null) {
+      return;
+    }
+    // 列表已从表中移除，不会再被并发修改
+    waiterCount.add(-callbacks.size());
+    for (Consumer<Integer> callback : callbacks) {
+      try {
+        callback.accept(status);
+        deliveredCount.increment();
+      } catch (Exception e) {
+        log.warn("推送订单状态失败 - 订单: {}, 原因: {}", orderId, e.getMessage());
+      }
+    }
+  }
+
+  private void unsubscribe(Long orderId, Consumer<Integer> callback) {
+    waiters.computeIfPresent(orderId, (id, list) -> {
+      if (list.remove(callback)) {
+        waiterCount.decrement();
+      }
+      return list.isEmpty() ? null : list;
+    });
+  }
+}
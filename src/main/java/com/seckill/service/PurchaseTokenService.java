@@ -0,0 +1,281 @@
+package com.seckill.service;
+
+import com.seckill.cache.CacheInvalidationEvent;
+import com.seckill.cache.CacheInvalidationService;
+import com.seckill.cache.ConcurrentLongHashSet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 购买凭证服务
+ *
+ * 每个活动最多发放 库存 x k 张短期有效的签名凭证，名额由Redis原子扣减；
+ * 名额用完后本节点在短时间内记住该活动已售罄，期间的领取请求直接在内存中拒绝；
+ * 库存回滚和超过限购的请求会把名额还回Redis，记录过期后即可重新发放。
+ * 秒杀请求在本地验证凭证签名，并用本节点的已使用集合拒绝重放，
+ * 能到达seckill.lua的请求数因此被限制在库存的常数倍以内。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class PurchaseTokenService {
+
+  /**
+   * 凭证载荷前缀，与排队凭证区分
+   */
+  private static final String TOKEN_PREFIX = "p";
+
+  @Resource
+  private RedisShardRouter redisShardRouter;
+
+  @Resource
+  @Qualifier("issueTokenScript")
+  private DefaultRedisScript<Long> issueTokenScript;
+
+  @Resource
+  private TokenSigner tokenSigner;
+
+  @Resource
+  private CacheInvalidationService cacheInvalidationService;
+
+  /**
+   * 秒杀请求是否必须携带购买凭证
+   */
+  @Value("${seckill.purchase-token.required:false}")
+  private boolean required;
+
+  /**
+   * 凭证名额为库存的倍数k
+   */
+  @Value("${seckill.purchase-token.multiplier:2.0}")
+  private double multiplier;
+
+  /**
+   * 凭证有效期（毫秒）
+   */
+  @Value("${seckill.purchase-token.ttl-ms:60000}")
+  private long tokenTtlMillis;
+
+  /**
+   * 名额用完的本地记录有效期（毫秒），过期后重新访问Redis，其他节点回滚或退还的名额因此能被重新发放
+   */
+  @Value("${seckill.purchase-token.exhausted-recheck-ms:1000}")
+  private long exhaustedRecheckMillis;
+
+  /**
+   * 本节点已知名额用完的活动：voucherId -> 记录有效期
+   */
+  private final ConcurrentHashMap<Long, Long> exhaustedVouchers = new ConcurrentHashMap<>();
+
+  /**
+   * voucherId -> 本节点已使用的凭证序号
+   */
+  private final ConcurrentHashMap<Long, UsedTokens> usedTokens = new ConcurrentHashMap<>();
+
+  private final LongAdder issuedCount = new LongAdder();
+  private final LongAdder soldOutCount = new LongAdder();
+  private final LongAdder invalidCount = new LongAdder();
+  private final LongAdder replayCount = new LongAdder();
+  private final LongAdder refundCount = new LongAdder();
+
+  @PostConstruct
+  public void init() {
+    cacheInvalidationService.addListener(this::onInvalidation);
+  }
+
+  /**
+   * 秒杀请求是否必须携带购买凭证
+   */
+  public boolean isRequired() {
+    return required;
+  }
+
+  /**
+   * 初始化活动的凭证名额（已发放的序号保留，旧凭证不会被重新接受）
+   *
+   * @param voucherId 优惠券ID
+   * @param stock     库存数量
+   */
+  public void reset(Long voucherId, Integer stock) {
+    long quota = (long) Math.ceil(stock * multiplier);
+    String tokenKey = tokenKey(voucherId);
+    RedisTemplate<String, Object> template = redisShardRouter.forVoucher(voucherId);
+    template.opsForHash().put(tokenKey, "remaining", String.valueOf(quota));
+    template.expire(tokenKey, 24, TimeUnit.HOURS);
+    exhaustedVouchers.remove(voucherId);
+    log.info("初始化优惠券{}购买凭证名额: {}", voucherId, quota);
+  }
+
+  /**
+   * 补货后按相同倍数增加凭证名额（活动未开启凭证名额时不处理）
+   *
+   * @param voucherId 优惠券ID
+   * @param amount    补货数量
+   */
+  public void addQuota(Long voucherId, int amount) {
+    String tokenKey = tokenKey(voucherId);
+    RedisTemplate<String, Object> template = redisShardRouter.forVoucher(voucherId);
+    if (!Boolean.TRUE.equals(template.hasKey(tokenKey))) {
+      return;
+    }
+    long quota = (long) Math.ceil(amount * multiplier);
+    template.opsForHash().increment(tokenKey, "remaining", quota);
+    // 名额已用完时issue_token.lua会把剩余名额恢复为0，这里直接增加即可
+    exhaustedVouchers.remove(voucherId);
+    log.info("增加优惠券{}购买凭证名额: {}", voucherId, quota);
+  }
+
+  /**
+   * 退还一个凭证名额（凭证已使用但没有扣减库存，如超过限购）
+   *
+   * @param voucherId 优惠券ID
+   */
+  public void refund(Long voucherId) {
+    String tokenKey = tokenKey(voucherId);
+    RedisTemplate<String, Object> template = redisShardRouter.forVoucher(voucherId);
+    if (!Boolean.TRUE.equals(template.hasKey(tokenKey))) {
+      return;
+    }
+    template.opsForHash().increment(tokenKey, "remaining", 1);
+    exhaustedVouchers.remove(voucherId);
+    refundCount.increment();
+  }
+
+  /**
+   * 领取购买凭证
+   *
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 签名凭证，名额已用完时返回null
+   */
+  public String issue(Long voucherId, Long userId) {
+    Long exhaustedUntil = exhaustedVouchers.get(voucherId);
+    if (exhaustedUntil != null && exhaustedUntil > System.currentTimeMillis()) {
+      soldOutCount.increment();
+      return null;
+    }
+
+    Long seq = redisShardRouter.forVoucher(voucherId)
+        .execute(issueTokenScript, Collections.singletonList(tokenKey(voucherId)));
+    if (seq == null || seq < 0) {
+      exhaustedVouchers.put(voucherId, System.currentTimeMillis() + exhaustedRecheckMillis);
+      soldOutCount.increment();
+      log.info("优惠券{}购买凭证名额已用完", voucherId);
+      return null;
+    }
+
+    issuedCount.increment();
+    long expireAt = System.currentTimeMillis() + tokenTtlMillis;
+    return tokenSigner.sign(TOKEN_PREFIX + "." + voucherId + "." + userId + "." + seq + "." + expireAt);
+  }
+
+  /**
+   * 校验并使用购买凭证（本地验证签名、归属、有效期和是否已使用）
+   *
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @param token     购买凭证
+   * @return 凭证是否有效
+   */
+  public boolean consume(Long voucherId, Long userId, String token) {
+    String payload = tokenSigner.verify(token);
+    String[] parts = payload != null ? payload.split("\\.") : null;
+    if (parts == null || parts.length != 5 || !TOKEN_PREFIX.equals(parts[0])) {
+      invalidCount.increment();
+      return false;
+    }
+
+    long seq;
+    try {
+      if (!voucherId.equals(Long.valueOf(parts[1])) || !userId.equals(Long.valueOf(parts[2]))
+          || Long.parseLong(parts[4]) < System.currentTimeMillis()) {
+        invalidCount.increment();
+        return false;
+      }
+      seq = Long.parseLong(parts[3]);
+    } catch (NumberFormatException e) {
+      invalidCount.increment();
+      return false;
+    }
+
+    // 在compute中刷新使用时间，与清理任务互斥，刚使用的集合不会被清理
+    UsedTokens used = usedTokens.compute(voucherId, (id, current) -> {
+      UsedTokens result = current != null ? current : new UsedTokens();
+      result.lastUsedMillis = System.currentTimeMillis();
+      return result;
+    });
+    if (!used.seqs.add(seq)) {
+      replayCount.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * 清理已使用凭证集合：超过凭证有效期没有新的使用记录时，集合中的凭证都已过期
+   */
+  @Scheduled(fixedDelayString = "${seckill.purchase-token.cleanup-interval-ms:60000}")
+  public void evictExpired() {
+    long deadline = System.currentTimeMillis() - tokenTtlMillis;
+    for (Long voucherId : usedTokens.keySet()) {
+      usedTokens.computeIfPresent(voucherId, (id, used) -> used.lastUsedMillis < deadline ? null : used);
+    }
+  }
+
+  /**
+   * 获取凭证统计
+   */
+  public Map<String, Object> getStats() {
+    long usedEntries = 0;
+    for (UsedTokens used : usedTokens.values()) {
+      usedEntries += used.seqs.size();
+    }
+
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("required", required);
+    stats.put("multiplier", multiplier);
+    stats.put("exhaustedVouchers", exhaustedVouchers.size());
+    stats.put("usedEntries", usedEntries);
+    stats.put("issuedCount", issuedCount.sum());
+    stats.put("soldOutCount", soldOutCount.sum());
+    stats.put("refundCount", refundCount.sum());
+    stats.put("invalidCount", invalidCount.sum());
+    stats.put("replayCount", replayCount.sum());
+    return stats;
+  }
+
+  private void onInvalidation(CacheInvalidationEvent event) {
+    // 活动重新初始化后名额已重置
+    if (CacheInvalidationEvent.TYPE_VOUCHER.equals(event.type())
+        || CacheInvalidationEvent.TYPE_ACTIVITY.equals(event.type())) {
+      exhaustedVouchers.remove(event.voucherId());
+    }
+  }
+
+  private static String tokenKey(Long voucherId) {
+    return "seckill:token:{" + voucherId + "}";
+  }
+
+  /**
+   * 单个活动已使用的凭证序号
+   */
+  private static final class UsedTokens {
+    private final ConcurrentLongHashSet seqs = new ConcurrentLongHashSet(1024);
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+  }
+}
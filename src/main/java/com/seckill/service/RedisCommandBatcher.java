@@ -0,0 +1,261 @@
+package com.seckill.service;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Redis命令自动合批
+ *
+ * 在订单状态实例上保持一条关闭自动刷写的Lettuce连接：各线程提交的命令先写入连接的缓冲区，
+ * 由刷写线程在一个很短的窗口后、或缓冲命令数达到上限时一次写出，回复到达后完成各自的Future。
+ * 同一调用方一次提交的多条命令提交后立即刷写。同步方法等待回复，调用方不需要改变调用方式；
+ * 并发的状态写入和状态轮询合并为一次写入，系统调用和网络包数随并发度下降。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class RedisCommandBatcher {
+
+  @Resource
+  private RedisTemplate<String, Object> statusRedisTemplate;
+
+  /**
+   * 是否开启自动合批，关闭时订单状态命令逐条经RedisTemplate发送
+   */
+  @Value("${seckill.redis-batch.enabled:true}")
+  private boolean enabled;
+
+  /**
+   * 合批窗口（微秒）：第一条命令写入缓冲区后最多等待多久刷写
+   */
+  @Value("${seckill.redis-batch.window-micros:200}")
+  private long windowMicros;
+
+  /**
+   * 缓冲命令数达到该值时由提交的线程立即刷写
+   */
+  @Value("${seckill.redis-batch.max-batch-size:256}")
+  private int maxBatchSize;
+
+  /**
+   * 等待回复的超时（毫秒）
+   */
+  @Value("${seckill.redis-batch.timeout-ms:1000}")
+  private long timeoutMillis;
+
+  private volatile StatefulConnection<String, String> connection;
+  private volatile RedisClusterAsyncCommands<String, String> commands;
+  private volatile Thread flusher;
+  private volatile boolean running = true;
+
+  /**
+   * 已写入缓冲区、尚未刷写的命令数
+   */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  private final LongAdder commandCount = new LongAdder();
+  private final LongAdder flushCount = new LongAdder();
+  private final LongAdder windowFlushCount = new LongAdder();
+  private final LongAdder sizeFlushCount = new LongAdder();
+  private final LongAdder callerFlushCount = new LongAdder();
+  private final LongAdder timeoutCount = new LongAdder();
+
+  /**
+   * 是否开启自动合批
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * 提交一条命令并等待回复
+   *
+   * @param command 在异步命令接口上发出命令
+   * @return 命令结果
+   */
+  public <T> T execute(Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>> command) {
+    return await(submit(command));
+  }
+
+  /**
+   * 一次提交多条命令并立即刷写，等待全部回复
+   *
+   * @param batch 命令列表
+   * @return 命令结果，与batch按位置对应
+   */
+  public <T> List<T> executeAll(List<Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>>> batch) {
+    List<RedisFuture<T>> futures = new ArrayList<>(batch.size());
+    for (Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>> command : batch) {
+      futures.add(submit(command));
+    }
+    flush();
+    callerFlushCount.increment();
+    List<T> results = new ArrayList<>(futures.size());
+    for (RedisFuture<T> future : futures) {
+      results.add(await(future));
+    }
+    return results;
+  }
+
+  /**
+   * 获取合批统计
+   */
+  public Map<String, Object> getStats() {
+    long commandsSent = commandCount.sum();
+    long flushes = flushCount.sum();
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("enabled", enabled);
+    stats.put("connected", connection != null && connection.isOpen());
+    stats.put("windowMicros", windowMicros);
+    stats.put("maxBatchSize", maxBatchSize);
+    stats.put("commandCount", commandsSent);
+    stats.put("flushCount", flushes);
+    stats.put("windowFlushCount", windowFlushCount.sum());
+    stats.put("sizeFlushCount", sizeFlushCount.sum());
+    stats.put("callerFlushCount", callerFlushCount.sum());
+    stats.put("timeoutCount", timeoutCount.sum());
+    stats.put("averageBatchSize", flushes > 0 ? (double) commandsSent / flushes : 0);
+    return stats;
+  }
+
+  @PreDestroy
+  public void destroy() {
+    running = false;
+    Thread thread = flusher;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+    StatefulConnection<String, String> current = connection;
+    if (current != null) {
+      current.flushCommands();
+      current.close();
+    }
+  }
+
+  private <T> RedisFuture<T> submit(Function<RedisClusterAsyncCommands<String, String>, RedisFuture<T>> command) {
+    RedisFuture<T> future = command.apply(commands());
+    commandCount.increment();
+    // 先写入缓冲区再计数：刷写线程清零后写入的命令一定会触发下一次刷写
+    int count = pending.incrementAndGet();
+    if (count >= maxBatchSize) {
+      if (flush() > 0) {
+        sizeFlushCount.increment();
+      }
+    } else if (count == 1) {
+      LockSupport.unpark(flusher);
+    }
+    return future;
+  }
+
+  private int flush() {
+    int count = pending.getAndSet(0);
+    if (count > 0) {
+      connection.flushCommands();
+      flushCount.increment();
+    }
+    return count;
+  }
+
+  private <T> T await(RedisFuture<T> future) {
+    try {
+      return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      timeoutCount.increment();
+      throw new QueryTimeoutException("Redis命令超时: " + timeoutMillis + "ms", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RedisSystemException("等待Redis回复被中断", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RedisSystemException("Redis命令执行失败", e.getCause());
+    }
+  }
+
+  /**
+   * 首次使用时在订单状态连接工厂的客户端上建立合批连接，Redis不可用时不阻塞应用启动
+   */
+  private RedisClusterAsyncCommands<String, String> commands() {
+    RedisClusterAsyncCommands<String, String> current = commands;
+    if (current != null) {
+      return current;
+    }
+    synchronized (this) {
+      if (commands == null) {
+        AbstractRedisClient client = ((LettuceConnectionFactory) statusRedisTemplate.getConnectionFactory())
+            .getRequiredNativeClient();
+        RedisClusterAsyncCommands<String, String> async;
+        if (client instanceof RedisClusterClient clusterClient) {
+          StatefulRedisClusterConnection<String, String> cluster = clusterClient.connect(StringCodec.UTF8);
+          cluster.setAutoFlushCommands(false);
+          connection = cluster;
+          async = cluster.async();
+        } else {
+          StatefulRedisConnection<String, String> standalone = ((RedisClient) client).connect(StringCodec.UTF8);
+          standalone.setAutoFlushCommands(false);
+          connection = standalone;
+          async = standalone.async();
+        }
+        // 刷写线程先于命令接口发布，其他线程拿到命令接口时一定能唤醒刷写线程
+        Thread thread = new Thread(this::flushLoop, "redis-batch-flusher");
+        thread.setDaemon(true);
+        flusher = thread;
+        thread.start();
+        commands = async;
+        log.info("Redis命令合批连接已建立 - 窗口: {}μs, 单批上限: {}", windowMicros, maxBatchSize);
+      }
+      return commands;
+    }
+  }
+
+  /**
+   * 有命令等待时，等待一个合批窗口后刷写
+   */
+  private void flushLoop() {
+    long windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+    while (running) {
+      if (pending.get() == 0) {
+        LockSupport.park(this);
+        continue;
+      }
+      LockSupport.parkNanos(this, windowNanos);
+      try {
+        if (flush() > 0) {
+          windowFlushCount.increment();
+        }
+      } catch (Exception e) {
+        log.warn("Redis命令刷写失败: {}", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,359 @@
+package com.seckill.service;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis客户端缓存（近端缓存）
+ *
+ * 每个分片一条RESP3连接并开启CLIENT TRACKING：经该连接读过的键被修改、删除或过期时，Redis在同一连接上推送invalidate消息，
+ * 本地副本随即删除，之后的读取重新访问Redis。售罄或未开售的活动库存长时间不变，展示类读取由本地副本直接返回，
+ * 读取量随节点数横向扩展；过期程度以失效消息的到达延迟为上限。
+ *
+ * 推送与回复在同一连接上按序到达：读取前先取得键的本地条目，失效消息删除条目后，读取结果只会写入已脱离的条目，不会缓存旧值。
+ * 连接断开期间的失效消息无法送达，断开时丢弃本地副本并直接读取Redis，重连后重新开启跟踪并再次丢弃
+ * （丢弃即换用新的条目表，进行中的读取只会写入旧表）。
+ * Redis Cluster分片不使用近端缓存（失效消息来自各节点的连接）。未使用近端缓存时优先读取副本。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class RedisNearCache {
+
+  @Resource
+  private RedisReplicaReader redisReplicaReader;
+
+  /**
+   * 不存在的键的占位值
+   */
+  private static final Object MISSING = new Object();
+
+  /**
+   * 是否开启近端缓存
+   */
+  @Value("${seckill.near-cache.enabled:true}")
+  private boolean enabled;
+
+  /**
+   * 每个分片最多缓存的键数，超过后新键直接读取Redis
+   */
+  @Value("${seckill.near-cache.max-entries:10000}")
+  private int maxEntries;
+
+  /**
+   * 跟踪连接建立失败后多久重试（毫秒）
+   */
+  @Value("${seckill.near-cache.retry-interval-ms:30000}")
+  private long retryIntervalMillis;
+
+  /**
+   * 分片名 -> 跟踪连接
+   */
+  private final ConcurrentHashMap<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+  /**
+   * 分片名 -> 跟踪连接建立失败后的重试时间
+   */
+  private final ConcurrentHashMap<String, Long> retryAt = new ConcurrentHashMap<>();
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder bypassCount = new LongAdder();
+  private final LongAdder invalidationCount = new LongAdder();
+  private final LongAdder resetCount = new LongAdder();
+
+  /**
+   * 读取字符串键
+   *
+   * @param shard 键所在分片
+   * @param key   键名
+   * @return 值，不存在时返回null
+   */
+  public Object get(RedisShardRouter.Shard shard, String key) {
+    Tracker tracker = trackerOf(shard);
+    if (tracker == null) {
+      bypassCount.increment();
+      return redisReplicaReader.read(shard.name(), commands -> commands.get(key).thenApply(value -> (Object) value),
+          () -> shard.template().opsForValue().get(key));
+    }
+    Entry entry = tracker.entryOf(key);
+    Object cached = entry != null ? entry.value : null;
+    if (cached != null) {
+      hitCount.increment();
+      return cached == MISSING ? null : cached;
+    }
+    missCount.increment();
+    String value = tracker.connection.sync().get(key);
+    if (entry != null) {
+      entry.value = value != null ? value : MISSING;
+    }
+    return value;
+  }
+
+  /**
+   * 批量读取同一分片上的字符串键，未命中的键一次MGET
+   *
+   * @param shard 键所在分片
+   * @param keys  键列表
+   * @return 值列表，与keys按位置对应，不存在时为null
+   */
+  public List<Object> multiGet(RedisShardRouter.Shard shard, List<String> keys) {
+    Tracker tracker = trackerOf(shard);
+    if (tracker == null) {
+      bypassCount.add(keys.size());
+      return redisReplicaReader.read(shard.name(),
+          commands -> commands.mget(keys.toArray(new String[0])).thenApply(RedisNearCache::valuesOf),
+          () -> {
+            List<Object> values = shard.template().opsForValue().multiGet(keys);
+            return values != null ? values : new ArrayList<>(Collections.nCopies(keys.size(), null));
+          });
+    }
+    List<Object> values = new ArrayList<>(keys.size());
+    List<Entry> entries = new ArrayList<>(keys.size());
+    List<Integer> missed = new ArrayList<>();
+    for (int i = 0; i < keys.size(); i++) {
+      Entry entry = tracker.entryOf(keys.get(i));
+      Object cached = entry != null ? entry.value : null;
+      entries.add(entry);
+      values.add(cached == MISSING ? null : cached);
+      if (cached == null) {
+        missed.add(i);
+      }
+    }
+    hitCount.add(keys.size() - missed.size());
+    if (missed.isEmpty()) {
+      return values;
+    }
+    missCount.add(missed.size());
+    String[] missedKeys = new String[missed.size()];
+    for (int i = 0; i < missed.size(); i++) {
+      missedKeys[i] = keys.get(missed.get(i));
+    }
+    List<KeyValue<String, String>> loaded = tracker.connection.sync().mget(missedKeys);
+    for (int i = 0; i < missed.size(); i++) {
+      int index = missed.get(i);
+      String value = loaded.get(i).getValueOrElse(null);
+      values.set(index, value);
+      if (entries.get(index) != null) {
+        entries.get(index).value = value != null ? value : MISSING;
+      }
+    }
+    return values;
+  }
+
+  /**
+   * 丢弃键的本地副本（本节点写入后调用，不等待失效消息）
+   *
+   * @param shard 键所在分片
+   * @param key   键名
+   */
+  public void invalidate(RedisShardRouter.Shard shard, String key) {
+    Tracker tracker = trackers.get(shard.name());
+    if (tracker != null) {
+      tracker.entries.remove(key);
+    }
+  }
+
+  /**
+   * 获取近端缓存统计
+   */
+  public Map<String, Object> getStats() {
+    long hits = hitCount.sum();
+    long misses = missCount.sum();
+    Map<String, Object> shards = new HashMap<>();
+    trackers.forEach((name, tracker) -> {
+      Map<String, Object> item = new HashMap<>();
+      item.put("ready", tracker.ready);
+      item.put("entries", tracker.entries.size());
+      shards.put(name, item);
+    });
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("enabled", enabled);
+    stats.put("maxEntries", maxEntries);
+    stats.put("shards", shards);
+    stats.put("hitCount", hits);
+    stats.put("missCount", misses);
+    stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+    stats.put("bypassCount", bypassCount.sum());
+    stats.put("invalidationCount", invalidationCount.sum());
+    stats.put("resetCount", resetCount.sum());
+    return stats;
+  }
+
+  @PreDestroy
+  public void destroy() {
+    for (Tracker tracker : trackers.values()) {
+      tracker.connection.close();
+    }
+    trackers.clear();
+  }
+
+  private static List<Object> valuesOf(List<KeyValue<String, String>> loaded) {
+    List<Object> values = new ArrayList<>(loaded.size());
+    for (KeyValue<String, String> keyValue : loaded) {
+      values.add(keyValue.getValueOrElse(null));
+    }
+    return values;
+  }
+
+  /**
+   * 分片的跟踪连接，未开启、Cluster分片、连接未就绪或建立失败时返回null（直接读取Redis）
+   */
+  private Tracker trackerOf(RedisShardRouter.Shard shard) {
+    if (!enabled || shard.cluster()) {
+      return null;
+    }
+    Tracker tracker = trackers.get(shard.name());
+    if (tracker == null) {
+      Long retry = retryAt.get(shard.name());
+      if (retry != null && System.currentTimeMillis() < retry) {
+        return null;
+      }
+      synchronized (this) {
+        tracker = trackers.get(shard.name());
+        if (tracker == null) {
+          tracker = connect(shard);
+          if (tracker == null) {
+            return null;
+          }
+          trackers.put(shard.name(), tracker);
+        }
+      }
+    }
+    return tracker.ready ? tracker : null;
+  }
+
+  private Tracker connect(RedisShardRouter.Shard shard) {
+    StatefulRedisConnection<String, String> connection = null;
+    try {
+      AbstractRedisClient client = ((LettuceConnectionFactory) shard.template().getConnectionFactory())
+          .getRequiredNativeClient();
+      connection = ((RedisClient) client).connect(StringCodec.UTF8);
+      Tracker tracker = new Tracker(shard.name(), connection);
+      connection.addListener((PushListener) tracker);
+      connection.addListener((RedisConnectionStateListener) tracker);
+      // 需要RESP3：RESP2连接上开启跟踪会返回错误
+      connection.sync().clientTracking(TrackingArgs.Builder.enabled());
+      tracker.ready = true;
+      retryAt.remove(shard.name());
+      log.info("Redis近端缓存已开启 - 分片: {}", shard.name());
+      return tracker;
+    } catch (Exception e) {
+      if (connection != null) {
+        connection.close();
+      }
+      retryAt.put(shard.name(), System.currentTimeMillis() + retryIntervalMillis);
+      log.warn("Redis近端缓存不可用，直接读取Redis - 分片: {}, 原因: {}", shard.name(), e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * 本地缓存条目：一个Redis键的值，随该键的失效从条目表中删除
+   */
+  private static final class Entry {
+    private volatile Object value;
+  }
+
+  /**
+   * 一个分片的跟踪连接和本地副本
+   */
+  private final class Tracker implements PushListener, RedisConnectionStateListener {
+
+    private final String shard;
+    private final StatefulRedisConnection<String, String> connection;
+    private volatile ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private Tracker(String shard, StatefulRedisConnection<String, String> connection) {
+      this.shard = shard;
+      this.connection = connection;
+    }
+
+    /**
+     * 取得键的本地条目，超过容量上限时返回null（读取结果不缓存）
+     */
+    private Entry entryOf(String key) {
+      ConcurrentHashMap<String, Entry> current = entries;
+      Entry entry = current.get(key);
+      if (entry != null || current.size() >= maxEntries) {
+        return entry;
+      }
+      return current.computeIfAbsent(key, k -> new Entry());
+    }
+
+    private void reset() {
+      entries = new ConcurrentHashMap<>();
+      resetCount.increment();
+    }
+
+    @Override
+    public void onPushMessage(PushMessage message) {
+      if (!"invalidate".equals(message.getType())) {
+        return;
+      }
+      List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+      Object keys = content.size() > 1 ? content.get(1) : null;
+      if (keys instanceof List<?> list) {
+        ConcurrentHashMap<String, Entry> current = entries;
+        for (Object key : list) {
+          current.remove(String.valueOf(key));
+        }
+        invalidationCount.add(list.size());
+      } else {
+        // FLUSHDB/FLUSHALL时不带键名
+        reset();
+      }
+    }
+
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> channel) {
+      if (channel == connection) {
+        ready = false;
+        reset();
+        log.warn("Redis近端缓存连接断开，清空本地副本 - 分片: {}", shard);
+      }
+    }
+
+    @Override
+    public void onRedisConnected(RedisChannelHandler<?, ?> channel, SocketAddress socketAddress) {
+      if (channel != connection || ready) {
+        return;
+      }
+      // 在事件循环线程上回调，不能同步等待
+      connection.async().clientTracking(TrackingArgs.Builder.enabled()).whenComplete((result, error) -> {
+        if (error != null) {
+          log.warn("Redis近端缓存重新开启跟踪失败 - 分片: {}, 原因: {}", shard, error.getMessage());
+          return;
+        }
+        reset();
+        ready = true;
+        log.info("Redis近端缓存重新开启跟踪 - 分片: {}", shard);
+      });
+    }
+  }
+}
@@ -0,0 +1,431 @@
+package com.seckill.service;
+
+import com.seckill.config.RedisConfig;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Redis副本读取
+ *
+ * 订单状态查询、库存展示和购买数量查询这类非关键读取优先发往只读副本（replica-preferred）：同一分片的副本轮流读取，
+ * 副本出错或超时后暂停使用一段时间，没有可用副本时读取主库，主库只承担秒杀脚本和关键读取。读取结果最多落后主库一个复制延迟。
+ *
+ * 对冲读取：发出读取后等待该分片副本读取耗时的P95（有界），仍未返回且还有其他可用副本时，向另一个副本再发一次，先到的回复生效。
+ * 对冲请求用令牌桶限流，每次副本读取积累max-ratio个令牌，对冲率不超过max-ratio，突发不超过burst次。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class RedisReplicaReader {
+
+  /**
+   * 订单状态实例的副本组名
+   */
+  public static final String STATUS = "status";
+
+  /**
+   * 是否开启副本读取，关闭时全部读取主库
+   */
+  @Value("${seckill.redis-replicas.enabled:true}")
+  private boolean enabled;
+
+  /**
+   * 副本配置：分片名=redis://[:密码@]主机:端口[/库]，多个用逗号分隔，同一分片可配多个副本
+   */
+  @Value("${seckill.redis-replicas.nodes:}")
+  private String nodes;
+
+  /**
+   * 订单状态实例地址，为空时订单状态与主连接同一实例，使用primary的副本
+   */
+  @Value("${seckill.redis-lanes.status.url:}")
+  private String statusUrl;
+
+  /**
+   * 副本读取超时（毫秒），超时后读取主库
+   */
+  @Value("${seckill.redis-replicas.timeout-ms:1000}")
+  private long timeoutMillis;
+
+  /**
+   * 副本出错后暂停使用的时间（毫秒）
+   */
+  @Value("${seckill.redis-replicas.retry-interval-ms:30000}")
+  private long retryIntervalMillis;
+
+  /**
+   * 是否开启对冲读取
+   */
+  @Value("${seckill.redis-replicas.hedge.enabled:true}")
+  private boolean hedgeEnabled;
+
+  /**
+   * 对冲延迟取副本读取耗时的百分位
+   */
+  @Value("${seckill.redis-replicas.hedge.percentile:95}")
+  private double percentile;
+
+  /**
+   * 对冲延迟下限（微秒）
+   */
+  @Value("${seckill.redis-replicas.hedge.min-delay-micros:500}")
+  private long minDelayMicros;
+
+  /**
+   * 对冲延迟上限（毫秒），耗时样本不足时使用
+   */
+  @Value("${seckill.redis-replicas.hedge.max-delay-ms:50}")
+  private long maxDelayMillis;
+
+  /**
+   * 对冲请求数占副本读取数的比例上限
+   */
+  @Value("${seckill.redis-replicas.hedge.max-ratio:0.05}")
+  private double maxHedgeRatio;
+
+  /**
+   * 对冲令牌桶容量
+   */
+  @Value("${seckill.redis-replicas.hedge.burst:10}")
+  private int hedgeBurst;
+
+  /**
+   * 计算对冲延迟至少需要的耗时样本数
+   */
+  private static final int MIN_SAMPLES = 100;
+
+  /**
+   * 每组保留的最近耗时样本数
+   */
+  private static final int SAMPLE_SIZE = 1024;
+
+  /**
+   * 一个对冲令牌的千分值
+   */
+  private static final long HEDGE_TOKEN = 1000;
+
+  /**
+   * 组名 -> 副本组（未配置status时，status与primary指向同一组）
+   */
+  private final Map<String, Group> groups = new HashMap<>();
+  private final List<Group> groupList = new ArrayList<>();
+  private final List<LettuceConnectionFactory> ownedFactories = new ArrayList<>();
+
+  /**
+   * 对冲令牌（千分之一个令牌为单位）
+   */
+  private final AtomicLong hedgeCredits = new AtomicLong();
+
+  private final LongAdder readCount = new LongAdder();
+  private final LongAdder fallbackCount = new LongAdder();
+  private final LongAdder hedgeCount = new LongAdder();
+  private final LongAdder hedgeWinCount = new LongAdder();
+  private final LongAdder hedgeSuppressedCount = new LongAdder();
+
+  @PostConstruct
+  public void init() {
+    Map<String, Group> configured = new LinkedHashMap<>();
+    for (String spec : nodes.split(",")) {
+      if (spec.isBlank()) {
+        continue;
+      }
+      int separator = spec.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException("副本配置格式错误: " + spec);
+      }
+      String name = spec.substring(0, separator).trim();
+      String uri = spec.substring(separator + 1).trim();
+      if (uri.startsWith("cluster://")) {
+        throw new IllegalArgumentException("Redis Cluster分片不支持副本读取配置: " + spec);
+      }
+      LettuceConnectionFactory factory = RedisConfig.createConnectionFactory(uri, timeoutMillis);
+      ownedFactories.add(factory);
+      configured.computeIfAbsent(name, Group::new).replicas
+          .add(new Replica(uri.replaceFirst("//[^@/]*@", "//"), factory));
+    }
+    groups.putAll(configured);
+    groupList.addAll(configured.values());
+    if (!groups.containsKey(STATUS) && statusUrl.isBlank() && groups.containsKey(RedisShardRouter.PRIMARY)) {
+      groups.put(STATUS, groups.get(RedisShardRouter.PRIMARY));
+    }
+    for (Group group : groupList) {
+      group.hedgeDelayMicros = TimeUnit.MILLISECONDS.toMicros(maxDelayMillis);
+      log.info("Redis副本读取已配置 - 分片: {}, 副本: {}", group.name,
+          group.replicas.stream().map(replica -> replica.endpoint).toList());
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    for (LettuceConnectionFactory factory : ownedFactories) {
+      factory.destroy();
+    }
+  }
+
+  /**
+   * 读取副本，没有可用副本或副本读取失败时读取主库
+   *
+   * @param group   副本组名（分片名或STATUS）
+   * @param command 在副本连接的异步命令接口上发出读取
+   * @param master  读取主库
+   * @return 读取结果
+   */
+  public <T> T read(String group, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> command,
+      Supplier<T> master) {
+    Group target = enabled ? groups.get(group) : null;
+    if (target == null) {
+      return master.get();
+    }
+    Replica first = target.pick(null);
+    if (first == null) {
+      fallbackCount.increment();
+      return master.get();
+    }
+    readCount.increment();
+    earnHedgeCredit();
+    try {
+      CompletableFuture<T> primary = send(target, first, command);
+      Replica second = hedgeEnabled ? target.pick(first) : null;
+      if (second == null) {
+        return primary.get(timeoutMillis, TimeUnit.MILLISECONDS);
+      }
+      try {
+        return primary.get(target.hedgeDelayMicros, TimeUnit.MICROSECONDS);
+      } catch (TimeoutException e) {
+        if (!tryAcquireHedge()) {
+          hedgeSuppressedCount.increment();
+          return primary.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+      }
+      hedgeCount.increment();
+      CompletableFuture<T> hedge = send(target, second, command);
+      CompletableFuture<T> winner = new CompletableFuture<>();
+      AtomicInteger failures = new AtomicInteger();
+      for (CompletableFuture<T> future : List.of(primary, hedge)) {
+        future.whenComplete((value, error) -> {
+          if (error == null) {
+            if (winner.complete(value) && future == hedge) {
+              hedgeWinCount.increment();
+            }
+          } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+          }
+        });
+      }
+      return winner.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RedisSystemException("等待Redis副本回复被中断", e);
+    } catch (ExecutionException | TimeoutException | RuntimeException e) {
+      fallbackCount.increment();
+      log.debug("Redis副本读取失败，读取主库 - 分片: {}, 原因: {}", group, e.getMessage());
+      return master.get();
+    }
+  }
+
+  /**
+   * 定期按最近的副本读取耗时更新各组的对冲延迟
+   */
+  @Scheduled(fixedDelayString = "${seckill.redis-replicas.hedge.refresh-ms:1000}")
+  public void refreshHedgeDelays() {
+    long maxDelayMicros = TimeUnit.MILLISECONDS.toMicros(maxDelayMillis);
+    for (Group group : groupList) {
+      int count = (int) Math.min(group.sampleCount.get(), SAMPLE_SIZE);
+      if (count < MIN_SAMPLES) {
+        group.hedgeDelayMicros = maxDelayMicros;
+        continue;
+      }
+      long[] sorted = Arrays.copyOf(group.samples, count);
+      Arrays.sort(sorted);
+      int index = Math.min(count - 1, Math.max(0, (int) Math.ceil(percentile / 100 * count) - 1));
+      group.hedgeDelayMicros = Math.max(minDelayMicros, Math.min(maxDelayMicros, sorted[index]));
+    }
+  }
+
+  /**
+   * 获取副本读取统计
+   */
+  public Map<String, Object> getStats() {
+    long reads = readCount.sum();
+    long hedges = hedgeCount.sum();
+    List<Map<String, Object>> groupStats = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    for (Group group : groupList) {
+      List<Map<String, Object>> replicas = new ArrayList<>();
+      for (Replica replica : group.replicas) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("endpoint", replica.endpoint);
+        item.put("available", replica.downUntil <= now);
+        item.put("reads", replica.reads.sum());
+        item.put("failures", replica.failures.sum());
+        replicas.add(item);
+      }
+      Map<String, Object> item = new HashMap<>();
+      item.put("shard", group.name);
+      item.put("hedgeDelayMicros", group.hedgeDelayMicros);
+      item.put("replicas", replicas);
+      groupStats.add(item);
+    }
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("enabled", enabled);
+    stats.put("statusReplicas", groups.containsKey(STATUS) ? groups.get(STATUS).name : null);
+    stats.put("groups", groupStats);
+    stats.put("readCount", reads);
+    stats.put("fallbackCount", fallbackCount.sum());
+    stats.put("hedgeEnabled", hedgeEnabled);
+    stats.put("maxHedgeRatio", maxHedgeRatio);
+    stats.put("hedgeCount", hedges);
+    stats.put("hedgeWinCount", hedgeWinCount.sum());
+    stats.put("hedgeSuppressedCount", hedgeSuppressedCount.sum());
+    stats.put("hedgeRate", reads > 0 ? (double) hedges / reads : 0);
+    return stats;
+  }
+
+  private <T> CompletableFuture<T> send(Group group, Replica replica,
+      Function<RedisAsyncCommands<String, String>, CompletionStage<T>> command) {
+    long startTime = System.nanoTime();
+    replica.reads.increment();
+    CompletableFuture<T> future;
+    try {
+      future = command.apply(replica.connection().async()).toCompletableFuture();
+    } catch (RuntimeException e) {
+      replica.markDown(e);
+      return CompletableFuture.failedFuture(e);
+    }
+    future.whenComplete((value, error) -> {
+      if (error == null) {
+        group.record((System.nanoTime() - startTime) / 1000);
+      } else {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        // 命令错误（如类型错误）与副本是否可用无关
+        if (!(cause instanceof RedisCommandExecutionException)) {
+          replica.markDown(cause);
+        }
+      }
+    });
+    return future;
+  }
+
+  private void earnHedgeCredit() {
+    long earned = Math.round(maxHedgeRatio * HEDGE_TOKEN);
+    long capacity = hedgeBurst * HEDGE_TOKEN;
+    if (hedgeCredits.get() < capacity) {
+      hedgeCredits.updateAndGet(credits -> Math.min(capacity, credits + earned));
+    }
+  }
+
+  private boolean tryAcquireHedge() {
+    long credits;
+    do {
+      credits = hedgeCredits.get();
+      if (credits < HEDGE_TOKEN) {
+        return false;
+      }
+    } while (!hedgeCredits.compareAndSet(credits, credits - HEDGE_TOKEN));
+    return true;
+  }
+
+  /**
+   * 一个分片的副本和最近的读取耗时
+   */
+  private static final class Group {
+
+    private final String name;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private final AtomicLong sampleCount = new AtomicLong();
+    private volatile long hedgeDelayMicros;
+
+    private Group(String name) {
+      this.name = name;
+    }
+
+    /**
+     * 轮流选择可用副本，没有时返回null；选择对冲副本（exclude不为null）时不推进轮转位置
+     */
+    private Replica pick(Replica exclude) {
+      int size = replicas.size();
+      int start = Math.floorMod(exclude == null ? next.getAndIncrement() : next.get(), size);
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < size; i++) {
+        Replica replica = replicas.get((start + i) % size);
+        if (replica != exclude && replica.downUntil <= now) {
+          return replica;
+        }
+      }
+      return null;
+    }
+
+    private void record(long micros) {
+      samples[(int) (sampleCount.getAndIncrement() % SAMPLE_SIZE)] = micros;
+    }
+  }
+
+  /**
+   * 一个副本的连接（首次读取时建立，断开后由Lettuce自动重连）
+   */
+  private final class Replica {
+
+    private final String endpoint;
+    private final LettuceConnectionFactory factory;
+    private volatile StatefulRedisConnection<String, String> connection;
+    private volatile long downUntil;
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private Replica(String endpoint, LettuceConnectionFactory factory) {
+      this.endpoint = endpoint;
+      this.factory = factory;
+    }
+
+    private StatefulRedisConnection<String, String> connection() {
+      StatefulRedisConnection<String, String> current = connection;
+      if (current != null) {
+        return current;
+      }
+      synchronized (this) {
+        if (connection == null) {
+          connection = ((RedisClient) factory.getRequiredNativeClient()).connect(StringCodec.UTF8);
+        }
+        return connection;
+      }
+    }
+
+    private void markDown(Throwable cause) {
+      failures.increment();
+      downUntil = System.currentTimeMillis() + retryIntervalMillis;
+      log.warn("Redis副本暂停读取{}ms - 副本: {}, 原因: {}", retryIntervalMillis, endpoint, cause.getMessage());
+    }
+  }
+}
@@ -1,53 +1,431 @@
 package com.seckill.service;
 
+import com.seckill.entity.Order;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * Redis操作服务类
  * 
+ * 优惠券相关的键带哈希标签{voucherId}，经RedisShardRouter路由到优惠券所在的分片；
+ * 订单状态分区使用独立的订单状态连接，键清理进度等不属于某个优惠券的数据在主连接所在实例上。
+ * 秒杀脚本使用各分片的主连接，回滚日志、扫描、采样、归档等管理/日志操作使用同一分片的管理/日志连接。
+ * 
  * @author seckill-test
  */
 @Slf4j
 @Service
 public class RedisService {
 
+  /**
+   * 单次管道提交的最大条目数
+   */
+  private static final int PIPELINE_BATCH_SIZE = 1000;
+
+  /**
+   * 键清理进度
+   */
+  private static final String JANITOR_STATE_KEY = "seckill:janitor:state";
+
+  /**
+   * 键清理锁
+   */
+  private static final String JANITOR_LOCK_KEY = "seckill:janitor:lock";
+
+  /**
+   * 订单ID工作节点号租约前缀
+   */
+  private static final String ORDER_WORKER_KEY_PREFIX = "seckill:order:worker:";
+
+  /**
+   * 抽签数据保留时间（天）
+   */
+  private static final long LOTTERY_RETENTION_DAYS = 7;
+
+  /**
+   * 订单状态连接
+   */
+  @Resource
+  private RedisTemplate<String, Object> statusRedisTemplate;
+
+  /**
+   * 管理/日志连接（主连接所在实例）
+   */
+  @Resource
+  private RedisTemplate<String, Object> adminRedisTemplate;
+
   @Resource
-  private RedisTemplate<String, Object> redisTemplate;
+  private RedisShardRouter redisShardRouter;
+
+  @Resource
+  private RedisCommandBatcher redisCommandBatcher;
+
+  @Resource
+  private RedisNearCache redisNearCache;
+
+  @Resource
+  private RedisReplicaReader redisReplicaReader;
+
+  /**
+   * 购买记录中保存活动轮次的字段
+   */
+  private static final String EPOCH_FIELD = "_epoch";
+
+  /**
+   * 购买记录中保存恢复前活动轮次的字段，由finish_recovery.lua写入
+   */
+  private static final String CARRIED_EPOCH_FIELD = "_carry";
+
+  /**
+   * 购买记录中保存编码方式的字段
+   */
+  private static final String ENCODING_FIELD = "_enc";
+
+  /**
+   * 购买记录中保存位图覆盖范围的字段
+   */
+  private static final String BITMAP_LIMIT_FIELD = "_bmax";
+
+  /**
+   * 位图编码支持的最大用户ID（不含），超出的用户退回分桶编码，与seckill.lua保持一致
+   * 未写入_bmax字段的旧轮次以此为位图覆盖范围
+   */
+  private static final long BITMAP_MAX_USER_ID = 1L << 27;
+
+  /**
+   * 位图按每件库存预留的位数：位图只覆盖[0, 库存 * 该值)的用户ID，其余用户退回分桶编码，
+   * 位图大小因此不超过每件库存该值/8字节，稀疏或很大的用户ID不会撑大位图
+   */
+  @Value("${seckill.ledger.bitmap-bits-per-stock:32}")
+  private long bitmapBitsPerStock;
+
+  /**
+   * 购买时间采样间隔：用户ID能被其整除时才记录购买时间，0表示不记录
+   */
+  @Value("${seckill.ledger.time-sample-every:100}")
+  private int timeSampleEvery;
+
+  /**
+   * 订单状态分区跨度（毫秒），分区转换为位域后为跨度内的每个订单ID预留2位，即每毫秒250字节
+   * 修改后旧分区中的状态将无法定位，应在没有进行中订单时调整
+   */
+  @Value("${seckill.order-status.partition-ms:100}")
+  private long statusPartitionMillis;
+
+  /**
+   * 分区内订单数超过该值后由小哈希转换为位域
+   */
+  @Value("${seckill.order-status.bitfield-threshold:256}")
+  private int statusBitfieldThreshold;
 
   @Resource
   @Qualifier("seckillScript")
-  private DefaultRedisScript<Long> seckillScript;
+  @SuppressWarnings("rawtypes")
+  private DefaultRedisScript<List> seckillScript;
+
+  @Resource
+  @Qualifier("initStockScript")
+  private DefaultRedisScript<Long> initStockScript;
+
+  @Resource
+  @Qualifier("restockScript")
+  private DefaultRedisScript<Long> restockScript;
+
+  @Resource
+  @Qualifier("finishRecoveryScript")
+  private DefaultRedisScript<Long> finishRecoveryScript;
 
   @Resource
   @Qualifier("recoverStockScript")
   private DefaultRedisScript<Long> recoverStockScript;
 
+  @Resource
+  @Qualifier("setOrderStatusScript")
+  private DefaultRedisScript<Long> setOrderStatusScript;
+
+  @Resource
+  @Qualifier("getOrderStatusScript")
+  private DefaultRedisScript<Long> getOrderStatusScript;
+
+  @Resource
+  @Qualifier("compactActivityScript")
+  private DefaultRedisScript<Long> compactActivityScript;
+
+  @Resource
+  @Qualifier("scanIdleKeysScript")
+  @SuppressWarnings("rawtypes")
+  private DefaultRedisScript<List> scanIdleKeysScript;
+
+  @Resource
+  @Qualifier("inspectKeysScript")
+  @SuppressWarnings("rawtypes")
+  private DefaultRedisScript<List> inspectKeysScript;
+
+  @Resource
+  @Qualifier("scanKeysScript")
+  @SuppressWarnings("rawtypes")
+  private DefaultRedisScript<List> scanKeysScript;
+
+  /**
+   * voucherId -> 脚本调用计数
+   */
+  private final ConcurrentHashMap<Long, ScriptCounters> scriptCounters = new ConcurrentHashMap<>();
+
+  /**
+   * voucherId -> 购买记录定位信息（_epoch, _enc, _bmax），用于计算脚本的购买记录键
+   */
+  private final ConcurrentHashMap<Long, List<Object>> ledgerMetas = new ConcurrentHashMap<>();
+
   /**
    * 初始化秒杀库存
    * 
    * @param voucherId 优惠券ID
    * @param stock     库存数量
    */
-  public void initStock(Long voucherId, Integer stock) {
-    String stockKey = "seckill:stock:" + voucherId;
-    String orderKey = "seckill:order:" + voucherId;
+  public long initStock(Long voucherId, Integer stock) {
+    return initStock(voucherId, stock, TimeUnit.HOURS.toSeconds(24));
+  }
+
+  /**
+   * 初始化秒杀库存，并指定过期时间
+   * 库存、购买记录和购买时间在一次脚本调用中原子地重置，并开始新的活动轮次
+   * 
+   * @param voucherId     优惠券ID
+   * @param stock         库存数量
+   * @param expireSeconds 库存过期时间（秒），购买记录多保存1小时
+   * @return 新的活动轮次
+   */
+  public long initStock(Long voucherId, Integer stock, long expireSeconds) {
+    return initStock(voucherId, stock, expireSeconds, LedgerEncoding.HASH);
+  }
+
+  /**
+   * 初始化秒杀库存，并指定过期时间和购买记录编码
+   * 
+   * @param voucherId     优惠券ID
+   * @param stock         库存数量
+   * @param expireSeconds 库存过期时间（秒），购买记录多保存1小时
+   * @param encoding      本轮购买记录的编码方式
+   * @return 新的活动轮次
+   */
+  public long initStock(Long voucherId, Integer stock, long expireSeconds, LedgerEncoding encoding) {
+    redisShardRouter.pin(voucherId);
+    Long epoch = shardOf(voucherId).execute(initStockScript, initKeys(voucherId),
+        stock.toString(), String.valueOf(expireSeconds), encoding.code(),
+        String.valueOf(bitmapLimit(encoding, stock)));
+    stockChanged(voucherId);
+    log.info("初始化优惠券{}库存: {} (TTL: {}秒, 轮次: {}, 编码: {})", voucherId, stock, expireSeconds, epoch, encoding);
+    return epoch != null ? epoch : 0L;
+  }
+
+  /**
+   * 批量初始化秒杀库存，每个分片上的初始化脚本在一次管道中提交
+   * 
+   * @param inits 初始化参数
+   * @return 各优惠券新的活动轮次，与inits按位置对应
+   */
+  public List<Long> initStocks(List<StockInit> inits) {
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    // 管道中无法在NOSCRIPT时回退为EVAL，先确保脚本已缓存
+    loadScripts(List.of(initStockScript));
+    byte[] sha = serializer.serialize(initStockScript.getSha1());
+
+    List<Long> voucherIds = new ArrayList<>(inits.size());
+    for (StockInit init : inits) {
+      redisShardRouter.pin(init.voucherId());
+      voucherIds.add(init.voucherId());
+    }
+    Long[] epochs = new Long[inits.size()];
+    groupByShard(voucherIds).forEach((template, indexes) -> {
+      for (int from = 0; from < indexes.size(); from += PIPELINE_BATCH_SIZE) {
+        List<Integer> batch = indexes.subList(from, Math.min(from + PIPELINE_BATCH_SIZE, indexes.size()));
+        List<Object> results = template.executePipelined((RedisCallback<Object>) connection -> {
+          for (int index : batch) {
+            StockInit init = inits.get(index);
+            List<String> keys = initKeys(init.voucherId());
+            byte[][] keysAndArgs = new byte[keys.size() + 4][];
+            for (int i = 0; i < keys.size(); i++) {
+              keysAndArgs[i] = serializer.serialize(keys.get(i));
+            }
+            keysAndArgs[keys.size()] = serializer.serialize(String.valueOf(init.stock()));
+            keysAndArgs[keys.size() + 1] = serializer.serialize(String.valueOf(init.expireSeconds()));
+            LedgerEncoding encoding = init.encoding() != null ? init.encoding() : LedgerEncoding.HASH;
+            keysAndArgs[keys.size() + 2] = serializer.serialize(encoding.code());
+            keysAndArgs[keys.size() + 3] = serializer.serialize(
+                String.valueOf(bitmapLimit(encoding, init.stock())));
+            connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, keys.size(), keysAndArgs);
+          }
+          return null;
+        });
+        for (int i = 0; i < batch.size(); i++) {
+          Object result = results.get(i);
+          epochs[batch.get(i)] = result instanceof Number ? ((Number) result).longValue() : 0L;
+        }
+      }
+    });
+    voucherIds.forEach(this::stockChanged);
+    log.info("批量初始化库存 - 优惠券数: {}", inits.size());
+    return java.util.Arrays.asList(epochs);
+  }
+
+  /**
+   * 为进行中的活动补货，购买记录和活动轮次保持不变
+   * 
+   * @param voucherId 优惠券ID
+   * @param amount    增加数量（为负数时用于补偿撤销）
+   * @return 补货后的库存，-1表示活动未初始化（或已过期）
+   */
+  public long restock(Long voucherId, int amount) {
+    countersOf(voucherId).restockCalls.increment();
+    Long stock = shardOf(voucherId).execute(restockScript, Collections.singletonList(stockKey(voucherId)),
+        String.valueOf(amount));
+    stockChanged(voucherId);
+    log.info("优惠券{}补货: {}, 当前库存: {}", voucherId, amount, stock);
+    return stock != null ? stock : -1L;
+  }
+
+  /**
+   * 找出库存键不存在的优惠券（每个分片一次MGET）
+   * 
+   * @param voucherIds 优惠券ID列表
+   * @return 库存键不存在的优惠券ID
+   */
+  public List<Long> findMissingStocks(List<Long> voucherIds) {
+    List<Object> values = multiGetStocks(voucherIds, false);
+    List<Long> missing = new ArrayList<>();
+    for (int i = 0; i < voucherIds.size(); i++) {
+      if (values.get(i) == null) {
+        missing.add(voucherIds.get(i));
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * 抢占库存恢复锁，同一活动只由一个节点恢复
+   * 
+   * @param voucherId     优惠券ID
+   * @param expireSeconds 锁过期时间（秒）
+   * @return 是否获得锁
+   */
+  public boolean tryLockRecovery(Long voucherId, long expireSeconds) {
+    Boolean locked = shardOf(voucherId).opsForValue().setIfAbsent(tagged("seckill:recovery:lock:", voucherId), "1",
+        expireSeconds, TimeUnit.SECONDS);
+    return Boolean.TRUE.equals(locked);
+  }
+
+  /**
+   * 释放库存恢复锁
+   * 
+   * @param voucherId 优惠券ID
+   */
+  public void unlockRecovery(Long voucherId) {
+    shardOf(voucherId).delete(tagged("seckill:recovery:lock:", voucherId));
+  }
+
+  /**
+   * 将恢复出的购买记录写入重建键（一次管道，每笔订单HINCRBY一次）
+   * 限购多件时同一用户可能有多笔订单，购买数量按订单数累加
+   * 
+   * @param voucherId 优惠券ID
+   * @param userIds   用户ID缓冲区
+   * @param count     缓冲区中有效的用户数
+   */
+  public void appendRecoveredPurchases(Long voucherId, long[] userIds, int count) {
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    byte[] rebuildKey = serializer.serialize(rebuildKey(voucherId));
+    shardOf(voucherId).executePipelined((RedisCallback<Object>) connection -> {
+      for (int i = 0; i < count; i++) {
+        connection.hashCommands().hIncrBy(rebuildKey, serializer.serialize(Long.toString(userIds[i])), 1);
+      }
+      // 恢复中断时重建键自动清理
+      connection.keyCommands().expire(rebuildKey, 3600);
+      return null;
+    });
+  }
+
+  /**
+   * 完成库存恢复：换入重建的购买记录、开始新的活动轮次，最后写入库存
+   * 
+   * @param voucherId     优惠券ID
+   * @param stock         剩余库存
+   * @param expireSeconds 库存过期时间（秒）
+   * @return 新的活动轮次，-1表示恢复期间活动已被重新初始化
+   */
+  public long finishRecovery(Long voucherId, int stock, long expireSeconds) {
+    List<String> keys = new ArrayList<>(initKeys(voucherId));
+    keys.add(rebuildKey(voucherId));
+    redisShardRouter.pin(voucherId);
+    Long epoch = shardOf(voucherId).execute(finishRecoveryScript, keys, String.valueOf(stock),
+        String.valueOf(expireSeconds));
+    return epoch != null ? epoch : -1L;
+  }
+
+  /**
+   * 放弃库存恢复，删除重建中的购买记录
+   * 
+   * @param voucherId 优惠券ID
+   */
+  public void abortRecovery(Long voucherId) {
+    shardOf(voucherId).delete(rebuildKey(voucherId));
+  }
 
-    // 存储为字符串，确保Lua脚本能正确读取，设置24小时过期时间
-    redisTemplate.opsForValue().set(stockKey, stock.toString(), 24, TimeUnit.HOURS);
-    // 清理旧的购买记录
-    redisTemplate.delete(orderKey);
-    // 为用户购买记录设置过期时间（25小时，比库存稍长一些）
-    redisTemplate.expire(orderKey, 25, TimeUnit.HOURS);
+  /**
+   * 获取当前活动轮次
+   * 
+   * @param voucherId 优惠券ID
+   * @return 活动轮次，活动未经初始化（或已过期）时返回null
+   */
+  public Long getActivityEpoch(Long voucherId) {
+    Object epoch = shardOf(voucherId).opsForHash().get(orderKey(voucherId), EPOCH_FIELD);
+    return epoch != null ? Long.valueOf(epoch.toString()) : null;
+  }
 
-    log.info("初始化优惠券{}库存: {} (TTL: 24小时)", voucherId, stock);
+  /**
+   * 获取当前活动轮次和恢复前的轮次
+   * 
+   * @param voucherId 优惠券ID
+   * @return 活动轮次
+   */
+  public ActivityEpoch getActivityEpochInfo(Long voucherId) {
+    List<Object> values = shardOf(voucherId).opsForHash()
+        .multiGet(orderKey(voucherId), List.of(EPOCH_FIELD, CARRIED_EPOCH_FIELD));
+    Object epoch = values.get(0);
+    Object carried = values.get(1);
+    return new ActivityEpoch(epoch != null ? Long.valueOf(epoch.toString()) : null,
+        carried != null ? carried.toString() : null);
   }
 
   /**
@@ -59,27 +437,65 @@ public class RedisService {
    * @return 0-成功, 1-库存不足, 2-超过限购
    */
   public Long executeSeckill(Long voucherId, Long userId, Integer limit) {
+    return executeSeckillWithEpoch(voucherId, userId, limit).code();
+  }
+
+  /**
+   * 执行秒杀Lua脚本，同时返回扣减库存时的活动轮次
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @param limit     限购数量
+   * @return 结果码（0-成功, 1-库存不足, 2-超过限购, -1-脚本执行异常）和活动轮次
+   */
+  public DeductResult executeSeckillWithEpoch(Long voucherId, Long userId, Integer limit) {
+    ScriptCounters counters = countersOf(voucherId);
+    counters.seckillCalls.increment();
     try {
-      // 正确传递KEYS参数
-      java.util.List<String> keys = java.util.Arrays.asList(
-          "seckill:stock:" + voucherId, // KEYS[1] - 库存键
-          "seckill:order:" + voucherId // KEYS[2] - 订单键
-      );
+      List<?> result = null;
+      // 本地缓存的购买记录定位信息过期时（活动重新初始化或恢复），刷新后重试一次
+      for (int attempt = 0; attempt < 2; attempt++) {
+        // 正确传递KEYS参数
+        java.util.List<String> keys = java.util.Arrays.asList(
+            stockKey(voucherId), // KEYS[1] - 库存键
+            orderKey(voucherId), // KEYS[2] - 订单键
+            timeKey(voucherId), // KEYS[3] - 购买时间键
+            debugKey(voucherId), // KEYS[4] - 调试键
+            ledgerKey(voucherId, userId, attempt > 0) // KEYS[5] - 购买记录键
+        );
 
-      log.info("🔍 执行秒杀脚本 - 用户: {}, 优惠券: {}, KEYS: {}", userId, voucherId, keys);
+        log.info("🔍 执行秒杀脚本 - 用户: {}, 优惠券: {}, KEYS: {}", userId, voucherId, keys);
 
-      Long result = redisTemplate.execute(
-          seckillScript,
-          keys, // 传递键名列表
-          voucherId.toString(), // ARGV[1]
-          userId.toString(), // ARGV[2]
-          limit.toString()); // ARGV[3]
+        result = shardOf(voucherId).execute(
+            seckillScript,
+            keys, // 传递键名列表
+            voucherId.toString(), // ARGV[1]
+            userId.toString(), // ARGV[2]
+            limit.toString(), // ARGV[3]
+            String.valueOf(timeSampleEvery)); // ARGV[4]
+        if (result == null || result.size() != 2 || ((Number) result.get(0)).longValue() != 4) {
+          break;
+        }
+      }
 
       log.info("秒杀脚本执行结果 - 用户: {}, 优惠券: {}, 结果: {}", userId, voucherId, result);
-      return result;
+      if (result == null || result.size() != 2) {
+        counters.seckillErrors.increment();
+        return new DeductResult(-1L, 0L);
+      }
+      long code = ((Number) result.get(0)).longValue();
+      counters.recordSeckill(code);
+      if (code == 4) {
+        return new DeductResult(-1L, ((Number) result.get(1)).longValue());
+      }
+      if (code == 0) {
+        stockChanged(voucherId);
+      }
+      return new DeductResult(code, ((Number) result.get(1)).longValue());
     } catch (Exception e) {
+      counters.seckillErrors.increment();
       log.error("执行秒杀脚本异常", e);
-      return -1L; // 脚本执行异常
+      return new DeductResult(-1L, 0L); // 脚本执行异常
     }
   }
 
@@ -91,36 +507,65 @@ public class RedisService {
    * @return 0-成功
    */
   public Long executeStockRollback(Long voucherId, Long userId) {
+    return executeStockRollback(voucherId, userId, null);
+  }
+
+  /**
+   * 执行库存回滚Lua脚本，只回滚指定活动轮次的购买
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @param epoch     下单时的活动轮次，为null时不校验
+   * @return 0-成功, 3-轮次已过期（活动已重新初始化，未做修改）, 4-购买记录不存在（等待恢复，未做修改）
+   */
+  public Long executeStockRollback(Long voucherId, Long userId, Long epoch) {
+    ScriptCounters counters = countersOf(voucherId);
+    counters.rollbackCalls.increment();
     try {
-      // 正确传递KEYS参数
-      java.util.List<String> keys = java.util.Arrays.asList(
-          "seckill:stock:" + voucherId, // KEYS[1] - 库存键
-          "seckill:order:" + voucherId // KEYS[2] - 订单键
-      );
-
-      Long result = redisTemplate.execute(
-          recoverStockScript,
-          keys, // 传递键名列表
-          voucherId.toString(), // ARGV[1]
-          userId.toString()); // ARGV[2]
+      Long result = null;
+      // 本地缓存的购买记录定位信息过期时刷新后重试一次
+      for (int attempt = 0; attempt < 2; attempt++) {
+        // 正确传递KEYS参数
+        java.util.List<String> keys = java.util.Arrays.asList(
+            stockKey(voucherId), // KEYS[1] - 库存键
+            orderKey(voucherId), // KEYS[2] - 订单键
+            timeKey(voucherId), // KEYS[3] - 购买时间键
+            rollbackLogKey(voucherId), // KEYS[4] - 回滚日志
+            ledgerKey(voucherId, userId, attempt > 0) // KEYS[5] - 购买记录键
+        );
+
+        result = shardOf(voucherId).execute(
+            recoverStockScript,
+            keys, // 传递键名列表
+            voucherId.toString(), // ARGV[1]
+            userId.toString(), // ARGV[2]
+            epoch != null ? epoch.toString() : ""); // ARGV[3]
+        if (result == null || result != 5) {
+          break;
+        }
+      }
 
       log.info("库存回滚脚本执行结果 - 用户: {}, 优惠券: {}, 结果: {}", userId, voucherId, result);
+      stockChanged(voucherId);
+      if (result != null && result == 3) {
+        counters.staleRollbacks.increment();
+      }
       return result;
     } catch (Exception e) {
+      counters.rollbackErrors.increment();
       log.error("执行库存回滚脚本异常", e);
       return -1L; // 脚本执行异常
     }
   }
 
   /**
-   * 获取当前库存
+   * 获取当前库存（展示用，优先读取Redis失效通知维护的近端缓存）
    * 
    * @param voucherId 优惠券ID
    * @return 库存数量
    */
   public Integer getCurrentStock(Long voucherId) {
-    String stockKey = "seckill:stock:" + voucherId;
-    Object stock = redisTemplate.opsForValue().get(stockKey);
+    Object stock = redisNearCache.get(redisShardRouter.shardOf(voucherId), stockKey(voucherId));
     if (stock == null) {
       return 0;
     }
@@ -132,6 +577,22 @@ public class RedisService {
     }
   }
 
+  /**
+   * 批量获取当前库存（展示用，近端缓存未命中的库存每个分片一次MGET）
+   * 
+   * @param voucherIds 优惠券ID列表
+   * @return 库存数量列表，与voucherIds按位置对应，库存键不存在（如活动尚未预热）时为null
+   */
+  public List<Integer> getCurrentStocks(List<Long> voucherIds) {
+    List<Object> values = multiGetStocks(voucherIds, true);
+
+    List<Integer> stocks = new ArrayList<>(voucherIds.size());
+    for (Object stock : values) {
+      stocks.add(parseInteger(stock));
+    }
+    return stocks;
+  }
+
   /**
    * 获取用户购买数量
    * 
@@ -140,33 +601,180 @@ public class RedisService {
    * @return 购买数量
    */
   public Integer getUserBoughtCount(Long voucherId, Long userId) {
-    String orderKey = "seckill:order:" + voucherId;
-    Object count = redisTemplate.opsForHash().get(orderKey, userId.toString());
+    String orderKey = orderKey(voucherId);
+    RedisTemplate<String, Object> template = shardOf(voucherId);
+    // 副本上在同一连接依次读取购买记录的位置和购买记录
+    return redisReplicaReader.read(redisShardRouter.shardOf(voucherId).name(),
+        commands -> commands.hmget(orderKey, EPOCH_FIELD, ENCODING_FIELD, BITMAP_LIMIT_FIELD).thenCompose(meta -> {
+          BoughtRecord record = boughtRecord(orderKey, meta.get(0).getValueOrElse(null),
+              meta.get(1).getValueOrElse(null), meta.get(2).getValueOrElse(null), userId);
+          if (record.field() == null) {
+            return commands.getbit(record.key(), userId).thenApply(bit -> bit == 1L ? 1 : 0);
+          }
+          return commands.hget(record.key(), record.field()).thenApply(count -> parseBoughtCount(count));
+        }),
+        () -> {
+          List<Object> meta = template.opsForHash().multiGet(orderKey,
+              List.of(EPOCH_FIELD, ENCODING_FIELD, BITMAP_LIMIT_FIELD));
+          BoughtRecord record = boughtRecord(orderKey, meta.get(0), meta.get(1), meta.get(2), userId);
+          if (record.field() == null) {
+            return Boolean.TRUE.equals(template.opsForValue().getBit(record.key(), userId)) ? 1 : 0;
+          }
+          return parseBoughtCount(template.opsForHash().get(record.key(), record.field()));
+        });
+  }
+
+  /**
+   * 定位用户的购买记录，与seckill.lua中的购买记录定位规则保持一致
+   *
+   * @return 购买记录所在的键和哈希字段，位图记录的字段为null（位偏移即用户ID）
+   */
+  private static BoughtRecord boughtRecord(String orderKey, Object epochValue, Object encodingValue,
+      Object bitmapLimitValue, Long userId) {
+    String epoch = epochValue != null ? epochValue.toString() : "0";
+    LedgerEncoding encoding = LedgerEncoding.fromCode(encodingValue != null ? encodingValue.toString() : null);
+    long bitmapLimit = bitmapLimitValue != null
+        ? Math.min(Long.parseLong(bitmapLimitValue.toString()), BITMAP_MAX_USER_ID) : BITMAP_MAX_USER_ID;
+    if (encoding == LedgerEncoding.BITMAP && userId >= 0 && userId < bitmapLimit) {
+      return new BoughtRecord(orderKey + ":" + epoch + ":bits", null);
+    }
+    if (encoding == LedgerEncoding.HASH) {
+      return new BoughtRecord(orderKey, userId.toString());
+    }
+    String user = userId.toString();
+    String bucket = user.length() > 2 ? user.substring(0, user.length() - 2) : "0";
+    String field = user.length() > 2 ? user.substring(user.length() - 2) : user;
+    return new BoughtRecord(orderKey + ":" + epoch + ":" + bucket, field);
+  }
+
+  /**
+   * 计算用户的购买记录键，作为秒杀和回滚脚本的KEYS传入（Redis Cluster要求脚本访问的键都在KEYS中声明）
+   * 购买记录的定位信息（轮次、编码、位图范围）在本地缓存，脚本发现不一致时调用方刷新后重试
+   *
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @param refresh   是否重新读取定位信息
+   * @return 购买记录键
+   */
+  private String ledgerKey(Long voucherId, Long userId, boolean refresh) {
+    if (refresh) {
+      ledgerMetas.remove(voucherId);
+    }
+    String orderKey = orderKey(voucherId);
+    List<Object> meta = ledgerMetas.computeIfAbsent(voucherId, id -> shardOf(id).opsForHash()
+        .multiGet(orderKey, List.of(EPOCH_FIELD, ENCODING_FIELD, BITMAP_LIMIT_FIELD)));
+    return boughtRecord(orderKey, meta.get(0), meta.get(1), meta.get(2), userId).key();
+  }
+
+  /**
+   * 计算位图覆盖的用户ID范围（不含），非位图编码为0
+   */
+  private long bitmapLimit(LedgerEncoding encoding, long stock) {
+    if (encoding != LedgerEncoding.BITMAP) {
+      return 0;
+    }
+    return Math.min(BITMAP_MAX_USER_ID, Math.max(0, stock) * bitmapBitsPerStock);
+  }
+
+  private static Integer parseBoughtCount(Object count) {
     return count != null ? Integer.parseInt(count.toString()) : 0;
   }
 
   /**
    * 设置订单状态缓存
+   * 状态写入订单所在的时间分区，整个分区只有一个键和一个过期时间
    * 
    * @param orderId       订单ID
    * @param status        订单状态
    * @param expireSeconds 过期时间（秒）
    */
   public void setOrderStatus(Long orderId, Integer status, long expireSeconds) {
-    String orderStatusKey = "order:status:" + orderId;
-    redisTemplate.opsForValue().set(orderStatusKey, status.toString(), expireSeconds, TimeUnit.SECONDS);
+    evalStatusScript(setOrderStatusScript, orderStatusKey(orderId), String.valueOf(orderStatusIndex(orderId)),
+        String.valueOf(status + 1), String.valueOf(expireSeconds), String.valueOf(statusBitfieldThreshold));
   }
 
   /**
-   * 获取订单状态
+   * 获取订单状态（优先读取副本）
    * 
    * @param orderId 订单ID
    * @return 订单状态
    */
   public Integer getOrderStatus(Long orderId) {
-    String orderStatusKey = "order:status:" + orderId;
-    Object status = redisTemplate.opsForValue().get(orderStatusKey);
-    return status != null ? Integer.parseInt(status.toString()) : null;
+    return getOrderStatus(orderId, true);
+  }
+
+  /**
+   * 获取订单状态
+   * 
+   * @param orderId     订单ID
+   * @param fromReplica 是否优先读取副本，先登记状态通知再查询的调用方需要读取主库，副本的复制延迟会漏掉之间的状态变更
+   * @return 订单状态
+   */
+  public Integer getOrderStatus(Long orderId, boolean fromReplica) {
+    String key = orderStatusKey(orderId);
+    String index = String.valueOf(orderStatusIndex(orderId));
+    if (!fromReplica) {
+      return decodeOrderStatus(evalStatusScript(getOrderStatusScript, key, index));
+    }
+    String[] keys = {key};
+    Long value = redisReplicaReader.read(RedisReplicaReader.STATUS,
+        commands -> commands.<Long>evalsha(getOrderStatusScript.getSha1(), ScriptOutputType.INTEGER, keys, index)
+            .exceptionallyCompose(e -> isNoScript(e)
+                ? commands.eval(getOrderStatusScript.getScriptAsString(), ScriptOutputType.INTEGER, keys, index)
+                : CompletableFuture.failedFuture(e)),
+        () -> evalStatusScript(getOrderStatusScript, key, index));
+    return decodeOrderStatus(value);
+  }
+
+  /**
+   * 批量获取订单状态（一次写出）
+   * 
+   * @param orderIds 订单ID列表
+   * @return 订单状态列表，与orderIds按位置对应，不存在的订单为null
+   */
+  public List<Integer> getOrderStatuses(List<Long> orderIds) {
+    if (orderIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (redisCommandBatcher.isEnabled()) {
+      List<Function<RedisClusterAsyncCommands<String, String>, RedisFuture<Long>>> batch =
+          new ArrayList<>(orderIds.size());
+      for (Long orderId : orderIds) {
+        batch.add(statusScriptCommand(getOrderStatusScript, orderStatusKey(orderId),
+            String.valueOf(orderStatusIndex(orderId))));
+      }
+      List<Long> values;
+      try {
+        values = redisCommandBatcher.executeAll(batch);
+      } catch (RedisNoScriptException e) {
+        loadScripts(List.of(getOrderStatusScript));
+        values = redisCommandBatcher.executeAll(batch);
+      }
+      List<Integer> statuses = new ArrayList<>(values.size());
+      for (Long value : values) {
+        statuses.add(decodeOrderStatus(value));
+      }
+      return statuses;
+    }
+
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    // 管道中无法在NOSCRIPT时回退为EVAL，先确保脚本已缓存
+    loadScripts(List.of(getOrderStatusScript));
+    byte[] sha = serializer.serialize(getOrderStatusScript.getSha1());
+
+    List<Object> values = statusRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (Long orderId : orderIds) {
+        connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1,
+            serializer.serialize(orderStatusKey(orderId)), serializer.serialize(String.valueOf(orderStatusIndex(orderId))));
+      }
+      return null;
+    });
+
+    List<Integer> statuses = new ArrayList<>(orderIds.size());
+    for (Object value : values) {
+      statuses.add(decodeOrderStatus(value instanceof Number ? ((Number) value).longValue() : null));
+    }
+    return statuses;
   }
 
   /**
@@ -176,11 +784,14 @@ public class RedisService {
    * @param expireSeconds 过期时间（秒）
    */
   public void setSeckillExpire(Long voucherId, long expireSeconds) {
-    String stockKey = "seckill:stock:" + voucherId;
-    String orderKey = "seckill:order:" + voucherId;
-
-    redisTemplate.expire(stockKey, expireSeconds, TimeUnit.SECONDS);
-    redisTemplate.expire(orderKey, expireSeconds + 3600, TimeUnit.SECONDS); // 购买记录比库存多保存1小时
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    // 两个键带相同的哈希标签，一次管道写出
+    shardOf(voucherId).executePipelined((RedisCallback<Object>) connection -> {
+      connection.keyCommands().expire(serializer.serialize(stockKey(voucherId)), expireSeconds);
+      // 购买记录比库存多保存1小时
+      connection.keyCommands().expire(serializer.serialize(orderKey(voucherId)), expireSeconds + 3600);
+      return null;
+    });
 
     log.info("设置优惠券{}过期时间: {}秒", voucherId, expireSeconds);
   }
@@ -192,8 +803,7 @@ public class RedisService {
    * @return 剩余时间（秒），-1表示没有过期时间，-2表示key不存在
    */
   public Long getSeckillTTL(Long voucherId) {
-    String stockKey = "seckill:stock:" + voucherId;
-    return redisTemplate.getExpire(stockKey, TimeUnit.SECONDS);
+    return shardOf(voucherId).getExpire(stockKey(voucherId), TimeUnit.SECONDS);
   }
 
   /**
@@ -202,56 +812,1186 @@ public class RedisService {
    * @param voucherId 优惠券ID
    */
   public void cleanExpiredSeckillData(Long voucherId) {
-    String stockKey = "seckill:stock:" + voucherId;
-    String orderKey = "seckill:order:" + voucherId;
-    String timeKey = "seckill:time:" + voucherId;
-
-    redisTemplate.delete(stockKey);
-    redisTemplate.delete(orderKey);
-    redisTemplate.delete(timeKey);
+    // 三个键带相同的哈希标签，一条DEL删除
+    shardOf(voucherId).delete(java.util.Arrays.asList(stockKey(voucherId), orderKey(voucherId), timeKey(voucherId)));
+    stockChanged(voucherId);
 
     log.info("清理优惠券{}的过期秒杀数据", voucherId);
   }
 
   /**
-   * 获取回滚日志（用于监控）
+   * 将Lua脚本预先加载到所有分片和订单状态实例的脚本缓存，首次EVALSHA不再回退为EVAL
    * 
-   * @param count 获取数量
-   * @return 回滚日志列表
+   * @param scripts 待加载的脚本
+   * @return 加载的脚本数
    */
-  public Object getRollbackLogs(long count) {
-    return redisTemplate.opsForList().range("seckill:rollback:log", 0, count - 1);
+  public int loadScripts(List<? extends RedisScript<?>> scripts) {
+    List<RedisTemplate<String, Object>> templates = new ArrayList<>();
+    for (RedisShardRouter.Shard shard : redisShardRouter.shards()) {
+      templates.add(shard.template());
+    }
+    templates.add(statusRedisTemplate);
+    for (RedisTemplate<String, Object> template : templates) {
+      for (RedisScript<?> script : scripts) {
+        byte[] body = RedisSerializer.string().serialize(script.getScriptAsString());
+        template.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(body));
+      }
+    }
+    return scripts.size();
   }
 
   /**
-   * 调试方法：获取Redis中的调试信息
+   * 在影子键上试运行秒杀脚本，预热连接池、脚本缓存和JIT，不影响真实库存
    * 
-   * @param voucherId 优惠券ID
+   * @param voucherId  优惠券ID
+   * @param iterations 秒杀脚本执行次数
+   * @return 平均每次脚本执行耗时（微秒）
    */
-  public void debugRedisData(Long voucherId) {
-    String stockKey = "seckill:stock:" + voucherId;
-    String debugKey = "seckill:debug:" + voucherId;
+  public long dryRunSeckill(Long voucherId, int iterations) {
+    // 影子键在优惠券所在的分片上，预热的是活动实际使用的连接
+    RedisTemplate<String, Object> template = shardOf(voucherId);
+    String shadowId = "warmup:" + voucherId;
+    List<String> keys = java.util.Arrays.asList(tagged("seckill:stock:", shadowId), tagged("seckill:order:", shadowId),
+        tagged("seckill:time:", shadowId), tagged("seckill:debug:", shadowId));
+    // 一半请求成功、一半库存不足，覆盖脚本的两条主要分支
+    template.opsForValue().set(keys.get(0), String.valueOf(iterations / 2), 5, TimeUnit.MINUTES);
+    List<String> shadowKeys = new ArrayList<>(keys);
+    shadowKeys.add(keys.get(1));
 
-    // 直接读取库存数据
-    Object stockData = redisTemplate.opsForValue().get(stockKey);
-    log.info("🔍 调试Redis数据 - 优惠券: {}", voucherId);
-    log.info("📦 库存键: {}", stockKey);
-    log.info("📦 库存原始数据: {} (类型: {})", stockData, stockData != null ? stockData.getClass().getSimpleName() : "null");
+    long startTime = System.nanoTime();
+    try {
+      for (int i = 0; i < iterations; i++) {
+        String userId = String.valueOf(i);
+        // 影子订单键没有编码字段，购买记录即订单键
+        template.execute(seckillScript, shadowKeys, shadowId, userId, "1", String.valueOf(timeSampleEvery));
+      }
+      return (System.nanoTime() - startTime) / 1000 / Math.max(1, iterations);
+    } finally {
+      template.delete(keys);
+    }
+  }
 
-    // 读取Lua脚本的详细调试信息
-    Object stockKeyUsed = redisTemplate.opsForHash().get(debugKey, "stockKey");
-    Object keyExists = redisTemplate.opsForHash().get(debugKey, "key_exists");
-    Object rawStock = redisTemplate.opsForHash().get(debugKey, "raw_stock");
-    Object parsedStock = redisTemplate.opsForHash().get(debugKey, "parsed_stock");
-    Object error = redisTemplate.opsForHash().get(debugKey, "error");
+  /**
+   * 抢占活动预热的库存加载权，同一场次只有一个节点加载库存
+   * 
+   * @param voucherId     优惠券ID
+   * @param startMillis   活动开始时间
+   * @param expireSeconds 标记过期时间（秒）
+   * @return 是否获得加载权
+   */
+  public boolean tryAcquireWarmup(Long voucherId, long startMillis, long expireSeconds) {
+    Boolean acquired = shardOf(voucherId).opsForValue().setIfAbsent(tagged("seckill:warmup:", voucherId) + ":" + startMillis,
+        "1", expireSeconds, TimeUnit.SECONDS);
+    return Boolean.TRUE.equals(acquired);
+  }
 
-    log.info("🐛 === Lua脚本详细调试信息 ===");
-    log.info("🐛 脚本中使用的库存键: {}", stockKeyUsed);
-    log.info("🐛 键是否存在(EXISTS): {}", keyExists);
-    log.info("🐛 GET命令返回值: {}", rawStock);
-    log.info("🐛 tonumber解析结果: {}", parsedStock);
-    log.info("🐛 错误信息: {}", error);
-    log.info("🐛 =============================");
+  /**
+   * 抽签报名（集合写入，O(1)且不涉及库存）
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 是否为首次报名
+   */
+  public boolean addLotteryUser(Long voucherId, Long userId) {
+    Long added = shardOf(voucherId).opsForSet().add(lotteryKey(voucherId), userId.toString());
+    return added != null && added > 0;
+  }
+
+  /**
+   * 统计抽签报名人数
+   * 
+   * @param voucherId 优惠券ID
+   * @return 报名人数
+   */
+  public long countLotteryUsers(Long voucherId) {
+    Long size = shardOf(voucherId).opsForSet().size(lotteryKey(voucherId));
+    return size != null ? size : 0;
   }
 
+  /**
+   * 用SSCAN遍历抽签报名用户（同一用户可能被返回多次，调用方需自行去重）
+   * 
+   * @param voucherId 优惠券ID
+   * @param consumer  用户ID处理函数
+   */
+  public void scanLotteryUsers(Long voucherId, LongConsumer consumer) {
+    ScanOptions options = ScanOptions.scanOptions().count(10000).build();
+    try (Cursor<Object> cursor = adminOf(voucherId).opsForSet().scan(lotteryKey(voucherId), options)) {
+      while (cursor.hasNext()) {
+        Object member = cursor.next();
+        try {
+          consumer.accept(Long.parseLong(member.toString()));
+        } catch (NumberFormatException e) {
+          log.warn("忽略非法抽签报名记录: {}", member);
+        }
+      }
+    }
+  }
+
+  /**
+   * 标记开始开奖，同一活动只有一个节点能成功
+   * 
+   * @param voucherId 优惠券ID
+   * @return 是否获得开奖权
+   */
+  public boolean tryStartLotteryDraw(Long voucherId) {
+    Boolean started = shardOf(voucherId).opsForValue().setIfAbsent(lotteryDrawnKey(voucherId), "drawing",
+        LOTTERY_RETENTION_DAYS, TimeUnit.DAYS);
+    return Boolean.TRUE.equals(started);
+  }
+
+  /**
+   * 标记开奖完成，报名记录同时设置过期时间
+   * 
+   * @param voucherId 优惠券ID
+   */
+  public void finishLotteryDraw(Long voucherId) {
+    RedisTemplate<String, Object> template = shardOf(voucherId);
+    template.opsForValue().set(lotteryDrawnKey(voucherId), "done", LOTTERY_RETENTION_DAYS, TimeUnit.DAYS);
+    template.expire(lotteryKey(voucherId), LOTTERY_RETENTION_DAYS, TimeUnit.DAYS);
+  }
+
+  /**
+   * 放弃开奖（订单未写入时），允许重新开奖
+   * 
+   * @param voucherId 优惠券ID
+   */
+  public void abortLotteryDraw(Long voucherId) {
+    shardOf(voucherId).delete(lotteryDrawnKey(voucherId));
+  }
+
+  /**
+   * 获取开奖状态
+   * 
+   * @param voucherId 优惠券ID
+   * @return drawing-开奖中, done-已开奖, null-未开奖
+   */
+  public String getLotteryDrawState(Long voucherId) {
+    Object state = shardOf(voucherId).opsForValue().get(lotteryDrawnKey(voucherId));
+    return state != null ? state.toString() : null;
+  }
+
+  /**
+   * 获取中签用户的订单ID
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 订单ID，未中签时返回null
+   */
+  public Long getLotteryWinnerOrder(Long voucherId, Long userId) {
+    Object orderId = shardOf(voucherId).opsForHash().get(lotteryWinnerKey(voucherId), userId.toString());
+    return orderId != null ? Long.valueOf(orderId.toString()) : null;
+  }
+
+  /**
+   * 用管道批量写入中签结果：购买记录、用户到订单的映射（优惠券所在分片）和订单状态（订单状态连接），并扣减库存
+   * 
+   * @param voucherId           优惠券ID
+   * @param winners             userId -> orderId
+   * @param statusExpireSeconds 订单状态过期时间（秒）
+   */
+  public void saveLotteryWinners(Long voucherId, Map<Long, Long> winners, long statusExpireSeconds) {
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    RedisTemplate<String, Object> template = shardOf(voucherId);
+    byte[] orderKey = serializer.serialize(orderKey(voucherId));
+    byte[] winnerKey = serializer.serialize(lotteryWinnerKey(voucherId));
+    byte[] one = serializer.serialize("1");
+    byte[] success = serializer.serialize(String.valueOf(Order.STATUS_SUCCESS + 1));
+    byte[] statusExpire = serializer.serialize(String.valueOf(statusExpireSeconds));
+    byte[] threshold = serializer.serialize(String.valueOf(statusBitfieldThreshold));
+    loadScripts(List.of(setOrderStatusScript));
+    byte[] statusSha = serializer.serialize(setOrderStatusScript.getSha1());
+
+    List<Map.Entry<Long, Long>> entries = new ArrayList<>(winners.entrySet());
+    for (int from = 0; from < entries.size(); from += PIPELINE_BATCH_SIZE) {
+      List<Map.Entry<Long, Long>> batch = entries.subList(from, Math.min(from + PIPELINE_BATCH_SIZE, entries.size()));
+      template.executePipelined((RedisCallback<Object>) connection -> {
+        for (Map.Entry<Long, Long> winner : batch) {
+          byte[] userId = serializer.serialize(winner.getKey().toString());
+          connection.hashCommands().hSet(orderKey, userId, one);
+          connection.hashCommands().hSet(winnerKey, userId, serializer.serialize(winner.getValue().toString()));
+        }
+        return null;
+      });
+      statusRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        for (Map.Entry<Long, Long> winner : batch) {
+          connection.scriptingCommands().evalSha(statusSha, ReturnType.INTEGER, 1,
+              serializer.serialize(orderStatusKey(winner.getValue())),
+              serializer.serialize(String.valueOf(orderStatusIndex(winner.getValue()))), success,
+              statusExpire, threshold);
+        }
+        return null;
+      });
+    }
+
+    template.expire(orderKey(voucherId), 25, TimeUnit.HOURS);
+    template.expire(lotteryWinnerKey(voucherId), LOTTERY_RETENTION_DAYS, TimeUnit.DAYS);
+    if (!winners.isEmpty()) {
+      template.opsForValue().decrement(stockKey(voucherId), winners.size());
+      stockChanged(voucherId);
+    }
+    log.info("写入抽签结果 - 优惠券: {}, 中签人数: {}", voucherId, winners.size());
+  }
+
+  /**
+   * 获取指定活动的回滚日志（每个活动保留最近1000条）
+   * 
+   * @param voucherId 优惠券ID
+   * @return 回滚日志，按时间倒序
+   */
+  public List<String> getRollbackLogs(Long voucherId) {
+    List<Object> logs = adminOf(voucherId).opsForList().range(rollbackLogKey(voucherId), 0, -1);
+    List<String> result = new ArrayList<>();
+    if (logs != null) {
+      for (Object entry : logs) {
+        if (entry != null) {
+          result.add(entry.toString());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 从回滚日志中删除指定条目
+   * 
+   * @param voucherId 优惠券ID
+   * @param entries   日志条目
+   */
+  public void removeRollbackLogs(Long voucherId, List<String> entries) {
+    RedisTemplate<String, Object> template = adminOf(voucherId);
+    for (String entry : entries) {
+      template.opsForList().remove(rollbackLogKey(voucherId), 1, entry);
+    }
+  }
+
+  /**
+   * 用HSCAN遍历哈希（同一字段可能被返回多次，调用方需自行处理），按键的哈希标签路由
+   * 
+   * @param key       哈希键
+   * @param scanCount 每次HSCAN的COUNT
+   * @param consumer  字段和值处理函数
+   */
+  public void scanHash(String key, int scanCount, BiConsumer<String, String> consumer) {
+    ScanOptions options = ScanOptions.scanOptions().count(scanCount).build();
+    try (Cursor<Map.Entry<Object, Object>> cursor = redisShardRouter.adminForKey(key).opsForHash().scan(key, options)) {
+      while (cursor.hasNext()) {
+        Map.Entry<Object, Object> entry = cursor.next();
+        consumer.accept(entry.getKey().toString(), String.valueOf(entry.getValue()));
+      }
+    }
+  }
+
+  /**
+   * 遍历活动某一轮次的购买记录，各编码（订单哈希、分桶小哈希、位图）都还原为用户ID和购买数量
+   * 订单哈希用HSCAN遍历，分桶和位图键在优惠券所在节点上用SCAN按轮次前缀查找，位图按1MB分段读取
+   * 
+   * @param voucherId 优惠券ID
+   * @param epoch     活动轮次，为null时只遍历订单哈希
+   * @param scanCount 每次SCAN/HSCAN的COUNT
+   * @param consumer  用户ID和购买数量处理函数（数量为0的记录不回调）
+   * @return 遍历到的分桶和位图键
+   */
+  public List<String> scanPurchases(Long voucherId, Long epoch, int scanCount, BiConsumer<Long, Integer> consumer) {
+    String orderKey = orderKey(voucherId);
+    scanHash(orderKey, scanCount, (field, value) -> {
+      if (!field.startsWith("_")) {
+        acceptPurchase(field, value, consumer);
+      }
+    });
+
+    List<String> ledgerKeys = new ArrayList<>();
+    if (epoch == null) {
+      return ledgerKeys;
+    }
+    String prefix = orderKey + ":" + epoch + ":";
+    RedisTemplate<String, Object> template = adminOf(voucherId);
+    ledgerKeys.addAll(new java.util.LinkedHashSet<>(scanKeys(template, orderKey, prefix + "*", scanCount)));
+
+    for (String ledgerKey : ledgerKeys) {
+      String bucket = ledgerKey.substring(prefix.length());
+      if ("bits".equals(bucket)) {
+        scanBitmap(template, ledgerKey, offset -> consumer.accept(offset, 1));
+      } else {
+        // 用户ID不超过两位时桶号为0，字段即完整的用户ID
+        scanHash(ledgerKey, scanCount, (field, value) ->
+            acceptPurchase("0".equals(bucket) ? field : bucket + field, value, consumer));
+      }
+    }
+    return ledgerKeys;
+  }
+
+  /**
+   * 用UNLINK删除键，内存由Redis后台线程释放，按键的哈希标签路由
+   * 
+   * @param keys 键列表
+   * @return 删除的键数
+   */
+  public long unlinkKeys(Collection<String> keys) {
+    Map<RedisTemplate<String, Object>, List<String>> groups = new LinkedHashMap<>();
+    for (String key : keys) {
+      groups.computeIfAbsent(redisShardRouter.adminForKey(key), template -> new ArrayList<>()).add(key);
+    }
+    long total = 0;
+    for (Map.Entry<RedisTemplate<String, Object>, List<String>> group : groups.entrySet()) {
+      Long removed = group.getKey().unlink(group.getValue());
+      total += removed != null ? removed : 0;
+    }
+    return total;
+  }
+
+  /**
+   * 活动数据归档后删除订单哈希、购买时间和调试信息（轮次变化时不删除）
+   * 
+   * @param voucherId 优惠券ID
+   * @param epoch     归档时的活动轮次，活动未经脚本初始化时为null
+   * @return 删除的键数，-1表示活动已重新初始化
+   */
+  public long unlinkActivityLedger(Long voucherId, Long epoch) {
+    Long removed = adminOf(voucherId).execute(compactActivityScript,
+        java.util.Arrays.asList(orderKey(voucherId), timeKey(voucherId), debugKey(voucherId)),
+        epoch != null ? epoch.toString() : "");
+    return removed != null ? removed : -1L;
+  }
+
+  /**
+   * 在指定分片上从指定游标执行一步SCAN，找出没有过期时间且空闲足够久的键
+   * 
+   * @param shard          分片名
+   * @param cursor         SCAN游标
+   * @param pattern        匹配模式
+   * @param count          SCAN的COUNT
+   * @param minIdleSeconds 最短空闲时间（秒）
+   * @return 扫描结果
+   */
+  public IdleKeyPage scanIdleKeys(String shard, String cursor, String pattern, int count, long minIdleSeconds) {
+    List<?> result = adminTemplate(shard).execute(scanIdleKeysScript, Collections.emptyList(),
+        cursor, pattern, String.valueOf(count), String.valueOf(minIdleSeconds));
+    if (result == null || result.size() < 2) {
+      return new IdleKeyPage("0", 0, Collections.emptyList(), Collections.emptyList());
+    }
+    List<String> keys = new ArrayList<>((result.size() - 2) / 2);
+    List<Long> sizes = new ArrayList<>((result.size() - 2) / 2);
+    for (int i = 2; i + 1 < result.size(); i += 2) {
+      keys.add(result.get(i).toString());
+      sizes.add(Long.parseLong(result.get(i + 1).toString()));
+    }
+    return new IdleKeyPage(result.get(0).toString(), Integer.parseInt(result.get(1).toString()), keys, sizes);
+  }
+
+  /**
+   * 在指定分片上用一次管道逐个UNLINK键
+   * 
+   * @param shard 分片名
+   * @param keys  键列表
+   * @return 各键是否被删除，与keys按位置对应
+   */
+  public List<Boolean> unlinkPipelined(String shard, List<String> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    List<Object> results = adminTemplate(shard).executePipelined((RedisCallback<Object>) connection -> {
+      for (String key : keys) {
+        connection.keyCommands().unlink(serializer.serialize(key));
+      }
+      return null;
+    });
+    List<Boolean> removed = new ArrayList<>(results.size());
+    for (Object result : results) {
+      removed.add(result instanceof Number && ((Number) result).longValue() > 0);
+    }
+    return removed;
+  }
+
+  /**
+   * 读取键清理进度（各匹配模式的游标和累计清理量）
+   * 
+   * @return 字段 -> 值
+   */
+  public Map<String, String> getJanitorState() {
+    Map<Object, Object> entries = adminRedisTemplate.opsForHash().entries(JANITOR_STATE_KEY);
+    Map<String, String> state = new java.util.HashMap<>();
+    entries.forEach((field, value) -> state.put(field.toString(), value.toString()));
+    return state;
+  }
+
+  /**
+   * 保存键清理进度，重启后从保存的游标继续
+   * 
+   * @param pattern      匹配模式（其他分片为 模式@分片名）
+   * @param cursor       下一步的SCAN游标
+   * @param keys         本步清理的键数
+   * @param bytes        本步释放的字节数
+   * @param passFinished 本步是否完成了一轮完整扫描
+   */
+  public void saveJanitorProgress(String pattern, String cursor, long keys, long bytes, boolean passFinished) {
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    byte[] stateKey = serializer.serialize(JANITOR_STATE_KEY);
+    adminRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      connection.hashCommands().hSet(stateKey, serializer.serialize("cursor:" + pattern), serializer.serialize(cursor));
+      if (keys > 0) {
+        connection.hashCommands().hIncrBy(stateKey, serializer.serialize("keys:" + pattern), keys);
+        connection.hashCommands().hIncrBy(stateKey, serializer.serialize("bytes:" + pattern), bytes);
+      }
+      if (passFinished) {
+        connection.hashCommands().hIncrBy(stateKey, serializer.serialize("passes:" + pattern), 1);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * 抢占键清理锁，同一时刻只有一个节点清理
+   * 
+   * @param expireSeconds 锁过期时间（秒）
+   * @return 是否获得锁
+   */
+  public boolean tryLockJanitor(long expireSeconds) {
+    Boolean locked = adminRedisTemplate.opsForValue().setIfAbsent(JANITOR_LOCK_KEY, "1", expireSeconds, TimeUnit.SECONDS);
+    return Boolean.TRUE.equals(locked);
+  }
+
+  /**
+   * 释放键清理锁
+   */
+  public void unlockJanitor() {
+    adminRedisTemplate.delete(JANITOR_LOCK_KEY);
+  }
+
+  /**
+   * 抢占订单ID工作节点号
+   * 
+   * @param workerId      工作节点号
+   * @param owner         节点标识
+   * @param expireSeconds 租约时间（秒）
+   * @return 是否获得该节点号
+   */
+  public boolean tryAcquireOrderWorker(int workerId, String owner, long expireSeconds) {
+    Boolean acquired = adminRedisTemplate.opsForValue().setIfAbsent(ORDER_WORKER_KEY_PREFIX + workerId, owner,
+        expireSeconds, TimeUnit.SECONDS);
+    return Boolean.TRUE.equals(acquired);
+  }
+
+  /**
+   * 续期订单ID工作节点号（GETEX一次往返）
+   * 
+   * @param workerId      工作节点号
+   * @param owner         节点标识
+   * @param expireSeconds 租约时间（秒）
+   * @return 该节点号是否仍由owner持有
+   */
+  public boolean renewOrderWorker(int workerId, String owner, long expireSeconds) {
+    Object current = adminRedisTemplate.opsForValue().getAndExpire(ORDER_WORKER_KEY_PREFIX + workerId,
+        expireSeconds, TimeUnit.SECONDS);
+    return current != null && owner.equals(current.toString());
+  }
+
+  /**
+   * 在优惠券所在分片上采样该优惠券的键的内存占用、内部编码和过期时间（一次脚本调用）
+   * 
+   * @param voucherId 优惠券ID
+   * @param keys      该优惠券的键（带相同的哈希标签）
+   * @param samples   MEMORY USAGE对集合类型的采样元素数
+   * @return 采样结果，与keys按位置对应
+   */
+  public List<KeyUsage> inspectKeys(Long voucherId, List<String> keys, int samples) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<?> result = adminOf(voucherId).execute(inspectKeysScript, keys, String.valueOf(samples));
+    return toKeyUsages(keys, result);
+  }
+
+  /**
+   * 采样最近若干个订单状态分区（从当前分区往前），每个分区一次脚本调用，在一次管道中提交
+   * 
+   * @param count   分区数
+   * @param samples MEMORY USAGE对集合类型的采样元素数
+   * @return 采样结果，按分区从新到旧
+   */
+  public List<KeyUsage> inspectOrderStatusPartitions(int count, int samples) {
+    long current = System.currentTimeMillis() / statusPartitionMillis;
+    List<String> keys = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      keys.add("order:status:p:" + (current - i));
+    }
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    loadScripts(List.of(inspectKeysScript));
+    byte[] sha = serializer.serialize(inspectKeysScript.getSha1());
+    byte[] rawSamples = serializer.serialize(String.valueOf(samples));
+    List<Object> results = statusRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String key : keys) {
+        connection.scriptingCommands().evalSha(sha, ReturnType.MULTI, 1, serializer.serialize(key), rawSamples);
+      }
+      return null;
+    });
+
+    List<KeyUsage> usages = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      Object result = i < results.size() ? results.get(i) : null;
+      usages.addAll(toKeyUsages(keys.subList(i, i + 1), result instanceof List<?> list ? list : null));
+    }
+    return usages;
+  }
+
+  /**
+   * 活动在Redis中的主要数据结构：库存、订单哈希（购买记录和元数据）、购买时间、调试信息，
+   * 以及位图编码的购买记录（分桶编码的小哈希数量与购买人数相关，不在此列）
+   * 
+   * @param voucherId 优惠券ID
+   * @param epoch     活动轮次，为null时不包含位图
+   * @return 键名
+   */
+  public List<String> activityKeys(Long voucherId, Long epoch) {
+    List<String> keys = new ArrayList<>(List.of(stockKey(voucherId), orderKey(voucherId),
+        timeKey(voucherId), debugKey(voucherId)));
+    if (epoch != null) {
+      keys.add(orderKey(voucherId) + ":" + epoch + ":bits");
+    }
+    return keys;
+  }
+
+  /**
+   * 在优惠券所在分片上列出带该优惠券哈希标签的所有键（逐步SCAN，用于分片迁移）
+   * 
+   * @param shard     分片名
+   * @param voucherId 优惠券ID
+   * @param scanCount 每步SCAN的COUNT
+   * @return 键名（已去重）
+   */
+  public List<String> listVoucherKeys(String shard, Long voucherId, int scanCount) {
+    String tag = "{" + voucherId + "}";
+    return new ArrayList<>(new java.util.LinkedHashSet<>(
+        scanKeys(adminTemplate(shard), stockKey(voucherId), "*" + tag + "*", scanCount)));
+  }
+
+  /**
+   * 把键从一个分片复制到另一个分片（DUMP/RESTORE，保留剩余过期时间，目标键已存在时覆盖）
+   * 
+   * @param fromShard 源分片名
+   * @param toShard   目标分片名
+   * @param keys      键列表
+   * @return 复制的键数（复制期间源键已过期或被删除的不计入）
+   */
+  public int copyKeys(String fromShard, String toShard, List<String> keys) {
+    RedisSerializer<String> serializer = RedisSerializer.string();
+    RedisTemplate<String, Object> source = adminTemplate(fromShard);
+    RedisTemplate<String, Object> target = adminTemplate(toShard);
+    int copied = 0;
+    for (int from = 0; from < keys.size(); from += PIPELINE_BATCH_SIZE) {
+      List<String> batch = keys.subList(from, Math.min(from + PIPELINE_BATCH_SIZE, keys.size()));
+      // 不反序列化结果，DUMP的输出按原始字节交给RESTORE
+      List<Object> dumps = source.executePipelined((RedisCallback<Object>) connection -> {
+        for (String key : batch) {
+          byte[] rawKey = serializer.serialize(key);
+          connection.keyCommands().dump(rawKey);
+          connection.keyCommands().pTtl(rawKey);
+        }
+        return null;
+      }, null);
+
+      List<Integer> present = new ArrayList<>(batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        Object ttl = dumps.get(i * 2 + 1);
+        if (dumps.get(i * 2) instanceof byte[] && ttl instanceof Number && ((Number) ttl).longValue() != -2) {
+          present.add(i);
+        }
+      }
+      target.executePipelined((RedisCallback<Object>) connection -> {
+        for (int i : present) {
+          long ttl = ((Number) dumps.get(i * 2 + 1)).longValue();
+          connection.keyCommands().restore(serializer.serialize(batch.get(i)), Math.max(0, ttl),
+              (byte[]) dumps.get(i * 2), true);
+        }
+        return null;
+      });
+      copied += present.size();
+    }
+    return copied;
+  }
+
+  /**
+   * 统计指定分片上存在的键数
+   * 
+   * @param shard 分片名
+   * @param keys  键列表
+   * @return 存在的键数
+   */
+  public long countExistingKeys(String shard, List<String> keys) {
+    if (keys.isEmpty()) {
+      return 0;
+    }
+    Long count = adminTemplate(shard).countExistingKeys(keys);
+    return count != null ? count : 0;
+  }
+
+  /**
+   * 获取各优惠券的脚本调用计数
+   * 
+   * @return voucherId -> 计数（只读视图）
+   */
+  public Map<Long, ScriptCounters> getScriptCounters() {
+    return Collections.unmodifiableMap(scriptCounters);
+  }
+
+  /**
+   * 抢占优惠券的分片迁移锁（在主连接所在实例上，不带优惠券的哈希标签，不会被当作优惠券数据迁移）
+   * 
+   * @param voucherId     优惠券ID
+   * @param expireSeconds 锁过期时间（秒）
+   * @return 是否获得锁
+   */
+  public boolean tryLockShardMigration(Long voucherId, long expireSeconds) {
+    Boolean locked = adminRedisTemplate.opsForValue().setIfAbsent("seckill:shard:migrating:" + voucherId, "1",
+        expireSeconds, TimeUnit.SECONDS);
+    return Boolean.TRUE.equals(locked);
+  }
+
+  /**
+   * 释放分片迁移锁
+   * 
+   * @param voucherId 优惠券ID
+   */
+  public void unlockShardMigration(Long voucherId) {
+    adminRedisTemplate.delete("seckill:shard:migrating:" + voucherId);
+  }
+
+  /**
+   * 标记开始归档活动的某一轮次，同一轮次只有一个节点能成功
+   * 
+   * @param voucherId     优惠券ID
+   * @param epoch         活动轮次，活动未经脚本初始化时为null
+   * @param expireSeconds 标记过期时间（秒）
+   * @return 是否获得归档权
+   */
+  public boolean tryStartCompaction(Long voucherId, Long epoch, long expireSeconds) {
+    Boolean started = adminOf(voucherId).opsForValue().setIfAbsent(compactionKey(voucherId, epoch), "running",
+        expireSeconds, TimeUnit.SECONDS);
+    return Boolean.TRUE.equals(started);
+  }
+
+  /**
+   * 记录归档结果
+   * 
+   * @param voucherId     优惠券ID
+   * @param epoch         活动轮次
+   * @param state         done-已归档并释放内存, mismatch-归档与数据库不一致，未删除数据
+   * @param expireSeconds 标记保留时间（秒）
+   */
+  public void finishCompaction(Long voucherId, Long epoch, String state, long expireSeconds) {
+    adminOf(voucherId).opsForValue().set(compactionKey(voucherId, epoch), state, expireSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * 放弃归档，允许重试
+   * 
+   * @param voucherId 优惠券ID
+   * @param epoch     活动轮次
+   */
+  public void abortCompaction(Long voucherId, Long epoch) {
+    adminOf(voucherId).delete(compactionKey(voucherId, epoch));
+  }
+
+
+  /**
+   * 调试方法：获取Redis中的调试信息
+   * 
+   * @param voucherId 优惠券ID
+   */
+  public void debugRedisData(Long voucherId) {
+    RedisTemplate<String, Object> template = adminOf(voucherId);
+    String stockKey = stockKey(voucherId);
+    String debugKey = debugKey(voucherId);
+
+    // 直接读取库存数据
+    Object stockData = template.opsForValue().get(stockKey);
+    log.info("🔍 调试Redis数据 - 优惠券: {}", voucherId);
+    log.info("📦 库存键: {}", stockKey);
+    log.info("📦 库存原始数据: {} (类型: {})", stockData, stockData != null ? stockData.getClass().getSimpleName() : "null");
+
+    // 读取Lua脚本的详细调试信息
+    Object stockKeyUsed = template.opsForHash().get(debugKey, "stockKey");
+    Object keyExists = template.opsForHash().get(debugKey, "key_exists");
+    Object rawStock = template.opsForHash().get(debugKey, "raw_stock");
+    Object parsedStock = template.opsForHash().get(debugKey, "parsed_stock");
+    Object error = template.opsForHash().get(debugKey, "error");
+
+    log.info("🐛 === Lua脚本详细调试信息 ===");
+    log.info("🐛 脚本中使用的库存键: {}", stockKeyUsed);
+    log.info("🐛 键是否存在(EXISTS): {}", keyExists);
+    log.info("🐛 GET命令返回值: {}", rawStock);
+    log.info("🐛 tonumber解析结果: {}", parsedStock);
+    log.info("🐛 错误信息: {}", error);
+    log.info("🐛 =============================");
+  }
+
+  /**
+   * 库存键，优惠券的所有键带相同的哈希标签{voucherId}，位于同一分片（Redis Cluster中位于同一个槽）
+   */
+  public static String stockKey(Long voucherId) {
+    return tagged("seckill:stock:", voucherId);
+  }
+
+  /**
+   * 订单键（购买记录和活动元数据），分桶和位图购买记录以它为前缀
+   */
+  public static String orderKey(Long voucherId) {
+    return tagged("seckill:order:", voucherId);
+  }
+
+  /**
+   * 购买时间键
+   */
+  public static String timeKey(Long voucherId) {
+    return tagged("seckill:time:", voucherId);
+  }
+
+  /**
+   * 调试键
+   */
+  public static String debugKey(Long voucherId) {
+    return tagged("seckill:debug:", voucherId);
+  }
+
+  private static String tagged(String prefix, Object id) {
+    return prefix + "{" + id + "}";
+  }
+
+  private static String rollbackLogKey(Long voucherId) {
+    return tagged("seckill:rollback:log:", voucherId);
+  }
+
+  private static String lotteryKey(Long voucherId) {
+    return tagged("seckill:lottery:", voucherId);
+  }
+
+  private static String lotteryDrawnKey(Long voucherId) {
+    return tagged("seckill:lottery:drawn:", voucherId);
+  }
+
+  private static String lotteryWinnerKey(Long voucherId) {
+    return tagged("seckill:lottery:winner:", voucherId);
+  }
+
+  /**
+   * 优惠券所在分片的连接
+   */
+  private RedisTemplate<String, Object> shardOf(Long voucherId) {
+    return redisShardRouter.forVoucher(voucherId);
+  }
+
+  /**
+   * 优惠券所在分片的管理/日志连接
+   */
+  private RedisTemplate<String, Object> adminOf(Long voucherId) {
+    return redisShardRouter.adminForVoucher(voucherId);
+  }
+
+  /**
+   * 指定分片的管理/日志连接
+   */
+  private RedisTemplate<String, Object> adminTemplate(String shard) {
+    RedisShardRouter.Shard found = redisShardRouter.shard(shard);
+    if (found == null) {
+      throw new IllegalArgumentException("分片不存在: " + shard);
+    }
+    return found.adminTemplate();
+  }
+
+  /**
+   * 按所在分片分组，保持每组内的原始顺序
+   * 
+   * @param voucherIds 优惠券ID列表
+   * @return 分片连接 -> 在voucherIds中的位置
+   */
+  private Map<RedisTemplate<String, Object>, List<Integer>> groupByShard(List<Long> voucherIds) {
+    Map<RedisTemplate<String, Object>, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < voucherIds.size(); i++) {
+      groups.computeIfAbsent(shardOf(voucherIds.get(i)), template -> new ArrayList<>()).add(i);
+    }
+    return groups;
+  }
+
+  /**
+   * 批量读取库存键，每个分片一次MGET
+   * 
+   * @param voucherIds 优惠券ID列表
+   * @param nearCache  是否经近端缓存（只MGET未命中的键）
+   * @return 库存值，与voucherIds按位置对应，不存在时为null
+   */
+  private List<Object> multiGetStocks(List<Long> voucherIds, boolean nearCache) {
+    List<Object> values = new ArrayList<>(Collections.nCopies(voucherIds.size(), null));
+    Map<RedisShardRouter.Shard, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < voucherIds.size(); i++) {
+      groups.computeIfAbsent(redisShardRouter.shardOf(voucherIds.get(i)), shard -> new ArrayList<>()).add(i);
+    }
+    groups.forEach((shard, indexes) -> {
+      List<String> keys = new ArrayList<>(indexes.size());
+      for (int index : indexes) {
+        keys.add(stockKey(voucherIds.get(index)));
+      }
+      List<Object> shardValues = nearCache ? redisNearCache.multiGet(shard, keys) : multiGet(shard.template(), keys);
+      for (int i = 0; i < indexes.size(); i++) {
+        values.set(indexes.get(i), shardValues.get(i));
+      }
+    });
+    return values;
+  }
+
+  /**
+   * 用scan_keys.lua逐步SCAN（脚本按routeKey路由，Redis Cluster中只扫描该键所在的节点）
+   * 
+   * @param template  分片连接
+   * @param routeKey  带哈希标签的路由键
+   * @param pattern   匹配模式
+   * @param scanCount 每步SCAN的COUNT
+   * @return 匹配的键（可能有重复）
+   */
+  private List<String> scanKeys(RedisTemplate<String, Object> template, String routeKey, String pattern,
+      int scanCount) {
+    List<String> keys = new ArrayList<>();
+    List<String> routeKeys = Collections.singletonList(routeKey);
+    String cursor = "0";
+    do {
+      List<?> page = template.execute(scanKeysScript, routeKeys, cursor, pattern, String.valueOf(scanCount));
+      if (page == null || page.isEmpty()) {
+        break;
+      }
+      cursor = page.get(0).toString();
+      for (int i = 1; i < page.size(); i++) {
+        keys.add(page.get(i).toString());
+      }
+    } while (!"0".equals(cursor));
+    return keys;
+  }
+
+  private static List<KeyUsage> toKeyUsages(List<String> keys, List<?> result) {
+    List<KeyUsage> usages = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      if (result == null || result.size() < (i + 1) * 3) {
+        usages.add(new KeyUsage(keys.get(i), 0, "none", -2));
+        continue;
+      }
+      usages.add(new KeyUsage(keys.get(i), Long.parseLong(result.get(i * 3).toString()),
+          result.get(i * 3 + 1).toString(), Long.parseLong(result.get(i * 3 + 2).toString())));
+    }
+    return usages;
+  }
+
+  /**
+   * 执行订单状态脚本：开启合批时经RedisCommandBatcher与并发的其他状态命令合并写出，否则经订单状态连接逐条执行
+   */
+  private Long evalStatusScript(DefaultRedisScript<Long> script, String key, String... args) {
+    if (!redisCommandBatcher.isEnabled()) {
+      return statusRedisTemplate.execute(script, Collections.singletonList(key), (Object[]) args);
+    }
+    Function<RedisClusterAsyncCommands<String, String>, RedisFuture<Long>> command =
+        statusScriptCommand(script, key, args);
+    try {
+      return redisCommandBatcher.execute(command);
+    } catch (RedisNoScriptException e) {
+      // 脚本缓存被清空（如Redis重启），加载后重试一次
+      loadScripts(List.of(script));
+      return redisCommandBatcher.execute(command);
+    }
+  }
+
+  private static Function<RedisClusterAsyncCommands<String, String>, RedisFuture<Long>> statusScriptCommand(
+      DefaultRedisScript<Long> script, String key, String... args) {
+    String[] keys = {key};
+    return commands -> commands.evalsha(script.getSha1(), ScriptOutputType.INTEGER, keys, args);
+  }
+
+  /**
+   * 订单状态所在的分区键：订单ID = 毫秒时间戳 * 1000 + 序号，同一分区跨度内的订单共用一个位域
+   */
+  private String orderStatusKey(Long orderId) {
+    return "order:status:p:" + orderId / (statusPartitionMillis * 1000);
+  }
+
+  /**
+   * 订单在分区位域中的序号
+   */
+  private long orderStatusIndex(Long orderId) {
+    return orderId % (statusPartitionMillis * 1000);
+  }
+
+  /**
+   * 本节点修改库存后立即丢弃库存的本地副本：失效消息经另一条连接异步到达，可能晚于写入的回复，
+   * 丢弃后本节点随后的读取能读到自己的写入，其他节点以失效消息为准
+   */
+  private void stockChanged(Long voucherId) {
+    redisNearCache.invalidate(redisShardRouter.shardOf(voucherId), stockKey(voucherId));
+  }
+
+  private static Integer decodeOrderStatus(Long value) {
+    return value == null || value == 0 ? null : (int) (value - 1);
+  }
+
+  private static boolean isNoScript(Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    return cause instanceof RedisNoScriptException;
+  }
+
+  /**
+   * 执行MGET，空列表不访问Redis
+   * 
+   * @param keys 键列表
+   * @return 值列表，与keys按位置对应
+   */
+  private List<Object> multiGet(RedisTemplate<String, Object> template, List<String> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Object> values = template.opsForValue().multiGet(keys);
+    if (values == null) {
+      // 管道或事务中调用时返回null
+      return Collections.nCopies(keys.size(), null);
+    }
+    return values;
+  }
+
+  /**
+   * 解析整数值
+   * 
+   * @param value Redis中的值
+   * @return 整数，值不存在或格式异常时返回null
+   */
+  private Integer parseInteger(Object value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Integer.parseInt(value.toString());
+    } catch (NumberFormatException e) {
+      log.warn("数据格式异常: {}", value);
+      return null;
+    }
+  }
+
+
+  private ScriptCounters countersOf(Long voucherId) {
+    ScriptCounters counters = scriptCounters.get(voucherId);
+    return counters != null ? counters : scriptCounters.computeIfAbsent(voucherId, id -> new ScriptCounters());
+  }
+
+  private static String compactionKey(Long voucherId, Long epoch) {
+    return tagged("seckill:compaction:", voucherId) + ":" + (epoch != null ? epoch : 0);
+  }
+
+  private static void acceptPurchase(String userId, String count, BiConsumer<Long, Integer> consumer) {
+    try {
+      int bought = Integer.parseInt(count);
+      if (bought > 0) {
+        consumer.accept(Long.parseLong(userId), bought);
+      }
+    } catch (NumberFormatException e) {
+      log.warn("忽略非法购买记录: {}={}", userId, count);
+    }
+  }
+
+  /**
+   * 按1MB分段读取位图，回调每个置位的偏移量
+   */
+  private void scanBitmap(RedisTemplate<String, Object> template, String key, LongConsumer consumer) {
+    byte[] rawKey = RedisSerializer.string().serialize(key);
+    int chunkSize = 1 << 20;
+    for (long start = 0; ; start += chunkSize) {
+      long from = start;
+      byte[] chunk = template.execute((RedisCallback<byte[]>) connection ->
+          connection.stringCommands().getRange(rawKey, from, from + chunkSize - 1));
+      if (chunk == null || chunk.length == 0) {
+        return;
+      }
+      for (int i = 0; i < chunk.length; i++) {
+        int bits = chunk[i] & 0xff;
+        while (bits != 0) {
+          int bit = Integer.numberOfLeadingZeros(bits) - 24;
+          consumer.accept((from + i) * 8 + bit);
+          bits &= ~(0x80 >>> bit);
+        }
+      }
+      if (chunk.length < chunkSize) {
+        return;
+      }
+    }
+  }
+
+  private static String rebuildKey(Long voucherId) {
+    return orderKey(voucherId) + ":rebuild";
+  }
+
+  private static List<String> initKeys(Long voucherId) {
+    return java.util.Arrays.asList(
+        stockKey(voucherId),
+        orderKey(voucherId),
+        timeKey(voucherId),
+        tagged("seckill:epoch:", voucherId));
+  }
+
+  /**
+   * 秒杀脚本执行结果
+   *
+   * @param code  0-成功, 1-库存不足, 2-超过限购, -1-脚本执行异常
+   * @param epoch 执行时的活动轮次，活动未经初始化时为0
+   */
+  public record DeductResult(Long code, long epoch) {
+  }
+
+  /**
+   * 活动轮次
+   *
+   * @param current 当前轮次，活动未经初始化（或购买记录已丢失）时为null
+   * @param carried 从数据库恢复前的轮次，*表示轮次计数器也已丢失（任何更早的轮次），未经恢复时为null
+   */
+  public record ActivityEpoch(Long current, String carried) {
+
+    /**
+     * 订单消息的轮次是否为恢复前的轮次
+     */
+    public boolean isCarried(long epoch) {
+      if (carried == null || current == null || epoch >= current) {
+        return false;
+      }
+      return "*".equals(carried) || carried.equals(Long.toString(epoch));
+    }
+  }
+
+  /**
+   * 批量初始化参数
+   *
+   * @param voucherId     优惠券ID
+   * @param stock         库存数量
+   * @param expireSeconds 库存过期时间（秒）
+   * @param encoding      购买记录编码，为null时由调用方决定
+   */
+  public record StockInit(Long voucherId, int stock, long expireSeconds, LedgerEncoding encoding) {
+
+    public StockInit(Long voucherId, int stock, long expireSeconds) {
+      this(voucherId, stock, expireSeconds, null);
+    }
+  }
+
+  /**
+   * 键内存采样结果
+   * 
+   * @param key      键名
+   * @param bytes    占用字节数（MEMORY USAGE，集合类型为采样估算值），键不存在时为0
+   * @param encoding 内部编码，键不存在时为none
+   * @param ttl      剩余过期时间（秒），-1表示没有过期时间，-2表示键不存在
+   */
+  public record KeyUsage(String key, long bytes, String encoding, long ttl) {
+  }
+
+  /**
+   * 用户购买记录的位置
+   *
+   * @param key   购买记录所在的键
+   * @param field 哈希字段，位图记录为null
+   */
+  private record BoughtRecord(String key, String field) {
+  }
+
+  /**
+   * 单个优惠券的脚本调用计数（LongAdder按线程分段计数，高并发下不争抢同一缓存行）
+   */
+  public static final class ScriptCounters {
+    private final LongAdder seckillCalls = new LongAdder();
+    private final LongAdder seckillSuccess = new LongAdder();
+    private final LongAdder seckillOutOfStock = new LongAdder();
+    private final LongAdder seckillLimitExceeded = new LongAdder();
+    private final LongAdder seckillErrors = new LongAdder();
+    private final LongAdder rollbackCalls = new LongAdder();
+    private final LongAdder staleRollbacks = new LongAdder();
+    private final LongAdder rollbackErrors = new LongAdder();
+    private final LongAdder restockCalls = new LongAdder();
+
+    private void recordSeckill(long code) {
+      if (code == 0) {
+        seckillSuccess.increment();
+      } else if (code == 1) {
+        seckillOutOfStock.increment();
+      } else if (code == 2) {
+        seckillLimitExceeded.increment();
+      } else {
+        seckillErrors.increment();
+      }
+    }
+
+    /**
+     * 访问库存和订单键的脚本调用总数
+     */
+    public long totalCalls() {
+      return seckillCalls.sum() + rollbackCalls.sum() + restockCalls.sum();
+    }
+
+    /**
+     * 计数快照
+     */
+    public Map<String, Object> snapshot() {
+      Map<String, Object> snapshot = new java.util.HashMap<>();
+      snapshot.put("seckillCalls", seckillCalls.sum());
+      snapshot.put("seckillSuccess", seckillSuccess.sum());
+      snapshot.put("seckillOutOfStock", seckillOutOfStock.sum());
+      snapshot.put("seckillLimitExceeded", seckillLimitExceeded.sum());
+      snapshot.put("seckillErrors", seckillErrors.sum());
+      snapshot.put("rollbackCalls", rollbackCalls.sum());
+      snapshot.put("staleRollbacks", staleRollbacks.sum());
+      snapshot.put("rollbackErrors", rollbackErrors.sum());
+      snapshot.put("restockCalls", restockCalls.sum());
+      return snapshot;
+    }
+  }
+
+  /**
+   * 键清理的单步扫描结果
+   * 
+   * @param cursor  下一步的SCAN游标，"0"表示完成一轮完整扫描
+   * @param scanned 本步扫描到的匹配键数
+   * @param keys    可清理的键
+   * @param sizes   可清理键的占用字节数，与keys按位置对应
+   */
+  public record IdleKeyPage(String cursor, int scanned, List<String> keys, List<Long> sizes) {
+  }
+
+  /**
+   * 购买记录编码
+   */
+  public enum LedgerEncoding {
+    /**
+     * 订单哈希中每个用户一个字段
+     */
+    HASH("h"),
+    /**
+     * 按用户ID十进制前缀分桶的小哈希，每桶100个用户，低于默认的hash-max-listpack-entries(128)
+     */
+    BUCKET("b"),
+    /**
+     * 以用户ID为偏移量的位图，仅用于限购1件的活动
+     */
+    BITMAP("m");
+
+    private final String code;
+
+    LedgerEncoding(String code) {
+      this.code = code;
+    }
+
+    public String code() {
+      return code;
+    }
+
+    public static LedgerEncoding fromCode(String code) {
+      for (LedgerEncoding encoding : values()) {
+        if (encoding.code.equals(code)) {
+          return encoding;
+        }
+      }
+      return HASH;
+    }
+  }
 }
@@ -0,0 +1,421 @@
+package com.seckill.service;
+
+import com.seckill.cache.CacheInvalidationEvent;
+import com.seckill.cache.CacheInvalidationService;
+import com.seckill.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Redis分片路由
+ *
+ * 按优惠券ID在一致性哈希环上选择分片，同一优惠券的库存、订单、购买时间等键带相同的哈希标签{voucherId}，
+ * 始终位于同一分片（分片为Redis Cluster时位于同一个槽），秒杀脚本不会跨分片或跨槽。
+ * 未配置分片时环上只有主连接，路由结果与单机部署相同。
+ *
+ * 活动初始化时把优惠券的分片写入主连接上的分片目录，之后即使增加分片、哈希环变化，已有优惠券仍留在原分片，
+ * 直到由ShardMigrationService在活动未进行时显式迁移；目录变更通过缓存失效广播通知各节点。
+ * 不属于某个优惠券的数据（订单状态分区、键清理进度、分片目录等）始终在主连接上。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class RedisShardRouter {
+
+  /**
+   * 主连接（spring.data.redis）在环上的分片名
+   */
+  public static final String PRIMARY = "primary";
+
+  /**
+   * 分片目录：voucherId -> 分片名
+   */
+  private static final String DIRECTORY_KEY = "seckill:shard:directory";
+
+  @Resource
+  private RedisTemplate<String, Object> redisTemplate;
+
+  @Resource
+  private RedisTemplate<String, Object> adminRedisTemplate;
+
+  @Resource
+  private CacheInvalidationService cacheInvalidationService;
+
+  /**
+   * 额外的分片，多个用逗号分隔，格式 name=redis://[:password@]host:port[/database]，
+   * Redis Cluster分片为 name=cluster://[:password@]host:port+host:port
+   */
+  @Value("${seckill.redis-shards.nodes:}")
+  private String nodes;
+
+  /**
+   * 主连接是否作为分片承载优惠券数据
+   */
+  @Value("${seckill.redis-shards.include-primary:true}")
+  private boolean includePrimary;
+
+  /**
+   * 每个分片在哈希环上的虚拟节点数
+   */
+  @Value("${seckill.redis-shards.virtual-nodes:160}")
+  private int virtualNodes;
+
+  /**
+   * 分片连接的命令超时（毫秒）
+   */
+  @Value("${seckill.redis-shards.timeout-ms:3000}")
+  private long timeoutMillis;
+
+  /**
+   * 分片管理/日志连接的命令超时（毫秒），与主连接的管理/日志连接相同
+   */
+  @Value("${seckill.redis-lanes.admin.timeout-ms:10000}")
+  private long adminTimeoutMillis;
+
+  /**
+   * 分片名 -> 分片，按配置顺序
+   */
+  private final Map<String, Shard> shards = new LinkedHashMap<>();
+
+  /**
+   * 哈希环：位置 -> 分片名
+   */
+  private final TreeMap<Long, String> ring = new TreeMap<>();
+
+  /**
+   * 分片目录的本地副本：voucherId -> 分片名
+   */
+  private final ConcurrentHashMap<Long, String> directory = new ConcurrentHashMap<>();
+
+  /**
+   * 路由结果缓存：voucherId -> 分片，目录变更时清除
+   */
+  private final ConcurrentHashMap<Long, Shard> routes = new ConcurrentHashMap<>();
+
+  /**
+   * 为分片自建的连接工厂
+   */
+  private final List<LettuceConnectionFactory> ownedFactories = new ArrayList<>();
+
+  @PostConstruct
+  public void init() {
+    boolean primaryCluster = redisTemplate.getConnectionFactory() instanceof LettuceConnectionFactory factory
+        && factory.isClusterAware();
+    shards.put(PRIMARY, new Shard(PRIMARY, "spring.data.redis", primaryCluster, redisTemplate, adminRedisTemplate));
+    for (String spec : nodes.split(",")) {
+      if (!spec.isBlank()) {
+        Shard shard = createShard(spec.trim());
+        if (shards.putIfAbsent(shard.name(), shard) != null) {
+          throw new IllegalStateException("分片名重复: " + shard.name());
+        }
+      }
+    }
+    for (Shard shard : shards.values()) {
+      if (!PRIMARY.equals(shard.name()) || includePrimary || shards.size() == 1) {
+        for (int i = 0; i < virtualNodes; i++) {
+          ring.put(mix(mix(shard.name().hashCode()) + i), shard.name());
+        }
+      }
+    }
+    cacheInvalidationService.addListener(this::onInvalidation);
+    // 哈希环变化后，未加载目录前的路由可能指向错误的分片，启动时先同步一次
+    refreshDirectory();
+    log.info("Redis分片路由初始化完成 - 分片: {}, 虚拟节点: {}", shards.keySet(), ring.size());
+  }
+
+  @PreDestroy
+  public void destroy() {
+    for (LettuceConnectionFactory factory : ownedFactories) {
+      factory.destroy();
+    }
+  }
+
+  /**
+   * 定期同步分片目录（广播丢失时兜底），Redis不可用时保留本地副本
+   */
+  @Scheduled(initialDelayString = "${seckill.redis-shards.directory-refresh-ms:30000}",
+      fixedDelayString = "${seckill.redis-shards.directory-refresh-ms:30000}")
+  public void refreshDirectory() {
+    try {
+      Map<Object, Object> entries = adminRedisTemplate.opsForHash().entries(DIRECTORY_KEY);
+      Map<Long, String> loaded = new HashMap<>();
+      entries.forEach((voucherId, shard) -> loaded.put(Long.valueOf(voucherId.toString()), shard.toString()));
+      directory.keySet().retainAll(loaded.keySet());
+      directory.putAll(loaded);
+      routes.clear();
+    } catch (Exception e) {
+      log.warn("同步分片目录失败: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * 优惠券所在分片的连接
+   *
+   * @param voucherId 优惠券ID
+   * @return RedisTemplate
+   */
+  public RedisTemplate<String, Object> forVoucher(Long voucherId) {
+    return shardOf(voucherId).template();
+  }
+
+  /**
+   * 按键的哈希标签路由：标签为优惠券ID时路由到优惠券所在分片，否则为主连接
+   *
+   * @param key 键名
+   * @return RedisTemplate
+   */
+  public RedisTemplate<String, Object> forKey(String key) {
+    Long voucherId = voucherIdOf(key);
+    return voucherId != null ? forVoucher(voucherId) : redisTemplate;
+  }
+
+  /**
+   * 主连接
+   */
+  public RedisTemplate<String, Object> primary() {
+    return redisTemplate;
+  }
+
+  /**
+   * 优惠券所在分片的管理/日志连接
+   *
+   * @param voucherId 优惠券ID
+   * @return RedisTemplate
+   */
+  public RedisTemplate<String, Object> adminForVoucher(Long voucherId) {
+    return shardOf(voucherId).adminTemplate();
+  }
+
+  /**
+   * 按键的哈希标签路由到管理/日志连接，规则同forKey
+   *
+   * @param key 键名
+   * @return RedisTemplate
+   */
+  public RedisTemplate<String, Object> adminForKey(String key) {
+    Long voucherId = voucherIdOf(key);
+    return voucherId != null ? adminForVoucher(voucherId) : adminRedisTemplate;
+  }
+
+  /**
+   * 优惠券所在分片
+   *
+   * @param voucherId 优惠券ID
+   * @return 分片
+   */
+  public Shard shardOf(Long voucherId) {
+    Shard shard = routes.get(voucherId);
+    if (shard != null) {
+      return shard;
+    }
+    String name = directory.get(voucherId);
+    shard = name != null ? shards.get(name) : null;
+    if (shard == null) {
+      if (name != null) {
+        log.warn("分片目录中的分片未配置，按哈希环路由 - 优惠券: {}, 分片: {}", voucherId, name);
+      }
+      shard = shards.get(ringOwner(voucherId));
+    }
+    routes.put(voucherId, shard);
+    return shard;
+  }
+
+  /**
+   * 按当前哈希环计算优惠券应在的分片（不考虑分片目录）
+   *
+   * @param voucherId 优惠券ID
+   * @return 分片名
+   */
+  public String ringOwner(Long voucherId) {
+    Map.Entry<Long, String> entry = ring.ceilingEntry(mix(voucherId));
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  /**
+   * 把优惠券固定在当前所在的分片（活动初始化时调用），已在目录中时不做修改
+   * 只有主连接时也写入目录，之后增加分片不会改变已有优惠券的位置
+   *
+   * @param voucherId 优惠券ID
+   */
+  public void pin(Long voucherId) {
+    if (directory.containsKey(voucherId)) {
+      return;
+    }
+    String name = shardOf(voucherId).name();
+    redisTemplate.opsForHash().putIfAbsent(DIRECTORY_KEY, voucherId.toString(), name);
+    Object current = redisTemplate.opsForHash().get(DIRECTORY_KEY, voucherId.toString());
+    String pinned = current != null ? current.toString() : name;
+    directory.put(voucherId, pinned);
+    if (!pinned.equals(name)) {
+      // 其他节点已按更新的目录固定到别的分片
+      routes.remove(voucherId);
+    }
+  }
+
+  /**
+   * 更新优惠券所在的分片（迁移完成后调用）并通知所有节点
+   *
+   * @param voucherId 优惠券ID
+   * @param shardName 分片名
+   */
+  public void reassign(Long voucherId, String shardName) {
+    if (!shards.containsKey(shardName)) {
+      throw new IllegalArgumentException("分片不存在: " + shardName);
+    }
+    redisTemplate.opsForHash().put(DIRECTORY_KEY, voucherId.toString(), shardName);
+    directory.put(voucherId, shardName);
+    routes.remove(voucherId);
+    cacheInvalidationService.publish(CacheInvalidationEvent.shard(voucherId));
+  }
+
+  /**
+   * 分片目录中所在分片与哈希环不一致的优惠券（增加或移除分片后待迁移）
+   *
+   * @return voucherId -> 目标分片名
+   */
+  public Map<Long, String> pendingMigrations() {
+    Map<Long, String> pending = new TreeMap<>();
+    directory.forEach((voucherId, name) -> {
+      String owner = ringOwner(voucherId);
+      if (!owner.equals(name)) {
+        pending.put(voucherId, owner);
+      }
+    });
+    return pending;
+  }
+
+  /**
+   * 所有分片，按配置顺序（第一个为主连接）
+   */
+  public List<Shard> shards() {
+    return new ArrayList<>(shards.values());
+  }
+
+  /**
+   * 按名称获取分片
+   *
+   * @param name 分片名
+   * @return 分片，不存在时返回null
+   */
+  public Shard shard(String name) {
+    return shards.get(name);
+  }
+
+  /**
+   * 获取分片路由统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Long> assigned = directory.values().stream()
+        .collect(Collectors.groupingBy(name -> name, TreeMap::new, Collectors.counting()));
+    List<Map<String, Object>> shardList = new ArrayList<>();
+    for (Shard shard : shards.values()) {
+      Map<String, Object> item = new HashMap<>();
+      item.put("name", shard.name());
+      item.put("endpoint", shard.endpoint());
+      item.put("cluster", shard.cluster());
+      item.put("inRing", ring.containsValue(shard.name()));
+      item.put("pinnedVouchers", assigned.getOrDefault(shard.name(), 0L));
+      shardList.add(item);
+    }
+
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("shards", shardList);
+    stats.put("virtualNodes", virtualNodes);
+    stats.put("pinnedVouchers", directory.size());
+    stats.put("pendingMigrations", pendingMigrations().size());
+    return stats;
+  }
+
+  /**
+   * 键的哈希标签为优惠券ID时返回优惠券ID
+   *
+   * @param key 键名
+   * @return 优惠券ID，没有哈希标签或标签不是数字时返回null
+   */
+  static Long voucherIdOf(String key) {
+    int start = key.indexOf('{');
+    int end = start >= 0 ? key.indexOf('}', start + 1) : -1;
+    if (end <= start + 1) {
+      return null;
+    }
+    for (int i = start + 1; i < end; i++) {
+      if (!Character.isDigit(key.charAt(i))) {
+        return null;
+      }
+    }
+    return Long.valueOf(key.substring(start + 1, end));
+  }
+
+  private void onInvalidation(CacheInvalidationEvent event) {
+    if (!CacheInvalidationEvent.TYPE_SHARD.equals(event.type())) {
+      return;
+    }
+    try {
+      Object name = redisTemplate.opsForHash().get(DIRECTORY_KEY, event.voucherId().toString());
+      if (name != null) {
+        directory.put(event.voucherId(), name.toString());
+      } else {
+        directory.remove(event.voucherId());
+      }
+    } finally {
+      routes.remove(event.voucherId());
+    }
+  }
+
+  private Shard createShard(String spec) {
+    int separator = spec.indexOf('=');
+    if (separator <= 0) {
+      throw new IllegalArgumentException("分片配置格式错误: " + spec);
+    }
+    String name = spec.substring(0, separator).trim();
+    String uri = spec.substring(separator + 1).trim();
+    // 秒杀脚本和管理/日志操作在同一分片上也使用各自的连接
+    LettuceConnectionFactory factory = RedisConfig.createConnectionFactory(uri, timeoutMillis);
+    LettuceConnectionFactory adminFactory = RedisConfig.createConnectionFactory(uri, adminTimeoutMillis);
+    ownedFactories.add(factory);
+    ownedFactories.add(adminFactory);
+    String endpoint = uri.replaceFirst("//[^@/]*@", "//");
+    return new Shard(name, endpoint, uri.startsWith("cluster://"), RedisConfig.createTemplate(factory),
+        RedisConfig.createTemplate(adminFactory));
+  }
+
+  private static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Redis分片
+   *
+   * @param name          分片名
+   * @param endpoint      连接地址（不含密码）
+   * @param cluster       是否为Redis Cluster
+   * @param template      分片的RedisTemplate（秒杀脚本）
+   * @param adminTemplate 分片的管理/日志连接（扫描、回滚日志、采样、迁移）
+   */
+  public record Shard(String name, String endpoint, boolean cluster, RedisTemplate<String, Object> template,
+                      RedisTemplate<String, Object> adminTemplate) {
+  }
+}
@@ -0,0 +1,229 @@
+package com.seckill.service;
+
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis内存与热点键统计服务
+ *
+ * 定期对进行中活动的库存、订单哈希、购买时间、调试信息和位图购买记录（每个优惠券在其所在分片上一次只读脚本），
+ * 以及最近的订单状态分区，采样MEMORY USAGE、内部编码和过期时间；结合RedisService中按优惠券分段计数的脚本调用次数，
+ * 计算每个优惠券的调用速率，标记调用速率超过阈值的热点键和占用超过阈值的大键，并按分片汇总内存和调用速率，
+ * 用于估算Redis容量，并在热点优惠券压垮单个分片前发现它。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class RedisUsageService {
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private RedisShardRouter redisShardRouter;
+
+  /**
+   * MEMORY USAGE对集合类型的采样元素数
+   */
+  @Value("${seckill.redis-usage.memory-samples:5}")
+  private int memorySamples;
+
+  /**
+   * 采样的订单状态分区数（从当前分区往前）
+   */
+  @Value("${seckill.redis-usage.status-partitions:50}")
+  private int statusPartitions;
+
+  /**
+   * 热点键阈值：单个优惠券每秒脚本调用次数
+   */
+  @Value("${seckill.redis-usage.hot-ops-per-second:5000}")
+  private double hotOpsPerSecond;
+
+  /**
+   * 大键阈值（字节）
+   */
+  @Value("${seckill.redis-usage.big-key-bytes:10485760}")
+  private long bigKeyBytes;
+
+  /**
+   * voucherId -> 上次采样时的脚本调用总数
+   */
+  private final ConcurrentHashMap<Long, Long> lastCalls = new ConcurrentHashMap<>();
+  private volatile long lastSampleMillis = -1;
+  private volatile Map<String, Object> lastReport;
+
+  /**
+   * 定期采样
+   */
+  @Scheduled(initialDelayString = "${seckill.redis-usage.sample-interval-ms:30000}",
+      fixedDelayString = "${seckill.redis-usage.sample-interval-ms:30000}")
+  public void scheduledSample() {
+    try {
+      sample();
+    } catch (Exception e) {
+      log.warn("Redis内存采样失败: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * 采样进行中活动和最近有脚本调用的优惠券
+   *
+   * @return 采样报告
+   */
+  public synchronized Map<String, Object> sample() {
+    long now = System.currentTimeMillis();
+    double elapsedSeconds = lastSampleMillis > 0 ? Math.max(0.001, (now - lastSampleMillis) / 1000.0) : 0;
+
+    Map<Long, RedisService.ScriptCounters> counters = redisService.getScriptCounters();
+    TreeSet<Long> voucherIds = new TreeSet<>();
+    for (ActivityConfig activity : activityRegistry.list()) {
+      if (activity.stateAt(now) == ActivityConfig.State.ACTIVE) {
+        voucherIds.add(activity.voucherId());
+      }
+    }
+    counters.forEach((voucherId, counter) -> {
+      if (counter.totalCalls() != lastCalls.getOrDefault(voucherId, 0L)) {
+        voucherIds.add(voucherId);
+      }
+    });
+
+    List<Map<String, Object>> vouchers = new ArrayList<>();
+    List<Map<String, Object>> hotKeys = new ArrayList<>();
+    List<Map<String, Object>> bigKeys = new ArrayList<>();
+    Map<String, long[]> shardTotals = new LinkedHashMap<>();
+    for (RedisShardRouter.Shard shard : redisShardRouter.shards()) {
+      shardTotals.put(shard.name(), new long[3]);
+    }
+    long totalBytes = 0;
+    for (Long voucherId : voucherIds) {
+      // 同一优惠券的键带相同的哈希标签，在其所在分片上一次脚本调用采样
+      List<String> activityKeys = redisService.activityKeys(voucherId, redisService.getActivityEpoch(voucherId));
+      List<RedisService.KeyUsage> voucherUsages = redisService.inspectKeys(voucherId, activityKeys, memorySamples);
+      String shard = redisShardRouter.shardOf(voucherId).name();
+
+      long bytes = 0;
+      List<Map<String, Object>> structures = new ArrayList<>();
+      for (RedisService.KeyUsage usage : voucherUsages) {
+        if ("none".equals(usage.encoding())) {
+          continue;
+        }
+        bytes += usage.bytes();
+        structures.add(describe(usage));
+        if (usage.bytes() >= bigKeyBytes) {
+          bigKeys.add(describe(usage));
+        }
+      }
+      totalBytes += bytes;
+
+      RedisService.ScriptCounters counter = counters.get(voucherId);
+      long calls = counter != null ? counter.totalCalls() : 0;
+      Long previous = lastCalls.put(voucherId, calls);
+      double opsPerSecond = elapsedSeconds > 0 && previous != null ? (calls - previous) / elapsedSeconds : 0;
+
+      long[] shardTotal = shardTotals.computeIfAbsent(shard, name -> new long[3]);
+      shardTotal[0] += bytes;
+      shardTotal[1] += Math.round(opsPerSecond);
+      shardTotal[2]++;
+
+      Map<String, Object> voucher = new HashMap<>();
+      voucher.put("voucherId", voucherId);
+      voucher.put("shard", shard);
+      voucher.put("bytes", bytes);
+      voucher.put("structures", structures);
+      voucher.put("opsPerSecond", Math.round(opsPerSecond));
+      voucher.put("scripts", counter != null ? counter.snapshot() : Map.of());
+      vouchers.add(voucher);
+
+      // 每次秒杀脚本都访问库存键和订单哈希，调用速率即这两个键的访问速率
+      if (opsPerSecond >= hotOpsPerSecond) {
+        Map<String, Object> hot = new HashMap<>();
+        hot.put("voucherId", voucherId);
+        hot.put("shard", shard);
+        hot.put("keys", List.of(RedisService.stockKey(voucherId), RedisService.orderKey(voucherId)));
+        hot.put("opsPerSecond", Math.round(opsPerSecond));
+        hotKeys.add(hot);
+        log.warn("发现热点优惠券 - 优惠券: {}, 脚本调用: {}/秒", voucherId, Math.round(opsPerSecond));
+      }
+    }
+    vouchers.sort((a, b) -> Long.compare((Long) b.get("bytes"), (Long) a.get("bytes")));
+
+    List<Map<String, Object>> shards = new ArrayList<>();
+    shardTotals.forEach((name, total) -> {
+      Map<String, Object> shard = new HashMap<>();
+      shard.put("shard", name);
+      shard.put("bytes", total[0]);
+      shard.put("opsPerSecond", total[1]);
+      shard.put("vouchers", total[2]);
+      shards.add(shard);
+    });
+
+    long statusBytes = 0;
+    int statusKeysFound = 0;
+    Map<String, Integer> statusEncodings = new HashMap<>();
+    List<RedisService.KeyUsage> statusUsages = redisService.inspectOrderStatusPartitions(statusPartitions, memorySamples);
+    for (RedisService.KeyUsage usage : statusUsages) {
+      if ("none".equals(usage.encoding())) {
+        continue;
+      }
+      statusKeysFound++;
+      statusBytes += usage.bytes();
+      statusEncodings.merge(usage.encoding(), 1, Integer::sum);
+      if (usage.bytes() >= bigKeyBytes) {
+        bigKeys.add(describe(usage));
+      }
+    }
+    Map<String, Object> orderStatus = new HashMap<>();
+    orderStatus.put("sampledPartitions", statusUsages.size());
+    orderStatus.put("existingPartitions", statusKeysFound);
+    orderStatus.put("bytes", statusBytes);
+    orderStatus.put("encodings", statusEncodings);
+
+    Map<String, Object> report = new HashMap<>();
+    report.put("sampledAt", now);
+    report.put("intervalSeconds", elapsedSeconds);
+    report.put("totalBytes", totalBytes);
+    report.put("vouchers", vouchers);
+    report.put("shards", shards);
+    report.put("orderStatus", orderStatus);
+    report.put("hotKeys", hotKeys);
+    report.put("bigKeys", bigKeys);
+    lastSampleMillis = now;
+    lastReport = report;
+    return report;
+  }
+
+  /**
+   * 获取最近一次采样报告，尚未采样时立即采样
+   */
+  public Map<String, Object> getReport() {
+    Map<String, Object> report = lastReport;
+    return new HashMap<>(report != null ? report : sample());
+  }
+
+  private static Map<String, Object> describe(RedisService.KeyUsage usage) {
+    Map<String, Object> structure = new HashMap<>();
+    structure.put("key", usage.key());
+    structure.put("bytes", usage.bytes());
+    structure.put("encoding", usage.encoding());
+    structure.put("ttl", usage.ttl());
+    return structure;
+  }
+}
@@ -1,15 +1,31 @@
 package com.seckill.service;
 
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import com.seckill.cache.LimitReachedCache;
+import com.seckill.cache.PenetrationGuard;
 import com.seckill.dto.OrderMessage;
 import com.seckill.dto.SeckillRequest;
 import com.seckill.dto.SeckillResponse;
+import com.seckill.limiter.AdaptiveConcurrencyLimiter;
+import com.seckill.mapper.CouponMapper;
 import com.seckill.mq.producer.OrderProducer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 秒杀核心业务服务
@@ -26,47 +42,174 @@ public class SeckillService {
   @Resource
   private OrderProducer orderProducer;
 
+  @Resource
+  private LimitReachedCache limitReachedCache;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private PenetrationGuard penetrationGuard;
+
+  @Resource
+  private OrderIdGenerator orderIdGenerator;
+
+  @Resource
+  private OrderStatusNotifier orderStatusNotifier;
+
+  @Resource
+  private WaitingRoomService waitingRoomService;
+
+  @Resource
+  private PurchaseTokenService purchaseTokenService;
+
+  @Resource
+  private CouponMapper couponMapper;
+
+  @Resource
+  private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+  /**
+   * 批量查询单次允许的最大ID个数
+   */
+  @Value("${seckill.batch.max-size:500}")
+  private int batchMaxSize;
+
+  /**
+   * 购买记录编码：auto-限购1件的活动用位图，其余用分桶小哈希；bucket-全部分桶；hash-每用户一个字段
+   */
+  @Value("${seckill.ledger.encoding:auto}")
+  private String ledgerEncoding;
+
+  /**
+   * 本节点在途秒杀请求表（single-flight）：同一用户对同一优惠券的并发请求只执行一次Lua脚本
+   */
+  private final ConcurrentHashMap<InFlightKey, CompletableFuture<SeckillResponse>> inFlightRequests =
+      new ConcurrentHashMap<>();
+
+  /**
+   * 被合并的重复请求数
+   */
+  private final LongAdder collapsedCount = new LongAdder();
+
   /**
    * 执行秒杀
+   * 相同{userId, voucherId}且携带相同排队凭证和购买凭证的并发请求挂靠到正在执行的请求上，共享同一个响应；
+   * 凭证不同的请求校验结果可能不同，不合并
    * 
    * @param request 秒杀请求
    * @return 秒杀响应
    */
   public SeckillResponse doSeckill(SeckillRequest request) {
-    Long userId = request.getUserId();
-    Long voucherId = request.getVoucherId();
-    Integer limit = request.getLimit();
+    InFlightKey key = new InFlightKey(request.getVoucherId(), request.getUserId(),
+        request.getQueueToken(), request.getPurchaseToken());
+    CompletableFuture<SeckillResponse> future = new CompletableFuture<>();
 
-    try {
-      // 1. 执行Redis Lua脚本进行库存检查和扣减
-      Long result = redisService.executeSeckill(voucherId, userId, limit);
+    CompletableFuture<SeckillResponse> existing = inFlightRequests.putIfAbsent(key, future);
+    if (existing != null) {
+      collapsedCount.increment();
+      log.info("合并重复秒杀请求 - 用户: {}, 优惠券: {}", request.getUserId(), request.getVoucherId());
+      return existing.join();
+    }
 
-      // 2. 根据脚本执行结果返回响应
-      switch (result.intValue()) {
-        case 0: // 成功
-          // 生成订单ID
-          Long orderId = generateOrderId();
+    try {
+      SeckillResponse response = executeSeckill(request);
+      future.complete(response);
+      return response;
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      // 完成后立即移除，之后到达的请求重新执行
+      inFlightRequests.remove(key, future);
+    }
+  }
 
-          // 设置订单初始状态为处理中
-          redisService.setOrderStatus(orderId, 0, 300); // 5分钟过期
+  /**
+   * 获取请求合并统计
+   * 
+   * @return 在途请求数和被合并的请求数
+   */
+  public Map<String, Object> getSingleFlightStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("inFlight", inFlightRequests.size());
+    stats.put("collapsedCount", collapsedCount.sum());
+    return stats;
+  }
 
-          // 发送异步消息到MQ进行订单处理
-          sendOrderMessage(userId, voucherId, orderId);
+  /**
+   * 执行一次秒杀（库存扣减 + 发送订单消息）
+   * 
+   * @param request 秒杀请求
+   * @return 秒杀响应
+   */
+  private SeckillResponse executeSeckill(SeckillRequest request) {
+    Long userId = request.getUserId();
+    Long voucherId = request.getVoucherId();
+    Integer limit = request.getLimit();
 
-          log.info("秒杀成功 - 用户: {}, 优惠券: {}, 订单: {}", userId, voucherId, orderId);
-          return SeckillResponse.success(orderId);
+    try {
+      // 布隆过滤器拦截不存在的优惠券
+      if (!penetrationGuard.mightContainVoucher(voucherId)) {
+        return SeckillResponse.activityNotFound();
+      }
 
-        case 1: // 库存不足
-          log.warn("秒杀失败-库存不足 - 用户: {}, 优惠券: {}", userId, voucherId);
-          return SeckillResponse.stockNotEnough();
+      // 本地校验活动是否存在、是否在时间窗口内，限购数量以服务端配置为准
+      if (activityRegistry.isReady()) {
+        ActivityConfig activity = activityRegistry.get(voucherId);
+        if (activity == null) {
+          activityRegistry.recordRejection(ActivityRegistry.RejectReason.UNKNOWN);
+          log.debug("秒杀失败-活动不存在 - 用户: {}, 优惠券: {}", userId, voucherId);
+          return SeckillResponse.activityNotFound();
+        }
+        switch (activity.stateAt(System.currentTimeMillis())) {
+          case NOT_STARTED:
+            activityRegistry.recordRejection(ActivityRegistry.RejectReason.NOT_STARTED);
+            return SeckillResponse.activityNotStarted();
+          case ENDED:
+            activityRegistry.recordRejection(ActivityRegistry.RejectReason.ENDED);
+            return SeckillResponse.activityEnded();
+          default:
+            break;
+        }
+        if (activity.lottery()) {
+          return SeckillResponse.lotteryOnly();
+        }
+        // 开启排队的活动只接受已放行的排队凭证
+        if (activity.waitingRoom()
+            && !waitingRoomService.isAdmitted(voucherId, userId, request.getQueueToken())) {
+          log.debug("秒杀失败-尚未放行 - 用户: {}, 优惠券: {}", userId, voucherId);
+          return SeckillResponse.notAdmitted();
+        }
+        limit = activity.resolveLimit(limit);
+      }
 
-        case 2: // 超过限购
-          log.warn("秒杀失败-超过限购 - 用户: {}, 优惠券: {}", userId, voucherId);
-          return SeckillResponse.limitExceeded();
+      // 0. 本地已记录该用户达到限购，无需访问Redis
+      if (limitReachedCache.contains(voucherId, userId)) {
+        log.debug("秒杀失败-超过限购(本地缓存) - 用户: {}, 优惠券: {}", userId, voucherId);
+        return SeckillResponse.limitExceeded();
+      }
 
-        default: // 脚本执行异常
-          log.error("秒杀失败-脚本执行异常 - 用户: {}, 优惠券: {}, 结果: {}", userId, voucherId, result);
-          return SeckillResponse.systemError("Redis脚本执行异常");
+      // 以下访问Redis和MQ，受自适应并发上限约束；之前的本地拦截不占用许可
+      if (!concurrencyLimiter.tryAcquire()) {
+        log.warn("秒杀请求被限流 - 用户: {}, 优惠券: {}, 当前并发上限: {}",
+            userId, voucherId, concurrencyLimiter.getLimit());
+        return SeckillResponse.overloaded();
+      }
+      long startTime = System.nanoTime();
+      SeckillResponse response = null;
+      try {
+        response = deductAndSendOrder(request, limit);
+        return response;
+      } finally {
+        // 只有执行了Lua脚本并发送订单消息的请求提交延迟样本，本地拒绝和未进入MQ的结果不计入
+        if (response == null || response.getCode() == 3) {
+          concurrencyLimiter.release(System.nanoTime() - startTime, true);
+        } else if (response.getCode() == 0) {
+          concurrencyLimiter.release(System.nanoTime() - startTime, false);
+        } else {
+          concurrencyLimiter.releaseWithoutSample();
+        }
       }
 
     } catch (Exception e) {
@@ -76,13 +219,144 @@ public class SeckillService {
   }
 
   /**
-   * 查询订单状态
+   * 校验购买凭证后扣减库存并发送订单消息
+   * 
+   * @param request 秒杀请求
+   * @param limit   服务端确定的限购数量
+   * @return 秒杀响应
+   */
+  private SeckillResponse deductAndSendOrder(SeckillRequest request, Integer limit) {
+    Long userId = request.getUserId();
+    Long voucherId = request.getVoucherId();
+
+    // 扣减库存前生成订单ID（不访问Redis），生成失败时不会留下已扣减但没有订单的库存
+    Long orderId = orderIdGenerator.nextId();
+
+    // 购买凭证在本地验证并标记为已使用，名额有限，到达Lua脚本的请求数不超过库存的k倍
+    if (purchaseTokenService.isRequired()
+        && !purchaseTokenService.consume(voucherId, userId, request.getPurchaseToken())) {
+      log.debug("秒杀失败-购买凭证无效 - 用户: {}, 优惠券: {}", userId, voucherId);
+      return SeckillResponse.tokenInvalid();
+    }
+
+    // 1. 执行Redis Lua脚本进行库存检查和扣减
+    RedisService.DeductResult deduct = redisService.executeSeckillWithEpoch(voucherId, userId, limit);
+    Long result = deduct.code();
+
+    // 2. 根据脚本执行结果返回响应
+    switch (result.intValue()) {
+      case 0: // 成功
+        // 设置订单初始状态为处理中
+        redisService.setOrderStatus(orderId, 0, 300); // 5分钟过期
+
+        // 发送异步消息到MQ进行订单处理
+        sendOrderMessage(userId, voucherId, orderId, deduct.epoch());
+
+        // 限购为1时本次购买即达到上限
+        if (limit <= 1) {
+          limitReachedCache.markReached(voucherId, userId);
+        }
+
+        log.info("秒杀成功 - 用户: {}, 优惠券: {}, 订单: {}", userId, voucherId, orderId);
+        return SeckillResponse.success(orderId);
+
+      case 1: // 库存不足
+        log.warn("秒杀失败-库存不足 - 用户: {}, 优惠券: {}", userId, voucherId);
+        return SeckillResponse.stockNotEnough();
+
+      case 2: // 超过限购
+        limitReachedCache.markReached(voucherId, userId);
+        // 凭证已使用但没有占用库存，退还名额
+        if (purchaseTokenService.isRequired()) {
+          purchaseTokenService.refund(voucherId);
+        }
+        log.warn("秒杀失败-超过限购 - 用户: {}, 优惠券: {}", userId, voucherId);
+        return SeckillResponse.limitExceeded();
+
+      default: // 脚本执行异常
+        log.error("秒杀失败-脚本执行异常 - 用户: {}, 优惠券: {}, 结果: {}", userId, voucherId, result);
+        return SeckillResponse.systemError("Redis脚本执行异常");
+    }
+  }
+
+  /**
+   * 领取购买凭证
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 签名凭证，已售罄（名额用完）时返回null
+   */
+  public String issuePurchaseToken(Long voucherId, Long userId) {
+    if (!penetrationGuard.mightContainVoucher(voucherId)) {
+      throw new IllegalArgumentException("秒杀活动不存在: " + voucherId);
+    }
+    if (activityRegistry.isReady()) {
+      ActivityConfig activity = activityRegistry.get(voucherId);
+      if (activity == null) {
+        throw new IllegalArgumentException("秒杀活动不存在: " + voucherId);
+      }
+      if (activity.stateAt(System.currentTimeMillis()) == ActivityConfig.State.ENDED) {
+        return null;
+      }
+    }
+    return purchaseTokenService.issue(voucherId, userId);
+  }
+
+  /**
+   * 查询订单状态（优先读取副本）
    * 
    * @param orderId 订单ID
    * @return 订单状态: 0-处理中, 1-成功, 2-失败, null-订单不存在
    */
   public Integer getOrderStatus(Long orderId) {
-    return redisService.getOrderStatus(orderId);
+    return getOrderStatus(orderId, true);
+  }
+
+  /**
+   * 查询订单状态
+   * 
+   * @param orderId     订单ID
+   * @param fromReplica 是否优先读取副本
+   * @return 订单状态: 0-处理中, 1-成功, 2-失败, null-订单不存在
+   */
+  public Integer getOrderStatus(Long orderId, boolean fromReplica) {
+    if (!penetrationGuard.mightContainOrder(orderId, OrderIdGenerator.timestampOf(orderId))) {
+      return null;
+    }
+    return redisService.getOrderStatus(orderId, fromReplica);
+  }
+
+  /**
+   * 批量查询订单状态
+   * 布隆过滤器判定不存在的订单不访问Redis，其余订单合并为一次管道查询
+   * 
+   * @param orderIds 订单ID列表
+   * @return 订单状态列表，与orderIds按位置对应，null表示订单不存在
+   */
+  public List<Integer> getOrderStatuses(List<Long> orderIds) {
+    checkBatchSize(orderIds);
+
+    List<Long> candidates = new ArrayList<>(orderIds.size());
+    for (Long orderId : orderIds) {
+      if (orderId != null && penetrationGuard.mightContainOrder(orderId, OrderIdGenerator.timestampOf(orderId))) {
+        candidates.add(orderId);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return Collections.nCopies(orderIds.size(), null);
+    }
+
+    Map<Long, Integer> found = new HashMap<>();
+    List<Integer> statuses = redisService.getOrderStatuses(candidates);
+    for (int i = 0; i < candidates.size(); i++) {
+      found.put(candidates.get(i), statuses.get(i));
+    }
+
+    List<Integer> result = new ArrayList<>(orderIds.size());
+    for (Long orderId : orderIds) {
+      result.add(orderId != null ? found.get(orderId) : null);
+    }
+    return result;
   }
 
   /**
@@ -92,8 +366,177 @@ public class SeckillService {
    * @param stock     库存数量
    */
   public void initSeckillActivity(Long voucherId, Integer stock) {
-    redisService.initStock(voucherId, stock);
-    log.info("初始化秒杀活动 - 优惠券: {}, 库存: {}", voucherId, stock);
+    initSeckillActivity(voucherId, stock, TimeUnit.HOURS.toSeconds(24));
+  }
+
+  /**
+   * 初始化秒杀活动，并指定库存过期时间
+   * 
+   * @param voucherId     优惠券ID
+   * @param stock         库存数量
+   * @param expireSeconds 库存过期时间（秒）
+   */
+  public void initSeckillActivity(Long voucherId, Integer stock, long expireSeconds) {
+    penetrationGuard.registerVoucher(voucherId);
+    long epoch = redisService.initStock(voucherId, stock, expireSeconds, resolveLedgerEncoding(voucherId));
+    purchaseTokenService.reset(voucherId, stock);
+    // 购买记录已清空，失效各节点的本地限购缓存，并重新加载活动配置
+    limitReachedCache.invalidateVoucher(voucherId);
+    activityRegistry.reload(voucherId);
+    log.info("初始化秒杀活动 - 优惠券: {}, 库存: {}, 轮次: {}", voucherId, stock, epoch);
+  }
+
+  /**
+   * 批量初始化秒杀活动（零点换场），Redis中的库存初始化在一次管道中完成
+   * 
+   * @param inits 初始化参数
+   */
+  public void initSeckillActivities(List<RedisService.StockInit> inits) {
+    if (inits.isEmpty()) {
+      return;
+    }
+    List<RedisService.StockInit> resolved = new ArrayList<>(inits.size());
+    for (RedisService.StockInit init : inits) {
+      penetrationGuard.registerVoucher(init.voucherId());
+      resolved.add(init.encoding() != null ? init : new RedisService.StockInit(init.voucherId(), init.stock(),
+          init.expireSeconds(), resolveLedgerEncoding(init.voucherId())));
+    }
+    List<Long> epochs = redisService.initStocks(resolved);
+    for (int i = 0; i < inits.size(); i++) {
+      RedisService.StockInit init = inits.get(i);
+      purchaseTokenService.reset(init.voucherId(), init.stock());
+      limitReachedCache.invalidateVoucher(init.voucherId());
+      activityRegistry.reload(init.voucherId());
+      log.info("初始化秒杀活动 - 优惠券: {}, 库存: {}, 轮次: {}", init.voucherId(), init.stock(), epochs.get(i));
+    }
+  }
+
+  /**
+   * 为进行中的活动补货
+   * Redis库存和数据库总库存各自原子递增，购买记录、限购和活动轮次保持不变；
+   * 随后广播失效事件，各节点清除该活动的本地售罄和限购缓存，立即恢复接单
+   * 
+   * @param voucherId 优惠券ID
+   * @param amount    补货数量
+   * @return 补货后的Redis库存
+   */
+  public long restock(Long voucherId, int amount) {
+    if (amount <= 0) {
+      throw new IllegalArgumentException("补货数量必须大于0: " + amount);
+    }
+    long stock = redisService.restock(voucherId, amount);
+    if (stock < 0) {
+      throw new IllegalArgumentException("秒杀活动未初始化或已过期: " + voucherId);
+    }
+
+    try {
+      if (couponMapper.increaseTotalStock(voucherId, amount) == 0) {
+        throw new IllegalArgumentException("优惠券不存在: " + voucherId);
+      }
+    } catch (RuntimeException e) {
+      // 数据库未更新，撤销Redis中的补货，避免超卖
+      redisService.restock(voucherId, -amount);
+      throw e;
+    }
+
+    purchaseTokenService.addQuota(voucherId, amount);
+    limitReachedCache.invalidateVoucher(voucherId);
+    log.info("活动补货 - 优惠券: {}, 数量: {}, 当前库存: {}", voucherId, amount, stock);
+    return stock;
+  }
+
+  /**
+   * 选择本轮活动的购买记录编码
+   * 位图只能记录是否购买过，仅用于数据库中配置为限购1件的活动；抽签开奖按用户写入哈希字段
+   * 
+   * @param voucherId 优惠券ID
+   * @return 购买记录编码
+   */
+  private RedisService.LedgerEncoding resolveLedgerEncoding(Long voucherId) {
+    if ("hash".equalsIgnoreCase(ledgerEncoding)) {
+      return RedisService.LedgerEncoding.HASH;
+    }
+    ActivityConfig activity = activityRegistry.get(voucherId);
+    if (activity != null && activity.lottery()) {
+      return RedisService.LedgerEncoding.HASH;
+    }
+    if ("auto".equalsIgnoreCase(ledgerEncoding) && activity != null && !activity.adHoc()
+        && activity.userLimit() != null && activity.userLimit() == 1) {
+      return RedisService.LedgerEncoding.BITMAP;
+    }
+    return RedisService.LedgerEncoding.BUCKET;
+  }
+
+  /**
+   * 订单消息是否属于已被重新初始化的上一轮活动
+   * 
+   * @param voucherId 优惠券ID
+   * @param epoch     下单时的活动轮次，为null（旧消息）时视为有效
+   * @return 是否已过期
+   */
+  public boolean isStaleOrder(Long voucherId, Long epoch) {
+    return checkOrderEpoch(voucherId, epoch) == OrderEpochState.STALE;
+  }
+
+  /**
+   * 校验订单消息的活动轮次
+   * 当前轮次存在且与消息不同时才判定为上一轮订单；
+   * Redis中没有轮次（库存键丢失、等待恢复）时无法判断，消息需要延后处理，不能当作过期丢弃；
+   * 消息轮次为从数据库恢复前的轮次时，订单未计入恢复的库存，需要重新占用库存
+   * 
+   * @param voucherId 优惠券ID
+   * @param epoch     下单时的活动轮次，为null（旧消息）时视为有效
+   * @return 校验结果
+   */
+  public OrderEpochState checkOrderEpoch(Long voucherId, Long epoch) {
+    if (epoch == null) {
+      return OrderEpochState.CURRENT;
+    }
+    RedisService.ActivityEpoch current = redisService.getActivityEpochInfo(voucherId);
+    if (current.current() == null) {
+      return OrderEpochState.PENDING;
+    }
+    if (epoch.equals(current.current())) {
+      return OrderEpochState.CURRENT;
+    }
+    return current.isCarried(epoch) ? OrderEpochState.CARRIED : OrderEpochState.STALE;
+  }
+
+  /**
+   * 为恢复前的订单重新占用库存（不检查限购，下单时已通过限购校验且未计入恢复的购买记录）
+   * 占用成功后消息改为当前轮次，之后的失败回滚作用于当前轮次；库存已售罄时订单标记为失败。
+   * 调用方需先确认订单尚未创建，重复投递的消息不能再次占用
+   * 
+   * @param orderMessage 订单消息
+   * @return 是否占用成功
+   */
+  public boolean claimCarriedOrder(OrderMessage orderMessage) {
+    Long voucherId = orderMessage.getVoucherId();
+    Long userId = orderMessage.getUserId();
+    Long orderId = orderMessage.getOrderId();
+    RedisService.DeductResult deduct = redisService.executeSeckillWithEpoch(voucherId, userId, Integer.MAX_VALUE);
+    if (deduct.code() == 0) {
+      orderMessage.setEpoch(deduct.epoch());
+      log.warn("恢复前的订单已重新占用库存 - 用户: {}, 优惠券: {}, 订单: {}, 轮次: {}",
+          userId, voucherId, orderId, deduct.epoch());
+      return true;
+    }
+    redisService.setOrderStatus(orderId, 2, 300);
+    orderStatusNotifier.publish(orderId, 2);
+    log.warn("恢复前的订单无法占用库存，标记为失败 - 用户: {}, 优惠券: {}, 订单: {}, 结果: {}",
+        userId, voucherId, orderId, deduct.code());
+    return false;
+  }
+
+  /**
+   * 丢弃上一轮活动的订单：库存和购买记录已随重新初始化重置，只需把订单标记为失败
+   * 
+   * @param orderId 订单ID
+   */
+  public void discardStaleOrder(Long orderId) {
+    redisService.setOrderStatus(orderId, 2, 300);
+    orderStatusNotifier.publish(orderId, 2);
+    log.warn("活动已重新初始化，丢弃上一轮订单 - 订单: {}", orderId);
   }
 
   /**
@@ -103,9 +546,45 @@ public class SeckillService {
    * @return 库存数量
    */
   public Integer getCurrentStock(Long voucherId) {
+    if (!penetrationGuard.mightContainVoucher(voucherId)) {
+      return 0;
+    }
     return redisService.getCurrentStock(voucherId);
   }
 
+  /**
+   * 批量获取当前库存
+   * 布隆过滤器判定不存在的优惠券不访问Redis，其余优惠券合并为一次MGET
+   * 
+   * @param voucherIds 优惠券ID列表
+   * @return 库存数量列表，与voucherIds按位置对应
+   */
+  public List<Integer> getCurrentStocks(List<Long> voucherIds) {
+    checkBatchSize(voucherIds);
+
+    List<Long> candidates = new ArrayList<>(voucherIds.size());
+    for (Long voucherId : voucherIds) {
+      if (voucherId != null && penetrationGuard.mightContainVoucher(voucherId)) {
+        candidates.add(voucherId);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return Collections.nCopies(voucherIds.size(), 0);
+    }
+
+    Map<Long, Integer> found = new HashMap<>();
+    List<Integer> stocks = redisService.getCurrentStocks(candidates);
+    for (int i = 0; i < candidates.size(); i++) {
+      found.put(candidates.get(i), stocks.get(i) != null ? stocks.get(i) : 0);
+    }
+
+    List<Integer> result = new ArrayList<>(voucherIds.size());
+    for (Long voucherId : voucherIds) {
+      result.add(found.getOrDefault(voucherId, 0));
+    }
+    return result;
+  }
+
   /**
    * 获取用户购买数量
    * 
@@ -114,6 +593,9 @@ public class SeckillService {
    * @return 购买数量
    */
   public Integer getUserBoughtCount(Long voucherId, Long userId) {
+    if (!penetrationGuard.mightContainVoucher(voucherId)) {
+      return 0;
+    }
     return redisService.getUserBoughtCount(voucherId, userId);
   }
 
@@ -125,13 +607,39 @@ public class SeckillService {
    * @param orderId   订单ID
    */
   public void rollbackStock(Long voucherId, Long userId, Long orderId) {
+    rollbackStock(voucherId, userId, orderId, null);
+  }
+
+  /**
+   * 处理订单失败后的库存回滚，只回滚下单时所在活动轮次的库存
+   * 
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @param orderId   订单ID
+   * @param epoch     下单时的活动轮次，为null时不校验
+   */
+  public void rollbackStock(Long voucherId, Long userId, Long orderId, Long epoch) {
     try {
       // 执行库存回滚
-      Long result = redisService.executeStockRollback(voucherId, userId);
+      Long result = redisService.executeStockRollback(voucherId, userId, epoch);
 
-      if (result == 0) {
+      if (result == 3) {
+        // 活动已重新初始化，上一轮的库存无需回滚
+        discardStaleOrder(orderId);
+      } else if (result == 4) {
+        // 购买记录已丢失，恢复时按数据库中的订单重建库存，未创建的订单不占用库存
+        redisService.setOrderStatus(orderId, 2, 300);
+        orderStatusNotifier.publish(orderId, 2);
+        log.warn("购买记录不存在，订单标记为失败，库存由恢复流程重建 - 用户: {}, 优惠券: {}, 订单: {}",
+            userId, voucherId, orderId);
+      } else if (result == 0) {
         // 更新订单状态为失败
         redisService.setOrderStatus(orderId, 2, 300);
+        orderStatusNotifier.publish(orderId, 2);
+        // 用户购买记录已回退，失效各节点的本地限购缓存
+        limitReachedCache.invalidateUser(voucherId, userId);
+        // 回滚的库存需要对应的凭证名额才能重新售出
+        purchaseTokenService.addQuota(voucherId, 1);
         log.info("库存回滚成功 - 用户: {}, 优惠券: {}, 订单: {}", userId, voucherId, orderId);
       } else {
         log.error("库存回滚失败 - 用户: {}, 优惠券: {}, 订单: {}, 结果: {}", userId, voucherId, orderId, result);
@@ -149,20 +657,11 @@ public class SeckillService {
   public void orderSuccess(Long orderId) {
     // 更新订单状态为成功
     redisService.setOrderStatus(orderId, 1, 300);
+    // 推送给等待订单结果的客户端
+    orderStatusNotifier.publish(orderId, 1);
     log.info("订单处理成功 - 订单: {}", orderId);
   }
 
-  /**
-   * 生成订单ID
-   * 
-   * @return 订单ID
-   */
-  private Long generateOrderId() {
-    // 简单的时间戳 + 随机数生成订单ID
-    // 实际项目中可以使用雪花算法等更复杂的ID生成策略
-    return System.currentTimeMillis() * 1000 + (long) (Math.random() * 1000);
-  }
-
   /**
    * 发送订单消息到MQ
    * 
@@ -170,14 +669,47 @@ public class SeckillService {
    * @param voucherId 优惠券ID
    * @param orderId   订单ID
    */
-  private void sendOrderMessage(Long userId, Long voucherId, Long orderId) {
+  private void sendOrderMessage(Long userId, Long voucherId, Long orderId, long epoch) {
     OrderMessage message = new OrderMessage();
     message.setMessageId(UUID.randomUUID().toString());
     message.setUserId(userId);
     message.setVoucherId(voucherId);
     message.setOrderId(orderId);
+    message.setEpoch(epoch > 0 ? epoch : null);
     message.setCreateTime(LocalDateTime.now());
 
     orderProducer.sendOrderMessage(message);
   }
+
+  /**
+   * 校验批量查询的ID个数
+   */
+  private void checkBatchSize(List<Long> ids) {
+    if (ids == null || ids.isEmpty()) {
+      throw new IllegalArgumentException("ID列表不能为空");
+    }
+    if (ids.size() > batchMaxSize) {
+      throw new IllegalArgumentException("单次最多查询" + batchMaxSize + "个ID，实际: " + ids.size());
+    }
+  }
+
+  /**
+   * 订单消息的活动轮次校验结果
+   */
+  public enum OrderEpochState {
+    /** 当前轮次，正常创建订单 */
+    CURRENT,
+    /** 上一轮活动的订单，丢弃 */
+    STALE,
+    /** 从数据库恢复前的订单，重新占用库存后创建 */
+    CARRIED,
+    /** 活动轮次暂不可用，延后处理 */
+    PENDING
+  }
+
+  /**
+   * 在途请求键，凭证为null时表示未携带
+   */
+  private record InFlightKey(Long voucherId, Long userId, String queueToken, String purchaseToken) {
+  }
 }
@@ -0,0 +1,226 @@
+package com.seckill.service;
+
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis分片迁移服务
+ *
+ * 增加或移除分片后，分片目录中已固定的优惠券不会自动移动。迁移在活动未进行时逐个执行：
+ * 在源分片上SCAN出带该优惠券哈希标签的所有键，DUMP/RESTORE到哈希环上的目标分片（保留剩余过期时间），
+ * 核对目标分片上的键数后更新分片目录并广播，最后删除源分片上的键。核对失败时删除目标分片上已复制的键，源数据保持不变。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class ShardMigrationService {
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private RedisShardRouter redisShardRouter;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  /**
+   * 是否定期自动迁移待迁移的优惠券（默认只通过接口手动触发）
+   */
+  @Value("${seckill.redis-shards.migration.auto:false}")
+  private boolean auto;
+
+  /**
+   * 每次自动迁移最多处理的优惠券数
+   */
+  @Value("${seckill.redis-shards.migration.max-per-run:10}")
+  private int maxPerRun;
+
+  /**
+   * 活动开场前多久停止迁移（毫秒）
+   */
+  @Value("${seckill.redis-shards.migration.pause-before-start-ms:600000}")
+  private long pauseBeforeStartMillis;
+
+  /**
+   * 每步SCAN的COUNT
+   */
+  @Value("${seckill.redis-shards.migration.scan-count:1000}")
+  private int scanCount;
+
+  /**
+   * 更新分片目录后等待其他节点收到广播的时间（毫秒），之后删除源分片上的键
+   */
+  @Value("${seckill.redis-shards.migration.switch-delay-ms:1000}")
+  private long switchDelayMillis;
+
+  /**
+   * 迁移锁过期时间（秒），应大于单个优惠券迁移的最长时间
+   */
+  @Value("${seckill.redis-shards.migration.lock-seconds:600}")
+  private long lockSeconds;
+
+  private final LongAdder migratedVouchers = new LongAdder();
+  private final LongAdder migratedKeys = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+  private volatile long lastMigrationMillis = -1;
+
+  /**
+   * 定期迁移空闲的待迁移优惠券
+   */
+  @Scheduled(initialDelayString = "${seckill.redis-shards.migration.interval-ms:60000}",
+      fixedDelayString = "${seckill.redis-shards.migration.interval-ms:60000}")
+  public void migratePendingScheduled() {
+    if (auto) {
+      migratePending(maxPerRun);
+    }
+  }
+
+  /**
+   * 迁移待迁移的优惠券，跳过活动进行中或即将开场的
+   *
+   * @param max 最多迁移的优惠券数
+   * @return 迁移结果
+   */
+  public Map<String, Object> migratePending(int max) {
+    Map<Long, String> pending = redisShardRouter.pendingMigrations();
+    int migrated = 0;
+    int skipped = 0;
+    int failed = 0;
+    for (Long voucherId : pending.keySet()) {
+      if (migrated >= max) {
+        break;
+      }
+      try {
+        Map<String, Object> result = migrate(voucherId);
+        if (result != null && Boolean.TRUE.equals(result.get("moved"))) {
+          migrated++;
+        } else {
+          skipped++;
+        }
+      } catch (IllegalArgumentException e) {
+        skipped++;
+        log.info("暂不迁移 - 优惠券: {}, 原因: {}", voucherId, e.getMessage());
+      } catch (Exception e) {
+        failed++;
+        log.error("分片迁移失败，下次重试 - 优惠券: {}", voucherId, e);
+      }
+    }
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("pending", pending.size());
+    result.put("migrated", migrated);
+    result.put("skipped", skipped);
+    result.put("failed", failed);
+    return result;
+  }
+
+  /**
+   * 把优惠券迁移到哈希环上的目标分片
+   *
+   * @param voucherId 优惠券ID
+   * @return 迁移结果，其他节点正在迁移时返回null
+   */
+  public Map<String, Object> migrate(Long voucherId) {
+    String source = redisShardRouter.shardOf(voucherId).name();
+    String target = redisShardRouter.ringOwner(voucherId);
+    Map<String, Object> result = new HashMap<>();
+    result.put("voucherId", voucherId);
+    result.put("from", source);
+    result.put("to", target);
+    if (source.equals(target)) {
+      result.put("moved", false);
+      result.put("success", true);
+      return result;
+    }
+    checkIdle(voucherId);
+    if (!redisService.tryLockShardMigration(voucherId, lockSeconds)) {
+      log.info("其他节点正在迁移 - 优惠券: {}", voucherId);
+      return null;
+    }
+
+    long startTime = System.currentTimeMillis();
+    try {
+      // 1. 复制并核对，核对失败时源数据不变
+      List<String> keys = redisService.listVoucherKeys(source, voucherId, scanCount);
+      int copied = redisService.copyKeys(source, target, keys);
+      long present = redisService.countExistingKeys(target, keys);
+      if (present < copied) {
+        redisService.unlinkPipelined(target, keys);
+        throw new IllegalStateException("目标分片键数不一致: 复制" + copied + ", 存在" + present);
+      }
+
+      // 2. 切换分片目录，等待其他节点收到广播后删除源数据
+      redisShardRouter.reassign(voucherId, target);
+      pause();
+      long removed = redisService.unlinkPipelined(source, keys).stream().filter(Boolean::booleanValue).count();
+
+      long costMillis = System.currentTimeMillis() - startTime;
+      migratedVouchers.increment();
+      migratedKeys.add(copied);
+      lastMigrationMillis = costMillis;
+      log.info("优惠券分片迁移完成 - 优惠券: {}, {} -> {}, 复制键: {}, 删除源键: {}, 耗时: {}ms",
+          voucherId, source, target, copied, removed, costMillis);
+
+      result.put("keys", copied);
+      result.put("removedFromSource", removed);
+      result.put("costMillis", costMillis);
+      result.put("moved", true);
+      result.put("success", true);
+      return result;
+    } catch (RuntimeException e) {
+      failureCount.increment();
+      throw e;
+    } finally {
+      redisService.unlockShardMigration(voucherId);
+    }
+  }
+
+  /**
+   * 获取迁移统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("auto", auto);
+    stats.put("pending", redisShardRouter.pendingMigrations());
+    stats.put("migratedVouchers", migratedVouchers.sum());
+    stats.put("migratedKeys", migratedKeys.sum());
+    stats.put("failureCount", failureCount.sum());
+    stats.put("lastMigrationMillis", lastMigrationMillis);
+    return stats;
+  }
+
+  /**
+   * 活动进行中、即将开场或正在开奖时不迁移
+   */
+  private void checkIdle(Long voucherId) {
+    long now = System.currentTimeMillis();
+    ActivityConfig activity = activityRegistry.get(voucherId);
+    if (activity != null && (activity.stateAt(now) == ActivityConfig.State.ACTIVE
+        || (activity.startMillis() > now && activity.startMillis() - now <= pauseBeforeStartMillis))) {
+      throw new IllegalArgumentException("活动进行中或即将开场: " + voucherId);
+    }
+    if ("drawing".equals(redisService.getLotteryDrawState(voucherId))) {
+      throw new IllegalArgumentException("抽签活动正在开奖: " + voucherId);
+    }
+  }
+
+  private void pause() {
+    try {
+      Thread.sleep(switchDelayMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package com.seckill.service;
+
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import com.seckill.cache.LimitReachedCache;
+import com.seckill.entity.Coupon;
+import com.seckill.mapper.CouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀状态恢复服务
+ *
+ * Redis丢失数据（重启、故障切换）后，进行中的活动没有库存键，seckill.lua按库存不足拒绝所有请求。
+ * 定时任务发现这类活动后，由一个节点用MyBatis游标沿idx_voucher_id流式读取占用库存的订单，
+ * 通过大批量管道把购买记录写入重建键，最后由脚本原子地换入购买记录、开始新的活动轮次并写入
+ * 剩余库存（总库存 - 占用库存的订单数）。库存键写入前不会产生新的购买。
+ *
+ * 购买记录丢失后，订单消费者读不到活动轮次，会延后处理消息而不是写入数据库；
+ * 丢失前已通过轮次校验、正在写入的订单可能在读取游标之后才提交，换入前再统计一次订单数，
+ * 取两者中的较大值（最多少卖，不会超卖）。恢复前在途的订单消息携带丢失前的轮次（_carry），
+ * 恢复后由消费者重新占用库存再创建订单，库存已售罄时订单标记为失败。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class StockRecoveryService {
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private OrderService orderService;
+
+  @Resource
+  private CouponMapper couponMapper;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private LimitReachedCache limitReachedCache;
+
+  @Resource
+  private PurchaseTokenService purchaseTokenService;
+
+  /**
+   * 单次管道写入的购买记录数
+   */
+  @Value("${seckill.recovery.pipeline-batch-size:10000}")
+  private int pipelineBatchSize;
+
+  /**
+   * 恢复锁过期时间（秒），应大于单个活动的最长恢复时间
+   */
+  @Value("${seckill.recovery.lock-seconds:300}")
+  private long lockSeconds;
+
+  /**
+   * 库存在活动结束后保留的时间（秒）
+   */
+  @Value("${seckill.warmup.grace-seconds:600}")
+  private long graceSeconds;
+
+  private final LongAdder recoveryCount = new LongAdder();
+  private final LongAdder recoveredOrderCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+  private volatile long lastRecoveryMillis = -1;
+
+  /**
+   * 检查进行中的活动是否丢失了库存键，丢失则从数据库恢复
+   */
+  @Scheduled(initialDelayString = "${seckill.recovery.check-interval-ms:5000}",
+      fixedDelayString = "${seckill.recovery.check-interval-ms:5000}")
+  public void recoverMissingActivities() {
+    long now = System.currentTimeMillis();
+    List<Long> candidates = new ArrayList<>();
+    for (ActivityConfig activity : activityRegistry.list()) {
+      // 临时活动没有数据库配置，抽签活动的报名记录无法从订单表恢复
+      if (!activity.adHoc() && !activity.lottery() && activity.stateAt(now) == ActivityConfig.State.ACTIVE) {
+        candidates.add(activity.voucherId());
+      }
+    }
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    List<Long> missing;
+    try {
+      missing = redisService.findMissingStocks(candidates);
+    } catch (Exception e) {
+      log.warn("检查库存键失败: {}", e.getMessage());
+      return;
+    }
+    for (Long voucherId : missing) {
+      try {
+        recover(voucherId);
+      } catch (Exception e) {
+        log.error("恢复秒杀状态失败，下次重试 - 优惠券: {}", voucherId, e);
+      }
+    }
+  }
+
+  /**
+   * 从数据库恢复活动的库存和购买记录
+   *
+   * @param voucherId 优惠券ID
+   * @return 恢复结果，库存键仍存在、其他节点正在恢复或恢复期间活动被重新初始化时返回null
+   */
+  public Map<String, Object> recover(Long voucherId) {
+    Coupon coupon = couponMapper.selectById(voucherId);
+    if (coupon == null) {
+      throw new IllegalArgumentException("优惠券不存在: " + voucherId);
+    }
+    if (redisService.findMissingStocks(List.of(voucherId)).isEmpty()) {
+      return null;
+    }
+    if (!redisService.tryLockRecovery(voucherId, lockSeconds)) {
+      log.info("其他节点正在恢复秒杀状态 - 优惠券: {}", voucherId);
+      return null;
+    }
+
+    long startTime = System.currentTimeMillis();
+    try {
+      redisService.abortRecovery(voucherId);
+
+      long[] buffer = new long[pipelineBatchSize];
+      int[] size = {0};
+      long orders = orderService.streamActiveOrderUsers(voucherId, userId -> {
+        buffer[size[0]++] = userId;
+        if (size[0] == buffer.length) {
+          redisService.appendRecoveredPurchases(voucherId, buffer, size[0]);
+          size[0] = 0;
+        }
+      });
+      if (size[0] > 0) {
+        redisService.appendRecoveredPurchases(voucherId, buffer, size[0]);
+      }
+
+      // 读取游标期间提交的订单可能没有读到，换入前重新统计，少卖优先于超卖
+      long recounted = orderService.countActiveOrdersSince(voucherId, coupon.getStartTime());
+      if (recounted > orders) {
+        log.warn("恢复期间有新订单写入 - 优惠券: {}, 读取: {}, 重新统计: {}", voucherId, orders, recounted);
+        orders = recounted;
+      }
+
+      int stock = (int) Math.max(0, coupon.getTotalStock() - orders);
+      long untilEnd = Math.max(0, Duration.between(LocalDateTime.now(), coupon.getEndTime()).getSeconds());
+      long epoch = redisService.finishRecovery(voucherId, stock, untilEnd + graceSeconds);
+      if (epoch < 0) {
+        log.info("恢复期间活动已被重新初始化，放弃本次恢复 - 优惠券: {}", voucherId);
+        return null;
+      }
+
+      purchaseTokenService.reset(voucherId, stock);
+      limitReachedCache.invalidateVoucher(voucherId);
+
+      long costMillis = System.currentTimeMillis() - startTime;
+      recoveryCount.increment();
+      recoveredOrderCount.add(orders);
+      lastRecoveryMillis = costMillis;
+      log.warn("秒杀状态已从数据库恢复 - 优惠券: {}, 订单: {}, 剩余库存: {}, 轮次: {}, 耗时: {}ms",
+          voucherId, orders, stock, epoch, costMillis);
+
+      Map<String, Object> result = new HashMap<>();
+      result.put("voucherId", voucherId);
+      result.put("orders", orders);
+      result.put("stock", stock);
+      result.put("epoch", epoch);
+      result.put("costMillis", costMillis);
+      return result;
+    } catch (RuntimeException e) {
+      failureCount.increment();
+      redisService.abortRecovery(voucherId);
+      throw e;
+    } finally {
+      redisService.unlockRecovery(voucherId);
+    }
+  }
+
+  /**
+   * 获取恢复统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("recoveryCount", recoveryCount.sum());
+    stats.put("recoveredOrderCount", recoveredOrderCount.sum());
+    stats.put("failureCount", failureCount.sum());
+    stats.put("lastRecoveryMillis", lastRecoveryMillis);
+    return stats;
+  }
+}
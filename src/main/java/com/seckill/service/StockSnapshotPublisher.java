@@ -0,0 +1,142 @@
+package com.seckill.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import jakarta.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 库存与活动快照发布器
+ *
+ * 按固定周期用一次MGET读取所有未结束活动的库存，序列化为不可变的字节数组并计算ETag；
+ * 库存展示请求直接返回内存中的快照，内容不变时客户端、nginx或CDN可凭ETag得到304。
+ * 快照内容不含生成时间，库存未变化时ETag保持不变。
+ * 库存在预热时才写入Redis，库存键不存在的活动发布为stock=null，只有读到库存且不大于0时才标记为售罄。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class StockSnapshotPublisher {
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private ObjectMapper objectMapper;
+
+  /**
+   * 当前快照，为空表示尚未构建成功
+   */
+  private volatile Snapshot current;
+
+  private final LongAdder buildCount = new LongAdder();
+  private final LongAdder changeCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+
+  /**
+   * 重建快照
+   */
+  @Scheduled(initialDelay = 0, fixedDelayString = "${seckill.snapshot.refresh-interval-ms:250}")
+  public void rebuild() {
+    long now = System.currentTimeMillis();
+    try {
+      List<ActivityConfig> activities = new ArrayList<>();
+      for (ActivityConfig activity : activityRegistry.list()) {
+        if (activity.stateAt(now) != ActivityConfig.State.ENDED) {
+          activities.add(activity);
+        }
+      }
+      activities.sort(Comparator.comparing(ActivityConfig::voucherId));
+
+      List<Long> voucherIds = new ArrayList<>(activities.size());
+      for (ActivityConfig activity : activities) {
+        voucherIds.add(activity.voucherId());
+      }
+      List<Integer> stocks = redisService.getCurrentStocks(voucherIds);
+
+      List<Map<String, Object>> vouchers = new ArrayList<>(activities.size());
+      for (int i = 0; i < activities.size(); i++) {
+        ActivityConfig activity = activities.get(i);
+        Integer stock = stocks.get(i);
+        Map<String, Object> voucher = new LinkedHashMap<>();
+        voucher.put("id", activity.voucherId());
+        voucher.put("state", activity.stateAt(now).name());
+        voucher.put("stock", stock);
+        voucher.put("soldOut", stock != null && stock <= 0);
+        // 临时活动不限时间
+        voucher.put("start", activity.adHoc() ? null : activity.startMillis());
+        voucher.put("end", activity.adHoc() ? null : activity.endMillis());
+        vouchers.add(voucher);
+      }
+
+      Map<String, Object> body = new LinkedHashMap<>();
+      body.put("vouchers", vouchers);
+      byte[] bytes = objectMapper.writeValueAsBytes(body);
+
+      buildCount.increment();
+      Snapshot previous = current;
+      String etag = "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"";
+      if (previous == null || !previous.etag().equals(etag)) {
+        current = new Snapshot(bytes, etag, vouchers.size(), now);
+        changeCount.increment();
+      }
+    } catch (Exception e) {
+      failureCount.increment();
+      log.warn("库存快照构建失败，继续使用现有快照: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * 获取当前快照
+   *
+   * @return 快照，尚未构建成功时返回null
+   */
+  public Snapshot getSnapshot() {
+    return current;
+  }
+
+  /**
+   * 获取快照统计
+   */
+  public Map<String, Object> getStats() {
+    Snapshot snapshot = current;
+
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("ready", snapshot != null);
+    stats.put("etag", snapshot != null ? snapshot.etag() : null);
+    stats.put("bytes", snapshot != null ? snapshot.bytes().length : 0);
+    stats.put("vouchers", snapshot != null ? snapshot.voucherCount() : 0);
+    stats.put("changedAt", snapshot != null ? snapshot.changedAt() : 0);
+    stats.put("buildCount", buildCount.sum());
+    stats.put("changeCount", changeCount.sum());
+    stats.put("failureCount", failureCount.sum());
+    return stats;
+  }
+
+  /**
+   * 不可变快照
+   *
+   * @param bytes        序列化后的JSON
+   * @param etag         内容摘要（已带引号）
+   * @param voucherCount 包含的活动数
+   * @param changedAt    内容最近一次变化的时间
+   */
+  public record Snapshot(byte[] bytes, String etag, int voucherCount, long changedAt) {
+  }
+}
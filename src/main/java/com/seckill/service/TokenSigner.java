@@ -0,0 +1,91 @@
+package com.seckill.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * HMAC签名令牌工具
+ *
+ * 令牌格式为"载荷.签名"，签名为HMAC-SHA256的Base64URL编码。
+ * 各节点共享同一密钥，令牌在本地验证，无需访问Redis。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Component
+public class TokenSigner {
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private static final String DEFAULT_SECRET = "seckill-token-secret";
+
+  @Value("${seckill.token.secret:" + DEFAULT_SECRET + "}")
+  private String secret;
+
+  /**
+   * Mac实例非线程安全，每个线程持有一份
+   */
+  private ThreadLocal<Mac> macs;
+
+  @PostConstruct
+  public void init() {
+    if (DEFAULT_SECRET.equals(secret)) {
+      log.warn("令牌签名使用默认密钥，生产环境请配置seckill.token.secret");
+    }
+    SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    macs = ThreadLocal.withInitial(() -> {
+      try {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("初始化令牌签名失败", e);
+      }
+    });
+  }
+
+  /**
+   * 签发令牌
+   *
+   * @param payload 载荷（不含'.'之外的任意文本均可，建议用'.'分隔字段）
+   * @return 载荷.签名
+   */
+  public String sign(String payload) {
+    return payload + "." + signature(payload);
+  }
+
+  /**
+   * 验证令牌签名
+   *
+   * @param token 令牌
+   * @return 签名有效时返回载荷，否则返回null
+   */
+  public String verify(String token) {
+    if (token == null) {
+      return null;
+    }
+    int separator = token.lastIndexOf('.');
+    if (separator <= 0) {
+      return null;
+    }
+    String payload = token.substring(0, separator);
+    byte[] expected = signature(payload).getBytes(StandardCharsets.US_ASCII);
+    byte[] actual = token.substring(separator + 1).getBytes(StandardCharsets.US_ASCII);
+    // 常量时间比较，避免通过响应时间猜测签名
+    return MessageDigest.isEqual(expected, actual) ? payload : null;
+  }
+
+  private String signature(String payload) {
+    byte[] digest = macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+  }
+}
@@ -0,0 +1,237 @@
+package com.seckill.service;
+
+import com.seckill.cache.ActivityConfig;
+import com.seckill.cache.ActivityRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.Resource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 虚拟排队服务
+ *
+ * 开启排队的活动（admit_rate > 0）中，用户先领取排队号，号码由Redis原子计数器分配，
+ * 并签发HMAC排队凭证；定时任务按配置速率推进放行位置，各节点缓存最新的放行位置。
+ * 秒杀请求只需在本地验证凭证签名并比较号码与放行位置，不访问Redis，
+ * 开售瞬间的流量由此被整形为平稳、可控的请求流。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Service
+public class WaitingRoomService {
+
+  @Resource
+  private RedisShardRouter redisShardRouter;
+
+  @Resource
+  @Qualifier("admitQueueScript")
+  @SuppressWarnings("rawtypes")
+  private DefaultRedisScript<List> admitQueueScript;
+
+  @Resource
+  private ActivityRegistry activityRegistry;
+
+  @Resource
+  private TokenSigner tokenSigner;
+
+  /**
+   * 排队凭证有效期（毫秒）
+   */
+  @Value("${seckill.waiting-room.ticket-ttl-ms:1800000}")
+  private long ticketTtlMillis;
+
+  /**
+   * voucherId -> 最近一次同步的排队状态
+   */
+  private final ConcurrentHashMap<Long, QueueState> states = new ConcurrentHashMap<>();
+
+  private final LongAdder issuedCount = new LongAdder();
+  private final LongAdder invalidCount = new LongAdder();
+  private final LongAdder notAdmittedCount = new LongAdder();
+
+  /**
+   * 领取排队号
+   *
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @return 排队凭证和当前位置
+   */
+  public Ticket enqueue(Long voucherId, Long userId) {
+    ActivityConfig activity = activityRegistry.get(voucherId);
+    if (activity == null || !activity.waitingRoom()) {
+      throw new IllegalArgumentException("该活动未开启排队: " + voucherId);
+    }
+    if (activity.stateAt(System.currentTimeMillis()) == ActivityConfig.State.ENDED) {
+      throw new IllegalArgumentException("秒杀活动已结束: " + voucherId);
+    }
+
+    Long number = redisShardRouter.forVoucher(voucherId).opsForHash().increment(queueKey(voucherId), "tail", 1);
+    long expireAt = System.currentTimeMillis() + ticketTtlMillis;
+    String token = tokenSigner.sign(voucherId + "." + userId + "." + number + "." + expireAt);
+    issuedCount.increment();
+
+    return buildTicket(token, voucherId, number, activity.admitRate());
+  }
+
+  /**
+   * 查询排队进度（本地计算，不访问Redis）
+   *
+   * @param token 排队凭证
+   * @return 当前位置，凭证无效时返回null
+   */
+  public Ticket check(String token) {
+    TicketPayload payload = parse(token);
+    if (payload == null) {
+      invalidCount.increment();
+      return null;
+    }
+    ActivityConfig activity = activityRegistry.get(payload.voucherId());
+    int rate = activity != null ? activity.admitRate() : 0;
+    return buildTicket(token, payload.voucherId(), payload.number(), rate);
+  }
+
+  /**
+   * 凭证是否已被放行（本地验证签名、有效期、归属和放行位置）
+   *
+   * @param voucherId 优惠券ID
+   * @param userId    用户ID
+   * @param token     排队凭证
+   * @return 是否允许进入秒杀
+   */
+  public boolean isAdmitted(Long voucherId, Long userId, String token) {
+    TicketPayload payload = parse(token);
+    if (payload == null || !payload.voucherId().equals(voucherId) || !payload.userId().equals(userId)) {
+      invalidCount.increment();
+      return false;
+    }
+    QueueState state = states.get(voucherId);
+    if (state == null || payload.number() > state.head()) {
+      notAdmittedCount.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * 推进各活动的放行位置，并同步到本节点
+   * 每个节点都会执行，放行额度按Redis时间计算，不会因节点多而放行更快
+   */
+  @Scheduled(fixedDelayString = "${seckill.waiting-room.admit-interval-ms:100}")
+  public void admit() {
+    long now = System.currentTimeMillis();
+    for (ActivityConfig activity : activityRegistry.list()) {
+      if (!activity.waitingRoom() || activity.stateAt(now) != ActivityConfig.State.ACTIVE) {
+        continue;
+      }
+      Long voucherId = activity.voucherId();
+      try {
+        // 排队状态保留到活动结束后1小时
+        long ttlSeconds = Math.max(60, (activity.endMillis() - now) / 1000 + 3600);
+        List<?> result = redisShardRouter.forVoucher(voucherId).execute(admitQueueScript,
+            Collections.singletonList(queueKey(voucherId)),
+            String.valueOf(activity.admitRate()),
+            String.valueOf(ttlSeconds));
+        if (result != null && result.size() == 2) {
+          long head = ((Number) result.get(0)).longValue();
+          long tail = ((Number) result.get(1)).longValue();
+          states.put(voucherId, new QueueState(head, tail, now));
+        }
+      } catch (Exception e) {
+        log.warn("推进排队放行位置失败 - 优惠券: {}, 原因: {}", voucherId, e.getMessage());
+      }
+    }
+    // 清理已下线活动的状态
+    states.keySet().removeIf(voucherId -> activityRegistry.get(voucherId) == null);
+  }
+
+  /**
+   * 获取排队统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> queues = new HashMap<>();
+    states.forEach((voucherId, state) -> {
+      Map<String, Object> queue = new HashMap<>();
+      queue.put("admitted", state.head());
+      queue.put("issued", state.tail());
+      queue.put("waiting", Math.max(0, state.tail() - state.head()));
+      queue.put("syncedAt", state.syncedAt());
+      queues.put(voucherId.toString(), queue);
+    });
+
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("queues", queues);
+    stats.put("issuedCount", issuedCount.sum());
+    stats.put("invalidCount", invalidCount.sum());
+    stats.put("notAdmittedCount", notAdmittedCount.sum());
+    return stats;
+  }
+
+  private Ticket buildTicket(String token, Long voucherId, long number, int rate) {
+    QueueState state = states.get(voucherId);
+    long head = state != null ? state.head() : 0;
+    long position = Math.max(0, number - head);
+    long estimatedWaitMillis = rate > 0 ? position * 1000 / rate : -1;
+    return new Ticket(token, voucherId, number, position, estimatedWaitMillis, position == 0);
+  }
+
+  /**
+   * 解析并验证凭证：voucherId.userId.number.expireAt.signature
+   */
+  private TicketPayload parse(String token) {
+    String payload = tokenSigner.verify(token);
+    if (payload == null) {
+      return null;
+    }
+    String[] parts = payload.split("\\.");
+    if (parts.length != 4) {
+      return null;
+    }
+    try {
+      TicketPayload ticket = new TicketPayload(Long.valueOf(parts[0]), Long.valueOf(parts[1]),
+          Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+      return ticket.expireAt() >= System.currentTimeMillis() ? ticket : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static String queueKey(Long voucherId) {
+    return "seckill:queue:{" + voucherId + "}";
+  }
+
+  /**
+   * 排队凭证
+   *
+   * @param token               签名凭证，秒杀时携带
+   * @param voucherId           优惠券ID
+   * @param number              排队号
+   * @param position            前方剩余人数，0表示已放行
+   * @param estimatedWaitMillis 预计等待时间（毫秒），未知时为-1
+   * @param admitted            是否已放行
+   */
+  public record Ticket(String token, Long voucherId, long number, long position, long estimatedWaitMillis,
+      boolean admitted) {
+  }
+
+  private record TicketPayload(Long voucherId, Long userId, long number, long expireAt) {
+  }
+
+  /**
+   * @param head     已放行到的号码
+   * @param tail     已发放的最大号码
+   * @param syncedAt 本节点同步时间
+   */
+  private record QueueState(long head, long tail, long syncedAt) {
+  }
+}
@@ -0,0 +1,175 @@
+package com.seckill.task;
+
+import com.seckill.entity.Coupon;
+import com.seckill.mapper.CouponMapper;
+import com.seckill.service.RedisService;
+import com.seckill.service.SeckillService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.Resource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 活动开场前预热任务
+ *
+ * 按start_time查询即将开始的活动，在开场前的预热窗口内：
+ * 由一个节点加载库存（过期时间按end_time计算并加随机抖动，避免所有活动的键同时过期），
+ * 加载时广播的活动事件会让各节点刷新本地活动配置和布隆过滤器；
+ * 每个节点都会预加载Lua脚本，并在影子键上试运行秒杀脚本，
+ * 使连接池、脚本缓存和JIT在开场时已处于热状态。
+ *
+ * @author seckill-test
+ */
+@Slf4j
+@Component
+public class ActivityWarmupTask {
+
+  @Resource
+  private CouponMapper couponMapper;
+
+  @Resource
+  private RedisService redisService;
+
+  @Resource
+  private SeckillService seckillService;
+
+  @Resource
+  private List<DefaultRedisScript<?>> redisScripts;
+
+  /**
+   * 是否开启预热
+   */
+  @Value("${seckill.warmup.enabled:true}")
+  private boolean enabled;
+
+  /**
+   * 开场前多久开始预热（毫秒）
+   */
+  @Value("${seckill.warmup.lead-time-ms:300000}")
+  private long leadTimeMillis;
+
+  /**
+   * 库存在活动结束后保留的时间（秒）
+   */
+  @Value("${seckill.warmup.grace-seconds:600}")
+  private long graceSeconds;
+
+  /**
+   * 过期时间的随机抖动上限（秒）
+   */
+  @Value("${seckill.warmup.jitter-seconds:600}")
+  private long jitterSeconds;
+
+  /**
+   * 试运行秒杀脚本的次数
+   */
+  @Value("${seckill.warmup.dry-run-iterations:100}")
+  private int dryRunIterations;
+
+  /**
+   * voucherId -> 本节点已预热场次的开始时间
+   */
+  private final ConcurrentHashMap<Long, Long> warmedActivities = new ConcurrentHashMap<>();
+
+  private final LongAdder warmupCount = new LongAdder();
+  private final LongAdder stockLoadCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+  private volatile long lastDryRunMicros = -1;
+
+  /**
+   * 检查即将开始的活动并预热
+   */
+  @Scheduled(fixedDelayString = "${seckill.warmup.check-interval-ms:10000}")
+  public void warmUpcomingActivities() {
+    if (!enabled) {
+      return;
+    }
+
+    List<Coupon> coupons;
+    try {
+      coupons = couponMapper.selectUpcomingCoupons(LocalDateTime.now().plus(Duration.ofMillis(leadTimeMillis)));
+    } catch (Exception e) {
+      log.warn("查询即将开始的活动失败: {}", e.getMessage());
+      return;
+    }
+
+    for (Coupon coupon : coupons) {
+      long startMillis = toMillis(coupon.getStartTime());
+      if (Long.valueOf(startMillis).equals(warmedActivities.get(coupon.getId()))) {
+        continue;
+      }
+      try {
+        warmup(coupon, startMillis);
+        warmedActivities.put(coupon.getId(), startMillis);
+      } catch (Exception e) {
+        failureCount.increment();
+        log.error("活动预热失败，下次重试 - 优惠券: {}", coupon.getId(), e);
+      }
+    }
+
+    // 已开场的活动不再需要记录
+    long now = System.currentTimeMillis();
+    warmedActivities.values().removeIf(startMillis -> startMillis < now);
+  }
+
+  /**
+   * 计算库存键的过期时间：距活动结束的时间 + 保留时间 + 随机抖动
+   *
+   * @param endTime 活动结束时间
+   * @return 过期时间（秒）
+   */
+  public long expireSecondsFor(LocalDateTime endTime) {
+    long untilEnd = Math.max(0, Duration.between(LocalDateTime.now(), endTime).getSeconds());
+    long jitter = jitterSeconds > 0 ? ThreadLocalRandom.current().nextLong(jitterSeconds + 1) : 0;
+    return untilEnd + graceSeconds + jitter;
+  }
+
+  /**
+   * 获取预热统计
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("enabled", enabled);
+    stats.put("leadTimeMillis", leadTimeMillis);
+    stats.put("pendingActivities", warmedActivities.size());
+    stats.put("warmupCount", warmupCount.sum());
+    stats.put("stockLoadCount", stockLoadCount.sum());
+    stats.put("failureCount", failureCount.sum());
+    stats.put("lastDryRunMicros", lastDryRunMicros);
+    return stats;
+  }
+
+  private void warmup(Coupon coupon, long startMillis) {
+    Long voucherId = coupon.getId();
+    long expireSeconds = expireSecondsFor(coupon.getEndTime());
+
+    // 同一场次只由一个节点加载库存，标记保留到活动结束
+    boolean loader = redisService.tryAcquireWarmup(voucherId, startMillis, expireSeconds);
+    if (loader) {
+      seckillService.initSeckillActivity(voucherId, coupon.getStock(), expireSeconds);
+      stockLoadCount.increment();
+    }
+
+    int scripts = redisService.loadScripts(redisScripts);
+    lastDryRunMicros = redisService.dryRunSeckill(voucherId, dryRunIterations);
+    warmupCount.increment();
+    log.info("活动预热完成 - 优惠券: {}, 开始时间: {}, 加载库存: {}, TTL: {}秒, 脚本: {}, 试运行平均耗时: {}μs",
+        voucherId, coupon.getStartTime(), loader, expireSeconds, scripts, lastDryRunMicros);
+  }
+
+  private static long toMillis(LocalDateTime time) {
+    return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+}
@@ -2,13 +2,16 @@ package com.seckill.task;
 
 import com.seckill.entity.Coupon;
 import com.seckill.mapper.CouponMapper;
+import com.seckill.service.KeyJanitorService;
 import com.seckill.service.RedisService;
+import com.seckill.service.SeckillService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -26,6 +29,15 @@ public class SeckillScheduleTask {
   @Resource
   private RedisService redisService;
 
+  @Resource
+  private SeckillService seckillService;
+
+  @Resource
+  private ActivityWarmupTask activityWarmupTask;
+
+  @Resource
+  private KeyJanitorService keyJanitorService;
+
   /**
    * 每天凌晨12点更新所有优惠券的时间和库存
    * 实现自动化的秒杀活动重置
@@ -43,6 +55,7 @@ public class SeckillScheduleTask {
       }
 
       int updateCount = 0;
+      List<RedisService.StockInit> inits = new ArrayList<>();
       for (Coupon coupon : couponList) {
         try {
           // 更新数据库中的优惠券时间
@@ -57,8 +70,10 @@ public class SeckillScheduleTask {
 
           couponMapper.updateById(updateCoupon);
 
-          // 同步更新Redis中的库存
-          redisService.initStock(coupon.getId(), coupon.getTotalStock());
+          // Redis中的库存在循环结束后批量初始化
+          // 过期时间按新的结束时间计算并加随机抖动，避免所有优惠券的键同时过期
+          inits.add(new RedisService.StockInit(coupon.getId(), coupon.getTotalStock(),
+              activityWarmupTask.expireSecondsFor(updateCoupon.getEndTime())));
 
           updateCount++;
           log.info("✅ 更新优惠券 {} 成功：开始时间 {} -> {}，库存恢复至 {}",
@@ -72,6 +87,9 @@ public class SeckillScheduleTask {
         }
       }
 
+      // 一次管道提交所有优惠券的初始化脚本（同时失效各节点的本地活动缓存）
+      seckillService.initSeckillActivities(inits);
+
       log.info("🎯 定时任务完成：成功更新 {} 个优惠券", updateCount);
 
     } catch (Exception e) {
@@ -80,18 +98,13 @@ public class SeckillScheduleTask {
   }
 
   /**
-   * 每小时清理过期的调试数据
-   * 避免调试数据占用过多Redis内存
+   * 增量清理过期的调试数据
+   * 避免调试数据占用过多Redis内存，每次只扫描一小段键空间，游标保存在Redis中
    */
-  @Scheduled(cron = "0 0 * * * ?")
+  @Scheduled(fixedDelayString = "${seckill.janitor.interval-ms:1000}")
   public void cleanDebugData() {
-    log.info("🧹 开始清理过期调试数据");
-
     try {
-      // 这里可以实现清理逻辑
-      // 例如：删除过期的debug键、统计信息等
-
-      log.info("✅ 调试数据清理完成");
+      keyJanitorService.sweep();
     } catch (Exception e) {
       log.error("❌ 清理调试数据失败", e);
     }
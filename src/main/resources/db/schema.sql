@@ -9,12 +9,16 @@ CREATE TABLE `coupons` (
   `name` VARCHAR(100) NOT NULL COMMENT '优惠券名称',
   `stock` INT NOT NULL DEFAULT 0 COMMENT '当前库存',
   `total_stock` INT NOT NULL DEFAULT 0 COMMENT '总库存',
+  `user_limit` INT NOT NULL DEFAULT 1 COMMENT '每人限购数量',
+  `admit_rate` INT NOT NULL DEFAULT 0 COMMENT '排队放行速率（人/秒），0表示不排队',
+  `activity_type` TINYINT NOT NULL DEFAULT 0 COMMENT '活动类型: 0-抢购, 1-抽签',
   `start_time` DATETIME NOT NULL COMMENT '开始时间',
   `end_time` DATETIME NOT NULL COMMENT '结束时间',
   `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
   KEY `idx_start_end_time` (`start_time`, `end_time`),
+  KEY `idx_type_end_time` (`activity_type`, `end_time`),
   KEY `idx_stock` (`stock`)
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '优惠券表';
 -- 订单表
@@ -27,8 +31,7 @@ CREATE TABLE `orders` (
   `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
-  UNIQUE KEY `uk_user_voucher` (`user_id`, `voucher_id`),
-  KEY `idx_user_id` (`user_id`),
+  KEY `idx_user_voucher` (`user_id`, `voucher_id`),
   KEY `idx_voucher_id` (`voucher_id`),
   KEY `idx_status` (`status`),
   KEY `idx_create_time` (`create_time`)
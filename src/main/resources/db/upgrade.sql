@@ -0,0 +1,14 @@
+-- 已有数据库升级脚本
+-- schema.sql会删除并重建表，已有数据的库执行本脚本升级：补齐优惠券表的活动配置列（否则CouponMapper按列名查询时
+-- 所有优惠券查询都会失败），并把订单表的(user_id, voucher_id)唯一索引改为普通索引
+USE seckill_test;
+ALTER TABLE `coupons`
+  ADD COLUMN `user_limit` INT NOT NULL DEFAULT 1 COMMENT '每人限购数量' AFTER `total_stock`,
+  ADD COLUMN `admit_rate` INT NOT NULL DEFAULT 0 COMMENT '排队放行速率（人/秒），0表示不排队' AFTER `user_limit`,
+  ADD COLUMN `activity_type` TINYINT NOT NULL DEFAULT 0 COMMENT '活动类型: 0-抢购, 1-抽签' AFTER `admit_rate`,
+  ADD KEY `idx_type_end_time` (`activity_type`, `end_time`);
+-- 限购多件时同一用户在同一优惠券下可以有多笔订单，幂等以订单ID（主键）为准
+ALTER TABLE `orders`
+  DROP INDEX `uk_user_voucher`,
+  DROP INDEX `idx_user_id`,
+  ADD KEY `idx_user_voucher` (`user_id`, `voucher_id`);
@@ -0,0 +1,39 @@
+-- admit_queue.lua
+-- 排队放行Lua脚本，按配置速率推进放行位置
+-- 放行额度按Redis服务器时间计算，多个节点同时调用不会重复放行
+-- KEYS[1]: queueKey 排队状态哈希（tail-已发放号码, head-已放行号码, ts-放行额度起算时间）
+-- ARGV[1]: rate 每秒放行人数
+-- ARGV[2]: ttl 排队状态过期时间（秒）
+-- 返回: {head, tail}
+
+local queueKey = KEYS[1]
+local rate = tonumber(ARGV[1])
+local ttl = tonumber(ARGV[2])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local head = tonumber(redis.call('HGET', queueKey, 'head') or '0')
+local tail = tonumber(redis.call('HGET', queueKey, 'tail') or '0')
+local ts = tonumber(redis.call('HGET', queueKey, 'ts'))
+
+if ts == nil or head >= tail then
+    -- 首次放行从当前时间起算；无人排队时不积累放行额度，避免之后瞬间放行一大批
+    redis.call('HSET', queueKey, 'head', head, 'ts', now)
+else
+    local credit = math.floor((now - ts) * rate / 1000)
+    if credit > 0 then
+        local admitted = math.min(credit, tail - head)
+        head = head + admitted
+        if head >= tail then
+            ts = now
+        else
+            -- 只扣除已使用的额度对应的时间，保留不足一人的余量
+            ts = ts + math.floor(admitted * 1000 / rate)
+        end
+        redis.call('HSET', queueKey, 'head', head, 'ts', ts)
+    end
+end
+
+redis.call('EXPIRE', queueKey, ttl)
+return {head, tail}
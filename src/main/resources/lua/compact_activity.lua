@@ -0,0 +1,15 @@
+-- compact_activity.lua
+-- 活动归档后删除订单哈希、购买时间和调试信息，活动已重新初始化（轮次变化）时不做任何修改
+-- KEYS[1]: orderKey 订单键
+-- KEYS[2]: timeKey 购买时间键
+-- KEYS[3]: debugKey 调试键
+-- ARGV[1]: epoch 归档时的活动轮次（活动未经init_stock.lua初始化时为空字符串）
+-- 返回: 删除的键数，-1表示轮次已变化
+
+local current = redis.call('HGET', KEYS[1], '_epoch') or ''
+if current ~= ARGV[1] then
+    return -1
+end
+
+-- UNLINK在后台线程释放内存，大哈希不会阻塞主线程
+return redis.call('UNLINK', KEYS[1], KEYS[2], KEYS[3])
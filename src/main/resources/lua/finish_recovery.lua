@@ -0,0 +1,49 @@
+-- finish_recovery.lua
+-- 库存恢复收尾Lua脚本，将重建好的购买记录原子地换入正式键，最后写入库存
+-- 库存键写入前seckill.lua按库存不足拒绝所有请求，恢复期间不会产生新的购买
+-- KEYS[1]: stockKey 库存键
+-- KEYS[2]: orderKey 订单键（购买记录）
+-- KEYS[3]: timeKey 购买时间键
+-- KEYS[4]: epochKey 活动轮次计数器
+-- KEYS[5]: rebuildKey 重建中的购买记录
+-- ARGV[1]: stock 剩余库存
+-- ARGV[2]: ttl 库存过期时间（秒），购买记录多保存1小时
+-- 丢失前的轮次写入_carry字段（轮次计数器也丢失时为*，表示任何更早的轮次），
+-- 恢复前在途的订单消息据此识别为丢失前的购买，重新占用库存后创建订单
+-- 返回: 新的活动轮次，-1表示恢复期间活动已被重新初始化（放弃本次恢复）
+
+local stockKey = KEYS[1]
+local orderKey = KEYS[2]
+local timeKey = KEYS[3]
+local epochKey = KEYS[4]
+local rebuildKey = KEYS[5]
+local stock = ARGV[1]
+local ttl = tonumber(ARGV[2])
+
+if redis.call('EXISTS', stockKey) == 1 then
+    redis.call('DEL', rebuildKey)
+    return -1
+end
+
+-- 轮次计数器可能随数据一起丢失，以当前毫秒时间为下限，保证新轮次大于丢失前的任何轮次
+local time = redis.call('TIME')
+local floor = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local previous = redis.call('GET', epochKey)
+local epoch = redis.call('INCR', epochKey)
+if epoch < floor then
+    epoch = floor
+    redis.call('SET', epochKey, epoch)
+end
+
+redis.call('DEL', orderKey, timeKey)
+if redis.call('EXISTS', rebuildKey) == 1 then
+    redis.call('RENAME', rebuildKey, orderKey)
+end
+redis.call('HSET', orderKey, '_epoch', epoch, '_carry', previous or '*')
+redis.call('EXPIRE', orderKey, ttl + 3600)
+redis.call('HSET', timeKey, '_epoch', epoch)
+redis.call('EXPIRE', timeKey, ttl + 3600)
+
+redis.call('SET', stockKey, stock, 'EX', ttl)
+
+return epoch
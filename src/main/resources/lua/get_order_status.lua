@@ -0,0 +1,18 @@
+-- get_order_status.lua
+-- 订单状态读取Lua脚本，按分区当前的存储方式（小哈希或位域）读取，均为O(1)
+-- 只调用只读命令（BITFIELD_RO），可在只读副本上执行
+-- KEYS[1]: partitionKey 分区键
+-- ARGV[1]: index 订单在分区内的序号
+-- 返回: 状态值（订单状态 + 1），0表示无记录
+
+local partitionKey = KEYS[1]
+local index = ARGV[1]
+
+local keyType = redis.call('TYPE', partitionKey)['ok']
+if keyType == 'string' then
+    return redis.call('BITFIELD_RO', partitionKey, 'GET', 'u2', '#' .. index)[1]
+elseif keyType == 'hash' then
+    return tonumber(redis.call('HGET', partitionKey, index) or '0')
+end
+
+return 0
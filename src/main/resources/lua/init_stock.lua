@@ -0,0 +1,40 @@
+-- init_stock.lua
+-- 活动初始化Lua脚本，一次调用原子地完成库存写入、购买记录和时间记录的重置
+-- 每次初始化生成新的活动轮次(epoch)，写入购买记录的_epoch字段，
+-- 订单消息携带下单时的轮次，旧轮次的回滚和订单据此被忽略
+-- KEYS[1]: stockKey 库存键
+-- KEYS[2]: orderKey 订单键（购买记录）
+-- KEYS[3]: timeKey 购买时间键
+-- KEYS[4]: epochKey 活动轮次计数器（不过期，保证轮次单调递增）
+-- ARGV[1]: stock 库存数量
+-- ARGV[2]: ttl 库存过期时间（秒），购买记录多保存1小时
+-- ARGV[3]: encoding 购买记录编码（h-哈希, b-分桶小哈希, m-位图），见seckill.lua
+-- ARGV[4]: bitmapLimit 位图覆盖的用户ID范围（不含），仅位图编码使用
+-- 返回: 新的活动轮次
+
+local stockKey = KEYS[1]
+local orderKey = KEYS[2]
+local timeKey = KEYS[3]
+local epochKey = KEYS[4]
+local stock = ARGV[1]
+local ttl = tonumber(ARGV[2])
+local encoding = ARGV[3] or 'h'
+local bitmapLimit = tonumber(ARGV[4] or '0')
+
+local epoch = redis.call('INCR', epochKey)
+
+redis.call('SET', stockKey, stock, 'EX', ttl)
+
+-- 先清空上一轮的数据，再写入轮次字段，哈希非空后设置的过期时间才会生效
+-- 分桶和位图键带轮次，不需要在这里删除，按_exp记录的时间过期
+local expireAt = tonumber(redis.call('TIME')[1]) + ttl + 3600
+redis.call('DEL', orderKey, timeKey)
+redis.call('HSET', orderKey, '_epoch', epoch, '_enc', encoding, '_exp', expireAt)
+if encoding == 'm' then
+    redis.call('HSET', orderKey, '_bmax', bitmapLimit)
+end
+redis.call('EXPIREAT', orderKey, expireAt)
+redis.call('HSET', timeKey, '_epoch', epoch)
+redis.call('EXPIRE', timeKey, ttl + 3600)
+
+return epoch
@@ -0,0 +1,20 @@
+-- inspect_keys.lua
+-- 键内存采样脚本（只读），返回每个键的占用字节数、内部编码和剩余过期时间
+-- KEYS: 待采样的键
+-- ARGV[1]: samples MEMORY USAGE对集合类型的采样元素数
+-- 返回: {字节数1, 编码1, TTL1, 字节数2, 编码2, TTL2, ...}，键不存在时为 0, 'none', -2
+
+local result = {}
+for _, key in ipairs(KEYS) do
+    if redis.call('EXISTS', key) == 0 then
+        result[#result + 1] = 0
+        result[#result + 1] = 'none'
+        result[#result + 1] = -2
+    else
+        result[#result + 1] = redis.call('MEMORY', 'USAGE', key, 'SAMPLES', ARGV[1]) or 0
+        result[#result + 1] = redis.call('OBJECT', 'ENCODING', key)
+        result[#result + 1] = redis.call('TTL', key)
+    end
+end
+
+return result
@@ -0,0 +1,19 @@
+-- issue_token.lua
+-- 购买凭证发放Lua脚本，每张凭证占用一个名额，名额用完后不再发放
+-- KEYS[1]: tokenKey 凭证名额哈希（remaining-剩余名额, seq-已发放序号）
+-- 返回: 凭证序号，-1表示名额已用完（或活动未初始化）
+
+local remaining = redis.call('HINCRBY', KEYS[1], 'remaining', -1)
+if remaining < 0 then
+    if redis.call('HEXISTS', KEYS[1], 'seq') == 0 and redis.call('TTL', KEYS[1]) == -1 then
+        -- 活动未初始化，不留下无过期时间的键
+        redis.call('DEL', KEYS[1])
+    else
+        -- 恢复为0，避免重新初始化前持续变为负数
+        redis.call('HSET', KEYS[1], 'remaining', 0)
+    end
+    return -1
+end
+
+-- 序号单调递增，重新初始化不会重复，旧凭证不会因序号重用而被再次接受
+return redis.call('HINCRBY', KEYS[1], 'seq', 1)
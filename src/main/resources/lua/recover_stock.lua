@@ -2,41 +2,97 @@
 -- 库存回滚Lua脚本，当订单处理失败时恢复Redis中的库存和用户购买记录
 -- KEYS[1]: stockKey 库存键
 -- KEYS[2]: orderKey 订单键
+-- KEYS[3]: timeKey 购买时间键
+-- KEYS[4]: rollbackLogKey 回滚日志
+-- KEYS[5]: ledgerKey 用户的购买记录键，由调用方计算，见seckill.lua
 -- ARGV[1]: voucherId 优惠券ID
 -- ARGV[2]: userId 用户ID
+-- ARGV[3]: epoch 下单时的活动轮次（可选，为空时不校验）
+-- 返回: 0-成功, 3-轮次已过期（活动已重新初始化）, 4-购买记录不存在（等待恢复）,
+--       5-KEYS[5]与购买记录定位不一致（调用方刷新后重试），3、4和5未做任何修改
 
 local voucherId = ARGV[1]
 local userId = ARGV[2]
+local expectedEpoch = ARGV[3]
 
 -- Redis key从KEYS数组获取
 local stockKey = KEYS[1]
 local orderKey = KEYS[2]
+local timeKey = KEYS[3]
+local rollbackLogKey = KEYS[4]
+
+-- 0. 活动已重新初始化，上一轮的回滚不能修改本轮的库存和购买记录；
+--    购买记录丢失时不能写入库存键，否则会阻止按数据库订单恢复
+if expectedEpoch ~= nil and expectedEpoch ~= '' then
+    local currentEpoch = redis.call('HGET', orderKey, '_epoch')
+    if not currentEpoch then
+        return 4
+    end
+    if currentEpoch ~= expectedEpoch then
+        return 3
+    end
+end
+
+-- 定位购买记录（编码由init_stock.lua写入_enc字段，未指定时为h）
+-- h: 订单哈希中每个用户一个字段
+-- b: 按用户ID十进制前缀分桶的小哈希（每桶100个用户，保持listpack编码）
+-- m: 位图，以用户ID为偏移量（仅限购1件），只覆盖[0, _bmax)的用户ID，其余用户退回分桶；
+--    _bmax由初始化时的库存决定，位图大小与库存成正比，稀疏的大用户ID不会撑大位图（未写入时为2^27）
+-- 分桶和位图键带活动轮次，重新初始化后旧轮次的键按_exp自然过期
+local meta = redis.call('HMGET', orderKey, '_epoch', '_enc', '_exp', '_bmax')
+local epoch = tonumber(meta[1] or '0')
+local enc = meta[2] or 'h'
+local ledgerKey = orderKey
+local field = userId
+local offset = nil
+if enc == 'm' then
+    local uid = tonumber(userId)
+    local bitmapLimit = math.min(tonumber(meta[4] or '134217728'), 134217728)
+    if uid ~= nil and uid >= 0 and uid < bitmapLimit then
+        ledgerKey = orderKey .. ':' .. epoch .. ':bits'
+        offset = uid
+    else
+        enc = 'b'
+    end
+end
+if enc == 'b' then
+    local len = string.len(userId)
+    local bucket = len > 2 and string.sub(userId, 1, len - 2) or '0'
+    ledgerKey = orderKey .. ':' .. epoch .. ':' .. bucket
+    field = string.sub(userId, -2)
+end
+if ledgerKey ~= KEYS[5] then
+    return 5
+end
 
 -- 1. 增加库存
 redis.call('INCRBY', stockKey, 1)
 
 -- 2. 减少用户购买记录
-local bought = tonumber(redis.call('HGET', orderKey, userId))
-if bought and bought > 0 then
-    if bought == 1 then
-        -- 如果购买数量为1，直接删除该字段
-        redis.call('HDEL', orderKey, userId)
-    else
-        -- 减少购买数量
-        redis.call('HSET', orderKey, userId, bought - 1)
+if offset ~= nil then
+    redis.call('SETBIT', ledgerKey, offset, 0)
+else
+    local bought = tonumber(redis.call('HGET', ledgerKey, field))
+    if bought and bought > 0 then
+        if bought == 1 then
+            -- 如果购买数量为1，直接删除该字段
+            redis.call('HDEL', ledgerKey, field)
+        else
+            -- 减少购买数量
+            redis.call('HSET', ledgerKey, field, bought - 1)
+        end
     end
 end
 
 -- 3. 清除时间记录  
-local timeKey = 'seckill:time:' .. voucherId
 redis.call('HDEL', timeKey, userId)
 
 -- 4. 记录回滚操作（用于监控和调试）
-redis.call('LPUSH', 'seckill:rollback:log', 
+redis.call('LPUSH', rollbackLogKey, 
     string.format('{"voucherId":"%s","userId":"%s","time":"%s"}', 
     voucherId, userId, redis.call('TIME')[1]))
 
 -- 限制回滚日志长度，只保留最近1000条
-redis.call('LTRIM', 'seckill:rollback:log', 0, 999)
+redis.call('LTRIM', rollbackLogKey, 0, 999)
 
 return 0 -- 成功
@@ -0,0 +1,14 @@
+-- restock.lua
+-- 活动补货Lua脚本，只在活动已初始化时增加库存，不影响购买记录和过期时间
+-- KEYS[1]: stockKey 库存键
+-- ARGV[1]: amount 增加数量
+-- 返回: 补货后的库存，-1表示活动未初始化（或已过期）
+
+local stockKey = KEYS[1]
+local amount = tonumber(ARGV[1])
+
+if redis.call('EXISTS', stockKey) == 0 then
+    return -1
+end
+
+return redis.call('INCRBY', stockKey, amount)
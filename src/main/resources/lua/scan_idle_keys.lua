@@ -0,0 +1,24 @@
+-- scan_idle_keys.lua
+-- 键清理的单步扫描脚本（只读），从指定游标执行一次SCAN，返回其中没有过期时间且空闲足够久的键
+-- 每次调用的耗时由COUNT限制，游标由调用方保存
+-- ARGV[1]: cursor SCAN游标
+-- ARGV[2]: pattern 匹配模式
+-- ARGV[3]: count SCAN的COUNT
+-- ARGV[4]: minIdleSeconds 最短空闲时间（秒），淘汰策略为LFU时无法获取空闲时间，只按过期时间判断
+-- 返回: {下一个游标, 扫描到的键数, 键1, 占用字节数1, 键2, 占用字节数2, ...}
+
+local minIdle = tonumber(ARGV[4])
+local page = redis.call('SCAN', ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3])
+local result = {page[1], #page[2]}
+
+for _, key in ipairs(page[2]) do
+    if redis.call('TTL', key) == -1 then
+        local idle = redis.pcall('OBJECT', 'IDLETIME', key)
+        if type(idle) ~= 'number' or idle >= minIdle then
+            result[#result + 1] = key
+            result[#result + 1] = redis.call('MEMORY', 'USAGE', key) or 0
+        end
+    end
+end
+
+return result
@@ -0,0 +1,16 @@
+-- scan_keys.lua
+-- 单步SCAN脚本（只读），用于遍历同一哈希标签下的键
+-- KEYS[1]: routeKey 带哈希标签的任一键，只用于让Redis Cluster把脚本路由到该标签所在的节点，不会被访问
+-- ARGV[1]: cursor SCAN游标
+-- ARGV[2]: pattern 匹配模式（应包含哈希标签）
+-- ARGV[3]: count SCAN的COUNT
+-- 返回: {下一个游标, 键1, 键2, ...}
+
+local page = redis.call('SCAN', ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3])
+local result = {page[1]}
+
+for _, key in ipairs(page[2]) do
+    result[#result + 1] = key
+end
+
+return result
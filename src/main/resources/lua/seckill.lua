@@ -2,20 +2,60 @@
 -- 秒杀核心Lua脚本，确保库存检查和扣减的原子性
 -- KEYS[1]: stockKey 库存键
 -- KEYS[2]: orderKey 订单键  
+-- KEYS[3]: timeKey 购买时间键
+-- KEYS[4]: debugKey 调试键
+-- KEYS[5]: ledgerKey 用户的购买记录键，由调用方按购买记录定位规则计算（哈希编码时即订单键）
+-- 所有键带相同的哈希标签{voucherId}，Redis Cluster中位于同一个槽；脚本只访问KEYS中声明的键
 -- ARGV[1]: voucherId 优惠券ID
 -- ARGV[2]: userId 用户ID  
 -- ARGV[3]: limit 限购数量
+-- ARGV[4]: timeSampleEvery 购买时间采样间隔，用户ID能被其整除时才记录购买时间，0表示不记录
+-- 返回: {结果码, 活动轮次}，结果码 0-成功, 1-库存不足, 2-超过限购,
+--       4-KEYS[5]与购买记录定位不一致（活动已重新初始化，调用方刷新后重试，未做任何修改）；
+--       未经init_stock.lua初始化时轮次为0
 
 local voucherId = ARGV[1]
 local userId = ARGV[2]
 local limit = tonumber(ARGV[3])
+local timeSampleEvery = tonumber(ARGV[4] or '1')
 
 -- Redis key从KEYS数组获取
 local stockKey = KEYS[1]
 local orderKey = KEYS[2]
+local timeKey = KEYS[3]
+local debugKey = KEYS[4]
 
--- 创建调试键
-local debugKey = 'seckill:debug:' .. voucherId
+-- 定位购买记录（编码由init_stock.lua写入_enc字段，未指定时为h）
+-- h: 订单哈希中每个用户一个字段
+-- b: 按用户ID十进制前缀分桶的小哈希（每桶100个用户，保持listpack编码）
+-- m: 位图，以用户ID为偏移量（仅限购1件），只覆盖[0, _bmax)的用户ID，其余用户退回分桶；
+--    _bmax由初始化时的库存决定，位图大小与库存成正比，稀疏的大用户ID不会撑大位图（未写入时为2^27）
+-- 分桶和位图键带活动轮次，重新初始化后旧轮次的键按_exp自然过期
+local meta = redis.call('HMGET', orderKey, '_epoch', '_enc', '_exp', '_bmax')
+local epoch = tonumber(meta[1] or '0')
+local enc = meta[2] or 'h'
+local ledgerKey = orderKey
+local field = userId
+local offset = nil
+if enc == 'm' then
+    local uid = tonumber(userId)
+    local bitmapLimit = math.min(tonumber(meta[4] or '134217728'), 134217728)
+    if uid ~= nil and uid >= 0 and uid < bitmapLimit then
+        ledgerKey = orderKey .. ':' .. epoch .. ':bits'
+        offset = uid
+    else
+        enc = 'b'
+    end
+end
+if enc == 'b' then
+    local len = string.len(userId)
+    local bucket = len > 2 and string.sub(userId, 1, len - 2) or '0'
+    ledgerKey = orderKey .. ':' .. epoch .. ':' .. bucket
+    field = string.sub(userId, -2)
+end
+if ledgerKey ~= KEYS[5] then
+    return {4, epoch}
+end
 
 -- 详细调试信息：记录传入的参数和键
 redis.call('HSET', debugKey, 'stockKey', tostring(stockKey or 'nil'))
@@ -38,35 +78,48 @@ redis.call('HSET', debugKey, 'parsed_stock', tostring(stock or 'nil'))
 -- 增加错误调试
 if stockValue == nil then
     redis.call('HSET', debugKey, 'error', 'stockValue_is_null')
-    return 1 -- 库存不足
+    return {1, epoch} -- 库存不足
 end
 
 if stock == nil then
     redis.call('HSET', debugKey, 'error', 'stock_parse_failed_stockValue_was_' .. tostring(stockValue))
-    return 1 -- 库存解析失败
+    return {1, epoch} -- 库存解析失败
 end
 
 if stock <= 0 then
     redis.call('HSET', debugKey, 'error', 'stock_insufficient_value_' .. tostring(stock))
-    return 1 -- 库存不足
+    return {1, epoch} -- 库存不足
 end
 
 -- 2. 获取用户已购买数量
-local bought = tonumber(redis.call('HGET', orderKey, userId))
-if bought == nil then
-    bought = 0
+local bought
+if offset ~= nil then
+    -- 位图只能记录是否购买过
+    limit = 1
+    bought = redis.call('GETBIT', ledgerKey, offset)
+else
+    bought = tonumber(redis.call('HGET', ledgerKey, field)) or 0
 end
 
 -- 3. 检查是否超过限购
 if bought >= limit then
-    return 2 -- 超过个人限购
+    return {2, epoch} -- 超过个人限购
 end
 
 -- 4. 扣减库存并更新购买记录
 redis.call('DECRBY', stockKey, 1)
-redis.call('HSET', orderKey, userId, bought + 1)
+if offset ~= nil then
+    redis.call('SETBIT', ledgerKey, offset, 1)
+else
+    redis.call('HINCRBY', ledgerKey, field, 1)
+end
+if ledgerKey ~= orderKey and meta[3] then
+    redis.call('EXPIREAT', ledgerKey, meta[3])
+end
 
--- 5. 记录操作时间（用于监控）
-redis.call('HSET', 'seckill:time:' .. voucherId, userId, redis.call('TIME')[1])
+-- 5. 按采样间隔记录操作时间（用于监控）
+if timeSampleEvery > 0 and tonumber(string.sub(userId, -6)) % timeSampleEvery == 0 then
+    redis.call('HSET', timeKey, userId, redis.call('TIME')[1])
+end
 
-return 0 -- 成功
+return {0, epoch} -- 成功
@@ -0,0 +1,54 @@
+-- set_order_status.lua
+-- 订单状态写入Lua脚本，状态按时间分区保存，整个分区只有一个键和一个过期时间
+-- 分区先用小哈希保存（字段为订单在分区内的序号），订单数超过阈值后原地转换为位域，每个订单占2位；
+-- 流量低时避免为稀疏的订单ID分配整段位域，流量高时每个订单只占2位
+-- KEYS[1]: partitionKey 分区键
+-- ARGV[1]: index 订单在分区内的序号
+-- ARGV[2]: value 状态值（订单状态 + 1，0表示无记录）
+-- ARGV[3]: expireSeconds 过期时间（秒），只延长不缩短，分区内最后写入的订单也能保留完整的过期时间
+-- ARGV[4]: threshold 分区转换为位域的订单数
+-- 返回: 写入前的状态值
+
+local partitionKey = KEYS[1]
+local index = ARGV[1]
+local value = ARGV[2]
+local expireSeconds = tonumber(ARGV[3])
+local threshold = tonumber(ARGV[4])
+
+local previous
+if redis.call('TYPE', partitionKey)['ok'] == 'string' then
+    previous = redis.call('BITFIELD', partitionKey, 'SET', 'u2', '#' .. index, value)[1]
+else
+    previous = tonumber(redis.call('HGET', partitionKey, index) or '0')
+    redis.call('HSET', partitionKey, index, value)
+
+    if previous == 0 and redis.call('HLEN', partitionKey) > threshold then
+        local entries = redis.call('HGETALL', partitionKey)
+        local ttl = redis.call('PTTL', partitionKey)
+        redis.call('DEL', partitionKey)
+        -- 分批提交，避免unpack超出Lua栈限制
+        local args = {}
+        for i = 1, #entries, 2 do
+            args[#args + 1] = 'SET'
+            args[#args + 1] = 'u2'
+            args[#args + 1] = '#' .. entries[i]
+            args[#args + 1] = entries[i + 1]
+            if #args >= 4000 then
+                redis.call('BITFIELD', partitionKey, unpack(args))
+                args = {}
+            end
+        end
+        if #args > 0 then
+            redis.call('BITFIELD', partitionKey, unpack(args))
+        end
+        if ttl > 0 then
+            redis.call('PEXPIRE', partitionKey, ttl)
+        end
+    end
+end
+
+if redis.call('TTL', partitionKey) < expireSeconds then
+    redis.call('EXPIRE', partitionKey, expireSeconds)
+end
+
+return previous
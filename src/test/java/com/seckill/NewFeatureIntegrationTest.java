@@ -101,7 +101,7 @@ public class NewFeatureIntegrationTest {
     assertEquals(stock, currentStock, "库存数量应该正确");
 
     // 4. 验证Hash过期时间
-    String orderKey = "seckill:order:" + voucherId;
+    String orderKey = RedisService.orderKey(voucherId);
     Long orderTtl = redisTemplate.getExpire(orderKey, java.util.concurrent.TimeUnit.SECONDS);
     System.out.println("📅 订单记录TTL: " + orderTtl + "秒 (应该接近90000秒/25小时)");
     assertTrue(orderTtl > 89000, "订单记录TTL应该比库存稍长");
@@ -141,14 +141,11 @@ public class NewFeatureIntegrationTest {
     assertFalse(statusUpdated, "状态已是成功，不应该能从处理中更新");
     System.out.println("✅ 状态机防护测试通过");
 
-    // 5. 验证数据库唯一索引约束
+    // 5. 限购多件时同一用户的另一笔订单（不同订单ID）正常创建
     Long anotherOrderId = System.currentTimeMillis() + 1;
-    try {
-      orderService.createOrder(userId, voucherId, anotherOrderId);
-      System.out.println("⚠️ 注意：唯一索引约束可能未生效");
-    } catch (Exception e) {
-      System.out.println("✅ 唯一索引约束生效: " + e.getMessage());
-    }
+    assertTrue(orderService.createOrder(userId, voucherId, anotherOrderId), "不同订单ID应该创建新订单");
+    assertNotNull(orderService.getOrderById(anotherOrderId), "第二笔订单应该存在");
+    System.out.println("✅ 同一用户多笔订单创建通过");
 
     System.out.println("🎯 数据库状态机和幂等性测试 ✅ 通过");
   }
@@ -0,0 +1,60 @@
+package com.seckill.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 布隆过滤器单元测试
+ *
+ * @author seckill-test
+ */
+public class BloomFilterTest {
+
+  @Test
+  @DisplayName("已写入元素不会漏判，误判率接近预期")
+  void testNoFalseNegativesAndBoundedFpp() {
+    BloomFilter filter = new BloomFilter(100_000, 0.01);
+    for (long i = 0; i < 100_000; i++) {
+      filter.put(i * 7919);
+    }
+
+    for (long i = 0; i < 100_000; i++) {
+      assertTrue(filter.mightContain(i * 7919));
+    }
+
+    int falsePositives = 0;
+    for (long i = 0; i < 100_000; i++) {
+      if (filter.mightContain(-1 - i)) {
+        falsePositives++;
+      }
+    }
+    double observed = falsePositives / 100_000.0;
+    assertTrue(observed < 0.02, "实际误判率过高: " + observed);
+    assertTrue(filter.estimatedFpp() < 0.02, "估算误判率过高: " + filter.estimatedFpp());
+  }
+
+  @Test
+  @DisplayName("滚动过滤器淘汰过期分区")
+  void testRollingFilterExpiresOldPartitions() {
+    RollingBloomFilter filter = new RollingBloomFilter(1000, 3, 1000, 0.01);
+
+    filter.put(1L, 500);
+    filter.put(2L, 1500);
+    assertTrue(filter.mightContain(1L, 500));
+    assertTrue(filter.mightContain(2L, 1500));
+    assertFalse(filter.mightContain(2L, 500));
+
+    // 第4个时间片复用第1个分区，旧数据整体丢弃
+    filter.put(3L, 3500);
+    assertFalse(filter.mightContain(1L, 500));
+    assertTrue(filter.mightContain(2L, 1500));
+    assertTrue(filter.mightContain(3L, 3500));
+
+    // 写入已淘汰时间片的数据被忽略
+    filter.put(4L, 200);
+    assertFalse(filter.mightContain(4L, 200));
+    assertEquals(3000, filter.windowMillis());
+  }
+}
@@ -0,0 +1,63 @@
+package com.seckill.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 原始long并发集合单元测试
+ *
+ * @author seckill-test
+ */
+public class ConcurrentLongHashSetTest {
+
+  @Test
+  @DisplayName("添加、查询、删除")
+  void testAddContainsRemove() {
+    ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+
+    assertTrue(set.add(1001L));
+    assertFalse(set.add(1001L));
+    assertTrue(set.add(0L));
+    assertTrue(set.contains(1001L));
+    assertTrue(set.contains(0L));
+    assertFalse(set.contains(1002L));
+    assertEquals(2, set.size());
+
+    assertTrue(set.remove(1001L));
+    assertFalse(set.remove(1001L));
+    assertTrue(set.remove(0L));
+    assertEquals(0, set.size());
+  }
+
+  @Test
+  @DisplayName("扩容与删除后与HashSet行为一致")
+  void testConsistentWithHashSet() {
+    ConcurrentLongHashSet set = new ConcurrentLongHashSet(16);
+    Set<Long> expected = new HashSet<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 200_000; i++) {
+      long value = random.nextInt(50_000);
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(value), set.remove(value));
+      } else {
+        assertEquals(expected.add(value), set.add(value));
+      }
+    }
+
+    assertEquals(expected.size(), set.size());
+    for (long value = 0; value < 50_000; value++) {
+      assertEquals(expected.contains(value), set.contains(value), "value=" + value);
+    }
+
+    set.clear();
+    assertEquals(0, set.size());
+    assertFalse(set.contains(expected.isEmpty() ? 1L : expected.iterator().next()));
+  }
+}
@@ -0,0 +1,112 @@
+package com.seckill.limiter;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应并发限流器单元测试
+ *
+ * @author seckill-test
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+  private static final long RTT_1MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private AdaptiveConcurrencyLimiter newLimiter(int initialLimit) {
+    return new AdaptiveConcurrencyLimiter(true, initialLimit, 10, 200, 0.9, 0.5, 60000);
+  }
+
+  /**
+   * 占满当前上限后逐个释放，使每个样本都处于“满负载”状态
+   */
+  private void runSaturatedRound(AdaptiveConcurrencyLimiter limiter, long rttNanos) {
+    int permits = 0;
+    while (limiter.tryAcquire()) {
+      permits++;
+    }
+    for (int i = 0; i < permits; i++) {
+      limiter.release(rttNanos, false);
+    }
+  }
+
+  @Test
+  @DisplayName("超过并发上限的请求被立即拒绝")
+  void testShedWhenLimitReached() {
+    AdaptiveConcurrencyLimiter limiter = newLimiter(20);
+
+    for (int i = 0; i < 20; i++) {
+      assertTrue(limiter.tryAcquire());
+    }
+    assertFalse(limiter.tryAcquire());
+    assertEquals(1, limiter.getShedCount());
+
+    limiter.release(RTT_1MS, false);
+    assertTrue(limiter.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("延迟稳定时并发上限增长")
+  void testLimitGrowsWhenLatencyStable() {
+    AdaptiveConcurrencyLimiter limiter = newLimiter(20);
+
+    for (int i = 0; i < 20; i++) {
+      runSaturatedRound(limiter, RTT_1MS);
+    }
+
+    assertTrue(limiter.getLimit() > 20, "延迟无变化时上限应增长，实际: " + limiter.getLimit());
+  }
+
+  @Test
+  @DisplayName("延迟升高时并发上限收缩")
+  void testLimitShrinksWhenLatencyRises() {
+    AdaptiveConcurrencyLimiter limiter = newLimiter(100);
+
+    runSaturatedRound(limiter, RTT_1MS);
+    int limitBefore = limiter.getLimit();
+    for (int i = 0; i < 20; i++) {
+      runSaturatedRound(limiter, RTT_1MS * 10);
+    }
+
+    assertTrue(limiter.getLimit() < limitBefore,
+        "下游变慢时上限应收缩，之前: " + limitBefore + ", 之后: " + limiter.getLimit());
+  }
+
+  @Test
+  @DisplayName("不提交样本的释放不影响最小RTT和并发上限")
+  void testReleaseWithoutSample() {
+    AdaptiveConcurrencyLimiter limiter = newLimiter(20);
+
+    runSaturatedRound(limiter, RTT_1MS);
+    int limitBefore = limiter.getLimit();
+    Object minRttBefore = limiter.snapshot().get("minRttMicros");
+    for (int i = 0; i < 100; i++) {
+      assertTrue(limiter.tryAcquire());
+      limiter.releaseWithoutSample();
+    }
+
+    assertEquals(limitBefore, limiter.getLimit());
+    assertEquals(minRttBefore, limiter.snapshot().get("minRttMicros"));
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  @DisplayName("失败样本触发乘性回退且不低于下界")
+  void testBackoffOnDrop() {
+    AdaptiveConcurrencyLimiter limiter = newLimiter(100);
+
+    for (int i = 0; i < 100; i++) {
+      assertTrue(limiter.tryAcquire());
+      limiter.release(RTT_1MS, true);
+    }
+
+    assertEquals(10, limiter.getLimit());
+    Map<String, Object> snapshot = limiter.snapshot();
+    assertEquals(100L, snapshot.get("droppedCount"));
+    assertEquals(0, snapshot.get("inFlight"));
+  }
+}
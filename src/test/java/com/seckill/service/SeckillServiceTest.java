@@ -1,5 +1,6 @@
 package com.seckill.service;
 
+import com.seckill.dto.OrderMessage;
 import com.seckill.dto.SeckillRequest;
 import com.seckill.dto.SeckillResponse;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,8 +8,22 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -26,6 +41,33 @@ public class SeckillServiceTest {
   @Autowired
   private RedisService redisService;
 
+  @Autowired
+  private RedisTemplate<String, Object> redisTemplate;
+
+  @Autowired
+  private RedisUsageService redisUsageService;
+
+  @Autowired
+  private RedisShardRouter redisShardRouter;
+
+  @Autowired
+  private ShardMigrationService shardMigrationService;
+
+  @Autowired
+  private RedisTemplate<String, Object> statusRedisTemplate;
+
+  @Autowired
+  private RedisTemplate<String, Object> adminRedisTemplate;
+
+  @Autowired
+  private RedisCommandBatcher redisCommandBatcher;
+
+  @Autowired
+  private RedisNearCache redisNearCache;
+
+  @Autowired
+  private RedisReplicaReader redisReplicaReader;
+
   @BeforeEach
   void setUp() {
     // 清理测试数据
@@ -195,4 +237,505 @@ public class SeckillServiceTest {
     // 用户购买记录应该清零
     assertEquals(0, seckillService.getUserBoughtCount(voucherId, userId));
   }
+
+  @Test
+  @DisplayName("重复请求合并测试")
+  void testDuplicateRequestsCollapsed() throws Exception {
+    Long voucherId = 999L;
+    Long userId = 4001L;
+    int concurrency = 20;
+
+    seckillService.initSeckillActivity(voucherId, 10);
+
+    SeckillRequest request = new SeckillRequest();
+    request.setUserId(userId);
+    request.setVoucherId(voucherId);
+    request.setLimit(1);
+
+    long collapsedBefore = (Long) seckillService.getSingleFlightStats().get("collapsedCount");
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    CountDownLatch startLatch = new CountDownLatch(1);
+    List<CompletableFuture<SeckillResponse>> futures = new ArrayList<>();
+    int successCount = 0;
+    try {
+      for (int i = 0; i < concurrency; i++) {
+        futures.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            startLatch.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return seckillService.doSeckill(request);
+        }, executor));
+      }
+      startLatch.countDown();
+
+      // 无论是否被合并，同一用户最多只能抢到一件，且成功响应共享同一个订单ID
+      Long orderId = null;
+      for (CompletableFuture<SeckillResponse> future : futures) {
+        SeckillResponse response = future.get();
+        if (response.getCode() == 0) {
+          successCount++;
+          if (orderId == null) {
+            orderId = response.getOrderId();
+          }
+          assertEquals(orderId, response.getOrderId());
+        } else {
+          assertEquals(2, response.getCode());
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(9, seckillService.getCurrentStock(voucherId));
+    assertEquals(1, seckillService.getUserBoughtCount(voucherId, userId));
+
+    // 只有执行了脚本的请求能抢到，其余成功响应都来自合并
+    long collapsed = (Long) seckillService.getSingleFlightStats().get("collapsedCount") - collapsedBefore;
+    assertTrue(collapsed >= successCount - 1, "合并数: " + collapsed + ", 成功响应数: " + successCount);
+    assertTrue(collapsed < concurrency);
+    assertEquals(0, seckillService.getSingleFlightStats().get("inFlight"));
+  }
+
+  @Test
+  @DisplayName("批量查询库存和订单状态测试")
+  void testBatchQueries() {
+    seckillService.initSeckillActivity(999L, 10);
+    seckillService.initSeckillActivity(998L, 5);
+
+    assertEquals(List.of(10, 5, 10), seckillService.getCurrentStocks(List.of(999L, 998L, 999L)));
+
+    // 订单ID携带当前时间，处于布隆过滤器同步容忍期内
+    Long orderId = System.currentTimeMillis() * 1000 + 1;
+    redisService.setOrderStatus(orderId, 1, 60);
+
+    List<Integer> statuses = seckillService.getOrderStatuses(List.of(orderId, 123L));
+    assertEquals(1, statuses.get(0));
+    assertNull(statuses.get(1));
+
+    redisService.cleanExpiredSeckillData(998L);
+  }
+
+  @Test
+  @DisplayName("预热试运行不影响真实库存测试")
+  void testWarmupDryRun() {
+    seckillService.initSeckillActivity(999L, 10, 600);
+
+    assertTrue(redisService.dryRunSeckill(999L, 20) >= 0);
+
+    // 试运行只使用影子键，真实库存和过期时间不变
+    assertEquals(10, redisService.getCurrentStock(999L));
+    Long ttl = redisService.getSeckillTTL(999L);
+    assertTrue(ttl != null && ttl > 0 && ttl <= 600);
+  }
+
+  @Test
+  @DisplayName("活动重新初始化后忽略上一轮回滚测试")
+  void testStaleEpochRollbackIgnored() {
+    Long voucherId = 999L;
+    Long userId = 3002L;
+
+    long oldEpoch = redisService.initStock(voucherId, 5);
+    RedisService.DeductResult deduct = redisService.executeSeckillWithEpoch(voucherId, userId, 1);
+    assertEquals(0L, deduct.code());
+    assertEquals(oldEpoch, deduct.epoch());
+
+    // 批量重新初始化开始新的轮次，上一轮的回滚不能修改本轮库存
+    List<Long> epochs = redisService.initStocks(List.of(
+        new RedisService.StockInit(voucherId, 3, 600),
+        new RedisService.StockInit(998L, 2, 600)));
+    assertTrue(epochs.get(0) > oldEpoch);
+    assertEquals(epochs.get(0), redisService.getActivityEpoch(voucherId));
+    assertEquals(2, redisService.getCurrentStock(998L));
+    assertTrue(seckillService.isStaleOrder(voucherId, oldEpoch));
+
+    assertEquals(3L, redisService.executeStockRollback(voucherId, userId, oldEpoch));
+    assertEquals(3, redisService.getCurrentStock(voucherId));
+    assertEquals(0, redisService.getUserBoughtCount(voucherId, userId));
+
+    // 当前轮次的回滚正常执行
+    redisService.executeSeckillWithEpoch(voucherId, userId, 1);
+    assertEquals(0L, redisService.executeStockRollback(voucherId, userId, epochs.get(0)));
+    assertEquals(3, redisService.getCurrentStock(voucherId));
+
+    redisService.cleanExpiredSeckillData(998L);
+  }
+
+  @Test
+  @DisplayName("购买记录丢失时订单延后处理而不是丢弃测试")
+  void testMissingEpochDefersOrder() {
+    Long voucherId = 999L;
+
+    long epoch = redisService.initStock(voucherId, 5);
+    assertEquals(0L, redisService.executeSeckillWithEpoch(voucherId, 3101L, 1).code());
+
+    // 模拟Redis数据丢失：没有当前轮次时无法判断是否过期
+    redisTemplate.delete(List.of(RedisService.stockKey(voucherId), RedisService.orderKey(voucherId)));
+    assertEquals(SeckillService.OrderEpochState.PENDING, seckillService.checkOrderEpoch(voucherId, epoch));
+    assertFalse(seckillService.isStaleOrder(voucherId, epoch));
+
+    // 回滚不写入库存键，留给恢复流程重建
+    assertEquals(4L, redisService.executeStockRollback(voucherId, 3101L, epoch));
+    assertFalse(Boolean.TRUE.equals(redisTemplate.hasKey(RedisService.stockKey(voucherId))));
+  }
+
+  @Test
+  @DisplayName("补货保留购买记录测试")
+  void testRestockKeepsPurchaseHistory() {
+    Long voucherId = 999L;
+
+    long epoch = redisService.initStock(voucherId, 1);
+    assertEquals(0L, redisService.executeSeckill(voucherId, 4001L, 1));
+    assertEquals(1L, redisService.executeSeckill(voucherId, 4002L, 1));
+
+    assertEquals(2L, redisService.restock(voucherId, 2));
+    assertEquals(-1L, redisService.restock(997L, 2));
+
+    // 已购用户仍受限购约束，其他用户可以继续购买，活动轮次不变
+    assertEquals(2L, redisService.executeSeckill(voucherId, 4001L, 1));
+    assertEquals(0L, redisService.executeSeckill(voucherId, 4002L, 1));
+    assertEquals(1, redisService.getCurrentStock(voucherId));
+    assertEquals(epoch, redisService.getActivityEpoch(voucherId));
+  }
+
+  @Test
+  @DisplayName("从订单恢复购买记录和库存测试")
+  void testRecoverPurchases() {
+    Long voucherId = 999L;
+    long oldEpoch = redisService.initStock(voucherId, 10);
+    redisService.cleanExpiredSeckillData(voucherId);
+
+    long[] userIds = {5001L, 5002L, 5003L};
+    redisService.appendRecoveredPurchases(voucherId, userIds, userIds.length);
+    long epoch = redisService.finishRecovery(voucherId, 7, 600);
+
+    assertTrue(epoch > oldEpoch);
+    assertEquals(7, redisService.getCurrentStock(voucherId));
+    assertEquals(1, redisService.getUserBoughtCount(voucherId, 5002L));
+
+    // 恢复前的在途订单重新占用库存，不受限购约束，之后按当前轮次处理
+    assertEquals(SeckillService.OrderEpochState.CARRIED, seckillService.checkOrderEpoch(voucherId, oldEpoch));
+    OrderMessage carried = new OrderMessage();
+    carried.setVoucherId(voucherId);
+    carried.setUserId(5001L);
+    carried.setOrderId(9001L);
+    carried.setEpoch(oldEpoch);
+    assertTrue(seckillService.claimCarriedOrder(carried));
+    assertEquals(epoch, carried.getEpoch());
+    assertEquals(6, redisService.getCurrentStock(voucherId));
+    assertEquals(0L, redisService.executeStockRollback(voucherId, 5001L, carried.getEpoch()));
+    assertEquals(7, redisService.getCurrentStock(voucherId));
+    assertEquals(2L, redisService.executeSeckill(voucherId, 5002L, 1));
+    assertEquals(0L, redisService.executeSeckill(voucherId, 5004L, 1));
+
+    // 库存键已存在时放弃恢复
+    redisService.appendRecoveredPurchases(voucherId, userIds, 1);
+    assertEquals(-1L, redisService.finishRecovery(voucherId, 100, 600));
+    assertEquals(6, redisService.getCurrentStock(voucherId));
+  }
+
+  @Test
+  @DisplayName("购买记录各编码的限购和回滚测试")
+  void testLedgerEncodings() {
+    Long voucherId = 999L;
+    for (RedisService.LedgerEncoding encoding : RedisService.LedgerEncoding.values()) {
+      long epoch = redisService.initStock(voucherId, 10, 600, encoding);
+
+      // 分别落在同一个桶、不同的桶，以及超出位图范围的用户
+      for (Long userId : List.of(7L, 12345L, 12399L, 1L << 40)) {
+        assertEquals(0L, redisService.executeSeckill(voucherId, userId, 1), encoding + " " + userId);
+        assertEquals(2L, redisService.executeSeckill(voucherId, userId, 1), encoding + " " + userId);
+        assertEquals(1, redisService.getUserBoughtCount(voucherId, userId), encoding + " " + userId);
+      }
+      assertEquals(0, redisService.getUserBoughtCount(voucherId, 12346L), encoding.name());
+      assertEquals(6, redisService.getCurrentStock(voucherId), encoding.name());
+      if (encoding == RedisService.LedgerEncoding.BITMAP) {
+        // 位图只覆盖与库存成比例的用户ID范围，较大的用户ID记录在分桶中
+        Long bitmapBytes = redisTemplate.opsForValue().size(RedisService.orderKey(voucherId) + ":" + epoch + ":bits");
+        assertTrue(bitmapBytes != null && bitmapBytes <= 40, "位图大小: " + bitmapBytes);
+      }
+
+      assertEquals(0L, redisService.executeStockRollback(voucherId, 12345L));
+      assertEquals(0, redisService.getUserBoughtCount(voucherId, 12345L), encoding.name());
+      assertEquals(1, redisService.getUserBoughtCount(voucherId, 12399L), encoding.name());
+      assertEquals(7, redisService.getCurrentStock(voucherId), encoding.name());
+    }
+  }
+
+  @Test
+  @DisplayName("订单状态分区位域读写测试")
+  void testPartitionedOrderStatus() {
+    // 同一毫秒内相邻的订单、跨毫秒的订单互不影响
+    long base = System.currentTimeMillis() * 1000;
+    List<Long> orderIds = List.of(base + 998, base + 999, base + 1000, base + 7);
+    redisService.setOrderStatus(orderIds.get(0), 0, 60);
+    redisService.setOrderStatus(orderIds.get(1), 2, 60);
+    redisService.setOrderStatus(orderIds.get(2), 1, 60);
+
+    assertEquals(0, redisService.getOrderStatus(orderIds.get(0)));
+    assertEquals(2, redisService.getOrderStatus(orderIds.get(1)));
+    assertEquals(1, redisService.getOrderStatus(orderIds.get(2)));
+    assertNull(redisService.getOrderStatus(orderIds.get(3)));
+
+    redisService.setOrderStatus(orderIds.get(0), 1, 30);
+    assertEquals(Arrays.asList(1, 2, 1, null), redisService.getOrderStatuses(orderIds));
+
+    // 分区订单数超过阈值后转换为位域，已有状态保持不变
+    for (long i = 0; i < 300; i++) {
+      redisService.setOrderStatus(base + 2000 + i, (int) (i % 3), 60);
+    }
+    for (long i = 0; i < 300; i += 37) {
+      assertEquals((int) (i % 3), redisService.getOrderStatus(base + 2000 + i));
+    }
+    assertEquals(1, redisService.getOrderStatus(orderIds.get(0)));
+    assertNull(redisService.getOrderStatus(base + 2300));
+  }
+
+  @Test
+  @DisplayName("活动归档遍历购买记录并删除键测试")
+  void testArchivePurchasesAndUnlink() throws Exception {
+    Long voucherId = 999L;
+    Path dir = Files.createTempDirectory("seckill-archive");
+    for (RedisService.LedgerEncoding encoding : RedisService.LedgerEncoding.values()) {
+      long epoch = redisService.initStock(voucherId, 10, 600, encoding);
+      List<Long> userIds = List.of(7L, 12345L, 12399L, 1L << 40);
+      for (Long userId : userIds) {
+        assertEquals(0L, redisService.executeSeckill(voucherId, userId, 1), encoding + " " + userId);
+      }
+
+      Map<Long, Integer> purchases = new HashMap<>();
+      Path archive = dir.resolve(encoding + ".tsv.gz");
+      List<String> ledgerKeys;
+      try (ActivityCompactionService.ArchiveWriter writer = new ActivityCompactionService.ArchiveWriter(archive)) {
+        ledgerKeys = redisService.scanPurchases(voucherId, epoch, 100, (userId, count) -> {
+          purchases.merge(userId, count, Integer::sum);
+          writer.write("o", userId.toString(), count.toString());
+        });
+        writer.write("d", "error", "tab\there");
+        assertEquals(new ActivityCompactionService.ArchiveSummary(5, 4, 4), writer.summary());
+      }
+      assertEquals(userIds.size(), purchases.size(), encoding.name());
+      assertTrue(purchases.keySet().containsAll(userIds), encoding.name());
+      assertEquals(new ActivityCompactionService.ArchiveSummary(5, 4, 4),
+          ActivityCompactionService.readSummary(archive), encoding.name());
+
+      // 轮次不一致时不删除订单哈希
+      assertEquals(-1L, redisService.unlinkActivityLedger(voucherId, epoch + 1));
+      assertEquals(ledgerKeys.size(), redisService.unlinkKeys(ledgerKeys));
+      assertTrue(redisService.unlinkActivityLedger(voucherId, epoch) >= 1);
+      assertNull(redisService.getActivityEpoch(voucherId));
+      for (Long userId : userIds) {
+        assertEquals(0, redisService.getUserBoughtCount(voucherId, userId), encoding + " " + userId);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("增量键清理扫描和进度保存测试")
+  void testJanitorScanAndProgress() {
+    String pattern = "seckill:janitortest:*";
+    for (int i = 0; i < 30; i++) {
+      redisTemplate.opsForHash().put("seckill:janitortest:" + i, "error", "stock_insufficient");
+    }
+    redisTemplate.opsForValue().set("seckill:janitortest:ttl", "1", 60, TimeUnit.SECONDS);
+    String keysField = "keys:" + pattern;
+    long before = Long.parseLong(redisService.getJanitorState().getOrDefault(keysField, "0"));
+
+    // 游标跨多步推进，有过期时间的键不清理
+    String cursor = "0";
+    int steps = 0;
+    long removed = 0;
+    do {
+      RedisService.IdleKeyPage page = redisService.scanIdleKeys(RedisShardRouter.PRIMARY, cursor, pattern, 10, 0);
+      List<Boolean> unlinked = redisService.unlinkPipelined(RedisShardRouter.PRIMARY, page.keys());
+      assertFalse(page.keys().contains("seckill:janitortest:ttl"));
+      assertTrue(page.sizes().stream().allMatch(size -> size > 0));
+      assertTrue(unlinked.stream().allMatch(Boolean::booleanValue));
+      cursor = page.cursor();
+      redisService.saveJanitorProgress(pattern, cursor, unlinked.size(), 0, "0".equals(cursor));
+      removed += unlinked.size();
+      steps++;
+    } while (!"0".equals(cursor) && steps < 1000);
+
+    assertEquals(30, removed);
+    assertTrue(Boolean.TRUE.equals(redisTemplate.hasKey("seckill:janitortest:ttl")));
+    Map<String, String> state = redisService.getJanitorState();
+    assertEquals("0", state.get("cursor:" + pattern));
+    assertEquals(before + 30, Long.parseLong(state.get(keysField)));
+  }
+
+  @Test
+  @DisplayName("按优惠券统计脚本调用和内存占用测试")
+  @SuppressWarnings("unchecked")
+  void testRedisUsageAccounting() {
+    Long voucherId = 999L;
+    redisService.initStock(voucherId, 1);
+    Map<String, Object> before = countersOf(voucherId);
+
+    assertEquals(0L, redisService.executeSeckill(voucherId, 6001L, 1));
+    assertEquals(1L, redisService.executeSeckill(voucherId, 6002L, 1));
+    assertEquals(3L, redisService.executeStockRollback(voucherId, 6001L, -1L));
+
+    Map<String, Object> after = countersOf(voucherId);
+    assertEquals(2L, (Long) after.get("seckillCalls") - (Long) before.get("seckillCalls"));
+    assertEquals(1L, (Long) after.get("seckillSuccess") - (Long) before.get("seckillSuccess"));
+    assertEquals(1L, (Long) after.get("seckillOutOfStock") - (Long) before.get("seckillOutOfStock"));
+    assertEquals(1L, (Long) after.get("staleRollbacks") - (Long) before.get("staleRollbacks"));
+
+    List<RedisService.KeyUsage> usages = redisService.inspectKeys(voucherId,
+        List.of(RedisService.stockKey(voucherId), RedisService.orderKey(voucherId), "seckill:none:{999}"), 5);
+    assertTrue(usages.get(0).bytes() > 0);
+    assertTrue(usages.get(1).bytes() > 0);
+    assertEquals("hash", redisTemplate.type(RedisService.orderKey(voucherId)).code());
+    assertEquals(new RedisService.KeyUsage("seckill:none:{999}", 0, "none", -2), usages.get(2));
+
+    Map<String, Object> report = redisUsageService.sample();
+    List<Map<String, Object>> vouchers = (List<Map<String, Object>>) report.get("vouchers");
+    assertTrue(vouchers.stream().anyMatch(voucher -> voucherId.equals(voucher.get("voucherId"))
+        && (Long) voucher.get("bytes") > 0));
+  }
+
+  @Test
+  @DisplayName("分片路由和哈希标签测试")
+  void testShardRouting() {
+    Long voucherId = 999L;
+    redisService.initStock(voucherId, 10);
+    assertEquals(0L, redisService.executeSeckill(voucherId, 7001L, 1));
+
+    // 同一优惠券的键带相同的哈希标签，按标签路由
+    assertEquals("seckill:stock:{999}", RedisService.stockKey(voucherId));
+    assertEquals(voucherId, RedisShardRouter.voucherIdOf(RedisService.orderKey(voucherId) + ":3:bits"));
+    assertNull(RedisShardRouter.voucherIdOf("seckill:order:status:12345"));
+    assertSame(redisShardRouter.forVoucher(voucherId), redisShardRouter.forKey(RedisService.debugKey(voucherId)));
+
+    // 初始化时固定分片，之后增加节点不会移动已有数据
+    String shard = redisShardRouter.shardOf(voucherId).name();
+    assertEquals(shard, redisTemplate.opsForHash().get("seckill:shard:directory", "999"));
+    List<String> keys = redisService.listVoucherKeys(shard, voucherId, 100);
+    assertTrue(keys.containsAll(List.of(RedisService.stockKey(voucherId), RedisService.orderKey(voucherId),
+        RedisService.timeKey(voucherId))));
+    assertEquals(keys.size(), redisService.countExistingKeys(shard, keys));
+
+    // 测试环境只有主连接一个分片，已在目标分片上时不迁移
+    assertEquals(shard, redisShardRouter.ringOwner(voucherId));
+    assertEquals(false, shardMigrationService.migrate(voucherId).get("moved"));
+  }
+
+  @Test
+  @DisplayName("按负载拆分连接测试")
+  void testWorkloadLanes() {
+    // 订单状态和管理/日志操作不与秒杀脚本共用连接
+    assertNotSame(redisTemplate.getConnectionFactory(), statusRedisTemplate.getConnectionFactory());
+    assertNotSame(redisTemplate.getConnectionFactory(), adminRedisTemplate.getConnectionFactory());
+    assertSame(adminRedisTemplate, redisShardRouter.adminForKey("seckill:janitor:state"));
+
+    Long orderId = System.currentTimeMillis() * 1000 + 7;
+    redisService.setOrderStatus(orderId, 1, 60);
+    assertEquals(1, redisService.getOrderStatus(orderId));
+    assertEquals(Arrays.asList(1, null), redisService.getOrderStatuses(List.of(orderId, orderId + 1)));
+
+    Long voucherId = 999L;
+    redisService.initStock(voucherId, 10);
+    assertEquals(0L, redisService.executeSeckill(voucherId, 7101L, 1));
+    assertEquals(0L, redisService.executeStockRollback(voucherId, 7101L));
+    assertTrue(redisService.getRollbackLogs(voucherId).stream().anyMatch(entry -> entry.contains("7101")));
+  }
+
+  @Test
+  @DisplayName("订单状态命令自动合批测试")
+  void testStatusCommandBatching() throws Exception {
+    Map<String, Object> before = redisCommandBatcher.getStats();
+    long baseOrderId = System.currentTimeMillis() * 1000;
+    int threads = 50;
+    CountDownLatch ready = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      long orderId = baseOrderId + i;
+      futures.add(CompletableFuture.runAsync(() -> {
+        try {
+          ready.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        redisService.setOrderStatus(orderId, (int) (orderId % 3), 60);
+      }, executor));
+    }
+    ready.countDown();
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    executor.shutdown();
+
+    List<Long> orderIds = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      orderIds.add(baseOrderId + i);
+    }
+    List<Integer> statuses = redisService.getOrderStatuses(orderIds);
+    for (int i = 0; i < threads; i++) {
+      assertEquals((int) (orderIds.get(i) % 3), statuses.get(i));
+    }
+    // 合批连接与订单状态连接读写同一个库
+    assertTrue(Boolean.TRUE.equals(statusRedisTemplate.hasKey("order:status:p:" + baseOrderId / 100000)));
+
+    Map<String, Object> after = redisCommandBatcher.getStats();
+    long commands = (Long) after.get("commandCount") - (Long) before.get("commandCount");
+    long flushes = (Long) after.get("flushCount") - (Long) before.get("flushCount");
+    assertEquals(threads * 2L, commands);
+    assertTrue(flushes < commands, "并发命令应合并写出: " + flushes + "/" + commands);
+  }
+
+  @Test
+  @DisplayName("库存近端缓存命中与失效测试")
+  void testNearCacheInvalidation() throws Exception {
+    Long voucherId = 990049L;
+    try {
+      redisService.initStock(voucherId, 30);
+      assertEquals(30, redisService.getCurrentStock(voucherId));
+      long hits = (Long) redisNearCache.getStats().get("hitCount");
+      assertEquals(30, redisService.getCurrentStock(voucherId));
+      assertEquals(hits + 1, (Long) redisNearCache.getStats().get("hitCount"));
+
+      // 其他连接修改库存后，失效消息删除本地副本
+      long invalidations = (Long) redisNearCache.getStats().get("invalidationCount");
+      redisTemplate.opsForValue().set(RedisService.stockKey(voucherId), "7");
+      long deadline = System.currentTimeMillis() + 2000;
+      while ((Long) redisNearCache.getStats().get("invalidationCount") == invalidations
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(7, redisService.getCurrentStock(voucherId));
+      assertEquals(List.of(7), redisService.getCurrentStocks(List.of(voucherId)));
+    } finally {
+      redisService.cleanExpiredSeckillData(voucherId);
+    }
+  }
+
+  @Test
+  @DisplayName("副本读取测试（未配置副本时读取主库）")
+  void testReplicaReadFallsBackToMaster() {
+    Long voucherId = 990050L;
+    try {
+      redisService.initStock(voucherId, 10);
+      assertEquals(0L, redisService.executeSeckill(voucherId, 42L, 1));
+      assertEquals(1, redisService.getUserBoughtCount(voucherId, 42L));
+      assertEquals(0, redisService.getUserBoughtCount(voucherId, 43L));
+
+      long orderId = System.currentTimeMillis() * 1000 + 7;
+      redisService.setOrderStatus(orderId, 1, 60);
+      assertEquals(1, redisService.getOrderStatus(orderId));
+      assertEquals(1, redisService.getOrderStatus(orderId, false));
+
+      Map<String, Object> stats = redisReplicaReader.getStats();
+      assertEquals(List.of(), stats.get("groups"));
+      assertEquals(0L, stats.get("readCount"));
+      assertEquals(0L, stats.get("hedgeCount"));
+    } finally {
+      redisService.cleanExpiredSeckillData(voucherId);
+    }
+  }
+
+  private Map<String, Object> countersOf(Long voucherId) {
+    RedisService.ScriptCounters counters = redisService.getScriptCounters().get(voucherId);
+    return counters != null ? counters.snapshot() : new RedisService.ScriptCounters().snapshot();
+  }
 }
@@ -0,0 +1,50 @@
+package com.seckill.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 令牌签名单元测试
+ *
+ * @author seckill-test
+ */
+public class TokenSignerTest {
+
+  private TokenSigner signer;
+
+  @BeforeEach
+  void setUp() {
+    signer = newSigner("test-secret");
+  }
+
+  @Test
+  @DisplayName("签发的令牌可验证并还原载荷")
+  void testSignAndVerify() {
+    String token = signer.sign("1001.42.7.1700000000000");
+
+    assertEquals("1001.42.7.1700000000000", signer.verify(token));
+  }
+
+  @Test
+  @DisplayName("篡改载荷、签名或更换密钥后验证失败")
+  void testRejectTamperedToken() {
+    String token = signer.sign("1001.42.7.1700000000000");
+
+    assertNull(signer.verify(token.replace("1001.42.7", "1001.42.1")));
+    assertNull(signer.verify(token.substring(0, token.length() - 1) + "x"));
+    assertNull(signer.verify("no-signature"));
+    assertNull(signer.verify(null));
+    assertNull(newSigner("other-secret").verify(token));
+  }
+
+  private static TokenSigner newSigner(String secret) {
+    TokenSigner signer = new TokenSigner();
+    ReflectionTestUtils.setField(signer, "secret", secret);
+    signer.init();
+    return signer;
+  }
+}